@@ -31,14 +31,17 @@ import java.util.Map;
 
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.cora.storage.TinyLFUCache;
 import net.yacy.cora.util.ConcurrentLog;
-import net.yacy.kelondro.index.RAMIndex;
+import net.yacy.kelondro.index.RAMIndexCluster;
 import net.yacy.kelondro.table.Table;
 import net.yacy.kelondro.table.Table.TableStatistics;
 import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
 import net.yacy.search.Switchboard;
 import net.yacy.search.query.SearchEventCache;
+import net.yacy.search.snippet.TextSnippet;
 import net.yacy.server.serverObjects;
 import net.yacy.server.serverSwitch;
 
@@ -97,12 +100,30 @@ public class PerformanceMemory_p {
         prop.putNum("memoryUsedAfterInitAGC", (memoryTotalAfterInitAGC - memoryFreeAfterInitAGC) / MB);
         prop.putNum("memoryUsedNow", MemoryControl.used() / MB);
 
+        // write table for the budgets of the memory governor
+        int c = 0;
+        for (final MemoryGovernor.Budget budget: MemoryGovernor.budgets()) {
+            prop.put("governor_" + c + "_name", budget.getName());
+            prop.put("governor_" + c + "_used", budget.getUsed() < 0 ? "unknown" : Formatter.bytesToString(budget.getUsed()));
+            prop.put("governor_" + c + "_budget", Formatter.bytesToString(budget.getBudget()));
+            prop.put("governor_" + c + "_min", Formatter.bytesToString(budget.getMin()));
+            prop.put("governor_" + c + "_max", Formatter.bytesToString(budget.getMax()));
+            prop.put("governor_" + c + "_hitRate", budget.getHitRate() < 0 ? "-" : Integer.toString((int) (budget.getHitRate() * 100)) + " %");
+            prop.putNum("governor_" + c + "_evictions", budget.getEvictions());
+            c++;
+        }
+        prop.put("governor", c);
+        prop.put("governorPool", MemoryGovernor.pool() < 0 ? "-" : Formatter.bytesToString(MemoryGovernor.pool()));
+        prop.put("governorPressure", MemoryGovernor.pressure().name());
+        prop.putNum("governorHeap", (int) (MemoryGovernor.heapUsage() * 100));
+        prop.putNum("governorGC", (int) (MemoryGovernor.gcUsage() * 100));
+
         // write table for Table index sizes
         Iterator<String> i = Table.filenames();
         String filename;
         TableStatistics stats;
         int p;
-        int c = 0;
+        c = 0;
         long totalmem = 0;
         while (i.hasNext()) {
             filename = i.next();
@@ -124,10 +145,10 @@ public class PerformanceMemory_p {
         prop.putNum("EcoIndexTotalMem", totalmem / (1024d * 1024d));
 
         // write object cache table
-        final Iterator<Map.Entry<String, RAMIndex>> oi = RAMIndex.objects();
+        final Iterator<Map.Entry<String, RAMIndexCluster>> oi = RAMIndexCluster.objects();
         c = 0;
-        Map.Entry<String, RAMIndex> oie;
-        RAMIndex cache;
+        Map.Entry<String, RAMIndexCluster> oie;
+        RAMIndexCluster cache;
         long hitmem, totalhitmem = 0;
         while (oi.hasNext()) {
             try {
@@ -203,10 +224,17 @@ public class PerformanceMemory_p {
         prop.putNum("namecacheHit.Hit", Domains.cacheHit_Hit);
         prop.putNum("namecacheHit.Miss", Domains.cacheHit_Miss);
         prop.putNum("namecacheHit.Insert", Domains.cacheHit_Insert);
+        putCacheStats(prop, "namecacheHit", Domains.nameCacheHit());
         prop.putNum("namecacheMiss.size", Domains.nameCacheMissSize());
         prop.putNum("namecacheMiss.Hit", Domains.cacheMiss_Hit);
         prop.putNum("namecacheMiss.Miss", Domains.cacheMiss_Miss);
         prop.putNum("namecacheMiss.Insert", Domains.cacheMiss_Insert);
+        putCacheStats(prop, "namecacheMiss", Domains.nameCacheMiss());
+        final TinyLFUCache<String, String> snippets = TextSnippet.snippetsCache.ram();
+        prop.putNum("snippetcache.size", snippets.size());
+        prop.putNum("snippetcache.Hit", snippets.hits());
+        prop.putNum("snippetcache.Miss", snippets.misses());
+        putCacheStats(prop, "snippetcache", snippets);
         prop.putNum("namecache.noCache", Domains.nameCacheNoCachingPatternsSize());
         prop.putNum("blacklistcache.size", Switchboard.urlBlacklist.blacklistCacheSize());
         prop.putNum("searchevent.size", SearchEventCache.size());
@@ -217,4 +245,13 @@ public class PerformanceMemory_p {
         // return rewrite values for templates
         return prop;
     }
+
+    /**
+     * write the evictions, the hit rate and the summary of a TinyLFU cache
+     */
+    private static void putCacheStats(final serverObjects prop, final String prefix, final TinyLFUCache<?, ?> cache) {
+        prop.putNum(prefix + ".Delete", cache.evictions());
+        prop.putNum(prefix + ".HitRate", cache.hitRate() * 100.0d);
+        prop.putHTML(prefix + ".Stats", cache.stats());
+    }
 }
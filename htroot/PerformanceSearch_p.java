@@ -27,14 +27,20 @@
 import java.util.Iterator;
 
 import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.kelondro.workflow.SearchExecutor;
 import net.yacy.peers.graphics.ProfilingGraph;
 import net.yacy.search.EventTracker;
+import net.yacy.search.Switchboard;
+import net.yacy.search.index.SentenceStore;
+import net.yacy.search.query.QueryResultCache;
+import net.yacy.search.query.SearchEventCache;
+import net.yacy.search.snippet.TextSnippet;
 import net.yacy.server.serverObjects;
 import net.yacy.server.serverSwitch;
 
 public class PerformanceSearch_p {
 
-    public static serverObjects respond(@SuppressWarnings("unused") final RequestHeader header, @SuppressWarnings("unused") final serverObjects post, @SuppressWarnings("unused") final serverSwitch sb) {
+    public static serverObjects respond(@SuppressWarnings("unused") final RequestHeader header, @SuppressWarnings("unused") final serverObjects post, final serverSwitch sb) {
         // return variable that accumulates replacements
         final serverObjects prop = new serverObjects();
 
@@ -59,6 +65,53 @@ public class PerformanceSearch_p {
             }
         }
         prop.put("table", c);
+
+        // the shared executor of the search tasks
+        prop.put("executor_threads", SearchExecutor.isVirtual() ? "virtual" : Integer.toString(SearchExecutor.poolSize()));
+        prop.putNum("executor_active", SearchExecutor.active());
+        prop.putNum("executor_peak", SearchExecutor.peak());
+        prop.putNum("executor_queued", SearchExecutor.queued());
+        prop.putNum("executor_submitted", SearchExecutor.submitted());
+        prop.putNum("executor_completed", SearchExecutor.completed());
+        prop.putNum("executor_cancelled", SearchExecutor.cancelled());
+        prop.putNum("executor_expired", SearchExecutor.expired());
+        prop.putNum("executor_overflow", SearchExecutor.overflow());
+        prop.putNum("executor_wait", SearchExecutor.averageWaitTime());
+
+        // the cache for the results of evicted search events
+        final QueryResultCache resultCache = SearchEventCache.resultCache();
+        if (resultCache == null) {
+            prop.put("resultcache", 0);
+        } else {
+            prop.put("resultcache", 1);
+            prop.putNum("resultcache_size", resultCache.size());
+            prop.putNum("resultcache_stores", resultCache.stores());
+            prop.putNum("resultcache_hits", resultCache.hits());
+            prop.putNum("resultcache_misses", resultCache.misses());
+            prop.putNum("resultcache_invalidations", resultCache.invalidations());
+        }
+
+        // the sentence store and the disk level of the snippet cache
+        final SentenceStore sentences = ((Switchboard) sb).index.sentences();
+        if (sentences == null) {
+            prop.put("sentences", 0);
+        } else {
+            prop.put("sentences", 1);
+            prop.putNum("sentences_size", sentences.size());
+            prop.putNum("sentences_length", sentences.length() / 1024L / 1024L);
+            prop.putNum("sentences_stores", sentences.stores());
+            prop.putNum("sentences_hits", sentences.hits());
+            prop.putNum("sentences_misses", sentences.misses());
+        }
+        if (!TextSnippet.snippetsCache.isOpen()) {
+            prop.put("snippetcache", 0);
+        } else {
+            prop.put("snippetcache", 1);
+            prop.putNum("snippetcache_size", TextSnippet.snippetsCache.diskSize());
+            prop.putNum("snippetcache_stores", TextSnippet.snippetsCache.diskStores());
+            prop.putNum("snippetcache_hits", TextSnippet.snippetsCache.diskHits());
+            prop.putNum("snippetcache_misses", TextSnippet.snippetsCache.diskMisses());
+        }
         return prop;
     }
 }
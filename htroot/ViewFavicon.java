@@ -31,11 +31,10 @@ import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
-import net.yacy.cora.storage.ConcurrentARC;
+import net.yacy.cora.storage.TinyLFUCache;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
-import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.peers.graphics.EncodedImage;
 import net.yacy.search.Switchboard;
 import net.yacy.server.serverObjects;
@@ -54,9 +53,8 @@ public class ViewFavicon {
 	/** Single instance of ImageViewer */
 	private static final ImageViewer VIEWER = new ImageViewer();
 
-	/** Icons cache encoded as png */
-	private static Map<String, byte[]> pngIconCache = new ConcurrentARC<String, byte[]>(1000,
-			Math.max(10, Math.min(32, WorkflowProcessor.availableCPU * 2)));
+	/** Icons cache encoded as png, limited to 4 MB */
+	private static Map<String, byte[]> pngIconCache = new TinyLFUCache<String, byte[]>(4L * 1024L * 1024L, TinyLFUCache.MEMORY_WEIGHER, 0);
 
 	/** Default icon local file */
 	private static final String defaulticon = "htroot/env/grafics/dfltfvcn.ico";
@@ -64,8 +64,8 @@ public class get_ymark {
             }
             try {
                 final String bmk_table = TABLES.BOOKMARKS.tablename(bmk_user);
-                final Collection<Row> result;
                 if(!query.isEmpty()) {
+                    final Collection<Row> result;
                     if(!qtype.isEmpty()) {
                         if(qtype.equals("_tags")) {
                         	final String tags = YMarkUtil.cleanTagsString(query);
@@ -78,11 +78,13 @@ public class get_ymark {
                     } else {
                     	result = sb.tables.bookmarks.orderBookmarksBy(sb.tables.iterator(bmk_table, Pattern.compile(query)), sortname, sortorder);
                     }
+                    total = result.size();
+                    bookmarks = result.iterator();
                 } else {
-                	result = sb.tables.bookmarks.orderBookmarksBy(sb.tables.iterator(bmk_table), sortname, sortorder);
+                	// all bookmarks: the sorted index of the column is used if there is one
+                	total = sb.tables.size(bmk_table);
+                	bookmarks = sb.tables.bookmarks.getBookmarksOrderedBy(bmk_user, sortname, sortorder);
                 }
-                total = result.size();
-                bookmarks = result.iterator();
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
             }
@@ -837,7 +837,8 @@ public class yacysearch {
                         sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_MAXCOUNT_DEFAULT, 10)),
                     sb.getConfigLong(
                         SwitchboardConstants.REMOTESEARCH_MAXTIME_USER,
-                        sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_MAXTIME_DEFAULT, 3000)));
+                        sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_MAXTIME_DEFAULT, 3000)),
+                    true);
 
             if(post.getBoolean("resortCachedResults") && cachedEvent == theSearch) {
                 theSearch.resortCachedResults();
@@ -361,6 +361,35 @@ public class Base64Order extends AbstractOrder<byte[]> implements ByteOrder, Com
         return Long.MAX_VALUE - keyCardinal + zeroCardinal;
     }
 
+    /**
+     * order-preserving transform of a key prefix into a long: the first chars characters of the key
+     * are packed as 6-bit digits into the lowest chars * 6 bits of the result. For two keys a and b
+     * key(a) < key(b) implies compare(a, b) < 0 if hasKeyOrder() is true, so a set of keys can be sorted
+     * with long comparisons and only keys with the same prefix must be compared with compare().
+     * @param a the key
+     * @param offset the start of the key in a
+     * @param chars the number of characters to transform, at most 10
+     * @return the transformed prefix or -1 if the prefix contains characters which are not in the alphabet
+     */
+    public final long key(final byte[] a, final int offset, final int chars) {
+        assert chars <= 10 : "chars = " + chars;
+        long k = 0;
+        byte b;
+        for (int i = offset; i < offset + chars; i++) {
+            b = a[i];
+            if (b < 0 || (b = this.ahpla[b]) < 0) return -1;
+            k = (k << 6) | b;
+        }
+        return k;
+    }
+
+    /**
+     * @return true if the order of the transformed keys from key() is the order of this Base64Order
+     */
+    public final boolean hasKeyOrder() {
+        return this.asc && this.zero == null;
+    }
+
     private static final int sig(final int x) {
         return (x > 0) ? 1 : (x < 0) ? -1 : 0;
     }
@@ -59,9 +59,8 @@ import net.yacy.cora.plugin.ClassProvider;
 import net.yacy.cora.protocol.tld.GenericTLD;
 import net.yacy.cora.protocol.tld.InternationalizedCountryCodeTLD;
 import net.yacy.cora.protocol.tld.SponsoredTLD;
-import net.yacy.cora.storage.ARC;
-import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.storage.KeyList;
+import net.yacy.cora.storage.TinyLFUCache;
 import net.yacy.cora.util.CommonPattern;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.util.MemoryControl;
@@ -92,11 +91,12 @@ public class Domains {
 
     private static final int MAX_NAME_CACHE_HIT_SIZE = 10000;
     private static final int MAX_NAME_CACHE_MISS_SIZE = 1000;
-    private static final int CONCURRENCY_LEVEL = Runtime.getRuntime().availableProcessors() * 2;
+    private static final long NAME_CACHE_HIT_EXPIRY = 60L * 60L * 1000L; // resolved addresses are looked up again after one hour
+    private static final long NAME_CACHE_MISS_EXPIRY = 10L * 60L * 1000L; // unknown hosts are looked up again after ten minutes
 
     // a dns cache
-    private static final ARC<String, InetAddress> NAME_CACHE_HIT = new ConcurrentARC<>(MAX_NAME_CACHE_HIT_SIZE, CONCURRENCY_LEVEL);
-    private static final ARC<String, String> NAME_CACHE_MISS = new ConcurrentARC<>(MAX_NAME_CACHE_MISS_SIZE, CONCURRENCY_LEVEL);
+    private static final TinyLFUCache<String, InetAddress> NAME_CACHE_HIT = new TinyLFUCache<>(MAX_NAME_CACHE_HIT_SIZE, TinyLFUCache.ENTRY_WEIGHER, NAME_CACHE_HIT_EXPIRY);
+    private static final TinyLFUCache<String, String> NAME_CACHE_MISS = new TinyLFUCache<>(MAX_NAME_CACHE_MISS_SIZE, TinyLFUCache.ENTRY_WEIGHER, NAME_CACHE_MISS_EXPIRY);
     private static final ConcurrentHashMap<String, Object> LOOKUP_SYNC = new ConcurrentHashMap<>(100, 0.75f, Runtime.getRuntime().availableProcessors() * 2);
     private static       List<Pattern> nameCacheNoCachingPatterns = Collections.synchronizedList(new LinkedList<Pattern>());
     public static long cacheHit_Hit = 0, cacheHit_Miss = 0, cacheHit_Insert = 0; // for statistics only; do not write
@@ -1056,6 +1056,20 @@ public class Domains {
         return NAME_CACHE_MISS.size();
     }
 
+    /**
+     * @return the cache of resolved host names, for its statistics
+     */
+    public static TinyLFUCache<String, InetAddress> nameCacheHit() {
+        return NAME_CACHE_HIT;
+    }
+
+    /**
+     * @return the cache of host names which could not be resolved, for its statistics
+     */
+    public static TinyLFUCache<String, String> nameCacheMiss() {
+        return NAME_CACHE_MISS;
+    }
+
     public static int nameCacheNoCachingPatternsSize() {
         return nameCacheNoCachingPatterns.size();
     }
@@ -0,0 +1,370 @@
+/**
+ *  ConcurrentWeakPriorityBlockingQueue
+ *  a concurrent priority blocking queue that drains elements if it gets too large
+ *  (C) 2026 by the YaCy contributors
+ *  First released 18.10.2026 at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.sorting;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.Element;
+
+/**
+ * A concurrent variant of the {@link WeakPriorityBlockingQueue} with the same methods and the same elements.
+ * The elements are ordered in a skip list, so put() does not need a lock: many feeders can put elements
+ * at the same time. A putting thread reserves a place in the queue before it adds the element; only if the
+ * queue is full, the element is added and the element at the tail of the queue is removed again. Under
+ * concurrent access the skip list may hold a few more elements than maxsize for a moment, and an element
+ * may be removed while another one is taken.
+ *
+ * The drained list is only written by the threads which take elements from the queue; these threads
+ * synchronize on the drained list to keep the order in which the elements had been taken. Queues without
+ * a drained list are taken without any lock.
+ */
+public class ConcurrentWeakPriorityBlockingQueue<E> {
+
+    private final ConcurrentSkipListSet<Element<E>> queue;       // objects within the stack, ordered using a skip list
+    private final AtomicInteger                     size;        // the size of the queue, the size() of the skip list is not constant-time
+    private final Semaphore                         enqueued;    // semaphore for elements in the stack
+    private final ArrayList<Element<E>>             drained;     // objects that had been on the stack but had been removed
+    private final Set<Element<E>>                   drainedSet;  // the objects of the drained list, to check them when they are put again
+    private final int maxsize;
+
+    /**
+     * create a new ConcurrentWeakPriorityBlockingQueue
+     * all elements in the stack are not ordered by their insert order but by a given element weight
+     * weights that are preferred are returned first when a pop from the stack is made
+     * @param maxsize the maximum size of the stack. When the stack exceeds this number, then entries are removed
+     * @param drain if true, the taken elements are recorded and can be retrieved again with element()
+     */
+    public ConcurrentWeakPriorityBlockingQueue(final int maxsize, final boolean drain) {
+        // the maxsize is the maximum number of entries in the stack
+        // if this is set to -1, the size is unlimited
+        this.queue = new ConcurrentSkipListSet<Element<E>>();
+        this.size = new AtomicInteger(0);
+        this.drained = drain ? new ArrayList<Element<E>>() : null;
+        // the drained list of the WeakPriorityBlockingQueue compares the elements by identity
+        this.drainedSet = drain ? ConcurrentHashMap.<Element<E>>newKeySet() : null;
+        this.enqueued = new Semaphore(0);
+        this.maxsize = maxsize;
+    }
+
+    /**
+     * clear the queue
+     */
+    public void clear() {
+        if (this.drained != null) synchronized (this.drained) {
+            this.drained.clear();
+            this.drainedSet.clear();
+        }
+        this.enqueued.drainPermits();
+        while (this.queue.pollFirst() != null) this.size.decrementAndGet();
+    }
+
+    /**
+     * test if the queue is empty
+     * @return true if the queue is empty, false if not
+     */
+    public boolean isEmpty() {
+        return this.queue.isEmpty() && (this.drained == null || this.drainedSet.isEmpty());
+    }
+
+    /**
+     * get the number of elements in the queue, waiting to be removed with take() or poll()
+     * @return
+     */
+    public int sizeQueue() {
+        final int s = this.size.get();
+        return this.maxsize < 0 ? s : Math.min(this.maxsize, s);
+    }
+
+    /**
+     * get the number of elements that had been drained so far and are waiting
+     * in a list to get enumerated with element()
+     * @return
+     */
+    public int sizeDrained() {
+        if (this.drained == null) return 0;
+        synchronized (this.drained) {
+            return this.drained.size();
+        }
+    }
+
+    /**
+     * get the number of elements that are available for retrieval
+     * this is a combined number of sizeQueue() and sizeDrained();
+     * @return
+     */
+    public int sizeAvailable() {
+        final int s = this.size.get() + sizeDrained();
+        return this.maxsize < 0 ? s : Math.min(this.maxsize, s);
+    }
+
+    /**
+     * put a element on the stack using a order of the weight
+     * elements that had been on the stack cannot be put in again,
+     * they are checked against the drained list
+     * @param element the element (must have a equals() method)
+     */
+    public void put(final Element<E> element) {
+        // put the element on the stack
+        if (this.drained != null && this.drainedSet.contains(element)) {
+            return;
+        }
+        // an element behind the tail of a full stack would be removed at once; do not write it to the skip list
+        final Element<E> last = getLastInFullQueue();
+        if (last != null && element.compareTo(last) > 0) return;
+        if (reserve()) {
+            // just add entry but only release semaphore if entry was not double
+            if (this.queue.add(element)) this.enqueued.release(); else this.size.decrementAndGet();
+            return;
+        }
+        // the stack is full: add the element and remove the last element. The new element takes the
+        // place and the semaphore permit of the removed one, which may also be the new element itself
+        if (!this.queue.add(element)) return;
+        if (this.queue.pollLast() == null) {
+            // the new element was removed by clear() or take() which counted it as an element with a place
+            this.size.incrementAndGet();
+        }
+    }
+
+    /**
+     * reserve a place for a new element
+     * @return false if the stack is full
+     */
+    private boolean reserve() {
+        if (this.maxsize < 0) {
+            this.size.incrementAndGet();
+            return true;
+        }
+        int s;
+        while ((s = this.size.get()) < this.maxsize) {
+            if (this.size.compareAndSet(s, s + 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * return the element with the smallest weight and remove it from the stack
+     * @return null if no element is on the queue or the head of the queue
+     */
+    public Element<E> poll() {
+        while (this.enqueued.tryAcquire()) {
+            final Element<E> element = take();
+            if (element != null) return element;
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting if necessary
+     * up to the specified wait time if no elements are present on this queue.
+     * @param timeout milliseconds until timeout
+     * @return the head element from the queue
+     * @throws InterruptedException
+     */
+    public Element<E> poll(long timeout) throws InterruptedException {
+        if (timeout <= 0) return poll();
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (this.enqueued.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+            final Element<E> element = take();
+            if (element != null) return element;
+            // the permit belonged to an element which was removed by clear(); wait for the next one
+            timeout = deadline - System.currentTimeMillis();
+            if (timeout <= 0) break;
+        }
+        return null;
+    }
+
+    private Element<E> take() {
+        if (this.drained == null) return takeUnsafe();
+        synchronized (this.drained) {
+            final Element<E> element = takeUnsafe();
+            if (element != null && (this.maxsize == -1 || this.drained.size() < this.maxsize)) {
+                this.drained.add(element);
+                this.drainedSet.add(element);
+            }
+            return element;
+        }
+    }
+
+    private Element<E> takeUnsafe() {
+        // the element may be missing if the queue was cleared after the semaphore was released by put()
+        final Element<E> element = this.queue.pollFirst();
+        if (element != null) this.size.decrementAndGet();
+        return element;
+    }
+
+    /**
+     * Enqueue again all drained elements. Do nothing when there is no internal drained list.
+     */
+    public void requeueDrainedElements() {
+        if (this.drained != null) synchronized (this.drained) {
+            final int initialDrainedSize = this.drained.size();
+            for (int step = 0; step < initialDrainedSize; step++) {
+                Element<E> element = this.drained.remove(this.drained.size() - 1);
+                this.drainedSet.remove(element);
+                put(element);
+            }
+        }
+    }
+
+    /**
+     * Return the element with the smallest weight from the internal queue, but do not remove it
+     * @return null if no element is on the queue or the head of the queue
+     */
+    public Element<E> peek() {
+        try {
+            return this.queue.first();
+        } catch (final NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the element with the highest weight, but do not remove it
+     * @return null if no element is on the queue or the tail of the queue
+     */
+    public Element<E> getLastInQueue() {
+        try {
+            return this.queue.last();
+        } catch (final NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the element which is removed when another element is put on the full stack
+     * @return null if the stack is not full or the tail of the queue
+     */
+    public Element<E> getLastInFullQueue() {
+        if (this.maxsize < 0 || this.size.get() < this.maxsize) {
+            return null;
+        }
+        return getLastInQueue();
+    }
+
+    /**
+     * all objects that have been returned by poll or take are stored in a back-up list
+     * where they can be retrieved afterward. The elements from that list are stored in
+     * the specific order as they had been retrieved. This method returns the elements
+     * in that specific order and if the list is not large enough, elements available
+     * with poll() are taken and written to the list until the required position is
+     * written. If the stach size together with the recorded list is not large enough,
+     * null is returned
+     * @param position inside the drained queue
+     * @return the element from the recorded position or null if that position is not available
+     */
+    public Element<E> element(final int position) {
+        if (this.drained == null) return null;
+        synchronized (this.drained) {
+            if (position < this.drained.size()) {
+                return this.drained.get(position);
+            }
+            if (position >= this.size.get() + this.drained.size()) return null; // we don't have that element
+            Element<E> p;
+            int s;
+            while (position >= this.drained.size()) {
+                s = this.drained.size();
+                p = this.poll();
+                if (this.drained.size() <= s) break;
+                if (p == null) break;
+            }
+            if (position >= this.drained.size()) return null;
+            return this.drained.get(position);
+        }
+    }
+
+    /**
+     * retrieve an element from the drained queue but wait until a timeout
+     * until returning null when no element will be available within the time
+     * from the input queue
+     * @param position inside the drained queue
+     * @param time the timeout
+     * @return the element from the recorded position or null if that position is not available within the timeout
+     * @throws InterruptedException
+     */
+    public Element<E> element(final int position, long time) throws InterruptedException {
+        if (this.drained == null) return null;
+        long timeout = time == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + time;
+        // the drained list is not locked while waiting, so other threads can take elements meanwhile
+        while (sizeDrained() <= position) {
+            long t = timeout - System.currentTimeMillis();
+            if (t <= 0) break;
+            this.poll(t);
+        }
+        synchronized (this.drained) {
+            if (position >= this.drained.size()) return null; // we still don't have that element
+            return this.drained.get(position);
+        }
+    }
+
+    /**
+     * return the specific amount of entries as they would be retrievable with element()
+     * if count is < 0 then all elements are taken
+     * the returned list is not cloned from the internal list and shall not be modified in any way (read-only)
+     * @param count
+     * @return a list of elements in the stack
+     */
+    public ArrayList<Element<E>> list(final int count) {
+        if (this.drained == null) return null;
+        if (count < 0) {
+            return list();
+        }
+        synchronized (this.drained) {
+            if (count > sizeAvailable()) throw new RuntimeException("list(" + count + ") exceeded avaiable number of elements (" + sizeAvailable() + ")");
+            while (count > this.drained.size() && this.poll() != null) {}
+            return this.drained;
+        }
+    }
+
+    /**
+     * return all entries as they would be retrievable with element()
+     * @return a list of all elements in the stack
+     */
+    private ArrayList<Element<E>> list() {
+        if (this.drained == null) return null;
+        synchronized (this.drained) {
+            // shift all elements
+            while (this.poll() != null) {}
+            return this.drained;
+        }
+    }
+
+    /**
+     * iterate over all elements available. All elements that are still in the queue are drained to recorded positions
+     * @return an iterator over all drained positions.
+     */
+    public Iterator<Element<E>> iterator() {
+        if (this.drained == null) return null;
+        synchronized (this.drained) {
+            // shift all elements to the offstack
+            while (this.poll() != null) {}
+            return this.drained.iterator();
+        }
+    }
+}
@@ -219,6 +219,17 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
         return this.queue.last();
     }
 
+    /**
+     * Return the element which is removed when another element is put on the full stack
+     * @return null if the stack is not full or the tail of the queue
+     */
+    public synchronized Element<E> getLastInFullQueue() {
+        if (this.maxsize < 0 || this.queue.size() < this.maxsize) {
+            return null;
+        }
+        return this.queue.last();
+    }
+
     /**
      * all objects that have been returned by poll or take are stored in a back-up list
      * where they can be retrieved afterward. The elements from that list are stored in
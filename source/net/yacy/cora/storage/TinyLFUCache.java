@@ -0,0 +1,660 @@
+/**
+ *  TinyLFUCache
+ *  Copyright 2026 by the YaCy contributors
+ *  First released 18.10.2026 at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.storage;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.yacy.cora.util.ByteArray;
+
+/**
+ * A concurrent cache with a W-TinyLFU replacement policy, see
+ * "TinyLFU: A Highly Efficient Cache Admission Policy" by Einziger, Friedman and Manes, https://arxiv.org/abs/1512.00727
+ *
+ * New entries are stored in a small LRU window (1% of the cache). Entries which are pushed out of the window
+ * are candidates for the main cache, a segmented LRU with a probation and a protected segment. A candidate is
+ * only admitted if it was requested more often than the entry it would replace; the access frequencies are
+ * estimated with a count-min sketch of 4-bit counters which are halved periodically, so old popularity fades out.
+ *
+ * Reads do not lock: the entries are stored in a ConcurrentHashMap and accesses are recorded in a lossy ring
+ * buffer which is replayed on the LRU queues by the next thread that gets the lock. All writes are done
+ * with the lock.
+ *
+ * The size of the cache is limited by a weight, which is either the number of entries or an estimation of
+ * the memory usage of the entries. Entries may expire a given time after they have been written.
+ * The number of hits, misses and evictions is counted.
+ *
+ * The class implements the ARC interface and can replace the ARC implementations;
+ * keys of type byte[] are compared by their content.
+ */
+public final class TinyLFUCache<K, V> extends AbstractMap<K, V> implements Map<K, V>, Iterable<Map.Entry<K, V>>, ARC<K, V> {
+
+    /**
+     * computation of the weight of a cache entry
+     */
+    public interface Weigher<K, V> {
+        public int weigh(K key, V value);
+    }
+
+    /**
+     * each entry has the weight 1; the cache is limited by the number of entries
+     */
+    public static final Weigher<Object, Object> ENTRY_WEIGHER = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(final Object key, final Object value) {
+            return 1;
+        }
+    };
+
+    /**
+     * the weight is an estimation of the memory of an entry in bytes, including the overhead of the cache
+     */
+    public static final Weigher<Object, Object> MEMORY_WEIGHER = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(final Object key, final Object value) {
+            return 96 + memory(key) + memory(value);
+        }
+    };
+
+    private static int memory(final Object o) {
+        if (o instanceof byte[]) return 16 + ((byte[]) o).length;
+        if (o instanceof CharSequence) return 40 + 2 * ((CharSequence) o).length();
+        return 16;
+    }
+
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2, DEAD = 3;
+    private static final int READ_BUFFER_SIZE = 128; // must be a power of 2
+    private static final int READ_BUFFER_DRAIN = 32;
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final Object ref;
+        private volatile V value;
+        private volatile long expires;
+        private int weight, queue;
+        private Node<K, V> prev, next;
+
+        private Node(final K key, final Object ref, final V value, final int weight, final long expires) {
+            this.key = key;
+            this.ref = ref;
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+        }
+    }
+
+    private final class AccessQueue {
+        private Node<K, V> head, tail;
+        private long weight;
+
+        private void add(final Node<K, V> n) {
+            n.prev = this.tail;
+            n.next = null;
+            if (this.tail == null) this.head = n; else this.tail.next = n;
+            this.tail = n;
+            this.weight += n.weight;
+        }
+
+        private void remove(final Node<K, V> n) {
+            if (n.prev == null) this.head = n.next; else n.prev.next = n.next;
+            if (n.next == null) this.tail = n.prev; else n.next.prev = n.prev;
+            n.prev = null;
+            n.next = null;
+            this.weight -= n.weight;
+        }
+
+        private void clear() {
+            this.head = null;
+            this.tail = null;
+            this.weight = 0;
+        }
+    }
+
+    private final ConcurrentHashMap<Object, Node<K, V>> data;
+    private final ReentrantLock lock;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximumWeight, windowMax, protectedMax, expireAfterWrite;
+    private final AccessQueue window, probation, protectedQueue;
+    private final FrequencySketch sketch;
+    private final AtomicReferenceArray<Node<K, V>> readBuffer;
+    private final AtomicLong readWrites;
+    private volatile long readReads;
+    private final LongAdder hits, misses, evictions;
+    private long weightedSize;
+
+    /**
+     * create a cache which is limited by the number of entries
+     * @param maximumSize the maximum number of entries
+     */
+    public TinyLFUCache(final int maximumSize) {
+        this(maximumSize, ENTRY_WEIGHER, 0);
+    }
+
+    /**
+     * create a cache which is limited by the weight of the entries
+     * @param maximumWeight the maximum sum of the weights of all entries
+     * @param weigher the computation of the weight of an entry
+     * @param expireAfterWrite the time in milliseconds after which an entry expires, or 0 if entries do not expire
+     */
+    public TinyLFUCache(final long maximumWeight, final Weigher<? super K, ? super V> weigher, final long expireAfterWrite) {
+        this.maximumWeight = Math.max(1, maximumWeight);
+        this.windowMax = Math.max(1, this.maximumWeight / 100);
+        this.protectedMax = (this.maximumWeight - this.windowMax) * 4 / 5;
+        this.weigher = weigher;
+        this.expireAfterWrite = expireAfterWrite;
+        this.data = new ConcurrentHashMap<Object, Node<K, V>>();
+        this.lock = new ReentrantLock();
+        this.window = new AccessQueue();
+        this.probation = new AccessQueue();
+        this.protectedQueue = new AccessQueue();
+        this.sketch = new FrequencySketch(weigher == ENTRY_WEIGHER ? (int) Math.min(this.maximumWeight, 1 << 20) : 256);
+        this.readBuffer = new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+        this.readWrites = new AtomicLong();
+        this.readReads = 0;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.weightedSize = 0;
+    }
+
+    private static Object ref(final Object key) {
+        return key instanceof byte[] ? new ByteArray((byte[]) key) : key;
+    }
+
+    private boolean expired(final Node<K, V> n, final long now) {
+        return this.expireAfterWrite > 0 && now >= n.expires;
+    }
+
+    private long now() {
+        return this.expireAfterWrite > 0 ? System.currentTimeMillis() : 0;
+    }
+
+    /**
+     * get a value from the cache.
+     * @param s
+     * @return the value
+     */
+    @Override
+    public final V get(final Object s) {
+        final Object ref = ref(s);
+        final Node<K, V> n = this.data.get(ref);
+        if (n == null) {
+            this.misses.increment();
+            this.sketch.increment(ref.hashCode());
+            return null;
+        }
+        if (expired(n, now())) {
+            this.misses.increment();
+            this.lock.lock();
+            try {
+                if (this.data.remove(ref, n)) unlink(n);
+            } finally {
+                this.lock.unlock();
+            }
+            return null;
+        }
+        this.hits.increment();
+        recordRead(n);
+        return n.value;
+    }
+
+    /**
+     * check if the map contains the key
+     * @param s
+     * @return true if the map contains the key
+     */
+    @Override
+    public final boolean containsKey(final Object s) {
+        final Node<K, V> n = this.data.get(ref(s));
+        return n != null && !expired(n, now());
+    }
+
+    /**
+     * put a value to the cache.
+     * @param s
+     * @param v
+     */
+    @Override
+    public final void insert(final K s, final V v) {
+        put(s, v, false);
+    }
+
+    /**
+     * put a value to the cache if there was not an entry before
+     * do not return a previous content value
+     * @param s
+     * @param v
+     */
+    @Override
+    public void insertIfAbsent(final K s, final V v) {
+        put(s, v, true);
+    }
+
+    /**
+     * put a value to the cache if there was not an entry before
+     * return a previous content value
+     * @param s
+     * @param v
+     * @return the value before inserting the new value
+     */
+    @Override
+    public V putIfAbsent(final K s, final V v) {
+        return put(s, v, true);
+    }
+
+    /**
+     * put a value to the cache.
+     * @param s
+     * @param v
+     */
+    @Override
+    public final V put(final K s, final V v) {
+        return put(s, v, false);
+    }
+
+    private V put(final K key, final V value, final boolean onlyIfAbsent) {
+        final Object ref = ref(key);
+        final int weight = this.weigher.weigh(key, value);
+        final long now = now();
+        this.lock.lock();
+        try {
+            drainReadBuffer();
+            Node<K, V> n = this.data.get(ref);
+            if (n != null && expired(n, now)) {
+                this.data.remove(ref, n);
+                unlink(n);
+                n = null;
+            }
+            if (n != null) {
+                final V old = n.value;
+                if (onlyIfAbsent) return old;
+                queue(n).weight += weight - n.weight;
+                this.weightedSize += weight - n.weight;
+                n.weight = weight;
+                n.value = value;
+                n.expires = now + this.expireAfterWrite;
+                onAccess(n);
+                evict();
+                return old;
+            }
+            this.sketch.increment(ref.hashCode());
+            n = new Node<K, V>(key, ref, value, weight, now + this.expireAfterWrite);
+            this.data.put(ref, n);
+            n.queue = WINDOW;
+            this.window.add(n);
+            this.weightedSize += weight;
+            if (this.data.size() > this.sketch.capacity()) this.sketch.ensureCapacity(this.data.size() * 2);
+            evict();
+            return null;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * remove an entry from the cache
+     * @param s
+     * @return the old value
+     */
+    @Override
+    public final V remove(final Object s) {
+        this.lock.lock();
+        try {
+            final Node<K, V> n = this.data.remove(ref(s));
+            if (n == null) return null;
+            unlink(n);
+            return expired(n, now()) ? null : n.value;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * clear the cache
+     */
+    @Override
+    public final void clear() {
+        this.lock.lock();
+        try {
+            for (final Node<K, V> n: this.data.values()) n.queue = DEAD;
+            this.data.clear();
+            this.window.clear();
+            this.probation.clear();
+            this.protectedQueue.clear();
+            this.weightedSize = 0;
+            drainReadBuffer();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * get the size of the cache.
+     * @return the number of entries in the cache
+     */
+    @Override
+    public final int size() {
+        return this.data.size();
+    }
+
+    /**
+     * check if the map contains the value
+     * @param value
+     * @return the keys that have the given value
+     */
+    @Override
+    public Collection<K> getKeys(final V value) {
+        final ArrayList<K> keys = new ArrayList<K>();
+        final long now = now();
+        for (final Node<K, V> n: this.data.values()) {
+            if (!expired(n, now) && value.equals(n.value)) keys.add(n.key);
+        }
+        return keys;
+    }
+
+    /**
+     * iterator implements the Iterable interface
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return entrySet().iterator();
+    }
+
+    /**
+     * Return a Set view of the mappings contained in this map.
+     * This method is the basis for all methods that are implemented
+     * by a AbstractMap implementation
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        final Set<Map.Entry<K, V>> m = new HashSet<Map.Entry<K, V>>();
+        final long now = now();
+        for (final Node<K, V> n: this.data.values()) {
+            if (!expired(n, now)) m.add(new AbstractMap.SimpleImmutableEntry<K, V>(n.key, n.value));
+        }
+        return m;
+    }
+
+    /**
+     * a hash code for this cache
+     * @return a hash code
+     */
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this.data);
+    }
+
+    /**
+     * @return the number of get requests which returned a value
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of get requests which did not return a value
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return the number of entries which were removed to keep the weight limit
+     */
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @return the share of get requests which returned a value, between 0 and 1
+     */
+    public double hitRate() {
+        final long h = hits(), r = h + misses();
+        return r == 0 ? 1.0d : ((double) h) / r;
+    }
+
+    /**
+     * @return the sum of the weights of all entries
+     */
+    public long weightedSize() {
+        this.lock.lock();
+        try {
+            return this.weightedSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public long maximumWeight() {
+        return this.maximumWeight;
+    }
+
+    /**
+     * @return a one-line summary of the cache statistics
+     */
+    public String stats() {
+        return "size=" + size() + ", weight=" + weightedSize() + "/" + this.maximumWeight +
+               ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() +
+               ", hitRate=" + Math.round(hitRate() * 1000.0d) / 10.0d + "%";
+    }
+
+    private AccessQueue queue(final Node<K, V> n) {
+        return n.queue == WINDOW ? this.window : n.queue == PROBATION ? this.probation : this.protectedQueue;
+    }
+
+    /**
+     * remove a node from its queue; the node must have been removed from the map before
+     */
+    private void unlink(final Node<K, V> n) {
+        if (n.queue == DEAD) return;
+        queue(n).remove(n);
+        n.queue = DEAD;
+        this.weightedSize -= n.weight;
+    }
+
+    /**
+     * record a read access in the ring buffer; the access is dropped if the buffer is full
+     */
+    private void recordRead(final Node<K, V> n) {
+        final long w = this.readWrites.get();
+        if (w - this.readReads < READ_BUFFER_SIZE && this.readWrites.compareAndSet(w, w + 1)) {
+            this.readBuffer.lazySet((int) w & (READ_BUFFER_SIZE - 1), n);
+            if ((w & (READ_BUFFER_DRAIN - 1)) == READ_BUFFER_DRAIN - 1 && this.lock.tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * replay the recorded read accesses on the queues; must be called with the lock
+     */
+    private void drainReadBuffer() {
+        final long w = this.readWrites.get();
+        long r = this.readReads;
+        while (r < w) {
+            final Node<K, V> n = this.readBuffer.getAndSet((int) r & (READ_BUFFER_SIZE - 1), null);
+            if (n == null) break; // the writer has not yet stored the node
+            r++;
+            if (n.queue == DEAD) continue;
+            this.sketch.increment(n.ref.hashCode());
+            onAccess(n);
+        }
+        this.readReads = r;
+    }
+
+    /**
+     * move an accessed node to the most recently used end of its queue; nodes in the probation
+     * segment are promoted to the protected segment. Must be called with the lock
+     */
+    private void onAccess(final Node<K, V> n) {
+        if (n.queue == WINDOW) {
+            this.window.remove(n);
+            this.window.add(n);
+        } else if (n.queue == PROBATION) {
+            this.probation.remove(n);
+            n.queue = PROTECTED;
+            this.protectedQueue.add(n);
+            while (this.protectedQueue.weight > this.protectedMax && this.protectedQueue.head != n) {
+                final Node<K, V> d = this.protectedQueue.head;
+                this.protectedQueue.remove(d);
+                d.queue = PROBATION;
+                this.probation.add(d);
+            }
+        } else if (n.queue == PROTECTED) {
+            this.protectedQueue.remove(n);
+            this.protectedQueue.add(n);
+        }
+    }
+
+    /**
+     * move nodes from the window to the probation segment and evict nodes until the weight limit is met.
+     * Nodes which came from the window in this call are candidates which are compared with the least recently
+     * used node of the probation segment; the node with the lower access frequency is evicted.
+     * Must be called with the lock
+     */
+    private void evict() {
+        Node<K, V> candidate = null;
+        while (this.window.weight > this.windowMax && this.window.head != null) {
+            final Node<K, V> n = this.window.head;
+            this.window.remove(n);
+            n.queue = PROBATION;
+            this.probation.add(n);
+            if (candidate == null) candidate = n;
+        }
+        while (this.weightedSize > this.maximumWeight) {
+            Node<K, V> victim = this.probation.head;
+            if (victim == null) victim = this.protectedQueue.head;
+            if (victim == null) victim = this.window.head;
+            if (victim == null) break;
+            if (candidate == null || candidate == victim || victim.queue != PROBATION) {
+                if (candidate == victim) candidate = victim.next;
+                evictNode(victim);
+            } else if (this.sketch.frequency(candidate.ref.hashCode()) > this.sketch.frequency(victim.ref.hashCode())) {
+                evictNode(victim);
+            } else {
+                final Node<K, V> next = candidate.next;
+                evictNode(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void evictNode(final Node<K, V> n) {
+        this.data.remove(n.ref, n);
+        unlink(n);
+        this.evictions.increment();
+    }
+
+    /**
+     * A count-min sketch with four 4-bit counters per key; 16 counters are stored in each long.
+     * When the number of increments reaches ten times the capacity, all counters are halved.
+     * Concurrent increments without the lock may get lost, which only makes the estimation less accurate.
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final int MAX_CAPACITY = 1 << 22;
+
+        private long[] table;
+        private int sampleSize, additions;
+
+        private FrequencySketch(final int capacity) {
+            ensureCapacity(capacity);
+        }
+
+        private int capacity() {
+            return this.table.length;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            int size = 16;
+            while (size < capacity && size < MAX_CAPACITY) size <<= 1;
+            if (this.table != null && size <= this.table.length) return;
+            this.table = new long[size];
+            this.sampleSize = 10 * size;
+            this.additions = 0;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+        private int indexOf(final int item, final int i, final int mask) {
+            long hash = (item + SEED[i]) * SEED[i];
+            hash += hash >>> 32;
+            return ((int) hash) & mask;
+        }
+
+        private int frequency(final int hashCode) {
+            final long[] t = this.table;
+            final int h = spread(hashCode);
+            final int start = (h & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(h, i, t.length - 1);
+                final int count = (int) ((t[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        private void increment(final int hashCode) {
+            final long[] t = this.table;
+            final int h = spread(hashCode);
+            final int start = (h & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(h, i, t.length - 1);
+                final int offset = (start + i) << 2;
+                final long mask = 0xfL << offset;
+                if ((t[index] & mask) != mask) {
+                    t[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++this.additions >= this.sampleSize) reset();
+        }
+
+        private void reset() {
+            final long[] t = this.table;
+            for (int i = 0; i < t.length; i++) t[i] = (t[i] >>> 1) & 0x7777777777777777L;
+            this.additions = 0;
+        }
+    }
+}
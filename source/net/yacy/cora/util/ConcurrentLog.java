@@ -31,8 +31,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -44,13 +49,22 @@ import java.util.logging.Logger;
  * To overcome this problem, this is a add-on to jdk logging to put log entries
  * on a concurrent message queue and log the messages one by one using a
  * separate process
+ *
+ * The queue is a lock-free ring buffer; callers never block on it. If the buffer is full,
+ * messages below WARNING are dropped and counted, WARNING and SEVERE messages are logged
+ * directly. Messages given as a Supplier are formatted in the worker thread, and only if
+ * the level is loggable. A logger may be limited to a number of messages per second;
+ * messages above the limit (except SEVERE) are suppressed and counted.
  */
 public final class ConcurrentLog {
 
     private final static Logger ConcurrentLogLogger = Logger.getLogger("ConcurrentLog");
     private final static Message POISON_MESSAGE = new Message();
-    private final static BlockingQueue<Message> logQueue = new ArrayBlockingQueue<Message>(500);
-    private static Worker logRunnerThread = null;
+    private final static RingBuffer logQueue = new RingBuffer(8192);
+    private final static AtomicLong dropped = new AtomicLong(0);
+    private final static ConcurrentHashMap<String, Sampler> samplers = new ConcurrentHashMap<String, Sampler>();
+    private static volatile int defaultRateLimit = 0; // messages per second and logger, 0 = no limit
+    private static volatile Worker logRunnerThread = null;
 
     static {
         ensureWorkerIsRunning();
@@ -145,6 +159,13 @@ public final class ConcurrentLog {
         return this.theLogger.isLoggable(Level.FINE);
     }
 
+    /**
+     * log a message which is created only if the level is loggable; the supplier is called in the log worker thread
+     */
+    public final void fine(final Supplier<String> message) {
+        enQueueLog(this.theLogger, Level.FINE, message);
+    }
+
     public final void finer(final String message) {
         enQueueLog(this.theLogger, Level.FINER, message);
     }
@@ -158,6 +179,10 @@ public final class ConcurrentLog {
        return this.theLogger.isLoggable(Level.FINER);
     }
 
+    public final void finer(final Supplier<String> message) {
+        enQueueLog(this.theLogger, Level.FINER, message);
+    }
+
     public final void finest(final String message) {
         enQueueLog(this.theLogger, Level.FINEST, message);
     }
@@ -171,6 +196,10 @@ public final class ConcurrentLog {
         return this.theLogger.isLoggable(Level.FINEST);
     }
 
+    public final void finest(final Supplier<String> message) {
+        enQueueLog(this.theLogger, Level.FINEST, message);
+    }
+
     public final boolean isLoggable(final Level level) {
         return this.theLogger.isLoggable(level);
     }
@@ -249,87 +278,222 @@ public final class ConcurrentLog {
         return Logger.getLogger(appName).isLoggable(Level.FINEST);
     }
 
+    /**
+     * set the maximum number of messages per second for a logger; SEVERE messages are not limited
+     * @param loggername the name of the logger
+     * @param messagesPerSecond the limit, 0 for no limit
+     */
+    public final static void setRateLimit(final String loggername, final int messagesPerSecond) {
+        if (messagesPerSecond <= 0) samplers.remove(loggername); else samplers.put(loggername, new Sampler(loggername, messagesPerSecond));
+    }
+
+    /**
+     * set the maximum number of messages per second for all loggers which do not have an own limit
+     * @param messagesPerSecond the limit, 0 for no limit
+     */
+    public final static void setDefaultRateLimit(final int messagesPerSecond) {
+        defaultRateLimit = Math.max(0, messagesPerSecond);
+    }
+
+    /**
+     * @return the number of messages which were dropped because the queue was full
+     */
+    public final static long dropped() {
+        return dropped.get();
+    }
+
     // private
-    private final static void enQueueLog(final Logger logger, final Level level, final String message, final Throwable thrown) {
-        if (!logger.isLoggable(level)) return;
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            if (thrown == null) logger.log(level, "* " + message); else logger.log(level, "* " + message, thrown); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-            	if (thrown == null) logQueue.put(new Message(logger, level, message)); else logQueue.put(new Message(logger, level, message, thrown));
-            } catch (final InterruptedException e) {
-            	if (thrown == null) logger.log(level, message); else  logger.log(level, message, thrown);
-            }
+    private final static boolean sample(final String loggername, final Level level) {
+        if (level.intValue() >= Level.SEVERE.intValue()) return true;
+        Sampler sampler = samplers.get(loggername);
+        if (sampler == null) {
+            final int limit = defaultRateLimit;
+            if (limit == 0) return true;
+            sampler = new Sampler(loggername, limit);
+            final Sampler s = samplers.putIfAbsent(loggername, sampler);
+            if (s != null) sampler = s;
         }
+        return sampler.allow();
+    }
+
+    private final static void enQueueLog(final Logger logger, final Level level, final String message, final Throwable thrown) {
+        if (!logger.isLoggable(level) || !sample(logger.getName(), level)) return;
+        enQueue(new Message(logger, level, message, thrown));
     }
 
     private final static void enQueueLog(final Logger logger, final Level level, final String message) {
-        if (!logger.isLoggable(level)) return;
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            logger.log(level, "* " + message); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-                logQueue.put(new Message(logger, level, message));
-            } catch (final InterruptedException e) {
-                logger.log(level, message);
-            }
-        }
+        if (!logger.isLoggable(level) || !sample(logger.getName(), level)) return;
+        enQueue(new Message(logger, level, message));
+    }
+
+    private final static void enQueueLog(final Logger logger, final Level level, final Supplier<String> message) {
+        if (!logger.isLoggable(level) || !sample(logger.getName(), level)) return;
+        enQueue(new Message(logger, level, message));
     }
 
     private final static void enQueueLog(final String loggername, final Level level, final String message, final Throwable thrown) {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-        	if (thrown == null) Logger.getLogger(loggername).log(level, "* " + message); else Logger.getLogger(loggername).log(level, "* " + message, thrown); // the * is inefficient, but should show up only in emergency cases
+        if (!sample(loggername, level)) return;
+        enQueue(new Message(loggername, level, message, thrown));
+    }
+
+    private final static void enQueueLog(final String loggername, final Level level, final String message) {
+        if (!sample(loggername, level)) return;
+        enQueue(new Message(loggername, level, message));
+    }
+
+    private final static void enQueue(final Message message) {
+        final Worker worker = logRunnerThread;
+        if (worker == null || !worker.isAlive()) {
+            message.log("* "); // the * is inefficient, but should show up only in emergency cases
+            return;
+        }
+        if (logQueue.offer(message)) {
+            if (worker.waiting) LockSupport.unpark(worker);
+            return;
+        }
+        // the queue is full
+        if (message.level.intValue() >= Level.WARNING.intValue()) {
+            message.log("");
         } else {
-            try {
-            	if (thrown == null) logQueue.put(new Message(loggername, level, message)); else logQueue.put(new Message(loggername, level, message, thrown));
-            } catch (final InterruptedException e) {
-            	if (thrown == null) Logger.getLogger(loggername).log(level, message); else Logger.getLogger(loggername).log(level, message, thrown);
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * a bounded queue for many producers and a single consumer; offer() and poll() do not lock and do not block
+     */
+    protected final static class RingBuffer {
+        private final Message[] buffer;
+        private final AtomicLongArray sequence; // the position which may be written (== position) or read (== position + 1) in each slot
+        private final int mask;
+        private final AtomicLong tail;          // the next position to write
+        private volatile long head;             // the next position to read, only changed by the consumer
+
+        public RingBuffer(final int size) {
+            assert Integer.bitCount(size) == 1 : "size = " + size;
+            this.buffer = new Message[size];
+            this.sequence = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) this.sequence.set(i, i);
+            this.mask = size - 1;
+            this.tail = new AtomicLong(0);
+            this.head = 0;
+        }
+
+        /**
+         * @return false if the queue is full
+         */
+        public boolean offer(final Message message) {
+            long t = this.tail.get();
+            while (true) {
+                final int i = (int) t & this.mask;
+                final long d = this.sequence.get(i) - t;
+                if (d == 0) {
+                    if (this.tail.compareAndSet(t, t + 1)) {
+                        this.buffer[i] = message;
+                        this.sequence.set(i, t + 1);
+                        return true;
+                    }
+                    t = this.tail.get();
+                } else if (d < 0) {
+                    return false;
+                } else {
+                    t = this.tail.get();
+                }
             }
         }
+
+        /**
+         * must only be called by the consumer
+         * @return the next message or null if the queue is empty
+         */
+        public Message poll() {
+            final long h = this.head;
+            final int i = (int) h & this.mask;
+            if (this.sequence.get(i) != h + 1) return null;
+            final Message message = this.buffer[i];
+            this.buffer[i] = null;
+            this.sequence.set(i, h + this.mask + 1);
+            this.head = h + 1;
+            return message;
+        }
+
+        public int size() {
+            return (int) Math.max(0, this.tail.get() - this.head);
+        }
     }
 
-    private final static void enQueueLog(final String loggername, final Level level, final String message) {
-        if (logRunnerThread == null || !logRunnerThread.isAlive()) {
-            Logger.getLogger(loggername).log(level, "* " + message); // the * is inefficient, but should show up only in emergency cases
-        } else {
-            try {
-                logQueue.put(new Message(loggername, level, message));
-            } catch (final InterruptedException e) {
-                Logger.getLogger(loggername).log(level, message);
+    /**
+     * counts the messages of a logger in the current second
+     */
+    private final static class Sampler {
+        private final String loggername;
+        private final int limit;
+        private final AtomicInteger count;
+        private final AtomicInteger suppressed;
+        private volatile long second;
+
+        private Sampler(final String loggername, final int limit) {
+            this.loggername = loggername;
+            this.limit = limit;
+            this.count = new AtomicInteger(0);
+            this.suppressed = new AtomicInteger(0);
+            this.second = 0;
+        }
+
+        private boolean allow() {
+            final long s = System.currentTimeMillis() / 1000;
+            if (s != this.second) synchronized (this) {
+                if (s != this.second) {
+                    this.second = s;
+                    this.count.set(0);
+                    final int n = this.suppressed.getAndSet(0);
+                    if (n > 0) enQueue(new Message(this.loggername, Level.INFO, "suppressed " + n + " messages above the limit of " + this.limit + " messages per second"));
+                }
             }
+            if (this.count.incrementAndGet() <= this.limit) return true;
+            this.suppressed.incrementAndGet();
+            return false;
         }
     }
 
     protected final static class Message {
         private final Level level;
         private final String message;
+        private final Supplier<String> supplier;
         private Logger logger;
         private String loggername;
         private Throwable thrown;
-        private Message(final Level level, final String message) {
+        private Message(final Level level, final String message, final Supplier<String> supplier) {
             this.level = level;
             this.message = message == null || message.length() <= 4096 ? message : message.substring(0, 4096);
+            this.supplier = supplier;
         }
         public Message(final Logger logger, final Level level, final String message, final Throwable thrown) {
-            this(level, message);
+            this(level, message, null);
             this.logger = logger;
             this.loggername = null;
             this.thrown = thrown;
         }
         public Message(final Logger logger, final Level level, final String message) {
-            this(level, message);
+            this(level, message, null);
+            this.logger = logger;
+            this.loggername = null;
+            this.thrown = null;
+        }
+        public Message(final Logger logger, final Level level, final Supplier<String> message) {
+            this(level, null, message);
             this.logger = logger;
             this.loggername = null;
             this.thrown = null;
         }
         public Message(final String loggername, final Level level, final String message, final Throwable thrown) {
-            this(level, message);
+            this(level, message, null);
             this.logger = null;
             this.loggername = loggername;
             this.thrown = thrown;
         }
         public Message(final String loggername, final Level level, final String message) {
-            this(level, message);
+            this(level, message, null);
             this.logger = null;
             this.loggername = loggername;
             this.thrown = null;
@@ -339,11 +503,25 @@ public final class ConcurrentLog {
             this.loggername = null;
             this.level = null;
             this.message = null;
+            this.supplier = null;
             this.thrown = null;
         }
+        String text() {
+            if (this.supplier == null) return this.message;
+            final String m = this.supplier.get();
+            return m == null || m.length() <= 4096 ? m : m.substring(0, 4096);
+        }
+        private void log(final Logger l, final String prefix) {
+            l.log(this.level, prefix + text(), this.thrown);
+        }
+        private void log(final String prefix) {
+            log(this.logger == null ? Logger.getLogger(this.loggername) : this.logger, prefix);
+        }
     }
 
     protected final static class Worker extends Thread {
+        private volatile boolean waiting = false;
+
         public Worker() {
             super("Log Worker");
         }
@@ -352,29 +530,47 @@ public final class ConcurrentLog {
         public void run() {
             Message entry;
             Map<String, Logger> loggerCache = new HashMap<String, Logger>();
+            boolean written = false;
+            long reportedDrops = dropped.get();
             try {
-                while ((entry = logQueue.take()) != POISON_MESSAGE) {
+                while (true) {
+                    entry = logQueue.poll();
+                    if (entry == null) {
+                        // the queue is empty: write the batches of the handlers and wait
+                        final long d = dropped.get();
+                        if (d > reportedDrops) {
+                            ConcurrentLogLogger.log(Level.WARNING, "dropped " + (d - reportedDrops) + " log messages because the log queue was full");
+                            reportedDrops = d;
+                        }
+                        if (written) {
+                            for (final Handler h: Logger.getLogger("").getHandlers()) h.flush();
+                            written = false;
+                        }
+                        this.waiting = true;
+                        entry = logQueue.poll();
+                        if (entry == null) {
+                            LockSupport.parkNanos(this, 100000000L);
+                            this.waiting = false;
+                            continue;
+                        }
+                        this.waiting = false;
+                    }
+                    if (entry == POISON_MESSAGE) break;
                     if (entry.logger == null) {
                         assert entry.loggername != null;
                         Logger l = loggerCache.get(entry.loggername);
                         if (l == null) {l = Logger.getLogger(entry.loggername); loggerCache.put(entry.loggername, l);}
-                        if (entry.thrown == null) {
-                            l.log(entry.level, entry.message);
-                        } else {
-                            l.log(entry.level, entry.message, entry.thrown);
-                        }
+                        if (l.isLoggable(entry.level)) entry.log(l, "");
                     } else {
                         assert entry.loggername == null;
-                        if (entry.thrown == null) {
-                            entry.logger.log(entry.level, entry.message);
-                        } else {
-                            entry.logger.log(entry.level, entry.message, entry.thrown);
-                        }
+                        entry.log(entry.logger, "");
                     }
+                    written = true;
                 }
             } catch (final Throwable e) {
                 ConcurrentLogLogger.log(Level.SEVERE, "ConcurrentLog.Worker has terminated", e);
             }
+            for (final Handler h: Logger.getLogger("").getHandlers()) h.flush();
             ConcurrentLogLogger.log(Level.INFO, "terminating ConcurrentLog.Worker with " + logQueue.size() + " cached loglines.");
         }
     }
@@ -425,6 +621,25 @@ public final class ConcurrentLog {
             	}
             }
             
+            // the json lines sink is configured with a path relative to the data path, same as the FileHandler
+            final String jsonPatternKey = "net.yacy.kelondro.logging.JsonLinesHandler.pattern";
+            final String jsonPattern = logProperties.getProperty(jsonPatternKey);
+            if (jsonPattern != null && !jsonPattern.startsWith("%") && !new File(jsonPattern).isAbsolute()) {
+                logProperties.setProperty(jsonPatternKey, new File(dataPath, jsonPattern).getAbsolutePath());
+            }
+
+            // rate limits for loggers: <loggername>.rateLimit = <messages per second>
+            for (final String key: logProperties.stringPropertyNames()) {
+                if (!key.endsWith(".rateLimit")) continue;
+                try {
+                    final int limit = Integer.parseInt(logProperties.getProperty(key).trim());
+                    final String loggername = key.substring(0, key.length() - ".rateLimit".length());
+                    if (loggername.equals("ConcurrentLog")) setDefaultRateLimit(limit); else setRateLimit(loggername, limit);
+                } catch (final NumberFormatException e) {
+                    System.err.println("STARTUP: wrong rate limit for " + key);
+                }
+            }
+
             final ByteArrayOutputStream propsStream = new ByteArrayOutputStream();
             logProperties.store(propsStream, null);
             
@@ -461,8 +676,11 @@ public final class ConcurrentLog {
         }
         try {
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker: injection of poison message");
-            logQueue.put(POISON_MESSAGE);
-            logRunnerThread.join(2000);
+            final Worker worker = logRunnerThread;
+            final long timeout = System.currentTimeMillis() + 2000;
+            while (!logQueue.offer(POISON_MESSAGE) && System.currentTimeMillis() < timeout) Thread.sleep(10);
+            LockSupport.unpark(worker);
+            worker.join(2000);
             ConcurrentLogLogger.log(Level.INFO, "shutdown of ConcurrentLog.Worker: terminated");
         } catch (final InterruptedException e) {
         }
@@ -498,7 +498,7 @@ public final class CrawlStacker implements WorkflowTask<Request>{
 
         // check blacklist
         if (Switchboard.urlBlacklist.isListed(BlacklistType.CRAWLER, url)) {
-            CrawlStacker.log.fine("URL '" + urlstring + "' is in blacklist.");
+            CrawlStacker.log.fine(() -> "URL '" + urlstring + "' is in blacklist.");
             return "url in blacklist";
         }
 
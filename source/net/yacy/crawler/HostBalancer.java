@@ -49,6 +49,7 @@ import net.yacy.crawler.data.Latency;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.DiskHandleMap;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.index.RowHandleSet;
 import net.yacy.kelondro.util.FileUtils;
@@ -65,7 +66,7 @@ import net.yacy.kelondro.util.FileUtils;
 public class HostBalancer implements Balancer {
 
     private final static ConcurrentLog log = new ConcurrentLog("HostBalancer");
-    public final static HandleMap depthCache = new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
+    public static volatile HandleMap depthCache = new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
 
     private final File hostsPath;
     private final boolean exceed134217727;
@@ -152,9 +153,34 @@ public class HostBalancer implements Balancer {
         }
     }
 
+    /**
+     * replace the depth cache with a cache on disk which keeps all urls that were pushed to any HostBalancer
+     * across restarts. The in-RAM cache is limited to 8M entries, the disk cache only needs a bloom filter in RAM.
+     * @param path the directory of the cache files
+     * @param bufferSize the number of entries which are collected in RAM before they are written to disk
+     */
+    public static synchronized void openDepthCache(final File path, final int bufferSize) {
+        // the old cache must be closed first because it may write to the same path
+        depthCache.close();
+        try {
+            depthCache = new DiskHandleMap(path, "depthCache", Word.commonHashLength, Word.commonHashOrder, 2, bufferSize);
+            log.info("opened depth cache in " + path + " with " + depthCache.size() + " urls");
+        } catch (final IOException e) {
+            log.warn("cannot open depth cache in " + path + ", using a RAM cache: " + e.getMessage(), e);
+            depthCache = new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
+        }
+    }
+
     @Override
     public synchronized void close() {
-        if (depthCache != null) {
+        if (depthCache instanceof DiskHandleMap) {
+            // the cache is shared between all HostBalancer instances and is kept on disk
+            try {
+                ((DiskHandleMap) depthCache).flush();
+            } catch (final IOException e) {
+                log.warn("cannot write depth cache: " + e.getMessage(), e);
+            }
+        } else if (depthCache != null) {
             depthCache.clear();
         }
         for (HostQueue queue: this.queues.values()) queue.close();
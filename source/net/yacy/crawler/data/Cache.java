@@ -55,6 +55,7 @@ import net.yacy.kelondro.blob.Compressor;
 import net.yacy.kelondro.blob.MapHeap;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.util.BinaryRecord;
 
 
 public final class Cache {
@@ -111,14 +112,14 @@ public final class Cache {
         // open the response header database
         final File dbfile = new File(cachePath, RESPONSE_HEADER_DB_NAME);
         try {
-            responseHeaderDB = new MapHeap(dbfile, Word.commonHashLength, Base64Order.enhancedCoder, DEFAULT_RESPONSE_HEADER_BUFFER_SIZE, 100, ' ');
+            responseHeaderDB = new MapHeap(dbfile, Word.commonHashLength, Base64Order.enhancedCoder, DEFAULT_RESPONSE_HEADER_BUFFER_SIZE, 100, ' ', BinaryRecord.RESPONSE_HEADER);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             // try a healing
             if (dbfile.exists()) {
                 dbfile.delete();
                 try {
-                    responseHeaderDB = new MapHeap(dbfile, Word.commonHashLength, Base64Order.enhancedCoder, DEFAULT_RESPONSE_HEADER_BUFFER_SIZE, 100, ' ');
+                    responseHeaderDB = new MapHeap(dbfile, Word.commonHashLength, Base64Order.enhancedCoder, DEFAULT_RESPONSE_HEADER_BUFFER_SIZE, 100, ' ', BinaryRecord.RESPONSE_HEADER);
                 } catch (final IOException ee) {
                     ConcurrentLog.logException(e);
                 }
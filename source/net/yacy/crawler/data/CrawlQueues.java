@@ -56,6 +56,7 @@ import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.ConnectionInfo;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.HarvestProcess;
+import net.yacy.crawler.HostBalancer;
 import net.yacy.crawler.data.NoticedURL.StackType;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
@@ -99,6 +100,9 @@ public class CrawlQueues {
         // start crawling management
         log.config("Starting Crawling Management");
         log.config("Opening noticeURL..");
+        if (sb.getConfigBool("crawler.depthCache.persistent", false)) {
+            HostBalancer.openDepthCache(new File(queuePath, "CrawlerDepthCache"), sb.getConfigInt("crawler.depthCache.bufferSize", 1000000));
+        }
         this.noticeURL = new NoticedURL(queuePath, sb.getConfigInt("crawler.onDemandLimit", 1000), sb.exceed134217727);
         log.config("Opening errorURL..");
         this.errorURL = new ErrorCache(sb);
@@ -128,6 +132,9 @@ public class CrawlQueues {
         
         if (this.remoteCrawlProviderHashes != null) this.remoteCrawlProviderHashes.clear();
         this.noticeURL.close();
+        if (this.sb.getConfigBool("crawler.depthCache.persistent", false)) {
+            HostBalancer.openDepthCache(new File(newQueuePath, "CrawlerDepthCache"), this.sb.getConfigInt("crawler.depthCache.bufferSize", 1000000));
+        }
         this.noticeURL = new NoticedURL(newQueuePath, sb.getConfigInt("crawler.onDemandLimit", 1000), this.sb.exceed134217727);
         if (this.delegatedURL != null) this.delegatedURL.clear();
     }
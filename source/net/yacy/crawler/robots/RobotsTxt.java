@@ -105,7 +105,7 @@ public class RobotsTxt {
 
     public void clear() throws IOException {
         log.info("clearing robots table");
-        this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME).clear();
+        this.tables.clear(WorkTables.TABLE_ROBOTS_NAME);
         this.syncObjects.clear();
     }
     
@@ -219,7 +219,8 @@ public class RobotsTxt {
         }
         if (robotsTable == null) return;
         try {
-            robotsTable.delete(robotsTable.encodedKey(urlHostPort));
+            // delete with the tables to remove the entry from the sorted index, too
+            this.tables.delete(WorkTables.TABLE_ROBOTS_NAME, robotsTable.encodedKey(urlHostPort));
         } catch (IOException e) {
         }
     }
@@ -363,7 +364,7 @@ public class RobotsTxt {
         // writes a new page and returns key
         try {
             final BEncodedHeap robotsTable = this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME);
-            robotsTable.insert(robotsTable.encodedKey(entry.getHostName()), entry.getMem());
+            this.tables.insert(WorkTables.TABLE_ROBOTS_NAME, robotsTable.encodedKey(entry.getHostName()), entry.getMem());
             return entry.getHostName();
         } catch (final Exception e) {
             log.warn("cannot write robots.txt entry", e);
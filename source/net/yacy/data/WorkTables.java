@@ -58,6 +58,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.data.ymark.YMarkTables;
 import net.yacy.kelondro.blob.Tables;
+import net.yacy.kelondro.blob.TablesSortedIndex;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.rwi.IndexCell;
 import net.yacy.search.Switchboard;
@@ -87,6 +88,7 @@ public class WorkTables extends Tables {
     public final static String TABLE_API_COL_APICALL_EVENT_ACTION = "apicall_event_action"; // 
 
     public final static String TABLE_ROBOTS_NAME = "robots";
+    public final static String TABLE_ROBOTS_COL_DATE = "date"; // the load date of the robots.txt in milliseconds, see RobotsTxtEntry
 
     public final static String TABLE_ACTIVECRAWLS_NAME = "crawljobsActive";
     public final static String TABLE_PASSIVECRAWLS_NAME = "crawljobsPassive";
@@ -96,6 +98,55 @@ public class WorkTables extends Tables {
     public WorkTables(final File workPath) {
         super(workPath, 12);
         this.bookmarks = new YMarkTables(this);
+        // sorted indexes for the lookup of recorded calls and for the scheduler
+        try {
+            this.createSortedIndex(TABLE_API_NAME, TABLE_API_COL_URL, TablesSortedIndex.TYPE.STRING);
+            this.createSortedIndex(TABLE_API_NAME, TABLE_API_COL_DATE_NEXT_EXEC, TablesSortedIndex.TYPE.DATE);
+            this.createSortedIndex(TABLE_API_NAME, TABLE_API_COL_APICALL_EVENT_KIND, TablesSortedIndex.TYPE.STRING);
+            // robots.txt entries in the order of their age
+            this.createSortedIndex(TABLE_ROBOTS_NAME, TABLE_ROBOTS_COL_DATE, TablesSortedIndex.TYPE.NUMBER);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * select the api calls which may have to be executed by the scheduler: calls with a next execution date
+     * before now or without a next execution date and calls with an event kind other than 'off'.
+     * The calls are found with the sorted indexes of the api table, so the table is not scanned.
+     * @param now the current time
+     * @return the selected calls ordered by the date of their last execution
+     * @throws IOException
+     */
+    public Collection<Row> scheduledAPICallCandidates(final Date now) throws IOException {
+        final TablesSortedIndex nextExec = this.getSortedIndex(TABLE_API_NAME, TABLE_API_COL_DATE_NEXT_EXEC);
+        final TablesSortedIndex eventKind = this.getSortedIndex(TABLE_API_NAME, TABLE_API_COL_APICALL_EVENT_KIND);
+        if (nextExec == null || eventKind == null) {
+            return Tables.orderByDate(this.iterator(TABLE_API_NAME), TABLE_API_COL_DATE_LAST_EXEC, null, SortDirection.ASC);
+        }
+        final Map<String, Row> candidates = new HashMap<String, Row>();
+        final byte[] off = ASCII.getBytes("off");
+        selectRows(candidates, nextExec.range(null, now, true));
+        // missing and empty event kinds are 'off'
+        selectRows(candidates, eventKind.range(new byte[0], false, off, false, true));
+        selectRows(candidates, eventKind.range(off, false, null, true, true));
+        return Tables.orderByDate(candidates.values().iterator(), TABLE_API_COL_DATE_LAST_EXEC, null, SortDirection.ASC);
+    }
+
+    private void selectRows(final Map<String, Row> rows, final Iterator<byte[]> pks) {
+        while (pks.hasNext()) {
+            final byte[] pk = pks.next();
+            final String key = UTF8.String(pk);
+            if (rows.containsKey(key)) continue;
+            try {
+                final Row row = this.select(TABLE_API_NAME, pk);
+                if (row != null) rows.put(key, row);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            } catch (final SpaceExceededException e) {
+                ConcurrentLog.logException(e);
+            }
+        }
     }
     
     /**
@@ -53,7 +53,9 @@ import net.yacy.document.Parser.Failure;
 import net.yacy.kelondro.blob.TableColumnIndexException;
 import net.yacy.kelondro.blob.Tables;
 import net.yacy.kelondro.blob.Tables.Row;
+import net.yacy.kelondro.blob.Tables.SortDirection;
 import net.yacy.kelondro.blob.TablesColumnIndex;
+import net.yacy.kelondro.blob.TablesSortedIndex;
 import net.yacy.repository.LoaderDispatcher;
 
 public class YMarkTables {
@@ -100,6 +102,11 @@ public class YMarkTables {
 
     public final static int BUFFER_LENGTH = 256;
 
+    // the columns of a bookmarks table with a sorted index; the values are times in milliseconds
+    private final static YMarkEntry.BOOKMARK[] SORTED_COLUMNS = {
+        YMarkEntry.BOOKMARK.DATE_ADDED, YMarkEntry.BOOKMARK.DATE_MODIFIED, YMarkEntry.BOOKMARK.DATE_VISITED
+    };
+
     private final WorkTables worktables;
     private final Map<String, ChangeListener> progressListeners;
 
@@ -140,6 +147,7 @@ public class YMarkTables {
     		final String bmk_table = iter.next();
         	if(bmk_table.endsWith(TABLES.BOOKMARKS.basename())) {
         		try {
+    				createSortedIndexes(bmk_table);
     				final long time = System.currentTimeMillis();
     				final TablesColumnIndex index = this.worktables.getIndex(bmk_table);
 					if(index.getType() == TablesColumnIndex.INDEXTYPE.RAM || index.size() == 0) {
@@ -158,6 +166,13 @@ public class YMarkTables {
     	}
     }
 
+    /**
+     * create the sorted indexes of a bookmarks table; existing indexes are not built again
+     */
+    private void createSortedIndexes(final String bmk_table) throws IOException {
+        for (final YMarkEntry.BOOKMARK b: SORTED_COLUMNS) this.worktables.createSortedIndex(bmk_table, b.key(), TablesSortedIndex.TYPE.NUMBER);
+    }
+
     public void deleteBookmark(final String bmk_user, final byte[] urlHash) throws IOException, SpaceExceededException {
         final String bmk_table = TABLES.BOOKMARKS.tablename(bmk_user);
     	Tables.Row bmk_row = null;
@@ -306,6 +321,19 @@ public class YMarkTables {
         return sortList;
     }
 
+    /**
+     * all bookmarks of a user ordered by a column. The sorted index of the column is used if it exists,
+     * otherwise all bookmarks are read and sorted like in orderBookmarksBy().
+     */
+    public Iterator<Row> getBookmarksOrderedBy(final String bmk_user, final String sortname, final String sortorder) throws IOException {
+        final String bmk_table = TABLES.BOOKMARKS.tablename(bmk_user);
+        if (this.worktables.getSortedIndex(bmk_table, sortname) != null) {
+            return this.worktables.orderBy(bmk_table, sortname, TablesSortedIndex.TYPE.NUMBER,
+                    "desc".equals(sortorder) ? SortDirection.DESC : SortDirection.ASC, Integer.MAX_VALUE);
+        }
+        return orderBookmarksBy(this.worktables.iterator(bmk_table), sortname, sortorder).iterator();
+    }
+
     public void addTags(final String bmk_user, final String url, final String tagString, final boolean merge) throws IOException {
     	if(!tagString.isEmpty()) {
         	// do not set defaults as we only want to update tags
@@ -471,6 +499,8 @@ public class YMarkTables {
 
 			}
 	        if (bmk_row == null) {
+	        	// a new user gets the sorted indexes with the first bookmark
+	        	createSortedIndexes(bmk_table);
 	        	// create and insert new entry
 				if(!bmk.containsKey(YMarkEntry.BOOKMARK.DATE_ADDED.key())) {
 					bmk.put(YMarkEntry.BOOKMARK.DATE_ADDED.key(), date);
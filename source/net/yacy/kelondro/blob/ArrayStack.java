@@ -28,13 +28,17 @@ package net.yacy.kelondro.blob;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Array;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -49,6 +53,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.yacy.cora.date.GenericFormatter;
 import net.yacy.cora.document.encoding.ASCII;
@@ -64,6 +69,7 @@ import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceFactory;
 import net.yacy.kelondro.rwi.ReferenceIterator;
 import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.IOBudget;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.MergeIterator;
 import net.yacy.kelondro.util.NamePrefixThreadFactory;
@@ -87,6 +93,18 @@ public class ArrayStack implements BLOB {
     private static final long maxFileSize = Integer.MAX_VALUE;
     public  static final long oneMonth    = 1000L * 60L * 60L * 24L * 365L / 12L;
 
+    /**
+     * if true, all BLOB files which are not used for writing any more are read using a memory mapping.
+     * This removes the lock on the file pointer for concurrent readers. Overwrite this to enable the feature.
+     */
+    public static boolean mapReadOnlyBLOBs = false;
+
+    /**
+     * if true, the index of all BLOB files which are not used for writing any more is kept outside of the java heap.
+     * The index dump is then mapped into memory instead of being loaded. Overwrite this to enable the feature.
+     */
+    public static boolean offHeapIndexes = false;
+
     private       int            keylength;
     private       ByteOrder      ordering;
     private final File           heapLocation;
@@ -95,6 +113,7 @@ public class ArrayStack implements BLOB {
     private       long           repositoryAgeMax;
     private       long           repositorySizeMax;
     private       List<blobItem> blobs;
+    private final ReentrantReadWriteLock closeLock; // read lock for every read of a BLOB, write lock to close a BLOB
     private final String         prefix;
     private final int            buffersize;
     private final boolean        trimall;
@@ -126,12 +145,15 @@ public class ArrayStack implements BLOB {
         this.trimall = trimall;
 
         // init the thread pool for the keeperOf executor service
-        this.executor = new ThreadPoolExecutor(
-        		1,
+        // the pool has an unbounded queue; it would never grow beyond the core size, therefore all threads are core threads which may time out
+        final ThreadPoolExecutor lookupExecutor = new ThreadPoolExecutor(
+        		Runtime.getRuntime().availableProcessors(),
         		Runtime.getRuntime().availableProcessors(), 100,
         		TimeUnit.MILLISECONDS,
         		new LinkedBlockingQueue<Runnable>(),
         		new NamePrefixThreadFactory(this.prefix));
+        lookupExecutor.allowCoreThreadTimeOut(true);
+        this.executor = lookupExecutor;
 
         // check existence of the heap directory
         if (heapLocation.exists()) {
@@ -152,7 +174,7 @@ public class ArrayStack implements BLOB {
                 FileUtils.deletedelete(new File(heapLocation, file));
                 deletions = true;
             }
-            if (file.endsWith(".idx") || file.endsWith(".gap")) {
+            if (file.endsWith(".idx") || file.endsWith(".gap") || file.endsWith(".blm")) {
                 final String s = file.substring(0, file.length() - 17);
                 if (!fh.contains(s)) {
                     FileUtils.deletedelete(new File(heapLocation, file));
@@ -206,8 +228,12 @@ public class ArrayStack implements BLOB {
                        if (time == maxtime && !trimall) {
                            oneBlob = new Heap(f, keylength, ordering, buffersize);
                        } else {
-                           oneBlob = new HeapModifier(f, keylength, ordering);
+                           oneBlob = new HeapModifier(f, keylength, ordering, offHeapIndexes);
                            oneBlob.optimize(); // no writings here, can be used with minimum memory
+                           // an index which was not read from a dump is moved off the heap after it was built
+                           if (offHeapIndexes) ((HeapModifier) oneBlob).moveIndexOffHeap();
+                           ((HeapModifier) oneBlob).initKeyFilter();
+                           if (mapReadOnlyBLOBs) ((HeapModifier) oneBlob).map();
                        }
                        sortedItems.put(Long.valueOf(time), new blobItem(d, f, oneBlob));
                    } catch (final IOException e) {
@@ -223,6 +249,7 @@ public class ArrayStack implements BLOB {
         }
 
         // read the blob tree in a sorted way and write them into an array
+        this.closeLock = new ReentrantReadWriteLock();
         this.blobs = new CopyOnWriteArrayList<blobItem>();
         for (final blobItem bi : sortedItems.values()) {
             this.blobs.add(bi);
@@ -261,8 +288,11 @@ public class ArrayStack implements BLOB {
         if (full && this.buffersize > 0 && !this.trimall) {
             oneBlob = new Heap(location, this.keylength, this.ordering, this.buffersize);
         } else {
-            oneBlob = new HeapModifier(location, this.keylength, this.ordering);
+            oneBlob = new HeapModifier(location, this.keylength, this.ordering, offHeapIndexes);
             oneBlob.optimize();
+            if (offHeapIndexes) ((HeapModifier) oneBlob).moveIndexOffHeap();
+            ((HeapModifier) oneBlob).initKeyFilter();
+            if (mapReadOnlyBLOBs) ((HeapModifier) oneBlob).map();
         }
         this.blobs.add(new blobItem(d, location, oneBlob));
     }
@@ -273,8 +303,7 @@ public class ArrayStack implements BLOB {
             b = this.blobs.get(i);
             if (b.location.getAbsolutePath().equals(location.getAbsolutePath())) {
                 this.blobs.remove(i);
-                b.blob.close(writeIDX);
-                b.blob = null;
+                close(b, writeIDX);
                 b.location = null;
                 return;
             }
@@ -282,10 +311,23 @@ public class ArrayStack implements BLOB {
         ConcurrentLog.severe("BLOBArray", "file " + location + " cannot be unmounted. The file " + ((location.exists()) ? "exists." : "does not exist."));
     }
 
+    /**
+     * close the BLOB of an item which was removed from the array. Readers which found the item before it was removed
+     * finish their read first; later readers find no BLOB in the item.
+     */
+    private void close(final blobItem b, final boolean writeIDX) {
+        this.closeLock.writeLock().lock();
+        try {
+            b.blob.close(writeIDX);
+            b.blob = null;
+        } finally {
+            this.closeLock.writeLock().unlock();
+        }
+    }
+
     private File unmount(final int idx) {
         final blobItem b = this.blobs.remove(idx);
-        b.blob.close(false);
-        b.blob = null;
+        close(b, false);
         final File f = b.location;
         b.location = null;
         return f;
@@ -345,6 +387,35 @@ public class ArrayStack implements BLOB {
         return new File[]{f0, f1};
     }
 
+    /**
+     * unmount the smallest BLOB files for a merge of many files in one pass
+     * @param minCount the minimum number of files; if there are not enough small files, nothing is unmounted
+     * @param maxCount the maximum number of files
+     * @param maxResultSize the maximum size of all files together
+     * @return the unmounted files or null if there are not enough files which fit into the size limit
+     */
+    public synchronized File[] unmountSmallest(final int minCount, final int maxCount, final long maxResultSize) {
+        if (this.blobs.size() < Math.max(2, minCount)) return null;
+        final List<File> files = new ArrayList<File>(this.blobs.size());
+        for (final blobItem b: this.blobs) files.add(b.location);
+        files.sort(new Comparator<File>() {
+            @Override
+            public int compare(final File f1, final File f2) {
+                return Long.compare(f1.length(), f2.length());
+            }
+        });
+        final List<File> selected = new ArrayList<File>(maxCount);
+        long size = 0;
+        for (final File f: files) {
+            if (selected.size() >= maxCount || size + f.length() > maxResultSize) break;
+            selected.add(f);
+            size += f.length();
+        }
+        if (selected.size() < Math.max(2, minCount)) return null;
+        for (final File f: selected) unmountBLOB(f, false);
+        return selected.toArray(new File[selected.size()]);
+    }
+
     private synchronized File smallestBLOB(final File excluding, final long maxsize) {
         if (this.blobs.isEmpty()) return null;
         File bestFile = null;
@@ -413,8 +484,7 @@ public class ArrayStack implements BLOB {
         while (!this.blobs.isEmpty() && System.currentTimeMillis() - this.blobs.get(0).creation.getTime() - this.fileAgeLimit > this.repositoryAgeMax) {
             // too old
             final blobItem oldestBLOB = this.blobs.remove(0);
-            oldestBLOB.blob.close(false);
-            oldestBLOB.blob = null;
+            close(oldestBLOB, false);
             FileUtils.deletedelete(oldestBLOB.location);
         }
 
@@ -422,7 +492,7 @@ public class ArrayStack implements BLOB {
         while (!this.blobs.isEmpty() && length() > this.repositorySizeMax) {
             // too large
             final blobItem oldestBLOB = this.blobs.remove(0);
-            oldestBLOB.blob.close(false);
+            close(oldestBLOB, false);
             FileUtils.deletedelete(oldestBLOB.location);
         }
     }
@@ -475,12 +545,18 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public synchronized void clear() throws IOException {
-        for (final blobItem bi: this.blobs) {
-            bi.blob.clear();
-            bi.blob.close(false);
+        final List<blobItem> cleared = new ArrayList<blobItem>(this.blobs);
+        this.blobs.clear();
+        for (final blobItem bi: cleared) {
+            this.closeLock.writeLock().lock();
+            try {
+                bi.blob.clear();
+            } finally {
+                this.closeLock.writeLock().unlock();
+            }
+            close(bi, false);
             HeapWriter.delete(bi.location);
         }
-        this.blobs.clear();
     }
 
     /**
@@ -554,7 +630,7 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized boolean containsKey(final byte[] key) {
+    public boolean containsKey(final byte[] key) {
     	final blobItem bi = keeperOf(key);
     	return bi != null;
         //for (blobItem bi: blobs) if (bi.blob.has(key)) return true;
@@ -568,21 +644,19 @@ public class ArrayStack implements BLOB {
      * @return the blobItem that holds the key or null if no blobItem is found
      */
     private blobItem keeperOf(final byte[] key) {
-        if (this.blobs.isEmpty()) return null;
-        if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
-            return null;
-        }
+        // find all blobs which may have the key; the key filters exclude most of them without any index access
+        final List<blobItem> candidates = candidatesOf(key);
+        if (candidates.isEmpty()) return null;
 
         // first check the current blob only because that has most probably the key if any has that key
-        int bs1 = this.blobs.size() - 1;
-        blobItem bi = this.blobs.get(bs1);
-        if (bi.blob.containsKey(key)) return bi;
-        if (this.blobs.size() == 2) {
+        final int bs1 = candidates.size() - 1;
+        blobItem bi = candidates.get(bs1);
+        if (containsKey(bi, key)) return bi;
+        if (bs1 == 0) return null;
+        if (bs1 == 1) {
             // this should not be done concurrently
-            bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+            bi = candidates.get(0);
+            if (containsKey(bi, key)) return bi;
             return null;
         }
 
@@ -590,12 +664,12 @@ public class ArrayStack implements BLOB {
         final CompletionService<blobItem> cs = new ExecutorCompletionService<blobItem>(this.executor);
         int accepted = 0;
         for (int i = 0; i < bs1; i++) {
-            final blobItem b = this.blobs.get(i);
+            final blobItem b = candidates.get(i);
             try {
                 cs.submit(new Callable<blobItem>() {
                     @Override
                     public blobItem call() {
-                        if (b.blob.containsKey(key)) return b;
+                        if (containsKey(b, key)) return b;
                         return null;
                     }
                 });
@@ -603,7 +677,7 @@ public class ArrayStack implements BLOB {
             } catch (final RejectedExecutionException e) {
                 // the executor is either shutting down or the blocking queue is full
                 // execute the search direct here without concurrency
-                if (b.blob.containsKey(key)) return b;
+                if (containsKey(b, key)) return b;
             }
         }
 
@@ -631,6 +705,59 @@ public class ArrayStack implements BLOB {
         return null;
     }
 
+    /**
+     * find all blobItems which may hold the key, in the order of the blob array.
+     * The check uses only the key filters of the blobs; blobs without a key filter are always candidates.
+     * @param key
+     * @return a list of blobItems that may have the key
+     */
+    private List<blobItem> candidatesOf(final byte[] key) {
+        final List<blobItem> blobs = this.blobs;
+        if (blobs == null) return new ArrayList<blobItem>(0);
+        final List<blobItem> candidates = new ArrayList<blobItem>(blobs.size());
+        for (final blobItem bi: blobs) {
+            final BLOB b = bi.blob;
+            if (b == null) continue; // concurrently unmounted
+            if (b instanceof HeapReader && !((HeapReader) b).mightContainKey(key)) continue;
+            candidates.add(bi);
+        }
+        return candidates;
+    }
+
+    private boolean containsKey(final blobItem bi, final byte[] key) {
+        this.closeLock.readLock().lock();
+        try {
+            final BLOB b = bi.blob;
+            return b != null && b.containsKey(key);
+        } finally {
+            this.closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * read a BLOB from one item of the array; the item may be unmounted meanwhile, but its BLOB is not closed during the read
+     * @return the BLOB or null if the item has no BLOB for the key or is unmounted
+     */
+    private byte[] get(final blobItem bi, final byte[] key) throws IOException, SpaceExceededException {
+        this.closeLock.readLock().lock();
+        try {
+            final BLOB b = bi.blob;
+            return (b == null) ? null : b.get(key);
+        } finally {
+            this.closeLock.readLock().unlock();
+        }
+    }
+
+    private long length(final blobItem bi, final byte[] key) throws IOException {
+        this.closeLock.readLock().lock();
+        try {
+            final BLOB b = bi.blob;
+            return (b == null) ? -1 : b.length(key);
+        } finally {
+            this.closeLock.readLock().unlock();
+        }
+    }
+
     /**
      * retrieve the whole BLOB from the table
      * @param key  the primary key
@@ -639,14 +766,14 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public byte[] get(final byte[] key) throws IOException, SpaceExceededException {
-        if (this.blobs == null || this.blobs.isEmpty()) return null;
-        if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
-            return bi.blob.get(key);
+        final List<blobItem> blobs = this.blobs;
+        if (blobs == null || blobs.isEmpty()) return null;
+        if (blobs.size() == 1) {
+            return get(blobs.get(0), key);
         }
 
         final blobItem bi = keeperOf(key);
-    	return (bi == null) ? null : bi.blob.get(key);
+    	return (bi == null) ? null : get(bi, key);
 
     	/*
     	byte[] b;
@@ -682,6 +809,65 @@ public class ArrayStack implements BLOB {
         return new BlobValues(key);
     }
 
+    /**
+     * get all BLOBs in the array using concurrent reads.
+     * Only BLOBs which may contain the key according to their key filter are read. If more than one of
+     * them remains, the reads are done concurrently. The result is in the order of the array, which
+     * is the same order as the order of getAll().
+     * @param key
+     * @return the list of all BLOBs for the given key; an empty list if no BLOB has the key
+     * @throws IOException an InterruptedIOException if the thread is interrupted while waiting for the reads
+     * @throws SpaceExceededException
+     */
+    public List<byte[]> getAllConcurrently(final byte[] key) throws IOException, SpaceExceededException {
+        final List<blobItem> candidates = candidatesOf(key);
+        final List<byte[]> result = new ArrayList<byte[]>(candidates.size());
+        if (candidates.size() <= 1) {
+            for (final blobItem bi: candidates) {
+                final byte[] n = get(bi, key);
+                if (n != null) result.add(n);
+            }
+            return result;
+        }
+        @SuppressWarnings("unchecked")
+        final Future<byte[]>[] reads = (Future<byte[]>[]) Array.newInstance(Future.class, candidates.size());
+        for (int i = 0; i < reads.length; i++) {
+            final blobItem bi = candidates.get(i);
+            final Callable<byte[]> read = new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException, SpaceExceededException {
+                    return get(bi, key);
+                }
+            };
+            try {
+                reads[i] = this.executor.submit(read);
+            } catch (final RejectedExecutionException e) {
+                // the executor is shutting down; read in this thread
+                final FutureTask<byte[]> task = new FutureTask<byte[]>(read);
+                task.run();
+                reads[i] = task;
+            }
+        }
+        try {
+            for (final Future<byte[]> f: reads) {
+                final byte[] n = f.get();
+                if (n != null) result.add(n);
+            }
+        } catch (final InterruptedException e) {
+            // do not return a partial result
+            for (final Future<byte[]> f: reads) f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading the BLOBs of key " + UTF8.String(key));
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof SpaceExceededException) throw (SpaceExceededException) cause;
+            ConcurrentLog.severe("ArrayStack", "", e);
+            throw new RuntimeException(cause);
+        }
+        return result;
+    }
+
     private class BlobValues extends LookAheadIterator<byte[]> {
 
         private final Iterator<blobItem> bii;
@@ -695,10 +881,8 @@ public class ArrayStack implements BLOB {
         @Override
         protected byte[] next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
                 try {
-                    final byte[] n = b.get(this.key);
+                    final byte[] n = get(this.bii.next(), this.key);
                     if (n != null) return n;
                 } catch (final IOException e) {
                     ConcurrentLog.severe("ArrayStack", "BlobValues - IOException: " + e.getMessage(), e);
@@ -719,10 +903,10 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized long length(final byte[] key) throws IOException {
+    public long length(final byte[] key) throws IOException {
         long l;
-        for (final blobItem bi: this.blobs) {
-            l = bi.blob.length(key);
+        for (final blobItem bi: candidatesOf(key)) {
+            l = length(bi, key);
             if (l >= 0) return l;
         }
         return -1;
@@ -752,10 +936,8 @@ public class ArrayStack implements BLOB {
         @Override
         protected Long next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
                 try {
-                    final long l = b.length(this.key);
+                    final long l = length(this.bii.next(), this.key);
                     if (l >= 0) return Long.valueOf(l);
                 } catch (final IOException e) {
                     ConcurrentLog.severe("ArrayStack", "", e);
@@ -766,6 +948,40 @@ public class ArrayStack implements BLOB {
         }
     }
 
+    /**
+     * get the first bytes of the BLOBs of a key in all BLOB files of the array
+     * @param key
+     * @param n the maximum number of bytes of each BLOB
+     * @return the heads of all BLOBs which contain the key
+     * @throws IOException
+     */
+    public List<byte[]> headAll(final byte[] key, final int n) throws IOException {
+        final List<byte[]> heads = new ArrayList<byte[]>();
+        for (final blobItem bi: candidatesOf(key)) {
+            final byte[] h;
+            this.closeLock.readLock().lock();
+            try {
+                final BLOB b = bi.blob;
+                if (b == null) continue;
+                if (b instanceof HeapReader) {
+                    h = ((HeapReader) b).head(key, n);
+                } else {
+                    byte[] blob;
+                    try {
+                        blob = b.get(key);
+                    } catch (final SpaceExceededException e) {
+                        throw new IOException(e.getMessage());
+                    }
+                    h = (blob == null || blob.length <= n) ? blob : Arrays.copyOf(blob, n);
+                }
+            } finally {
+                this.closeLock.readLock().unlock();
+            }
+            if (h != null) heads.add(h);
+        }
+        return heads;
+    }
+
     /**
      * retrieve the sizes of all BLOB
      * @param key
@@ -903,9 +1119,10 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public synchronized void close(final boolean writeIDX) {
-        for (final blobItem bi: this.blobs) bi.blob.close(writeIDX);
-        this.blobs.clear();
+        final List<blobItem> closed = this.blobs;
         this.blobs = null;
+        for (final blobItem bi: closed) close(bi, writeIDX);
+        closed.clear();
         this.executor.shutdown();
     }
 
@@ -923,102 +1140,125 @@ public class ArrayStack implements BLOB {
     public File mergeMount(final File f1, final File f2,
             final ReferenceFactory<? extends Reference> factory,
             final File newFile, final int writeBuffer) {
-        if (f2 == null) {
+        return mergeMount((f2 == null) ? new File[]{f1} : new File[]{f1, f2}, factory, newFile, writeBuffer, IOBudget.UNLIMITED);
+    }
+
+    /**
+     * merge any number of blob files into one in a single pass. If only one file is given,
+     * then the file is only rewritten into a new one.
+     * @param files the files to be merged; they must not be mounted
+     * @param factory
+     * @param newFile
+     * @param writeBuffer
+     * @param budget the number of bytes per second that the merge may write
+     * @return the target file where the given files are merged in
+     */
+    public File mergeMount(final File[] files,
+            final ReferenceFactory<? extends Reference> factory,
+            final File newFile, final int writeBuffer, final IOBudget budget) {
+        final String names = names(files);
+        if (files.length == 1) {
             // this is a rewrite
-            ConcurrentLog.info("BLOBArray", "rewrite of " + f1.getName());
-            final File resultFile = rewriteWorker(factory, this.keylength, this.ordering, f1, newFile, writeBuffer);
+            ConcurrentLog.info("BLOBArray", "rewrite of " + names);
+            final File resultFile = rewriteWorker(factory, this.keylength, this.ordering, files[0], newFile, writeBuffer, budget);
             if (resultFile == null) {
-                ConcurrentLog.warn("BLOBArray", "rewrite of file " + f1 + " returned null. newFile = " + newFile);
+                ConcurrentLog.warn("BLOBArray", "rewrite of file " + files[0] + " returned null. newFile = " + newFile);
                 return null;
             }
             try {
                 mountBLOB(resultFile, false);
             } catch (final IOException e) {
-                ConcurrentLog.warn("BLOBArray", "rewrite of file " + f1 + " successfull, but read failed. resultFile = " + resultFile);
+                ConcurrentLog.warn("BLOBArray", "rewrite of file " + files[0] + " successfull, but read failed. resultFile = " + resultFile);
                 return null;
             }
-            ConcurrentLog.info("BLOBArray", "rewrite of " + f1.getName() + " into " + resultFile);
+            ConcurrentLog.info("BLOBArray", "rewrite of " + names + " into " + resultFile);
             return resultFile;
         }
-        ConcurrentLog.info("BLOBArray", "merging " + f1.getName() + " with " + f2.getName());
-        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, f1, f2, newFile, writeBuffer);
+        ConcurrentLog.info("BLOBArray", "merging " + names);
+        final long start = System.currentTimeMillis();
+        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, files, newFile, writeBuffer, budget);
         if (resultFile == null) {
-            ConcurrentLog.warn("BLOBArray", "merge of files " + f1 + ", " + f2 + " returned null. newFile = " + newFile);
+            ConcurrentLog.warn("BLOBArray", "merge of files " + names + " returned null. newFile = " + newFile);
             return null;
         }
         try {
             mountBLOB(resultFile, false);
         } catch (final IOException e) {
-            ConcurrentLog.warn("BLOBArray", "merge of files " + f1 + ", " + f2 + " successfull, but read failed. resultFile = " + resultFile);
+            ConcurrentLog.warn("BLOBArray", "merge of files " + names + " successfull, but read failed. resultFile = " + resultFile);
             return null;
         }
-        ConcurrentLog.info("BLOBArray", "merged " + f1.getName() + " with " + f2.getName() + " into " + resultFile);
+        ConcurrentLog.info("BLOBArray", "merged " + names + " into " + resultFile + " in " + (System.currentTimeMillis() - start) + " milliseconds");
         return resultFile;
     }
 
+    private static String names(final File[] files) {
+        final StringBuilder sb = new StringBuilder();
+        for (final File f: files) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(f.getName());
+        }
+        return sb.toString();
+    }
+
     private static <ReferenceType extends Reference> File mergeWorker(
                     final ReferenceFactory<ReferenceType> factory,
-                    final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer) {
-        // iterate both files and write a new one
-        ReferenceIterator<ReferenceType> i1 = null;
+                    final int keylength, final ByteOrder order, final File[] files, final File newFile, final int writeBuffer, final IOBudget budget) {
+        // iterate all files and write a new one
+        final List<ReferenceIterator<ReferenceType>> iterators = new ArrayList<ReferenceIterator<ReferenceType>>(files.length);
+        final List<File> nonEmpty = new ArrayList<File>(files.length);
         try {
-            i1 = new ReferenceIterator<ReferenceType>(f1, factory);
-            ReferenceIterator<ReferenceType> i2 = null;
-            try {
-                i2 = new ReferenceIterator<ReferenceType>(f2, factory);
-                if (!i1.hasNext()) {
-                    if (i2.hasNext()) {
-                        HeapWriter.delete(f1);
-                        if (f2.renameTo(newFile)) return newFile;
-                        return f2;
-                    }
-                    HeapWriter.delete(f1);
-                    HeapWriter.delete(f2);
-                    return null;
-                } else if (!i2.hasNext()) {
-                    HeapWriter.delete(f2);
-                    if (f1.renameTo(newFile)) return newFile;
-                    return f1;
-                }
-                assert i1.hasNext();
-                assert i2.hasNext();
-                final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+            for (final File f: files) {
+                final ReferenceIterator<ReferenceType> i;
                 try {
-                    final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
-                    merge(i1, i2, order, writer);
-                    writer.close(true);
+                    i = new ReferenceIterator<ReferenceType>(f, factory);
                 } catch (final IOException e) {
-                    ConcurrentLog.severe("ArrayStack", "cannot writing or close writing merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
-                    HeapWriter.delete(tmpFile);
-                    HeapWriter.delete(newFile);
-                    return null;
-                } catch (final SpaceExceededException e) {
-                    ConcurrentLog.severe("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
-                    HeapWriter.delete(tmpFile);
-                    HeapWriter.delete(newFile);
+                    ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read, f = " + f.toString() + ": " + e.getMessage(), e);
                     return null;
                 }
-                // we don't need the old files any more
-                HeapWriter.delete(f1);
-                HeapWriter.delete(f2);
-                return newFile;
+                if (i.hasNext()) {
+                    iterators.add(i);
+                    nonEmpty.add(f);
+                } else {
+                    i.close();
+                    HeapWriter.delete(f);
+                }
+            }
+            if (nonEmpty.isEmpty()) return null;
+            if (nonEmpty.size() == 1) {
+                // nothing to merge
+                final File f = nonEmpty.get(0);
+                iterators.get(0).close();
+                if (f.renameTo(newFile)) return newFile;
+                return f;
+            }
+            final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+            try {
+                final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
+                merge(iterators, order, writer, budget);
+                writer.close(true);
             } catch (final IOException e) {
-                ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read, f2 = " + f2.toString() + ": " + e.getMessage(), e);
+                ConcurrentLog.severe("ArrayStack", "cannot writing or close writing merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
+                HeapWriter.delete(tmpFile);
+                HeapWriter.delete(newFile);
+                return null;
+            } catch (final SpaceExceededException e) {
+                ConcurrentLog.severe("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
+                HeapWriter.delete(tmpFile);
+                HeapWriter.delete(newFile);
                 return null;
-            } finally {
-                if (i2 != null) i2.close();
             }
-        } catch (final IOException e) {
-            ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read, f1 = " + f1.toString() + ": " + e.getMessage(), e);
-            return null;
+            // we don't need the old files any more
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
+            for (final File f: nonEmpty) HeapWriter.delete(f);
+            return newFile;
         } finally {
-            if (i1 != null) i1.close();
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
         }
     }
 
     private static <ReferenceType extends Reference> File rewriteWorker(
             final ReferenceFactory<ReferenceType> factory,
-            final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer) {
+            final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer, final IOBudget budget) {
         // iterate both files and write a new one
 
         CloneableIterator<ReferenceContainer<ReferenceType>> i = null;
@@ -1036,7 +1276,7 @@ public class ArrayStack implements BLOB {
         final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
         try {
             final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
-            rewrite(i, order, writer);
+            rewrite(i, order, writer, budget);
             writer.close(true);
             i.close();
         } catch (final IOException e) {
@@ -1055,110 +1295,70 @@ public class ArrayStack implements BLOB {
         return newFile;
     }
 
-    private static <ReferenceType extends Reference> void merge(
-            final CloneableIterator<ReferenceContainer<ReferenceType>> i1,
-            final CloneableIterator<ReferenceContainer<ReferenceType>> i2,
-            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
-        assert i1.hasNext();
-        assert i2.hasNext();
-        byte[] c1lh, c2lh;
-        ReferenceContainer<ReferenceType> c1, c2;
-        c1 = i1.next();
-        c2 = i2.next();
-        int e, s;
-        while (true) {
-            assert c1 != null;
-            assert c2 != null;
-            e = ordering.compare(c1.getTermHash(), c2.getTermHash());
-            if (e < 0) {
-            	s = c1.shrinkReferences();
-            	if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-                writer.add(c1.getTermHash(), c1.exportCollection());
-                if (i1.hasNext()) {
-                    c1lh = c1.getTermHash();
-                    c1 = i1.next();
-                    assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-                    continue;
-                }
-                c1 = null;
-                break;
-            }
-            if (e > 0) {
-                s = c2.shrinkReferences();
-                if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-                writer.add(c2.getTermHash(), c2.exportCollection());
-                if (i2.hasNext()) {
-                    c2lh = c2.getTermHash();
-                    c2 = i2.next();
-                    assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-                    continue;
-                }
-                c2 = null;
-                break;
-            }
-            assert e == 0;
-            // merge the entries
-            c1 = c1.merge(c2);
-            s = c1.shrinkReferences();
-            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
-            c1lh = c1.getTermHash();
-            c2lh = c2.getTermHash();
-            if (i1.hasNext() && i2.hasNext()) {
-                c1 = i1.next();
-                assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-                c2 = i2.next();
-                assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-                continue;
-            }
-            c1 = null;
-            c2 = null;
-            if (i1.hasNext()) {
-                c1 = i1.next();
-                assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-            }
-            if (i2.hasNext()) {
-                c2 = i2.next();
-                assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-            }
-            break;
-
+    /**
+     * the current container of one of the files in a k-way merge
+     */
+    private static final class MergeHead<ReferenceType extends Reference> {
+        private final CloneableIterator<ReferenceContainer<ReferenceType>> iterator;
+        private final int rank; // the position of the file in the merge; used to make the order of equal keys stable
+        private ReferenceContainer<ReferenceType> container;
+        private MergeHead(final CloneableIterator<ReferenceContainer<ReferenceType>> iterator, final int rank) {
+            this.iterator = iterator;
+            this.rank = rank;
+            this.container = iterator.next();
         }
-        // catch up remaining entries
-        assert !(i1.hasNext() && i2.hasNext());
-        assert (c1 == null) || (c2 == null);
-        while (c1 != null) {
-            //System.out.println("FLUSH REMAINING 1: " + c1.getWordHash());
-            s = c1.shrinkReferences();
-            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
-            if (i1.hasNext()) {
-                c1lh = c1.getTermHash();
-                c1 = i1.next();
-                assert ordering.compare(c1.getTermHash(), c1lh) > 0;
-            } else {
-                c1 = null;
+        private boolean advance(final ByteOrder ordering) {
+            if (!this.iterator.hasNext()) return false;
+            final byte[] lh = this.container.getTermHash();
+            this.container = this.iterator.next();
+            assert ordering.compare(this.container.getTermHash(), lh) > 0;
+            return true;
+        }
+    }
+
+    /**
+     * merge sorted streams of reference containers into one heap file. All streams are read only once;
+     * containers with the same term hash are merged with the ReferenceContainer merge semantics.
+     */
+    private static <ReferenceType extends Reference> void merge(
+            final List<? extends CloneableIterator<ReferenceContainer<ReferenceType>>> iterators,
+            final ByteOrder ordering, final HeapWriter writer, final IOBudget budget) throws IOException, SpaceExceededException {
+        final PriorityQueue<MergeHead<ReferenceType>> heads = new PriorityQueue<MergeHead<ReferenceType>>(Math.max(1, iterators.size()), new Comparator<MergeHead<ReferenceType>>() {
+            @Override
+            public int compare(final MergeHead<ReferenceType> h1, final MergeHead<ReferenceType> h2) {
+                final int c = ordering.compare(h1.container.getTermHash(), h2.container.getTermHash());
+                return c != 0 ? c : h1.rank - h2.rank;
             }
+        });
+        int rank = 0;
+        for (final CloneableIterator<ReferenceContainer<ReferenceType>> i: iterators) {
+            if (i.hasNext()) heads.add(new MergeHead<ReferenceType>(i, rank++));
         }
-        while (c2 != null) {
-            //System.out.println("FLUSH REMAINING 2: " + c2.getWordHash());
-            s = c2.shrinkReferences();
-            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-            writer.add(c2.getTermHash(), c2.exportCollection());
-            if (i2.hasNext()) {
-                c2lh = c2.getTermHash();
-                c2 = i2.next();
-                assert ordering.compare(c2.getTermHash(), c2lh) > 0;
-            } else {
-                c2 = null;
+        ReferenceContainer<ReferenceType> c;
+        MergeHead<ReferenceType> h;
+        int s;
+        while (!heads.isEmpty()) {
+            h = heads.poll();
+            c = h.container;
+            if (h.advance(ordering)) heads.add(h);
+            // merge the entries of all other files with the same term
+            while (!heads.isEmpty() && ordering.compare(heads.peek().container.getTermHash(), c.getTermHash()) == 0) {
+                h = heads.poll();
+                c = c.merge(h.container);
+                if (h.advance(ordering)) heads.add(h);
             }
+            s = c.shrinkReferences();
+            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
+            final byte[] b = c.exportStorageCollection();
+            writer.add(c.getTermHash(), b);
+            budget.consume(b.length);
         }
         // finished with writing
     }
 
     private static <ReferenceType extends Reference> void rewrite(
             final CloneableIterator<ReferenceContainer<ReferenceType>> i,
-            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
+            final ByteOrder ordering, final HeapWriter writer, final IOBudget budget) throws IOException, SpaceExceededException {
         assert i.hasNext();
         byte[] clh;
         ReferenceContainer<ReferenceType> c;
@@ -1168,7 +1368,9 @@ public class ArrayStack implements BLOB {
             assert c != null;
             s = c.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
-            writer.add(c.getTermHash(), c.exportCollection());
+            final byte[] b = c.exportStorageCollection();
+            writer.add(c.getTermHash(), b);
+            budget.consume(b.length);
             if (i.hasNext()) {
                 clh = c.getTermHash();
                 c = i.next();
@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -49,6 +50,7 @@ import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.util.BDecoder;
 import net.yacy.kelondro.util.BDecoder.BObject;
 import net.yacy.kelondro.util.BEncoder;
+import net.yacy.kelondro.util.BinaryRecord;
 import net.yacy.kelondro.util.FileUtils;
 
 /**
@@ -192,6 +194,13 @@ public class BEncodedHeap implements MapStore {
         if ( b == null ) {
             return null;
         }
+        if ( BinaryRecord.isBinary(b) ) {
+            try {
+                return BinaryRecord.decode(b);
+            } catch (final IOException e ) {
+                return null;
+            }
+        }
         //System.out.println("b = " + UTF8.String(b));
         final BDecoder decoder = new BDecoder(b);
         final BObject bobj = decoder.parse();
@@ -208,6 +217,13 @@ public class BEncodedHeap implements MapStore {
         return m;
     }
 
+    private static byte[] m2b(final Map<String, byte[]> map) {
+        if ( BinaryRecord.writeBinaryRecords ) {
+            return BinaryRecord.encode(map, BinaryRecord.NONE);
+        }
+        return BEncoder.encode(BEncoder.transcode(map));
+    }
+
     /**
      * the map is stored inside a file; this method may return the file
      *
@@ -320,8 +336,11 @@ public class BEncodedHeap implements MapStore {
         if ( b == null ) {
             return null;
         }
+        if ( BinaryRecord.isBinary(b) ) {
+            return BinaryRecord.get(b, key);
+        }
         final Map<String, byte[]> map = b2m(b);
-        return map.get(key);
+        return map == null ? null : map.get(key);
     }
 
     /**
@@ -391,13 +410,13 @@ public class BEncodedHeap implements MapStore {
     public void insert(final byte[] pk, final Map<String, byte[]> map)
         throws SpaceExceededException,
         IOException {
-        final byte[] b = BEncoder.encode(BEncoder.transcode(map));
+        final byte[] b = m2b(map);
         this.table.insert(pk, b);
         this.columnames.addAll(map.keySet());
     }
 
     public void insert(final byte[] pk, final String key, final byte[] value) throws IOException {
-        final byte[] b = BEncoder.encodeMap(key, value);
+        final byte[] b = BinaryRecord.writeBinaryRecords ? BinaryRecord.encode(Collections.singletonMap(key, value), BinaryRecord.NONE) : BEncoder.encodeMap(key, value);
         this.table.insert(pk, b);
         this.columnames.add(key);
     }
@@ -438,7 +457,7 @@ public class BEncodedHeap implements MapStore {
     public Map<String, byte[]> put(final byte[] pk, final Map<String, byte[]> map) {
         try {
             final Map<String, byte[]> entry = this.get(pk);
-            final byte[] b = BEncoder.encode(BEncoder.transcode(map));
+            final byte[] b = m2b(map);
             this.table.insert(pk, b);
             this.columnames.addAll(map.keySet());
             return entry;
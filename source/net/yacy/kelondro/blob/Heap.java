@@ -28,6 +28,7 @@ package net.yacy.kelondro.blob;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -108,6 +109,33 @@ public final class Heap extends HeapModifier implements BLOB {
         */
     }
     
+    /**
+     * a heap with a write buffer appends to the file and cannot be mapped
+     * @return false
+     */
+    @Override
+    public boolean map() {
+        return false;
+    }
+
+    /**
+     * a heap with a write buffer gets new keys and cannot use a key filter
+     * @return false
+     */
+    @Override
+    public boolean initKeyFilter() {
+        return false;
+    }
+
+    /**
+     * a heap with a write buffer gets new keys and needs an index in memory
+     * @return false
+     */
+    @Override
+    public boolean moveIndexOffHeap() {
+        return false;
+    }
+
     /**
      * the number of BLOBs in the heap
      * @return the number of BLOBs in the heap
@@ -274,6 +302,21 @@ public final class Heap extends HeapModifier implements BLOB {
         }
     }
     
+    @Override
+    public byte[] head(byte[] key, final int n) throws IOException {
+        key = normalizeKey(key);
+
+        synchronized (this) {
+            // check the buffer
+            if (this.buffer != null) {
+                byte[] blob = this.buffer.get(key);
+                if (blob != null) return blob.length <= n ? blob : Arrays.copyOf(blob, n);
+            }
+
+            return super.head(key, n);
+        }
+    }
+
     /**
      * clears the content of the database
      * @throws IOException
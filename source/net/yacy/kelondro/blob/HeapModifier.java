@@ -58,12 +58,25 @@ public class HeapModifier extends HeapReader implements BLOB {
         super(heapFile, keylength, ordering);
     }
 
+    /**
+     * open a heap file which does not get new entries any more
+     * @param heapFile
+     * @param keylength
+     * @param ordering
+     * @param offHeapIndex if true, an existing index dump is mapped into memory instead of reading it into the java heap
+     * @throws IOException
+     */
+    public HeapModifier(final File heapFile, final int keylength, final ByteOrder ordering, final boolean offHeapIndex) throws IOException {
+        super(heapFile, keylength, ordering, offHeapIndex);
+    }
+
     /**
      * clears the content of the database
      * @throws IOException
      */
     @Override
     public synchronized void clear() throws IOException {
+        unmap();
         this.index.clear();
         this.free.clear();
         this.file.close();
@@ -78,7 +91,8 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void close(boolean writeIDX) {
-        shrinkWithGapsAtEnd();
+        // a mapped file must not be truncated while concurrent readers may still access the mapping
+        if (!isMapped()) shrinkWithGapsAtEnd();
         super.close(writeIDX);
     }
 
@@ -241,6 +255,38 @@ public class HeapModifier extends HeapReader implements BLOB {
         }
     }
 
+    /**
+     * move a rewritten BLOB which does not fit into its old record to the end of the file and free the old record.
+     * The key stays in the index, only its position changes.
+     * @param key the normalized key
+     * @param pos the position of the old record
+     * @param blob the rewritten BLOB
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    private void relocate(final byte[] key, final long pos, final byte[] blob) throws IOException, SpaceExceededException {
+        final boolean wasMapped = isMapped();
+        if (wasMapped) unmap(); // the mapping does not cover the appended record
+
+        // append the new record
+        final long newpos = this.file.length();
+        this.file.seek(newpos);
+        this.file.writeInt(blob.length + key.length);
+        this.file.write(key);
+        this.file.write(blob);
+        this.index.put(key, newpos);
+
+        // free the old record
+        this.file.seek(pos);
+        final int size = this.file.readInt();
+        this.free.put(pos, size);
+        this.file.write(new byte[size], 0, size);
+        tryMergeNextGaps(pos, size);
+        tryMergePreviousGap(pos);
+
+        if (wasMapped) map();
+    }
+
 	@Override
     public void insert(byte[] key, byte[] b) throws IOException {
 		throw new UnsupportedOperationException("put is not supported in BLOBHeapModifier");
@@ -299,7 +345,11 @@ public class HeapModifier extends HeapReader implements BLOB {
 
             // the new entry must be smaller than the old entry and must at least be 4 bytes smaller
             // because that is the space needed to write a new empty entry record at the end of the gap
-            if (blob.length > len - 4) throw new IOException("replace of BLOB for key " + UTF8.String(key) + " failed (too large): new size = " + blob.length + ", old size = " + (len - 4));
+            if (blob.length > len - 4) {
+                // this happens if the reducer does not only remove parts of the BLOB but encodes it again
+                relocate(key, pos, blob);
+                return Math.max(0, reduction);
+            }
 
             // replace old content
             this.file.seek(pos);
@@ -29,12 +29,14 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
@@ -46,8 +48,11 @@ import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.BloomFilter;
+import net.yacy.kelondro.index.OffHeapHandleMap;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.io.CachedFileWriter;
+import net.yacy.kelondro.io.MappedFileReader;
 import net.yacy.kelondro.io.Writer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
@@ -64,23 +69,45 @@ public class HeapReader {
     protected int                keylength;  // the length of the primary key
     protected File               heapFile;   // the file of the heap
     protected final ByteOrder    ordering;   // the ordering on keys
+    private   final boolean      offHeapIndex; // if true, an index dump is mapped into memory instead of reading it into the java heap
 
     // computed values
     protected Writer             file;       // a random access to the file
     protected HandleMap          index;      // key/seek relation for used records
     protected Gap                free;       // set of {seek, size} pairs denoting space and position of free records
     private   File               fingerprintFileIdx, fingerprintFileGap; // files with dumped indexes. Will be deleted if file is written
+    private   File               fingerprintFileBloom; // file with a dumped key filter. Will be deleted if file is written
+    private volatile BloomFilter keyFilter;  // a filter of all keys in the index; null if the heap is not filtered
     private   Date               closeDate;  // records a time when the file was closed; used for debugging
+    private volatile MappedFileReader mapped; // a read-only memory mapping of the heap file; null if reads go through the file
 
     public HeapReader(
             final File heapFile,
             final int keylength,
             final ByteOrder ordering) throws IOException {
+        this(heapFile, keylength, ordering, false);
+    }
+
+    /**
+     * @param heapFile
+     * @param keylength
+     * @param ordering
+     * @param offHeapIndex if true, an existing index dump is mapped into memory as an off-heap index and is
+     * not read into the java heap; this must only be used for heap files which do not get new entries any more
+     * @throws IOException
+     */
+    public HeapReader(
+            final File heapFile,
+            final int keylength,
+            final ByteOrder ordering,
+            final boolean offHeapIndex) throws IOException {
         this.ordering = ordering;
+        this.offHeapIndex = offHeapIndex;
         this.heapFile = heapFile;
         this.keylength = keylength;
         this.index = null; // will be created as result of initialization process
         this.free = null; // will be initialized later depending on existing idx/gap file
+        this.mapped = null;
         this.heapFile.getParentFile().mkdirs();
         this.file = new CachedFileWriter(this.heapFile);
         this.closeDate = null;
@@ -88,6 +115,8 @@ public class HeapReader {
         // read or initialize the index
         this.fingerprintFileIdx = null;
         this.fingerprintFileGap = null;
+        this.fingerprintFileBloom = null;
+        this.keyFilter = null;
         if (initIndexReadDump()) {
             // verify that everything worked just fine
             // pick some elements of the index
@@ -135,6 +164,121 @@ public class HeapReader {
         this.index.optimize();
     }
 
+    /**
+     * switch read operations to a memory mapping of the heap file.
+     * When the heap is mapped, get(), length() and containsKey() do not synchronize any more
+     * and can be called concurrently without serializing on the file pointer.
+     * This must only be used for heap files which do not grow any more, because the mapping
+     * covers only the file size at the time of this call. Deletions and in-place reductions
+     * are still possible since they do not change the file size.
+     * If the mapping fails, the heap continues to use file access.
+     * @return true if the file is mapped
+     */
+    public boolean map() {
+        if (this.mapped != null) return true;
+        try {
+            this.mapped = new MappedFileReader(this.heapFile);
+            return true;
+        } catch (final IOException e) {
+            log.warn("cannot map " + this.heapFile.toString() + " into memory, using file access: " + e.getMessage());
+            return false;
+        } catch (final OutOfMemoryError e) {
+            // may happen on 32-bit systems if the address space is exhausted
+            log.warn("cannot map " + this.heapFile.toString() + " into memory, using file access: " + e.getMessage());
+            return false;
+        }
+    }
+
+    protected void unmap() {
+        final MappedFileReader m = this.mapped;
+        this.mapped = null;
+        if (m != null) m.close();
+    }
+
+    public boolean isMapped() {
+        return this.mapped != null;
+    }
+
+    /**
+     * initialize a bloom filter for the keys of this heap. The filter is read from a dump
+     * next to the index dump if one exists, otherwise it is computed from the index.
+     * Once a filter exists, lookups for keys which are not in this heap are answered without
+     * any access to the index. Since the filter cannot learn new keys, this must only be used for
+     * heap files which do not get new entries any more; deletions are possible.
+     * @return true if the heap has a key filter
+     */
+    public boolean initKeyFilter() {
+        if (this.keyFilter != null) return true;
+        final HandleMap idx = this.index;
+        if (idx == null) return false;
+        final String fingerprint = fingerprintFileHash(this.heapFile);
+        if (fingerprint != null) {
+            final File f = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+            if (f.exists()) try {
+                this.keyFilter = BloomFilter.load(f);
+                this.fingerprintFileBloom = f;
+                return true;
+            } catch (final IOException e) {
+                log.warn("cannot read key filter dump " + f.getName() + ", computing a new one: " + e.getMessage());
+                FileUtils.deletedelete(f);
+            }
+        }
+        synchronized (idx) {
+            this.keyFilter = BloomFilter.create(idx.keys(true, null), idx.size());
+        }
+        return true;
+    }
+
+    /**
+     * replace the index of this heap with an index which is stored outside of the java heap.
+     * The index is dumped next to the heap file if no uncompressed dump exists and the dump is then
+     * mapped into memory. Since the off-heap index cannot learn new keys, this must only be used for
+     * heap files which do not get new entries any more; deletions are possible.
+     * @return true if the index of the heap is off-heap
+     */
+    public synchronized boolean moveIndexOffHeap() {
+        if (this.index instanceof OffHeapHandleMap) return true;
+        if (this.index == null || this.free == null) return false;
+        final String fingerprint = fingerprintFileHash(this.heapFile);
+        if (fingerprint == null) return false;
+        final File idxFile = HeapWriter.fingerprintIndexFile(this.heapFile, fingerprint);
+        File gapFile = HeapWriter.fingerprintGapFile(this.heapFile, fingerprint);
+        try {
+            if (!idxFile.exists()) this.index.dump(idxFile);
+            final File gzIdxFile = new File(idxFile.getAbsolutePath() + ".gz");
+            if (gzIdxFile.exists()) FileUtils.deletedelete(gzIdxFile);
+            if (!gapFile.exists()) {
+                final File gzGapFile = new File(gapFile.getAbsolutePath() + ".gz");
+                if (gzGapFile.exists()) gapFile = gzGapFile; else this.free.dump(gapFile);
+            }
+            final OffHeapHandleMap offheap = new OffHeapHandleMap(this.keylength, this.ordering, 8, idxFile);
+            if (offheap.size() != this.index.size()) {
+                offheap.close();
+                log.warn("off-heap index of " + this.heapFile.getName() + " has " + offheap.size() + " entries but the index has " + this.index.size() + "; using the index in memory");
+                FileUtils.deletedelete(idxFile);
+                return false;
+            }
+            this.index.close();
+            this.index = offheap;
+            this.fingerprintFileIdx = idxFile;
+            this.fingerprintFileGap = gapFile;
+            return true;
+        } catch (final IOException e) {
+            log.warn("cannot move the index of " + this.heapFile.getName() + " off the heap: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * check if a key may be contained in this heap. This is a fast pre-check which does not use the index.
+     * @param key
+     * @return false if the key is surely not in the heap, true if it may be in the heap
+     */
+    public boolean mightContainKey(final byte[] key) {
+        final BloomFilter filter = this.keyFilter;
+        return filter == null || filter.mightContain(normalizeKey(key));
+    }
+
     protected byte[] normalizeKey(byte[] key) {
         // check size of key: zero-filled keys are only possible of the ordering is
         // an instance of the natural ordering. Base64-orderings cannot use zeros in keys.
@@ -174,8 +318,9 @@ public class HeapReader {
         }
 
         // there is an index and a gap file:
-        // read the index file:
-        try {
+        // map the index file or read the index file:
+        if (this.offHeapIndex) this.index = openOffHeapIndex();
+        if (this.index == null) try {
             this.index = new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
@@ -205,6 +350,30 @@ public class HeapReader {
         return !this.index.isEmpty();
     }
 
+    /**
+     * map the index dump into memory without reading it into the java heap. A compressed dump
+     * is decompressed into an uncompressed dump first, because only that can be mapped.
+     * @return the off-heap index or null if the dump cannot be mapped
+     */
+    private HandleMap openOffHeapIndex() {
+        File idxFile = this.fingerprintFileIdx;
+        try {
+            if (idxFile.getName().endsWith(".gz")) {
+                final File plainFile = new File(idxFile.getParentFile(), idxFile.getName().substring(0, idxFile.getName().length() - 3));
+                try (final InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(idxFile), 1024 * 1024))) {
+                    FileUtils.copy(is, plainFile);
+                }
+                FileUtils.deletedelete(idxFile);
+                idxFile = plainFile;
+                this.fingerprintFileIdx = plainFile;
+            }
+            return new OffHeapHandleMap(this.keylength, this.ordering, 8, idxFile);
+        } catch (final IOException e) {
+            log.warn("cannot map the index dump of " + this.heapFile.getName() + ", reading it into memory: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * deletion of the fingerprint: this should happen if the heap is written or entries are deleted
      * if the files are not deleted then it may be possible that they are not used anyway because the
@@ -220,6 +389,10 @@ public class HeapReader {
             FileUtils.deletedelete(this.fingerprintFileGap);
             this.fingerprintFileGap = null;
         }
+        if (this.fingerprintFileBloom != null) {
+            FileUtils.deletedelete(this.fingerprintFileBloom);
+            this.fingerprintFileBloom = null;
+        }
     }
 
     protected static String fingerprintFileHash(File f) {
@@ -242,7 +415,8 @@ public class HeapReader {
             if (l[i].endsWith(".idx") ||
                 l[i].endsWith(".gap") ||
                 l[i].endsWith(".idx.gz") ||
-                l[i].endsWith(".gap.gz")
+                l[i].endsWith(".gap.gz") ||
+                l[i].endsWith(".blm")
                ) FileUtils.deletedelete(new File(d, l[i]));
         }
     }
@@ -387,6 +561,12 @@ public class HeapReader {
             return false;
         }
         key = normalizeKey(key);
+        final BloomFilter filter = this.keyFilter;
+        if (filter != null && !filter.mightContain(key)) return false;
+
+        // the index is thread-safe itself; a mapped heap does not need to block concurrent readers
+        final HandleMap idx = this.index;
+        if (this.mapped != null && idx != null) return idx.get(key) >= 0;
 
         synchronized (this.index) {
             // check if the file index contains the key
@@ -488,6 +668,11 @@ public class HeapReader {
             return null;
         }
         key = normalizeKey(key);
+        final BloomFilter filter = this.keyFilter;
+        if (filter != null && !filter.mightContain(key)) return null;
+
+        final MappedFileReader m = this.mapped;
+        if (m != null) return getMapped(m, key);
 
         synchronized (this.index) {
             // check if the index contains the key
@@ -549,6 +734,67 @@ public class HeapReader {
         }
     }
 
+    /**
+     * read a blob from the memory mapping without any lock.
+     * Concurrent deletions or reductions may change a record while it is read; therefore the record
+     * header is checked again after the blob has been copied and the read is repeated if it changed.
+     * @param m the mapping
+     * @param key the normalized key
+     * @return the blob or null if it does not exist
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    private byte[] getMapped(final MappedFileReader m, final byte[] key) throws IOException, SpaceExceededException {
+        final HandleMap idx = this.index; // may be set to null by a concurrent close
+        if (idx == null) return null;
+        final byte[] keyf = new byte[this.keylength];
+        for (int attempt = 0; attempt < 3; attempt++) {
+            // check if the index contains the key
+            final long pos = idx.get(key);
+            if (pos < 0) return null;
+            if (pos + 4 + this.keylength > m.length()) return null; // not inside the mapping, cannot happen for records that existed when the file was mapped
+
+            // read the record header
+            final int reclen = m.readInt(pos);
+            final int len = reclen - this.keylength;
+            if (len < 0 || pos + 4 + reclen > m.length()) {
+                if (idx.get(key) != pos) continue; // the record was changed concurrently
+                log.severe("file " + this.heapFile + " corrupted at " + pos + ": len = " + len + ", pk.len = " + this.keylength);
+                idx.remove(key);
+                return null;
+            }
+            m.readFully(pos + 4, keyf, 0, keyf.length);
+            if (!this.ordering.equal(key, keyf)) {
+                if (idx.get(key) != pos) continue; // the record was deleted or moved concurrently
+                log.severe("indexed verification access failed for " + this.heapFile.toString());
+                idx.remove(key);
+                return null;
+            }
+
+            long memr = len + this.keylength + 64;
+            if (MemoryControl.available() < memr) {
+                if (!MemoryControl.request(memr, true)) throw new SpaceExceededException(memr, "HeapReader.get()/check"); // not enough memory available for this blob
+            }
+            byte[] blob;
+            try {
+                blob = new byte[len];
+            } catch (final OutOfMemoryError e) {
+                // try once again after GC
+                MemoryControl.gc(1000, "HeapReader.get()/blob");
+                try {
+                    blob = new byte[len];
+                } catch (final OutOfMemoryError ee) {
+                    throw new SpaceExceededException(len, "HeapReader.get()/blob");
+                }
+            }
+            m.readFully(pos + 4 + this.keylength, blob, 0, blob.length);
+
+            // verify that the record was not changed while we read it
+            if (m.readInt(pos) == reclen && m.readByte(pos + 4) != 0) return blob;
+        }
+        return null;
+    }
+
     public byte[] get(Object key) {
         if (!(key instanceof byte[])) return null;
         try {
@@ -585,6 +831,16 @@ public class HeapReader {
             return 0;
         }
         key = normalizeKey(key);
+        final BloomFilter filter = this.keyFilter;
+        if (filter != null && !filter.mightContain(key)) return -1;
+
+        final MappedFileReader m = this.mapped;
+        final HandleMap idx = this.index;
+        if (m != null && idx != null) {
+            final long pos = idx.get(key);
+            if (pos < 0 || pos + 4 > m.length()) return -1;
+            return m.readInt(pos) - this.keylength;
+        }
 
         synchronized (this.index) {
             // check if the index contains the key
@@ -597,12 +853,51 @@ public class HeapReader {
         }
     }
 
+    /**
+     * read the first bytes of a BLOB. This is cheaper than get() if only a header of the BLOB is needed.
+     * @param key
+     * @param n the maximum number of bytes
+     * @return the first n bytes of the BLOB (less if the BLOB is shorter) or null if the BLOB does not exist
+     * @throws IOException
+     */
+    public byte[] head(byte[] key, final int n) throws IOException {
+        if (this.index == null) return null;
+        key = normalizeKey(key);
+        final BloomFilter filter = this.keyFilter;
+        if (filter != null && !filter.mightContain(key)) return null;
+
+        final MappedFileReader m = this.mapped;
+        final HandleMap idx = this.index;
+        if (m != null && idx != null) {
+            final long pos = idx.get(key);
+            if (pos < 0 || pos + 4 > m.length()) return null;
+            final int len = Math.min(n, m.readInt(pos) - this.keylength);
+            if (len < 0 || pos + 4 + this.keylength + len > m.length()) return null;
+            final byte[] b = new byte[len];
+            m.readFully(pos + 4 + this.keylength, b, 0, len);
+            return b;
+        }
+
+        synchronized (this.index) {
+            final long pos = this.index.get(key);
+            if (pos < 0) return null;
+            this.file.seek(pos);
+            final int len = Math.min(n, this.file.readInt() - this.keylength);
+            if (len < 0) return null;
+            this.file.seek(pos + 4 + this.keylength);
+            final byte[] b = new byte[len];
+            this.file.readFully(b, 0, len);
+            return b;
+        }
+    }
+
     /**
      * close the BLOB table
      */
     public void close(boolean writeIDX) {
         if (this.index == null) return;
         synchronized (this.index) {
+            unmap();
             try {
             if (this.file != null)
     			try {
@@ -643,6 +938,10 @@ public class HeapReader {
                             this.index.dump(newFingerprintFileIdx);
                             log.info("wrote a dump for the " + this.index.size() +  " index entries of " + this.heapFile.getName()+ " in " + (System.currentTimeMillis() - start) + " milliseconds.");
                         }
+                        File newFingerprintFileBloom = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+                        if (this.keyFilter != null && !newFingerprintFileBloom.exists()) {
+                            this.keyFilter.dump(newFingerprintFileBloom);
+                        }
                     }
                     this.index.close();
                     this.index = null;
@@ -654,6 +953,7 @@ public class HeapReader {
             this.free = null;
             if (this.index != null) this.index.close();
             this.index = null;
+            this.keyFilter = null;
             this.closeDate = new Date();
             } catch (Throwable e) {ConcurrentLog.logException(e);}
             log.info("close HeapFile " + this.heapFile.getName() + "; trace: " + ConcurrentLog.stackTrace());
@@ -50,6 +50,7 @@ import net.yacy.cora.sorting.ScoreMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.util.BinaryRecord;
 
 
 public class MapDataMining extends MapHeap {
@@ -71,8 +72,9 @@ public class MapDataMining extends MapHeap {
             final int cachesize,
             final String[] sortfields,
             final String[] longaccfields,
-            final String[] floataccfields) throws IOException {
-        super(heapFile, keylength, ordering, buffermax, cachesize, ' ');
+            final String[] floataccfields,
+            final BinaryRecord.Schema schema) throws IOException {
+        super(heapFile, keylength, ordering, buffermax, cachesize, ' ', schema);
 
         // create fast ordering clusters and acc fields
         this.sortfields = sortfields;
@@ -501,7 +503,7 @@ public class MapDataMining extends MapHeap {
         try {
             File f = new File("/tmp/MapDataMinig.test.db");
             f.delete();
-            final MapDataMining db = new MapDataMining(f, Word.commonHashLength, Base64Order.enhancedCoder, 1024 * 512, 500, new String[] {"X"}, new String[] {"X"}, new String[] {});
+            final MapDataMining db = new MapDataMining(f, Word.commonHashLength, Base64Order.enhancedCoder, 1024 * 512, 500, new String[] {"X"}, new String[] {"X"}, new String[] {}, BinaryRecord.NONE);
             final Map<String, String> m1 = new HashMap<String, String>();
             long t = System.currentTimeMillis();
             m1.put("X", Long.toString(t));
@@ -55,6 +55,7 @@ import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.BinaryRecord;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.RotateIterator;
@@ -64,6 +65,7 @@ public class MapHeap implements Map<byte[], Map<String, String>> {
     private final BLOB blob;
     private final ARC<byte[], Map<String, String>> cache;
     private final char fillchar;
+    private final BinaryRecord.Schema schema;
 
 
     public MapHeap(
@@ -73,9 +75,24 @@ public class MapHeap implements Map<byte[], Map<String, String>> {
             final int buffermax,
             final int cachesize,
             final char fillchar) throws IOException {
+        this(heapFile, keylength, ordering, buffermax, cachesize, fillchar, BinaryRecord.NONE);
+    }
+
+    /**
+     * @param schema the column names which are stored as tags if the maps are written as binary records
+     */
+    public MapHeap(
+            final File heapFile,
+            final int keylength,
+            final ByteOrder ordering,
+            final int buffermax,
+            final int cachesize,
+            final char fillchar,
+            final BinaryRecord.Schema schema) throws IOException {
         this.blob = new Heap(heapFile, keylength, ordering, buffermax);
         this.cache = new ConcurrentARC<byte[], Map<String, String>>(cachesize, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()), ordering);
         this.fillchar = fillchar;
+        this.schema = schema;
     }
 
     /**
@@ -124,6 +141,7 @@ public class MapHeap implements Map<byte[], Map<String, String>> {
     }
 
     private static Map<String, String> bytes2map(final byte[] b) throws IOException, SpaceExceededException {
+        if (BinaryRecord.isBinary(b)) return BinaryRecord.decodeStrings(b, new ConcurrentHashMap<String, String>());
         final BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(b)));
         final Map<String, String> map = new ConcurrentHashMap<String, String>();
         String line;
@@ -145,6 +163,20 @@ public class MapHeap implements Map<byte[], Map<String, String>> {
         return map;
     }
 
+    private static byte[] map2bytes(final Map<String, String> map) {
+		String formattedTime;
+		try {
+			/* Prefer using first the shared and thread-safe DateTimeFormatter instance */
+			formattedTime = GenericFormatter.FORMAT_SHORT_SECOND.format(Instant.now());
+		} catch (final DateTimeException e) {
+			/* This should not happen, but rather than failing we fallback to the old formatter wich uses synchronization locks */
+			formattedTime = GenericFormatter.SHORT_SECOND_FORMATTER.format();
+		}
+		final String s = map2string(map, "W" + formattedTime + " ");
+        assert s != null;
+        return UTF8.getBytes(s);
+    }
+
 
     /**
      * write a whole byte array as Map to the table
@@ -158,17 +190,7 @@ public class MapHeap implements Map<byte[], Map<String, String>> {
         assert key.length > 0;
         assert newMap != null;
         key = normalizeKey(key);
-		String formattedTime;
-		try {
-			/* Prefer using first the shared and thread-safe DateTimeFormatter instance */
-			formattedTime = GenericFormatter.FORMAT_SHORT_SECOND.format(Instant.now());
-		} catch (final DateTimeException e) {
-			/* This should not happen, but rather than failing we fallback to the old formatter wich uses synchronization locks */
-			formattedTime = GenericFormatter.SHORT_SECOND_FORMATTER.format();
-		}
-		final String s = map2string(newMap, "W" + formattedTime + " ");
-        assert s != null;
-        final byte[] sb = UTF8.getBytes(s);
+        final byte[] sb = BinaryRecord.writeBinaryRecords ? BinaryRecord.encodeStrings(newMap, this.schema) : map2bytes(newMap);
         if (this.cache == null) {
             // write entry
             if (this.blob != null) this.blob.insert(key, sb);
@@ -62,6 +62,7 @@ public class Tables implements Iterable<String> {
     private final static String p2 = "((?:";
     private final static String p3 = ")(?:,.*|$)){";
     private final static String CIDX = "_cidx";
+    private final static String SIDX = ".sidx";
     private final static int NOINDEX = 50000;
     private final static int RAMINDEX = 100000;
 
@@ -72,6 +73,7 @@ public class Tables implements Iterable<String> {
     private final File location;
     private final ConcurrentHashMap<String, BEncodedHeap> tables;
     private final ConcurrentHashMap<String, TablesColumnIndex> cidx;
+    private final ConcurrentHashMap<String, Map<String, TablesSortedIndex>> sidx; // the sorted indexes of the open tables
     private int keymaxlen;
 
     // use our own formatter to prevent concurrency locks with other processes
@@ -95,6 +97,7 @@ public class Tables implements Iterable<String> {
             }
         }
         this.cidx = new ConcurrentHashMap<String, TablesColumnIndex>();
+        this.sidx = new ConcurrentHashMap<String, Map<String, TablesSortedIndex>>();
     }
 
     public TablesColumnIndex getIndex(final String tableName, TablesColumnIndex.INDEXTYPE indexType) throws TableColumnIndexException, IOException {
@@ -175,6 +178,99 @@ public class Tables implements Iterable<String> {
     	return false;
     }
 
+    private File sortedIndexFile(final String tablename, final String column) {
+        return new File(this.location, tablename + "." + column + SIDX);
+    }
+
+    /**
+     * create a sorted index on a column of a table. The index is persistent: it is loaded whenever the table is
+     * opened and it is maintained with all changes of the table which are done with the methods of this class.
+     * Rows which are changed directly in the heap of the table are not indexed.
+     * An existing index on the column is returned if it has the same type; otherwise it is replaced.
+     * @param tablename the table
+     * @param column the column to index
+     * @param type the order of the column values
+     * @return the index
+     * @throws IOException
+     */
+    public TablesSortedIndex createSortedIndex(final String tablename, final String column, final TablesSortedIndex.TYPE type) throws IOException {
+        final BEncodedHeap heap = getHeap(tablename);
+        final Map<String, TablesSortedIndex> indexes = this.sidx.get(tablename);
+        if (indexes == null) throw new IOException("table " + tablename + " was closed");
+        synchronized (indexes) {
+            TablesSortedIndex index = indexes.get(column);
+            if (index != null && index.type() == type) return index;
+            index = new TablesSortedIndex(column, type);
+            index.build(heap);
+            index.dump(sortedIndexFile(tablename, column), heap.size(), false);
+            indexes.put(column, index);
+            return index;
+        }
+    }
+
+    /**
+     * @return the sorted index on a column of a table or null if the column has no sorted index
+     */
+    public TablesSortedIndex getSortedIndex(final String tablename, final String column) {
+        try {
+            getHeap(tablename);
+        } catch (final IOException e) {
+            return null;
+        }
+        final Map<String, TablesSortedIndex> indexes = this.sidx.get(tablename);
+        return indexes == null ? null : indexes.get(column);
+    }
+
+    public void deleteSortedIndex(final String tablename, final String column) {
+        final Map<String, TablesSortedIndex> indexes = this.sidx.get(tablename);
+        if (indexes != null) indexes.remove(column);
+        FileUtils.deletedelete(sortedIndexFile(tablename, column));
+    }
+
+    private void loadSortedIndexes(final String tablename, final BEncodedHeap heap) {
+        final Map<String, TablesSortedIndex> indexes = new ConcurrentHashMap<String, TablesSortedIndex>();
+        final String[] files = this.location.list();
+        if (files != null) for (final String f: files) {
+            if (!f.startsWith(tablename + ".") || !f.endsWith(SIDX)) continue;
+            final File file = new File(this.location, f);
+            try {
+                final TablesSortedIndex index = TablesSortedIndex.load(file, heap);
+                if (f.equals(sortedIndexFile(tablename, index.column()).getName())) indexes.put(index.column(), index);
+            } catch (final IOException e) {
+                ConcurrentLog.warn("Tables", "cannot load sorted index " + file + ": " + e.getMessage());
+                FileUtils.deletedelete(file);
+            }
+        }
+        this.sidx.put(tablename, indexes);
+    }
+
+    private void dumpSortedIndexes(final String tablename, final int size) {
+        final Map<String, TablesSortedIndex> indexes = this.sidx.remove(tablename);
+        if (indexes == null) return;
+        for (final TablesSortedIndex index: indexes.values()) {
+            try {
+                index.dump(sortedIndexFile(tablename, index.column()), size, true);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+        }
+    }
+
+    private Collection<TablesSortedIndex> sortedIndexes(final String tablename) {
+        final Map<String, TablesSortedIndex> indexes = this.sidx.get(tablename);
+        return indexes == null ? new ArrayList<TablesSortedIndex>(0) : indexes.values();
+    }
+
+    /**
+     * get the lock for the changes of a table. A change of the heap and the change of the sorted indexes
+     * are done while this lock is held, so that an index which is built at the same time does not miss a row.
+     * @return the lock object of the table
+     */
+    private Object changeLock(final String tablename, final BEncodedHeap heap) {
+        final Map<String, TablesSortedIndex> indexes = this.sidx.get(tablename);
+        return indexes == null ? heap : indexes;
+    }
+
     public Iterator<Row> getByIndex(final String table, final String whereColumn, final String separator, final String whereValue) {
     	final HashSet<Tables.Row> rows = new HashSet<Tables.Row>();
     	final TreeSet<byte[]> set1 = new TreeSet<byte[]>(TablesColumnIndex.NATURALORDER);
@@ -267,11 +363,15 @@ public class Tables implements Iterable<String> {
     public void close(final String tablename) {
         final BEncodedHeap heap = this.tables.remove(tablename);
         if (heap == null) return;
+        dumpSortedIndexes(tablename, heap.size());
         heap.close();
     }
 
     public synchronized void close() {
-        for (final BEncodedHeap heap: this.tables.values()) heap.close();
+        for (final Map.Entry<String, BEncodedHeap> entry: this.tables.entrySet()) {
+            dumpSortedIndexes(entry.getKey(), entry.getValue().size());
+            entry.getValue().close();
+        }
         this.tables.clear();
     }
     
@@ -285,7 +385,11 @@ public class Tables implements Iterable<String> {
             BEncodedHeap heap = getHeap(tablename);
             if (heap != null) {
                 final File f = heap.getFile();
-                heap.clear();
+                synchronized (changeLock(tablename, heap)) {
+                    heap.clear();
+                    for (final TablesSortedIndex index: sortedIndexes(tablename)) index.clear();
+                }
+                dumpSortedIndexes(tablename, 0);
                 heap.close();
                 FileUtils.deletedelete(f);
                 heap = null;
@@ -312,15 +416,21 @@ public class Tables implements Iterable<String> {
      * @throws IOException
      */
     public BEncodedHeap getHeap(final String tablename) throws IOException {
-        final String table = tablename + suffix;
         BEncodedHeap heap = this.tables.get(tablename);
         if (heap != null) return heap;
 
-        // open a new heap and register it in the tables
-        final File heapf = new File(this.location, table);
-        heap = new BEncodedHeap(heapf, this.keymaxlen);
-        this.tables.put(tablename, heap);
-        return heap;
+        synchronized (this) {
+            // check again: another thread may have opened the heap while we were waiting
+            heap = this.tables.get(tablename);
+            if (heap != null) return heap;
+
+            // open a new heap and register it in the tables
+            final File heapf = new File(this.location, tablename + suffix);
+            heap = new BEncodedHeap(heapf, this.keymaxlen);
+            loadSortedIndexes(tablename, heap);
+            this.tables.put(tablename, heap);
+            return heap;
+        }
     }
 
     /**
@@ -384,38 +494,34 @@ public class Tables implements Iterable<String> {
 
     public void insert(final String table, final byte[] pk, final Map<String, byte[]> map) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.insert(pk, map);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
+        synchronized (changeLock(table, heap)) {
+            try {
+                heap.insert(pk, map);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            for (final TablesSortedIndex index: sortedIndexes(table)) index.put(pk, map);
         }
     }
 
     public void insert(final String table, final Row row) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.insert(row.pk, row);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        insert(table, row.pk, row);
     }
 
     public void update(final String table, final byte[] pk, final Map<String, byte[]> map) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.update(pk, map);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
+        synchronized (changeLock(table, heap)) {
+            try {
+                heap.update(pk, map);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            for (final TablesSortedIndex index: sortedIndexes(table)) index.update(pk, map, heap);
         }
     }
 
     public void update(final String table, final Row row) throws IOException {
-        final BEncodedHeap heap = getHeap(table);
-        try {
-            heap.update(row.pk, row);
-        } catch (final SpaceExceededException e) {
-            throw new IOException(e.getMessage());
-        }
+        update(table, row.pk, row);
     }
 
     public byte[] createRow(final String table) throws IOException, SpaceExceededException {
@@ -431,7 +537,10 @@ public class Tables implements Iterable<String> {
 
     public void delete(final String table, final byte[] pk) throws IOException {
         final BEncodedHeap heap = getHeap(table);
-        heap.delete(pk);
+        synchronized (changeLock(table, heap)) {
+            heap.delete(pk);
+            for (final TablesSortedIndex index: sortedIndexes(table)) index.remove(pk);
+        }
     }
 
     public boolean has(final String table, final byte[] key) throws IOException {
@@ -454,6 +563,8 @@ public class Tables implements Iterable<String> {
     }
 
     public Iterator<Row> iterator(final String table, final String whereColumn, final byte[] whereValue) throws IOException {
+        final TablesSortedIndex index = whereValue == null ? null : getSortedIndex(table, whereColumn);
+        if (index != null) return new IndexRowIterator(table, index.equal(whereValue), whereColumn, whereValue, Integer.MAX_VALUE);
         return new HeapRowIterator(table, whereColumn, whereValue);
     }
 
@@ -470,6 +581,9 @@ public class Tables implements Iterable<String> {
     }
 
     public Iterator<Row> iterator(final String table, final String whereColumn, final byte[] whereValue, final boolean up) throws IOException {
+        // rows with the same value are ordered by their primary key in a sorted index
+        final TablesSortedIndex index = whereValue == null ? null : getSortedIndex(table, whereColumn);
+        if (index != null) return new IndexRowIterator(table, index.range(whereValue, true, whereValue, true, up), whereColumn, whereValue, Integer.MAX_VALUE);
         return new OrderedRowIterator(table, whereColumn, whereValue, up);
     }
 
@@ -480,6 +594,53 @@ public class Tables implements Iterable<String> {
     public Iterator<Row> iterator(final String table, final Pattern wherePattern, final boolean up) throws IOException {
         return new OrderedRowIterator(table, wherePattern, up);
     }
+
+    /**
+     * select the rows of a table with a column value in a range, ordered by the column value.
+     * A sorted index on the column is used if it exists with the given type; otherwise the table is scanned
+     * and sorted, with the same order and the same result.
+     * @param table the table
+     * @param column the column
+     * @param type the order of the column values
+     * @param from the lower bound as a column value (inclusive) or null for no lower bound
+     * @param to the upper bound as a column value (inclusive) or null for no upper bound
+     * @param sortDir the order of the result. When null, {@link SortDirection#ASC} is applied.
+     * @param limit the maximum number of rows
+     * @return the rows
+     * @throws IOException
+     */
+    public Iterator<Row> range(final String table, final String column, final TablesSortedIndex.TYPE type,
+            final byte[] from, final byte[] to, final SortDirection sortDir, final int limit) throws IOException {
+        return new IndexRowIterator(table, sortedIndex(table, column, type).range(from, true, to, true, sortDir != SortDirection.DESC), null, null, limit);
+    }
+
+    /**
+     * select the rows of a table where the value of a column starts with a prefix, ordered by the column value
+     * @see #range(String, String, TablesSortedIndex.TYPE, byte[], byte[], SortDirection, int)
+     */
+    public Iterator<Row> prefix(final String table, final String column, final byte[] prefix, final SortDirection sortDir, final int limit) throws IOException {
+        return new IndexRowIterator(table, sortedIndex(table, column, TablesSortedIndex.TYPE.STRING).prefix(prefix, sortDir != SortDirection.DESC), null, null, limit);
+    }
+
+    /**
+     * all rows of a table ordered by the value of a column; rows with the same value are ordered by their primary key.
+     * This is the same order as in the static orderBy methods, but a sorted index on the column is used if it exists.
+     * @see #range(String, String, TablesSortedIndex.TYPE, byte[], byte[], SortDirection, int)
+     */
+    public Iterator<Row> orderBy(final String table, final String column, final TablesSortedIndex.TYPE type, final SortDirection sortDir, final int limit) throws IOException {
+        return range(table, column, type, null, null, sortDir, limit);
+    }
+
+    /**
+     * @return the sorted index on a column with the given type or a temporary index created with a scan of the table
+     */
+    private TablesSortedIndex sortedIndex(final String table, final String column, final TablesSortedIndex.TYPE type) throws IOException {
+        final TablesSortedIndex index = getSortedIndex(table, column);
+        if (index != null && index.type() == type) return index;
+        final TablesSortedIndex scan = new TablesSortedIndex(column, type);
+        scan.build(getHeap(table));
+        return scan;
+    }
     
 	/**
 	 * @param rowIterator
@@ -724,6 +885,51 @@ public class Tables implements Iterable<String> {
         }
     }
 
+    /**
+     * iterator over the rows of a sequence of primary keys, typically from a sorted index
+     */
+    public class IndexRowIterator extends LookAheadIterator<Row> implements Iterator<Row> {
+
+        private final Iterator<byte[]> pks;
+        private final BEncodedHeap heap;
+        private final String whereColumn;
+        private final byte[] whereValue;
+        private int limit;
+
+        /**
+         * @param table the table
+         * @param pks the primary keys of the rows
+         * @param whereColumn a column which must have the value whereValue, or null
+         * @param whereValue the value of the column whereColumn
+         * @param limit the maximum number of rows
+         * @throws IOException
+         */
+        public IndexRowIterator(final String table, final Iterator<byte[]> pks, final String whereColumn, final byte[] whereValue, final int limit) throws IOException {
+            this.pks = pks;
+            this.heap = getHeap(table);
+            this.whereColumn = whereColumn;
+            this.whereValue = whereValue;
+            this.limit = limit;
+        }
+
+        @Override
+        protected Row next0() {
+            while (this.limit > 0 && this.pks.hasNext()) {
+                final byte[] pk = this.pks.next();
+                try {
+                    final Map<String, byte[]> map = this.heap.get(pk);
+                    if (map == null) continue;
+                    if (this.whereValue != null && !Arrays.equals(map.get(this.whereColumn), this.whereValue)) continue;
+                    this.limit--;
+                    return new Row(pk, map);
+                } catch (IOException | SpaceExceededException e) {
+                    continue;
+                }
+            }
+            return null;
+        }
+    }
+
     public class OrderedRowIterator extends LookAheadIterator<Row> implements Iterator<Row> {
 
         private final String whereColumn;
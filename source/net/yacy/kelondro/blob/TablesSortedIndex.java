@@ -0,0 +1,409 @@
+// TablesSortedIndex.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import net.yacy.cora.date.GenericFormatter;
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.ByteArray;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.FileUtils;
+
+
+/**
+ * a sorted secondary index on one column of a table in Tables. The index maps the values of the column
+ * to the primary keys of the rows and answers equality, range, prefix and ordered queries without a scan
+ * of the table. The index is held in RAM and is maintained by Tables with every change of the table.
+ * It is written to a dump file when the table is closed; an index without a clean dump is rebuilt with
+ * one scan of the table when the table is opened.
+ */
+public class TablesSortedIndex {
+
+    /**
+     * the interpretation of the column values for the order of the index
+     */
+    public static enum TYPE {
+        /** order of the bytes of the value; a missing value is the empty string */
+        STRING,
+        /** order of the decimal value; missing or not parsable values are lower than all numbers */
+        NUMBER,
+        /** order of dates in the format of Tables.Data.put(String, Date); missing or not parsable dates are lower than all dates */
+        DATE
+    }
+
+    private static final String MAGIC = "YaCy-sidx-1";
+    private static final byte[] EMPTY = new byte[0];
+
+    // use our own formatter to prevent concurrency locks with other processes
+    private final static GenericFormatter my_SHORT_MILSEC_FORMATTER  = new GenericFormatter(GenericFormatter.newShortMilsecFormat(), 1);
+
+    private final String column;
+    private final TYPE type;
+    private final ConcurrentSkipListSet<Entry> index;
+    private final Map<ByteArray, Entry> pks; // the current entry of each primary key, to remove the old value on update
+
+    public TablesSortedIndex(final String column, final TYPE type) {
+        this.column = column;
+        this.type = type;
+        this.index = new ConcurrentSkipListSet<Entry>();
+        this.pks = new ConcurrentHashMap<ByteArray, Entry>();
+    }
+
+    public String column() {
+        return this.column;
+    }
+
+    public TYPE type() {
+        return this.type;
+    }
+
+    public int size() {
+        return this.pks.size();
+    }
+
+    /**
+     * index a row of the table; an existing entry of the row is replaced
+     * @param pk the primary key of the row
+     * @param row the complete row
+     */
+    public synchronized void put(final byte[] pk, final Map<String, byte[]> row) {
+        final Entry entry = entry(row.get(this.column), pk);
+        final Entry old = this.pks.put(new ByteArray(pk), entry);
+        if (old != null) this.index.remove(old);
+        this.index.add(entry);
+    }
+
+    /**
+     * index the change of a row which is merged into an existing row of the table
+     * @param pk the primary key of the row
+     * @param change the changed columns of the row
+     * @param table the table which already contains the merged row; the row is read if it was not indexed before
+     * @throws IOException
+     */
+    public synchronized void update(final byte[] pk, final Map<String, byte[]> change, final BEncodedHeap table) throws IOException {
+        if (change.containsKey(this.column)) {
+            put(pk, change);
+        } else if (!this.pks.containsKey(new ByteArray(pk))) {
+            // a new row: the column value may be in the part of the row which was not changed
+            final Map<String, byte[]> row;
+            try {
+                row = table.get(pk);
+            } catch (final SpaceExceededException e) {
+                throw new IOException(e.getMessage());
+            }
+            put(pk, row == null ? change : row);
+        }
+    }
+
+    public synchronized void remove(final byte[] pk) {
+        final Entry old = this.pks.remove(new ByteArray(pk));
+        if (old != null) this.index.remove(old);
+    }
+
+    public synchronized void clear() {
+        this.pks.clear();
+        this.index.clear();
+    }
+
+    /**
+     * iterate the primary keys of all rows in the order of the column values
+     * @param up true for ascending order
+     */
+    public Iterator<byte[]> all(final boolean up) {
+        return range(null, true, null, true, up);
+    }
+
+    /**
+     * iterate the primary keys of the rows with the given column value
+     */
+    public Iterator<byte[]> equal(final byte[] value) {
+        return range(value, true, value, true, true);
+    }
+
+    /**
+     * iterate the primary keys of the rows where the column value starts with a given prefix;
+     * this is only possible for an index of type STRING
+     * @param up true for ascending order
+     */
+    public Iterator<byte[]> prefix(final byte[] prefix, final boolean up) {
+        assert this.type == TYPE.STRING;
+        // the smallest value which is greater than all values with the given prefix
+        int p = prefix.length;
+        while (p > 0 && prefix[p - 1] == (byte) 0xff) p--;
+        byte[] next = null;
+        if (p > 0) {
+            next = new byte[p];
+            System.arraycopy(prefix, 0, next, 0, p);
+            next[p - 1]++;
+        }
+        return range(prefix, true, next, false, up);
+    }
+
+    /**
+     * iterate the primary keys of the rows with a column value between two dates
+     * @param from the lower bound or null for no lower bound
+     * @param to the upper bound or null for no upper bound
+     * @param up true for ascending order
+     */
+    public Iterator<byte[]> range(final Date from, final Date to, final boolean up) {
+        assert this.type == TYPE.DATE;
+        return range(
+                from == null ? null : new Entry(from.getTime(), null, -1), to == null ? null : new Entry(to.getTime(), null, 1), up);
+    }
+
+    /**
+     * iterate the primary keys of the rows with a column value between two numbers
+     * @param from the lower bound, inclusive
+     * @param to the upper bound, inclusive
+     * @param up true for ascending order
+     */
+    public Iterator<byte[]> range(final long from, final long to, final boolean up) {
+        assert this.type != TYPE.STRING;
+        return range(new Entry(from, null, -1), new Entry(to, null, 1), up);
+    }
+
+    /**
+     * iterate the primary keys of the rows with a column value in a range
+     * @param from the lower bound as a column value or null for no lower bound
+     * @param fromInclusive true if the rows with the value from are included
+     * @param to the upper bound as a column value or null for no upper bound
+     * @param toInclusive true if the rows with the value to are included
+     * @param up true for ascending order
+     */
+    public Iterator<byte[]> range(final byte[] from, final boolean fromInclusive, final byte[] to, final boolean toInclusive, final boolean up) {
+        // bounds are entries without primary key which are ordered before or after all entries with the same value
+        final Entry lower = from == null ? null : this.bound(from, fromInclusive ? -1 : 1);
+        final Entry upper = to == null ? null : this.bound(to, toInclusive ? 1 : -1);
+        return range(lower, upper, up);
+    }
+
+    private Iterator<byte[]> range(final Entry lower, final Entry upper, final boolean up) {
+        NavigableSet<Entry> set = this.index;
+        if (lower != null && upper != null) {
+            if (lower.compareTo(upper) > 0) set = new ConcurrentSkipListSet<Entry>();
+            else set = set.subSet(lower, false, upper, false);
+        } else if (lower != null) {
+            set = set.tailSet(lower, false);
+        } else if (upper != null) {
+            set = set.headSet(upper, false);
+        }
+        final Iterator<Entry> i = up ? set.iterator() : set.descendingIterator();
+        return new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+            @Override
+            public byte[] next() {
+                return i.next().pk;
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Entry bound(final byte[] value, final int bound) {
+        if (this.type == TYPE.STRING) return new Entry(0, value, bound);
+        return new Entry(number(value), null, bound);
+    }
+
+    private Entry entry(final byte[] value, final byte[] pk) {
+        if (this.type == TYPE.STRING) return new Entry(0, value == null ? EMPTY : value, pk);
+        return new Entry(number(value), null, pk);
+    }
+
+    /**
+     * the order number of a NUMBER or DATE value; this is the same conversion as in the get methods of Tables.Data
+     */
+    private long number(final byte[] value) {
+        if (value == null) return Long.MIN_VALUE;
+        try {
+            if (this.type == TYPE.NUMBER) return ByteArray.parseDecimal(value);
+            return my_SHORT_MILSEC_FORMATTER.parse(UTF8.String(value), 0).getTime().getTime();
+        } catch (final NumberFormatException e) {
+            return Long.MIN_VALUE;
+        } catch (final ParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * write the index to a dump file
+     * @param file the dump file
+     * @param tablesize the number of rows of the table; the dump is only used for a table of this size
+     * @param clean false to write only the definition of the index; such a dump is rebuilt when it is loaded
+     */
+    public synchronized void dump(final File file, final int tablesize, final boolean clean) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+            os.writeUTF(MAGIC);
+            os.writeUTF(this.column);
+            os.writeUTF(this.type.name());
+            os.writeBoolean(clean);
+            os.writeInt(tablesize);
+            os.writeInt(clean ? this.index.size() : 0);
+            if (clean) for (final Entry e: this.index) {
+                os.writeShort(e.pk.length);
+                os.write(e.pk);
+                if (this.type == TYPE.STRING) {
+                    os.writeInt(e.value.length);
+                    os.write(e.value);
+                } else {
+                    os.writeLong(e.number);
+                }
+            }
+        } finally {
+            os.close();
+        }
+        FileUtils.deletedelete(file);
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+    }
+
+    /**
+     * load an index from a dump file. The index is rebuilt with a scan of the table if the dump is not clean
+     * or if it was written for a different table size. The dump is marked as not clean afterwards, so that
+     * it is rebuilt after a crash when the table was changed without writing the index.
+     * @param file the dump file
+     * @param table the table of the index
+     * @return the index
+     */
+    public static TablesSortedIndex load(final File file, final BEncodedHeap table) throws IOException {
+        final TablesSortedIndex index;
+        boolean rebuild;
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (!MAGIC.equals(is.readUTF())) throw new IOException("not a sorted index dump: " + file);
+            index = new TablesSortedIndex(is.readUTF(), TYPE.valueOf(is.readUTF()));
+            final boolean clean = is.readBoolean();
+            rebuild = !clean || is.readInt() != table.size();
+            if (!rebuild) {
+                final int count = is.readInt();
+                for (int i = 0; i < count; i++) {
+                    final byte[] pk = new byte[is.readUnsignedShort()];
+                    is.readFully(pk);
+                    final Entry e;
+                    if (index.type == TYPE.STRING) {
+                        final byte[] value = new byte[is.readInt()];
+                        is.readFully(value);
+                        e = new Entry(0, value, pk);
+                    } else {
+                        e = new Entry(is.readLong(), null, pk);
+                    }
+                    index.index.add(e);
+                    index.pks.put(new ByteArray(pk), e);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("bad sorted index dump " + file + ": " + e.getMessage());
+        } finally {
+            is.close();
+        }
+        if (rebuild) {
+            ConcurrentLog.info("TablesSortedIndex", "rebuilding index of column " + index.column + " for " + table.getFile().getName());
+            index.build(table);
+        }
+        index.dump(file, table.size(), false);
+        return index;
+    }
+
+    /**
+     * fill the index with all rows of a table
+     */
+    public synchronized void build(final BEncodedHeap table) {
+        this.clear();
+        final Iterator<Map.Entry<byte[], Map<String, byte[]>>> i = table.iterator();
+        Map.Entry<byte[], Map<String, byte[]>> row;
+        while (i.hasNext()) {
+            row = i.next();
+            if (row != null) put(row.getKey(), row.getValue());
+        }
+    }
+
+    /**
+     * an entry of the index is ordered by the value and then by the primary key.
+     * Bounds for range queries have no primary key and are ordered before (bound = -1) or after (bound = 1)
+     * all entries with the same value.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        private final long number; // the value of NUMBER and DATE columns
+        private final byte[] value; // the value of STRING columns
+        private final byte[] pk;
+        private final int bound;
+
+        private Entry(final long number, final byte[] value, final byte[] pk) {
+            this.number = number;
+            this.value = value;
+            this.pk = pk;
+            this.bound = 0;
+        }
+
+        private Entry(final long number, final byte[] value, final int bound) {
+            this.number = number;
+            this.value = value;
+            this.pk = null;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            if (this.number != other.number) return this.number < other.number ? -1 : 1;
+            if (this.value != null) {
+                final int c = NaturalOrder.naturalOrder.compare(this.value, other.value);
+                if (c != 0) return c;
+            }
+            if (this.bound != 0 || other.bound != 0) return this.bound - other.bound;
+            return NaturalOrder.naturalOrder.compare(this.pk, other.pk);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.pk == null ? 0 : ByteArray.hashCode(this.pk);
+        }
+    }
+}
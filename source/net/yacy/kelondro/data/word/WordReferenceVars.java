@@ -44,6 +44,7 @@ import net.yacy.kelondro.rwi.AbstractReference;
 import net.yacy.kelondro.rwi.Reference;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.workflow.SearchExecutor;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 
 
@@ -539,9 +540,10 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
     /**
      * transform a reference container into a stream of parsed entries
      * @param container
+     * @param group the group of the search tasks, may be null
      * @return a blocking queue filled with WordReferenceVars that is still filled when the object is returned
      */
-    public static BlockingQueue<WordReferenceVars> transform(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local) {
+    public static BlockingQueue<WordReferenceVars> transform(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local, final SearchExecutor.Group group) {
     	final LinkedBlockingQueue<WordReferenceVars> vars = new LinkedBlockingQueue<WordReferenceVars>();
     	if (container.size() <= 100) {
     	    // transform without concurrency to omit thread creation overhead
@@ -555,21 +557,23 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
             } catch (final InterruptedException e) {}
             return vars;
     	}
-    	final Thread distributor = new TransformDistributor(container, vars, maxtime, local);
+    	final SearchExecutor.Task distributor = new TransformDistributor(container, vars, maxtime, local, group);
     	distributor.start();
 
     	// return the resulting queue while the processing queues are still working
     	return vars;
     }
 
-    private static class TransformDistributor extends Thread {
+    private static class TransformDistributor extends SearchExecutor.Task {
 
     	private ReferenceContainer<WordReference> container;
     	private BlockingQueue<WordReferenceVars> out;
     	private long maxtime;
     	private final boolean local;
-    	private TransformDistributor(final ReferenceContainer<WordReference> container, final BlockingQueue<WordReferenceVars> out, final long maxtime, final boolean local) {
-    		super("WordReferenceVars.TransformDistributor");
+    	private final SearchExecutor.Group group;
+    	private TransformDistributor(final ReferenceContainer<WordReference> container, final BlockingQueue<WordReferenceVars> out, final long maxtime, final boolean local, final SearchExecutor.Group group) {
+    		super(group, "WordReferenceVars.TransformDistributor");
+    		this.group = group;
     		this.container = container;
     		this.out = out;
     		this.maxtime = maxtime;
@@ -582,7 +586,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         	final int cores0 = Math.min(WorkflowProcessor.availableCPU, this.container.size() / 100) + 1;
         	final TransformWorker[] worker = new TransformWorker[cores0];
         	for (int i = 0; i < cores0; i++) {
-        		worker[i] = new TransformWorker(this.out, this.maxtime, this.local);
+        		worker[i] = new TransformWorker(this.out, this.maxtime, this.local, this.group);
         		worker[i].start();
         	}
         	long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
@@ -615,15 +619,15 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
     	}
     }
 
-    private static class TransformWorker extends Thread {
+    private static class TransformWorker extends SearchExecutor.Task {
 
     	private BlockingQueue<Row.Entry> in;
     	private BlockingQueue<WordReferenceVars> out;
     	private long maxtime;
     	private final boolean local;
 
-    	private TransformWorker(final BlockingQueue<WordReferenceVars> out, final long maxtime, final boolean local) {
-    		super("WordReferenceVars.TransformWorker");
+    	private TransformWorker(final BlockingQueue<WordReferenceVars> out, final long maxtime, final boolean local, final SearchExecutor.Group group) {
+    		super(group, "WordReferenceVars.TransformWorker");
     		this.in = new LinkedBlockingQueue<Row.Entry>();
     		this.out = out;
     		this.maxtime = maxtime;
@@ -0,0 +1,185 @@
+// BloomFilter.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A bloom filter for byte[] keys. The filter answers the question if a key may be
+ * contained in a key set: a negative answer is always correct, a positive answer is
+ * wrong with a probability that depends on the number of bits per key
+ * (about 1% for the default of 10 bits per key).
+ * Keys cannot be removed; a filter of a set where keys were removed is still correct,
+ * only the false-positive rate becomes larger.
+ *
+ * Adding keys is not synchronized; concurrent reads are safe once all keys are added.
+ */
+public final class BloomFilter {
+
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private static final int MAGIC = 0x59426c6d; // "YBlm"
+
+    private final long[] bits;
+    private final long mask;     // number of bits - 1; the number of bits is a power of two
+    private final int hashes;    // number of hash functions
+    private int count;           // number of added keys, used for statistics only
+
+    /**
+     * create an empty filter
+     * @param expectedKeys the number of keys that shall be added
+     * @param bitsPerKey the number of bits per key; this defines the false-positive rate
+     */
+    public BloomFilter(final int expectedKeys, final int bitsPerKey) {
+        final long m = Math.max(64L, Long.highestOneBit(Math.max(1L, (long) expectedKeys * bitsPerKey) * 2 - 1));
+        this.bits = new long[(int) Math.min(1L << 30, m >>> 6)];
+        this.mask = (((long) this.bits.length) << 6) - 1;
+        this.hashes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+        this.count = 0;
+    }
+
+    private BloomFilter(final long[] bits, final int hashes, final int count) {
+        this.bits = bits;
+        this.mask = (((long) bits.length) << 6) - 1;
+        this.hashes = hashes;
+        this.count = count;
+    }
+
+    /**
+     * create a filter for all keys of an iterator
+     * @param keys the keys
+     * @param size the number of keys in the iterator
+     * @return a filter with the default false-positive rate
+     */
+    public static BloomFilter create(final Iterator<byte[]> keys, final int size) {
+        final BloomFilter filter = new BloomFilter(size, DEFAULT_BITS_PER_KEY);
+        while (keys.hasNext()) filter.add(keys.next());
+        return filter;
+    }
+
+    public void add(final byte[] key) {
+        final long h = hash(key);
+        final long h1 = h;
+        final long h2 = mix(h ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < this.hashes; i++) {
+            final long b = (h1 + i * h2) & this.mask;
+            this.bits[(int) (b >>> 6)] |= 1L << (b & 63);
+        }
+        this.count++;
+    }
+
+    /**
+     * check if a key may be contained in the filter
+     * @param key
+     * @return false if the key was never added, true if the key was probably added
+     */
+    public boolean mightContain(final byte[] key) {
+        final long h = hash(key);
+        final long h1 = h;
+        final long h2 = mix(h ^ 0x9E3779B97F4A7C15L) | 1L;
+        for (int i = 0; i < this.hashes; i++) {
+            final long b = (h1 + i * h2) & this.mask;
+            if ((this.bits[(int) (b >>> 6)] & (1L << (b & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public long mem() {
+        return 8L * this.bits.length + 32;
+    }
+
+    private static long hash(final byte[] key) {
+        // FNV-1a, finalized with a murmur3 mix to spread the bits
+        long h = 0xcbf29ce484222325L;
+        for (final byte b: key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * write the filter to a file
+     * @param file
+     * @throws IOException
+     */
+    public void dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(this.hashes);
+            os.writeInt(this.count);
+            os.writeInt(this.bits.length);
+            for (final long l: this.bits) os.writeLong(l);
+        } finally {
+            os.close();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+    }
+
+    /**
+     * read a filter from a file which was written with dump()
+     * @param file
+     * @return the filter
+     * @throws IOException if the file does not exist or is not a filter dump
+     */
+    public static BloomFilter load(final File file) throws IOException {
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (is.readInt() != MAGIC) throw new IOException("file " + file + " is not a bloom filter dump");
+            final int hashes = is.readInt();
+            final int count = is.readInt();
+            final int length = is.readInt();
+            if (hashes < 1 || hashes > 16 || length < 1 || Integer.bitCount(length) != 1 || 16L + 8L * length != file.length()) {
+                throw new IOException("bloom filter dump " + file + " is corrupted");
+            }
+            final long[] bits = new long[length];
+            for (int i = 0; i < length; i++) bits[i] = is.readLong();
+            return new BloomFilter(bits, hashes, count);
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -25,7 +25,9 @@
 package net.yacy.kelondro.index;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -143,6 +145,60 @@ public final class Cache implements Index, Iterable<Row.Entry> {
         return objectTracker.keySet().iterator();
     }
 
+    /**
+     * @return the memory of the read hit and miss caches of all objects in bytes
+     */
+    public static final long cacheMem() {
+        long mem = 0;
+        try {
+            for (final Cache cache: objectTracker.values()) mem += cache.cacheMem0();
+        } catch (final ConcurrentModificationException e) {
+            // we don't want to synchronize this; the value is an estimation anyway
+        }
+        return mem;
+    }
+
+    /**
+     * @return the rate of reads which are answered by the hit caches of all objects, or -1 if there was no read
+     */
+    public static final float hitRate() {
+        long hit = 0, miss = 0;
+        try {
+            for (final Cache cache: objectTracker.values()) {
+                hit += cache.readHit;
+                miss += cache.readMiss;
+            }
+        } catch (final ConcurrentModificationException e) {
+        }
+        return hit + miss == 0 ? -1 : (float) hit / (float) (hit + miss);
+    }
+
+    /**
+     * clear the largest caches until the caches of all objects use at most the given memory
+     * @param target the memory in bytes
+     */
+    public static final void shrinkCaches(final long target) {
+        final List<Cache> caches = new ArrayList<Cache>();
+        try {
+            caches.addAll(objectTracker.values());
+        } catch (final ConcurrentModificationException e) {
+            return;
+        }
+        long mem = 0;
+        for (final Cache cache: caches) mem += cache.cacheMem0();
+        while (mem > target && !caches.isEmpty()) {
+            Cache largest = caches.get(0);
+            for (final Cache cache: caches) if (cache.cacheMem0() > largest.cacheMem0()) largest = cache;
+            mem -= largest.cacheMem0();
+            largest.clearCache();
+            caches.remove(largest);
+        }
+    }
+
+    private final synchronized long cacheMem0() {
+        return (this.readHitCache == null ? 0 : this.readHitCache.mem()) + (this.readMissCache == null ? 0 : this.readMissCache.mem());
+    }
+
     public enum StatKeys {
         objectHitChunkSize,
         objectHitCacheCount,
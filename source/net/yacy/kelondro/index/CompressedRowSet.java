@@ -0,0 +1,375 @@
+// CompressedRowSet.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.MemoryControl;
+
+/**
+ * A compressed export format for sorted row collections. It is an alternative to the export
+ * of RowCollection.exportCollection() and has the same 14-byte header, but the order signature
+ * is replaced by the marker "zc" and the order bound field holds the number of blocks.
+ *
+ * The rows are sorted by the primary key and stored in blocks of BLOCK_SIZE rows:
+ * <ul>
+ * <li>the primary key is stored with the number of leading bytes that are shared with the previous key</li>
+ * <li>a varint bit mask marks all other columns which differ from the previous row</li>
+ * <li>differing b256 cardinal columns are stored as zig-zag varint of the difference to the previous row,
+ * all other differing columns are stored as raw bytes</li>
+ * </ul>
+ * Each block starts with an empty previous row, so that blocks can be decoded independently.
+ * A table of the first key and the offset of every block follows the header; this is used to
+ * jump to the block of a given key without decoding the rows before it.
+ */
+public final class CompressedRowSet {
+
+    private static final int BLOCK_SIZE = 64;
+    private static final int HEADER_SIZE = (int) RowCollection.exportOverheadSize;
+    private static final byte MARKER0 = 'z', MARKER1 = 'c';
+
+    private CompressedRowSet() {}
+
+    /**
+     * check if an exported collection is compressed
+     * @param b an exported collection
+     * @return true if the collection was exported with encode()
+     */
+    public static boolean isCompressed(final byte[] b) {
+        return b != null && b.length >= HEADER_SIZE && b[8] == MARKER0 && b[9] == MARKER1;
+    }
+
+    /**
+     * check if rows of a given definition can be compressed
+     * @param rowdef
+     * @return false if the row has too many columns for the column bit mask
+     */
+    public static boolean canEncode(final Row rowdef) {
+        return rowdef.columns() <= 64;
+    }
+
+    /**
+     * the number of rows in an exported collection; this works for compressed and uncompressed exports
+     * @param b the head of an exported collection; at least 4 bytes
+     * @return the number of rows
+     */
+    public static int size(final byte[] b) {
+        return (int) NaturalOrder.decodeLong(b, 0, 4);
+    }
+
+    private static boolean isNumeric(final Column col) {
+        return col.celltype == Column.celltype_cardinal && col.encoder == Column.encoder_b256 && col.cellwidth <= 8;
+    }
+
+    private static long readUnsigned(final byte[] b, final int off, final int width) {
+        long v = 0;
+        for (int i = 0; i < width; i++) v = (v << 8) | (b[off + i] & 0xff);
+        return v;
+    }
+
+    private static void writeUnsigned(final long v, final byte[] b, final int off, final int width) {
+        long w = v;
+        for (int i = width - 1; i >= 0; i--) {
+            b[off + i] = (byte) w;
+            w >>>= 8;
+        }
+    }
+
+    private static void writeVarLong(final ByteArrayOutputStream os, long v) {
+        while ((v & ~0x7FL) != 0) {
+            os.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        os.write((int) v);
+    }
+
+    /**
+     * encode a sorted row collection
+     * @param rowdef the row definition
+     * @param chunkcache the rows
+     * @param chunkcount the number of rows; the rows must be sorted and unique
+     * @param lastread the last-read date in days since 2000
+     * @param lastwrote the last-write date in days since 2000
+     * @return the compressed export
+     */
+    static byte[] encode(final Row rowdef, final byte[] chunkcache, final int chunkcount, final int lastread, final int lastwrote) {
+        assert canEncode(rowdef);
+        final int os = rowdef.objectsize;
+        final int keylen = rowdef.primaryKeyLength;
+        final int columns = rowdef.columns();
+        final boolean[] numeric = new boolean[columns];
+        for (int c = 1; c < columns; c++) numeric[c] = isNumeric(rowdef.column(c));
+        final int blocks = (chunkcount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int[] offsets = new int[blocks];
+        final ByteArrayOutputStream data = new ByteArrayOutputStream(Math.max(16, chunkcount * os / 2));
+        final byte[] prev = new byte[os];
+        for (int r = 0; r < chunkcount; r++) {
+            if (r % BLOCK_SIZE == 0) {
+                offsets[r / BLOCK_SIZE] = data.size();
+                Arrays.fill(prev, (byte) 0);
+            }
+            final int base = r * os;
+
+            // the key with the number of bytes that are shared with the previous key
+            int shared = 0;
+            while (shared < keylen && chunkcache[base + shared] == prev[shared]) shared++;
+            data.write(shared);
+            data.write(chunkcache, base + shared, keylen - shared);
+
+            // the mask of columns which differ from the previous row
+            long mask = 0;
+            for (int c = 1; c < columns; c++) {
+                final int start = rowdef.colstart[c];
+                final int width = rowdef.width(c);
+                for (int i = 0; i < width; i++) {
+                    if (chunkcache[base + start + i] != prev[start + i]) {
+                        mask |= 1L << (c - 1);
+                        break;
+                    }
+                }
+            }
+            writeVarLong(data, mask);
+
+            // the differing columns
+            for (int c = 1; c < columns; c++) {
+                if ((mask & (1L << (c - 1))) == 0) continue;
+                final int start = rowdef.colstart[c];
+                final int width = rowdef.width(c);
+                if (numeric[c]) {
+                    final long d = readUnsigned(chunkcache, base + start, width) - readUnsigned(prev, start, width);
+                    writeVarLong(data, (d << 1) ^ (d >> 63)); // zig-zag encoding
+                } else {
+                    data.write(chunkcache, base + start, width);
+                }
+            }
+            System.arraycopy(chunkcache, base, prev, 0, os);
+        }
+
+        final int tableEntry = keylen + 4;
+        final byte[] b = new byte[HEADER_SIZE + blocks * tableEntry + data.size()];
+        NaturalOrder.encodeLong(chunkcount, b, 0, 4);
+        NaturalOrder.encodeLong(lastread, b, 4, 2);
+        NaturalOrder.encodeLong(lastwrote, b, 6, 2);
+        b[8] = MARKER0;
+        b[9] = MARKER1;
+        NaturalOrder.encodeLong(blocks, b, 10, 4);
+        for (int k = 0; k < blocks; k++) {
+            System.arraycopy(chunkcache, k * BLOCK_SIZE * os, b, HEADER_SIZE + k * tableEntry, keylen);
+            NaturalOrder.encodeLong(offsets[k], b, HEADER_SIZE + k * tableEntry + keylen, 4);
+        }
+        final byte[] d = data.toByteArray();
+        System.arraycopy(d, 0, b, HEADER_SIZE + blocks * tableEntry, d.length);
+        return b;
+    }
+
+    /**
+     * decode a compressed export into a row set
+     * @param b the compressed export
+     * @param rowdef the row definition
+     * @return the row set; an empty row set if the export is corrupted
+     * @throws SpaceExceededException
+     */
+    public static RowSet importRowSet(final byte[] b, final Row rowdef) throws SpaceExceededException {
+        assert isCompressed(b);
+        final int size = size(b);
+        if (size <= 0) return new RowSet(rowdef, 0);
+        final long alloc = ((long) size) * ((long) rowdef.objectsize);
+        if (alloc > Integer.MAX_VALUE) throw new SpaceExceededException((int) alloc, "importRowSet: alloc > Integer.MAX_VALUE");
+        MemoryControl.request((int) alloc, true);
+        final byte[] chunkcache;
+        try {
+            chunkcache = new byte[(int) alloc];
+        } catch (final OutOfMemoryError e) {
+            throw new SpaceExceededException((int) alloc, "importRowSet: OutOfMemoryError");
+        }
+        try {
+            final Decoder decoder = new Decoder(b, rowdef);
+            int r = 0;
+            while (r < size && decoder.next(chunkcache, r * rowdef.objectsize)) r++;
+            if (r != size) {
+                ConcurrentLog.severe("CompressedRowSet", "compressed collection has " + r + " rows but the header announces " + size);
+                return new RowSet(rowdef, 0);
+            }
+        } catch (final RuntimeException e) {
+            ConcurrentLog.severe("CompressedRowSet", "compressed collection is corrupted: " + e.getMessage());
+            return new RowSet(rowdef, 0);
+        }
+        return new RowSet(rowdef, size, chunkcache, size);
+    }
+
+    /**
+     * iterate the rows of a compressed export without decoding the whole collection
+     * @param b the compressed export
+     * @param rowdef the row definition
+     * @return the rows in the order of the primary key
+     */
+    public static Iterator<Row.Entry> iterator(final byte[] b, final Row rowdef) {
+        final Decoder decoder = new Decoder(b, rowdef);
+        return new Iterator<Row.Entry>() {
+            private byte[] next = advance();
+            private byte[] advance() {
+                final byte[] row = new byte[rowdef.objectsize];
+                return decoder.next(row, 0) ? row : null;
+            }
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+            @Override
+            public Row.Entry next() {
+                if (this.next == null) throw new NoSuchElementException();
+                final Row.Entry entry = rowdef.newEntry(this.next);
+                this.next = advance();
+                return entry;
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * find a single row in a compressed export. Only the block which may contain the key is decoded.
+     * @param b the compressed export
+     * @param rowdef the row definition
+     * @param key the primary key
+     * @return the row or null if the key is not in the collection
+     */
+    public static Row.Entry get(final byte[] b, final Row rowdef, final byte[] key) {
+        final Decoder decoder = new Decoder(b, rowdef);
+        if (!decoder.seek(key)) return null;
+        final byte[] row = new byte[rowdef.objectsize];
+        final int keylen = rowdef.primaryKeyLength;
+        for (int i = 0; i < BLOCK_SIZE && decoder.next(row, 0); i++) {
+            final int c = rowdef.objectOrder.compare(row, 0, key, 0, keylen);
+            if (c == 0) return rowdef.newEntry(row);
+            if (c > 0) return null;
+        }
+        return null;
+    }
+
+    /**
+     * a sequential decoder of the rows
+     */
+    private static final class Decoder {
+
+        private final byte[] b;
+        private final Row rowdef;
+        private final boolean[] numeric;
+        private final int size, blocks, dataStart;
+        private final byte[] prev;
+        private int pos, row;
+
+        private Decoder(final byte[] b, final Row rowdef) {
+            this.b = b;
+            this.rowdef = rowdef;
+            final int columns = rowdef.columns();
+            this.numeric = new boolean[columns];
+            for (int c = 1; c < columns; c++) this.numeric[c] = isNumeric(rowdef.column(c));
+            this.size = size(b);
+            this.blocks = (int) NaturalOrder.decodeLong(b, 10, 4);
+            this.dataStart = HEADER_SIZE + this.blocks * (rowdef.primaryKeyLength + 4);
+            this.prev = new byte[rowdef.objectsize];
+            this.pos = this.dataStart;
+            this.row = 0;
+        }
+
+        private long readVarLong() {
+            long v = 0;
+            int shift = 0;
+            byte x;
+            do {
+                x = this.b[this.pos++];
+                v |= ((long) (x & 0x7F)) << shift;
+                shift += 7;
+            } while ((x & 0x80) != 0);
+            return v;
+        }
+
+        /**
+         * position the decoder at the start of the block which may contain the key
+         * @param key
+         * @return false if the key is smaller than the first key of the collection
+         */
+        private boolean seek(final byte[] key) {
+            final int keylen = this.rowdef.primaryKeyLength;
+            final int tableEntry = keylen + 4;
+            int lo = 0, hi = this.blocks - 1, found = -1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.rowdef.objectOrder.compare(this.b, HEADER_SIZE + mid * tableEntry, key, 0, keylen) <= 0) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (found < 0) return false;
+            this.pos = this.dataStart + (int) NaturalOrder.decodeLong(this.b, HEADER_SIZE + found * tableEntry + keylen, 4);
+            this.row = found * BLOCK_SIZE;
+            return true;
+        }
+
+        /**
+         * decode the next row
+         * @param target the array where the row is written to
+         * @param off the offset in the target array
+         * @return false if there is no more row
+         */
+        private boolean next(final byte[] target, final int off) {
+            if (this.row >= this.size) return false;
+            if (this.row % BLOCK_SIZE == 0) Arrays.fill(this.prev, (byte) 0);
+            final int keylen = this.rowdef.primaryKeyLength;
+            final int shared = this.b[this.pos++] & 0xff;
+            if (shared > keylen) throw new IllegalStateException("shared key length " + shared + " at row " + this.row);
+            System.arraycopy(this.prev, 0, target, off, this.rowdef.objectsize);
+            System.arraycopy(this.b, this.pos, target, off + shared, keylen - shared);
+            this.pos += keylen - shared;
+            final long mask = readVarLong();
+            final int columns = this.rowdef.columns();
+            for (int c = 1; c < columns; c++) {
+                if ((mask & (1L << (c - 1))) == 0) continue;
+                final int start = this.rowdef.colstart[c];
+                final int width = this.rowdef.width(c);
+                if (this.numeric[c]) {
+                    final long z = readVarLong();
+                    final long d = (z >>> 1) ^ -(z & 1);
+                    writeUnsigned(readUnsigned(this.prev, start, width) + d, target, off + start, width);
+                } else {
+                    System.arraycopy(this.b, this.pos, target, off + start, width);
+                    this.pos += width;
+                }
+            }
+            System.arraycopy(target, off, this.prev, 0, this.rowdef.objectsize);
+            this.row++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,763 @@
+// DiskHandleMap.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.storage.HandleMap;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A HandleMap which is stored on disk and needs only a bounded amount of memory in the java heap.
+ * New entries are written to a RowHandleMap buffer. When the buffer is full, it is written as a sorted
+ * generation file in the dump format of RowHandleMap; the generation files are never changed and are
+ * mapped into memory with an OffHeapHandleMap. Each generation has a bloom filter, so a lookup of a key
+ * which does not exist reads only the buffer and the filters. Removed keys of older generations are marked
+ * with a value of all one-bits in newer generations.
+ *
+ * Generations of similar size are merged in a background thread, so the number of generations grows
+ * only with the logarithm of the number of entries. A generation file is named with the range of
+ * flush numbers that it contains; after a crash, generations which are contained in a merged
+ * generation are deleted.
+ *
+ * The buffer is written to disk with flush() and close(); changes in the buffer are lost if the
+ * process ends without that.
+ */
+public final class DiskHandleMap implements HandleMap, Iterable<Map.Entry<byte[], Long>> {
+
+    private final static ConcurrentLog log = new ConcurrentLog("DiskHandleMap");
+
+    private static final long ABSENT = -2;
+
+    private final File path;
+    private final String prefix;
+    private final int keylength;
+    private final ByteOrder ordering;
+    private final int idxbytes;
+    private final long tombstone;
+    private final int bufferSize;
+    private final Pattern generationPattern;
+    private final RowHandleMap buffer;
+    private volatile Generation[] generations; // newest first
+    private volatile int size;
+    private long nextNumber;
+    private boolean merging;
+    private volatile boolean abort;
+
+    /**
+     * open a map in the given path; existing generations with the same prefix are opened
+     * @param path the directory of the generation files
+     * @param prefix the file name prefix of the generation files
+     * @param keylength the length of the keys
+     * @param objectOrder the order of the keys
+     * @param idxbytes the length of the values, less than 8
+     * @param bufferSize the number of entries in the java heap before they are written to disk
+     * @throws IOException
+     */
+    public DiskHandleMap(final File path, final String prefix, final int keylength, final ByteOrder objectOrder, final int idxbytes, final int bufferSize) throws IOException {
+        assert idxbytes < 8 : "idxbytes = " + idxbytes;
+        this.path = path;
+        this.prefix = prefix;
+        this.keylength = keylength;
+        this.ordering = objectOrder;
+        this.idxbytes = idxbytes;
+        this.tombstone = (1L << (8 * idxbytes)) - 1;
+        this.bufferSize = bufferSize;
+        this.generationPattern = Pattern.compile(Pattern.quote(prefix) + "\\.(\\d{12})-(\\d{12})\\.idx");
+        this.buffer = new RowHandleMap(keylength, objectOrder, idxbytes, Math.min(bufferSize, 100000), prefix + ".buffer");
+        this.merging = false;
+        this.abort = false;
+        if (!path.exists()) path.mkdirs();
+        this.generations = openGenerations();
+        this.nextNumber = this.generations.length == 0 ? 0 : this.generations[0].to + 1;
+        this.size = readCount();
+        if (this.size < 0) {
+            int c = 0;
+            final MergeIterator i = new MergeIterator(true, null);
+            while (i.key != null) {
+                c++;
+                i.advance();
+            }
+            this.size = c;
+        }
+        synchronized (this) {
+            scheduleMerge();
+        }
+    }
+
+    private File generationFile(final long from, final long to, final String extension) {
+        return new File(this.path, String.format("%s.%012d-%012d.%s", this.prefix, from, to, extension));
+    }
+
+    private File countFile() {
+        return new File(this.path, this.prefix + ".count");
+    }
+
+    private Generation[] openGenerations() throws IOException {
+        final ArrayList<long[]> ranges = new ArrayList<long[]>();
+        final String[] list = this.path.list();
+        if (list != null) for (final String name: list) {
+            if (name.startsWith(this.prefix + ".") && name.endsWith(".prt")) {
+                FileUtils.deletedelete(new File(this.path, name));
+                continue;
+            }
+            final Matcher m = this.generationPattern.matcher(name);
+            if (m.matches()) ranges.add(new long[]{Long.parseLong(m.group(1)), Long.parseLong(m.group(2))});
+        }
+        // newest first; a range which is contained in another range was merged before a crash
+        ranges.sort(new Comparator<long[]>() {
+            @Override
+            public int compare(final long[] a, final long[] b) {
+                return a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]);
+            }
+        });
+        final ArrayList<Generation> g = new ArrayList<Generation>();
+        long from = Long.MAX_VALUE;
+        for (final long[] r: ranges) {
+            if (r[1] >= from) {
+                FileUtils.deletedelete(generationFile(r[0], r[1], "idx"));
+                FileUtils.deletedelete(generationFile(r[0], r[1], "bloom"));
+                continue;
+            }
+            g.add(new Generation(r[0], r[1]));
+            from = r[0];
+        }
+        return g.toArray(new Generation[g.size()]);
+    }
+
+    /**
+     * read and delete the count file
+     * @return the number of entries or -1 if the count file does not match to the generations
+     */
+    private int readCount() {
+        final File f = countFile();
+        if (!f.exists()) return -1;
+        try {
+            final DataInputStream is = new DataInputStream(new FileInputStream(f));
+            try {
+                final int count = is.readInt();
+                final long newest = is.readLong();
+                return newest == (this.generations.length == 0 ? -1 : this.generations[0].to) ? count : -1;
+            } finally {
+                is.close();
+            }
+        } catch (final IOException e) {
+            return -1;
+        } finally {
+            FileUtils.deletedelete(f);
+        }
+    }
+
+    private void writeCount() throws IOException {
+        final DataOutputStream os = new DataOutputStream(new FileOutputStream(countFile()));
+        try {
+            os.writeInt(this.size);
+            os.writeLong(this.generations.length == 0 ? -1 : this.generations[0].to);
+        } finally {
+            os.close();
+        }
+    }
+
+    private byte[] normalizeKey(final byte[] key) {
+        if (key.length == this.keylength) return key;
+        final byte[] k = new byte[this.keylength];
+        System.arraycopy(key, 0, k, 0, Math.min(key.length, this.keylength));
+        return k;
+    }
+
+    /**
+     * find the value of a key in the buffer and the generations
+     * @param key a normalized key
+     * @return the value or -1 if the key does not exist or was removed
+     */
+    private long lookup(final byte[] key) {
+        // the buffer must be read first: a flush publishes the new generation before it clears the buffer
+        final long b = this.buffer.get(key);
+        if (b == this.tombstone) return -1;
+        if (b >= 0) return b;
+        for (final Generation g: this.generations) {
+            final long v = g.lookup(key);
+            if (v != ABSENT) return v;
+        }
+        return -1;
+    }
+
+    /**
+     * write the buffer as a new generation to disk
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (!this.buffer.isEmpty()) {
+            final long n = this.nextNumber++;
+            this.buffer.dump(generationFile(n, n, "idx"));
+            final Generation g = new Generation(n, n);
+            final Generation[] a = new Generation[this.generations.length + 1];
+            a[0] = g;
+            System.arraycopy(this.generations, 0, a, 1, this.generations.length);
+            this.generations = a;
+            this.buffer.clear();
+            scheduleMerge();
+        }
+        writeCount();
+    }
+
+    private void flushIfFull() {
+        if (this.buffer.size() < this.bufferSize) return;
+        try {
+            flush();
+        } catch (final IOException e) {
+            log.warn("cannot write buffer of " + this.prefix + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * find two neighbour generations of similar size
+     * @return the index of the newer generation or -1 if no generations shall be merged
+     */
+    private static int mergeCandidate(final Generation[] g) {
+        for (int i = 0; i < g.length - 1; i++) {
+            if (2L * g[i].map.rows() >= g[i + 1].map.rows()) return i;
+        }
+        return -1;
+    }
+
+    private void scheduleMerge() {
+        if (this.merging || this.abort || mergeCandidate(this.generations) < 0) return;
+        this.merging = true;
+        final Thread t = new Thread("DiskHandleMap.merge " + this.prefix) {
+            @Override
+            public void run() {
+                try {
+                    mergeAll();
+                } finally {
+                    synchronized (DiskHandleMap.this) {
+                        DiskHandleMap.this.merging = false;
+                        DiskHandleMap.this.notifyAll();
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void mergeAll() {
+        while (!this.abort) {
+            final Generation[] g = this.generations;
+            final int i = mergeCandidate(g);
+            if (i < 0) return;
+            final Generation newer = g[i], older = g[i + 1];
+            final Generation merged;
+            try {
+                merged = merge(newer, older, i + 2 == g.length);
+            } catch (final IOException e) {
+                if (!this.abort) log.warn("cannot merge generations of " + this.prefix + ": " + e.getMessage(), e);
+                return;
+            }
+            synchronized (this) {
+                // new generations may have been added in front of the merged generations
+                final Generation[] c = this.generations;
+                final Generation[] a = new Generation[c.length - 1];
+                int j = 0;
+                for (final Generation x: c) {
+                    if (x == older) continue;
+                    a[j++] = x == newer ? merged : x;
+                }
+                this.generations = a;
+            }
+            newer.delete();
+            older.delete();
+        }
+    }
+
+    /**
+     * merge two neighbour generations into a new generation
+     * @param newer the newer generation; its entries replace the entries of the older generation
+     * @param older the older generation
+     * @param oldest true if there is no generation which is older; then removed entries are dropped
+     * @return the merged generation
+     * @throws IOException
+     */
+    private Generation merge(final Generation newer, final Generation older, final boolean oldest) throws IOException {
+        final File file = generationFile(older.from, newer.to, "idx");
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        final BloomFilter filter = new BloomFilter(newer.map.rows() + older.map.rows(), BloomFilter.DEFAULT_BITS_PER_KEY);
+        final OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp), 1024 * 1024);
+        final byte[] row = new byte[this.keylength + this.idxbytes];
+        final byte[] a = new byte[this.keylength], b = new byte[this.keylength], k = new byte[this.keylength];
+        int ra = 0, rb = 0, c = 0;
+        final int na = newer.map.rows(), nb = older.map.rows();
+        try {
+            while (ra < na || rb < nb) {
+                if ((c++ & 0xffff) == 0 && this.abort) throw new IOException("merge aborted");
+                int cmp;
+                if (ra >= na) cmp = 1; else if (rb >= nb) cmp = -1; else {
+                    newer.map.readKey(ra, a);
+                    older.map.readKey(rb, b);
+                    cmp = this.ordering.compare(a, b);
+                }
+                final long v;
+                if (cmp <= 0) {
+                    newer.map.readKey(ra, row);
+                    v = newer.map.readValue(ra++);
+                    if (cmp == 0) rb++;
+                } else {
+                    older.map.readKey(rb, row);
+                    v = older.map.readValue(rb++);
+                }
+                if (v < 0) {
+                    if (oldest) continue;
+                    Arrays.fill(row, this.keylength, row.length, (byte) 0xff);
+                } else {
+                    NaturalOrder.encodeLong(v, row, this.keylength, this.idxbytes);
+                }
+                os.write(row);
+                System.arraycopy(row, 0, k, 0, this.keylength);
+                filter.add(k);
+            }
+            os.flush();
+        } finally {
+            os.close();
+            if (this.abort) FileUtils.deletedelete(tmp);
+        }
+        filter.dump(generationFile(older.from, newer.to, "bloom"));
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+        return new Generation(older.from, newer.to);
+    }
+
+    /**
+     * stop a running merge and wait until the merge thread terminated
+     */
+    private void abortMerge() {
+        this.abort = true;
+        while (this.merging) {
+            try {
+                this.wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.abort = false;
+    }
+
+    @Override
+    public long mem() {
+        long m = this.buffer.mem();
+        for (final Generation g: this.generations) m += g.filter.mem() + 64;
+        return m;
+    }
+
+    @Override
+    public void optimize() {
+        this.buffer.optimize();
+    }
+
+    @Override
+    public int dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp), 1024 * 1024);
+        int c = 0;
+        try {
+            if (file.getName().endsWith(".gz")) os = new GZIPOutputStream(os, 65536){{def.setLevel(Deflater.BEST_COMPRESSION);}};
+            final byte[] row = new byte[this.keylength + this.idxbytes];
+            final MergeIterator i = new MergeIterator(true, null);
+            while (i.key != null) {
+                System.arraycopy(i.key, 0, row, 0, this.keylength);
+                NaturalOrder.encodeLong(i.value, row, this.keylength, this.idxbytes);
+                os.write(row);
+                c++;
+                i.advance();
+            }
+            os.flush();
+        } finally {
+            os.close();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+        return c;
+    }
+
+    @Override
+    public synchronized void clear() {
+        abortMerge();
+        for (final Generation g: this.generations) g.delete();
+        this.generations = new Generation[0];
+        this.buffer.clear();
+        this.size = 0;
+        FileUtils.deletedelete(countFile());
+    }
+
+    @Override
+    public byte[] smallestKey() {
+        final MergeIterator i = new MergeIterator(true, null);
+        return i.key;
+    }
+
+    @Override
+    public byte[] largestKey() {
+        final MergeIterator i = new MergeIterator(false, null);
+        return i.key;
+    }
+
+    @Override
+    public boolean has(final byte[] key) {
+        return get(key) >= 0;
+    }
+
+    @Override
+    public long get(final byte[] key) {
+        assert key != null;
+        return lookup(normalizeKey(key));
+    }
+
+    @Override
+    public synchronized long put(final byte[] key, final long l) throws SpaceExceededException {
+        assert l >= 0 && l < this.tombstone : "l = " + l;
+        final byte[] k = normalizeKey(key);
+        final long old = lookup(k);
+        this.buffer.put(k, l);
+        if (old < 0) this.size++;
+        flushIfFull();
+        return old;
+    }
+
+    @Override
+    public void putUnique(final byte[] key, final long l) throws SpaceExceededException {
+        put(key, l);
+    }
+
+    @Override
+    public synchronized long add(final byte[] key, final long a) throws SpaceExceededException {
+        final byte[] k = normalizeKey(key);
+        final long old = lookup(k);
+        if (old < 0) {
+            put(k, a);
+            return 1;
+        }
+        put(k, old + a);
+        return old + a;
+    }
+
+    @Override
+    public long inc(final byte[] key) throws SpaceExceededException {
+        return add(key, 1);
+    }
+
+    @Override
+    public long dec(final byte[] key) throws SpaceExceededException {
+        return add(key, -1);
+    }
+
+    @Override
+    public ArrayList<long[]> removeDoubles() {
+        // the buffer and the generations have no double keys
+        return new ArrayList<long[]>(0);
+    }
+
+    @Override
+    public ArrayList<byte[]> top(final int count) {
+        final ArrayList<byte[]> list = new ArrayList<byte[]>();
+        final MergeIterator i = new MergeIterator(false, null);
+        while (i.key != null && list.size() < count) {
+            list.add(0, i.key);
+            i.advance();
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized long remove(final byte[] key) {
+        assert key != null;
+        final byte[] k = normalizeKey(key);
+        final long old = lookup(k);
+        if (old < 0) return -1;
+        // a key which is stored in a generation must be marked as removed
+        boolean stored = false;
+        for (final Generation g: this.generations) {
+            final long v = g.lookup(k);
+            if (v != ABSENT) {
+                stored = v >= 0;
+                break;
+            }
+        }
+        if (stored) {
+            try {
+                this.buffer.put(k, this.tombstone);
+            } catch (final SpaceExceededException e) {
+                ConcurrentLog.logException(e);
+                return -1;
+            }
+            flushIfFull();
+        } else {
+            this.buffer.remove(k);
+        }
+        this.size--;
+        return old;
+    }
+
+    @Override
+    public synchronized long removeone() {
+        final byte[] k = largestKey();
+        if (k == null) return -1;
+        return remove(k);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        final MergeIterator i = new MergeIterator(up, firstKey);
+        return new CloneableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return i.key != null;
+            }
+            @Override
+            public byte[] next() {
+                final byte[] k = i.key;
+                if (k == null) throw new NoSuchElementException();
+                i.advance();
+                return k;
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public CloneableIterator<byte[]> clone(final Object modifier) {
+                return keys(up, (byte[]) modifier);
+            }
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], Long>> iterator() {
+        final MergeIterator i = new MergeIterator(true, null);
+        return new Iterator<Map.Entry<byte[], Long>>() {
+            @Override
+            public boolean hasNext() {
+                return i.key != null;
+            }
+            @Override
+            public Map.Entry<byte[], Long> next() {
+                final byte[] k = i.key;
+                if (k == null) throw new NoSuchElementException();
+                final Map.Entry<byte[], Long> entry = new AbstractMap.SimpleImmutableEntry<byte[], Long>(k, i.value);
+                i.advance();
+                return entry;
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * write the buffer to disk and close the map
+     */
+    @Override
+    public synchronized void close() {
+        abortMerge();
+        this.abort = true; // no more merges
+        try {
+            flush();
+        } catch (final IOException e) {
+            log.warn("cannot write buffer of " + this.prefix + ": " + e.getMessage(), e);
+        }
+        this.buffer.close();
+        this.generations = new Generation[0];
+        this.size = 0;
+    }
+
+    /**
+     * a sorted generation file with its bloom filter. The file is never changed; the mapping of a deleted
+     * generation stays valid for iterators which still read it.
+     */
+    private final class Generation {
+
+        private final long from, to;
+        private final OffHeapHandleMap map;
+        private final BloomFilter filter;
+
+        private Generation(final long from, final long to) throws IOException {
+            this.from = from;
+            this.to = to;
+            this.map = new OffHeapHandleMap(DiskHandleMap.this.keylength, DiskHandleMap.this.ordering, DiskHandleMap.this.idxbytes, generationFile(from, to, "idx"));
+            final File bloomFile = generationFile(from, to, "bloom");
+            BloomFilter f = null;
+            if (bloomFile.exists()) try {
+                f = BloomFilter.load(bloomFile);
+            } catch (final IOException e) {
+                log.warn("rebuilding bloom filter " + bloomFile + ": " + e.getMessage());
+            }
+            if (f == null) {
+                f = new BloomFilter(this.map.rows(), BloomFilter.DEFAULT_BITS_PER_KEY);
+                final byte[] k = new byte[DiskHandleMap.this.keylength];
+                for (int r = 0; r < this.map.rows(); r++) {
+                    this.map.readKey(r, k);
+                    f.add(k);
+                }
+                f.dump(bloomFile);
+            }
+            this.filter = f;
+        }
+
+        /**
+         * @return the value of the key, -1 if the key is marked as removed or ABSENT if the key is not in this generation
+         */
+        private long lookup(final byte[] key) {
+            if (!this.filter.mightContain(key)) return ABSENT;
+            final int r = this.map.find(key);
+            if (r < 0) return ABSENT;
+            return this.map.readValue(r);
+        }
+
+        private void delete() {
+            FileUtils.deletedelete(generationFile(this.from, this.to, "idx"));
+            FileUtils.deletedelete(generationFile(this.from, this.to, "bloom"));
+        }
+    }
+
+    /**
+     * iterates the entries of the buffer and all generations in key order. Of equal keys, the newest
+     * entry is taken, and removed entries are skipped. The iterator reads the generations which
+     * existed when it was created.
+     */
+    private final class MergeIterator {
+
+        private final boolean up;
+        private final Iterator<Row.Entry> bufferRows;
+        private final Generation[] generations;
+        private final int[] rows;
+        private final byte[][] keys;   // the current key of the buffer (0) and each generation (1..n), null if exhausted
+        private final long[] values;
+        private byte[] key;
+        private long value;
+
+        private MergeIterator(final boolean up, final byte[] firstKey) {
+            this.up = up;
+            final byte[] first = firstKey == null ? null : normalizeKey(firstKey);
+            this.bufferRows = DiskHandleMap.this.buffer.rows(up, first);
+            this.generations = DiskHandleMap.this.generations;
+            this.rows = new int[this.generations.length];
+            this.keys = new byte[this.generations.length + 1][];
+            this.values = new long[this.generations.length + 1];
+            for (int g = 0; g < this.generations.length; g++) this.rows[g] = this.generations[g].map.startRow(up, first);
+            for (int c = 0; c <= this.generations.length; c++) next(c);
+            advance();
+        }
+
+        /**
+         * move a cursor to its next entry
+         * @param c 0 for the buffer, g + 1 for generation g
+         */
+        private void next(final int c) {
+            if (c == 0) {
+                if (this.bufferRows.hasNext()) {
+                    final Row.Entry e = this.bufferRows.next();
+                    this.keys[0] = e.getPrimaryKeyBytes();
+                    final long v = e.getColLong(1);
+                    this.values[0] = v == DiskHandleMap.this.tombstone ? -1 : v;
+                } else {
+                    this.keys[0] = null;
+                }
+                return;
+            }
+            final OffHeapHandleMap map = this.generations[c - 1].map;
+            final int r = this.rows[c - 1];
+            if (r < 0 || r >= map.rows()) {
+                this.keys[c] = null;
+                return;
+            }
+            final byte[] k = new byte[DiskHandleMap.this.keylength];
+            map.readKey(r, k);
+            this.keys[c] = k;
+            this.values[c] = map.readValue(r);
+            this.rows[c - 1] = this.up ? r + 1 : r - 1;
+        }
+
+        private void advance() {
+            while (true) {
+                int best = -1;
+                for (int c = 0; c < this.keys.length; c++) {
+                    if (this.keys[c] == null) continue;
+                    if (best < 0) {
+                        best = c;
+                        continue;
+                    }
+                    final int cmp = DiskHandleMap.this.ordering.compare(this.keys[c], this.keys[best]);
+                    if (this.up ? cmp < 0 : cmp > 0) best = c; // of equal keys, the newest cursor is kept
+                }
+                if (best < 0) {
+                    this.key = null;
+                    return;
+                }
+                final byte[] k = this.keys[best];
+                final long v = this.values[best];
+                for (int c = 0; c < this.keys.length; c++) {
+                    if (this.keys[c] != null && DiskHandleMap.this.ordering.equal(this.keys[c], k)) next(c);
+                }
+                if (v >= 0) {
+                    this.key = k;
+                    this.value = v;
+                    return;
+                }
+            }
+        }
+    }
+}
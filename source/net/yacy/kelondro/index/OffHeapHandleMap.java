@@ -0,0 +1,646 @@
+// OffHeapHandleMap.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.storage.HandleMap;
+import net.yacy.kelondro.io.MappedFileReader;
+
+/**
+ * A HandleMap which is stored outside of the java heap.
+ * The map uses the index dump format of RowHandleMap: a sequence of sorted rows, each row
+ * consisting of a fixed-width key and a b256-encoded value. The dump file is mapped into memory
+ * in copy-on-write mode; it is not deserialized and the file itself is never changed.
+ * Lookups are done with a binary search on the mapped rows and do not need any lock. The mapping is
+ * released explicitly by clear() and close() when the running lookups are finished, because on Windows
+ * a mapped file cannot be deleted before it is unmapped.
+ *
+ * The key set of this map is immutable: entries can be removed and values of existing keys can
+ * be changed, but new keys cannot be added. This fits to the index of heap files which do not get
+ * new entries any more. Removed entries are marked with a value of all one-bits.
+ */
+public final class OffHeapHandleMap implements HandleMap, Iterable<Map.Entry<byte[], Long>> {
+
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    /**
+     * the mapped rows together with the number of rows. The buffers are unmapped when the mapping is
+     * closed and the last access which acquired the mapping is finished.
+     */
+    private static final class Mapping {
+
+        /** added to the number of users when the mapping is closed */
+        private static final int CLOSED = 1 << 30;
+
+        private final MappedByteBuffer[] chunks;
+        private final int rows;               // number of rows including removed rows
+        private final AtomicInteger users;    // the number of running accesses, plus CLOSED after close()
+
+        private Mapping(final MappedByteBuffer[] chunks, final int rows) {
+            this.chunks = chunks;
+            this.rows = rows;
+            this.users = new AtomicInteger(0);
+        }
+
+        private boolean acquire() {
+            if (this.users.getAndIncrement() >= CLOSED) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        private void release() {
+            if (this.users.decrementAndGet() == CLOSED) unmap();
+        }
+
+        private void close() {
+            int u;
+            do {
+                u = this.users.get();
+                if (u >= CLOSED) return;
+            } while (!this.users.compareAndSet(u, u + CLOSED));
+            if (u == 0) unmap();
+        }
+
+        private void unmap() {
+            for (final MappedByteBuffer chunk: this.chunks) if (chunk != null) MappedFileReader.unmap(chunk);
+        }
+    }
+
+    private final int keylength;
+    private final int idxbytes;
+    private final int rowsize;
+    private final ByteOrder ordering;
+    private final int rowsPerChunk;
+    private volatile Mapping mapping;     // the mapped rows, null after close()
+    private volatile int size;            // number of rows which are not removed
+
+    /**
+     * map a dumped index into memory
+     * @param keylength the length of the keys
+     * @param objectOrder the order of the keys; the dump must be sorted with this order
+     * @param idxbytes the length of the values
+     * @param file a dump which was written by a HandleMap; must not be compressed
+     * @throws IOException if the file cannot be mapped or is not a valid dump
+     */
+    public OffHeapHandleMap(final int keylength, final ByteOrder objectOrder, final int idxbytes, final File file) throws IOException {
+        if (file.getName().endsWith(".gz")) throw new IOException("compressed dump " + file.getName() + " cannot be mapped");
+        this.keylength = keylength;
+        this.idxbytes = idxbytes;
+        this.rowsize = keylength + idxbytes;
+        this.ordering = objectOrder;
+        this.rowsPerChunk = CHUNK_BYTES / this.rowsize;
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw"); // copy-on-write mapping requires a writable channel
+        final Mapping m;
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long length = channel.size();
+            if (length % this.rowsize != 0) throw new IOException("dump " + file.getName() + " has a wrong size: " + length + " is not a multiple of " + this.rowsize);
+            if (length / this.rowsize > Integer.MAX_VALUE) throw new IOException("dump " + file.getName() + " is too large");
+            final int rows = (int) (length / this.rowsize);
+            final int count = (rows + this.rowsPerChunk - 1) / this.rowsPerChunk;
+            m = new Mapping(new MappedByteBuffer[count], rows);
+            try {
+                for (int i = 0; i < count; i++) {
+                    final long start = ((long) i) * this.rowsPerChunk * this.rowsize;
+                    m.chunks[i] = channel.map(FileChannel.MapMode.PRIVATE, start, Math.min(((long) this.rowsPerChunk) * this.rowsize, length - start));
+                }
+            } catch (final IOException e) {
+                m.close();
+                throw e;
+            }
+        } finally {
+            raf.close();
+        }
+        this.size = m.rows;
+        if (!sampleOrder(m)) {
+            m.close();
+            throw new IOException("dump " + file.getName() + " is not sorted");
+        }
+        this.mapping = m;
+    }
+
+    /**
+     * check the order of some rows. A full check would read the whole file, which shall be avoided at start-up.
+     * @return true if the sample was in order
+     */
+    private boolean sampleOrder(final Mapping m) {
+        if (m.rows < 2) return true;
+        final byte[] a = new byte[this.keylength];
+        final byte[] b = new byte[this.keylength];
+        final int step = Math.max(1, (m.rows - 1) / 64);
+        for (int r = 0; r < m.rows - 1; r += step) {
+            readKey(m, r, a);
+            readKey(m, r + 1, b);
+            if (this.ordering.compare(a, b) >= 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * get the mapping for an access; the mapping is not unmapped before it is released
+     * @return the mapping or null if the map is closed
+     */
+    private Mapping acquire() {
+        final Mapping m = this.mapping;
+        return (m != null && m.acquire()) ? m : null;
+    }
+
+    private ByteBuffer chunk(final Mapping m, final int row) {
+        return m.chunks[row / this.rowsPerChunk];
+    }
+
+    private int offset(final int row) {
+        return (row % this.rowsPerChunk) * this.rowsize;
+    }
+
+    /**
+     * @return the number of rows including removed rows
+     */
+    int rows() {
+        final Mapping m = this.mapping;
+        return m == null ? 0 : m.rows;
+    }
+
+    void readKey(final int row, final byte[] key) {
+        final Mapping m = acquire();
+        if (m == null) throw new IllegalStateException("map is closed");
+        try {
+            if (row >= m.rows) throw new IllegalStateException("map is cleared");
+            readKey(m, row, key);
+        } finally {
+            m.release();
+        }
+    }
+
+    private void readKey(final Mapping m, final int row, final byte[] key) {
+        final ByteBuffer b = chunk(m, row);
+        final int o = offset(row);
+        for (int i = 0; i < this.keylength; i++) key[i] = b.get(o + i);
+    }
+
+    private boolean isRemoved(final ByteBuffer b, final int o) {
+        for (int i = 0; i < this.idxbytes; i++) if (b.get(o + this.keylength + i) != (byte) 0xff) return false;
+        return true;
+    }
+
+    /**
+     * read the value of a row
+     * @param row
+     * @return the value or -1 if the row was removed
+     */
+    long readValue(final int row) {
+        final Mapping m = acquire();
+        if (m == null) return -1;
+        try {
+            return row < m.rows ? readValue(m, row) : -1;
+        } finally {
+            m.release();
+        }
+    }
+
+    private long readValue(final Mapping m, final int row) {
+        final ByteBuffer b = chunk(m, row);
+        final int o = offset(row);
+        if (isRemoved(b, o)) return -1;
+        if (this.idxbytes == 8) return b.getLong(o + this.keylength); // big-endian, same as b256
+        long v = 0;
+        for (int i = 0; i < this.idxbytes; i++) v = (v << 8) | (b.get(o + this.keylength + i) & 0xff);
+        return v;
+    }
+
+    private void writeValue(final Mapping m, final int row, final long v) {
+        final ByteBuffer b = chunk(m, row);
+        final int o = offset(row);
+        if (v < 0) {
+            for (int i = 0; i < this.idxbytes; i++) b.put(o + this.keylength + i, (byte) 0xff);
+        } else if (this.idxbytes == 8) {
+            b.putLong(o + this.keylength, v);
+        } else {
+            long w = v;
+            for (int i = this.idxbytes - 1; i >= 0; i--) {
+                b.put(o + this.keylength + i, (byte) (w & 0xff));
+                w >>= 8;
+            }
+        }
+    }
+
+    private byte[] normalizeKey(final byte[] key) {
+        if (key.length == this.keylength) return key;
+        final byte[] k = new byte[this.keylength];
+        System.arraycopy(key, 0, k, 0, Math.min(key.length, this.keylength));
+        return k;
+    }
+
+    /**
+     * binary search for a key, including removed rows
+     * @param key
+     * @return the row of the key, or (-(insertion point) - 1) if the key does not exist
+     */
+    int find(final byte[] key) {
+        final Mapping m = acquire();
+        if (m == null) return -1;
+        try {
+            return find(m, key);
+        } finally {
+            m.release();
+        }
+    }
+
+    private int find(final Mapping m, final byte[] key) {
+        final byte[] k = normalizeKey(key);
+        final byte[] probe = new byte[this.keylength];
+        int lo = 0;
+        int hi = m.rows - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            readKey(m, mid, probe);
+            final int c = this.ordering.compare(probe, k);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    @Override
+    public long mem() {
+        // the rows are not in the java heap
+        return 64;
+    }
+
+    /**
+     * the number of bytes which are mapped outside of the java heap
+     * @return the size of the mapped dump
+     */
+    public long offHeapMem() {
+        return ((long) rows()) * this.rowsize;
+    }
+
+    @Override
+    public void optimize() {
+        // nothing to do, the map has no spare space
+    }
+
+    @Override
+    public int dump(final File file) throws IOException {
+        final Mapping m = acquire();
+        if (m == null) throw new IOException("map is closed");
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        int c = 0;
+        try {
+            final FileOutputStream fileStream = new FileOutputStream(tmp);
+            OutputStream os = new BufferedOutputStream(fileStream, 1024 * 1024);
+            try {
+                if (file.getName().endsWith(".gz")) os = new GZIPOutputStream(os, 65536){{def.setLevel(Deflater.BEST_COMPRESSION);}};
+                final byte[] row = new byte[this.rowsize];
+                for (int r = 0; r < m.rows; r++) {
+                    final long v = readValue(m, r);
+                    if (v < 0) continue;
+                    readKey(m, r, row);
+                    NaturalOrder.encodeLong(v, row, this.keylength, this.idxbytes);
+                    os.write(row);
+                    c++;
+                }
+                os.flush();
+            } finally {
+                os.close();
+            }
+        } finally {
+            m.release();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+        return c;
+    }
+
+    @Override
+    public synchronized void clear() {
+        final Mapping m = this.mapping;
+        if (m == null) return;
+        this.mapping = new Mapping(new MappedByteBuffer[0], 0);
+        this.size = 0;
+        m.close();
+    }
+
+    @Override
+    public byte[] smallestKey() {
+        final Mapping m = acquire();
+        if (m == null) return null;
+        try {
+            for (int r = 0; r < m.rows; r++) {
+                if (readValue(m, r) >= 0) {
+                    final byte[] k = new byte[this.keylength];
+                    readKey(m, r, k);
+                    return k;
+                }
+            }
+            return null;
+        } finally {
+            m.release();
+        }
+    }
+
+    @Override
+    public byte[] largestKey() {
+        final Mapping m = acquire();
+        if (m == null) return null;
+        try {
+            for (int r = m.rows - 1; r >= 0; r--) {
+                if (readValue(m, r) >= 0) {
+                    final byte[] k = new byte[this.keylength];
+                    readKey(m, r, k);
+                    return k;
+                }
+            }
+            return null;
+        } finally {
+            m.release();
+        }
+    }
+
+    @Override
+    public boolean has(final byte[] key) {
+        return get(key) >= 0;
+    }
+
+    @Override
+    public long get(final byte[] key) {
+        assert key != null;
+        if (this.size == 0) return -1;
+        final Mapping m = acquire();
+        if (m == null) return -1;
+        try {
+            final int r = find(m, key);
+            if (r < 0) return -1;
+            return readValue(m, r);
+        } finally {
+            m.release();
+        }
+    }
+
+    /**
+     * get the mapping for a change; the changing methods are synchronized with clear() and close()
+     */
+    private Mapping mappingForChange() {
+        final Mapping m = this.mapping;
+        if (m == null) throw new IllegalStateException("map is closed");
+        return m;
+    }
+
+    @Override
+    public synchronized long put(final byte[] key, final long l) {
+        assert l >= 0 : "l = " + l;
+        final Mapping m = mappingForChange();
+        final int r = find(m, key);
+        if (r < 0) throw new UnsupportedOperationException("new keys cannot be added to an off-heap index");
+        final long old = readValue(m, r);
+        writeValue(m, r, l);
+        if (old < 0) this.size++;
+        return old;
+    }
+
+    @Override
+    public synchronized void putUnique(final byte[] key, final long l) {
+        put(key, l);
+    }
+
+    @Override
+    public synchronized long add(final byte[] key, final long a) {
+        final Mapping m = mappingForChange();
+        final int r = find(m, key);
+        if (r < 0) throw new UnsupportedOperationException("new keys cannot be added to an off-heap index");
+        final long old = readValue(m, r);
+        if (old < 0) {
+            writeValue(m, r, a);
+            this.size++;
+            return 1;
+        }
+        writeValue(m, r, old + a);
+        return old + a;
+    }
+
+    @Override
+    public long inc(final byte[] key) {
+        return add(key, 1);
+    }
+
+    @Override
+    public long dec(final byte[] key) {
+        return add(key, -1);
+    }
+
+    @Override
+    public ArrayList<long[]> removeDoubles() {
+        // a sorted dump has no double keys
+        return new ArrayList<long[]>(0);
+    }
+
+    @Override
+    public ArrayList<byte[]> top(final int count) {
+        final ArrayList<byte[]> list = new ArrayList<byte[]>();
+        final Mapping m = acquire();
+        if (m == null) return list;
+        try {
+            for (int r = m.rows - 1; r >= 0 && list.size() < count; r--) {
+                if (readValue(m, r) < 0) continue;
+                final byte[] k = new byte[this.keylength];
+                readKey(m, r, k);
+                list.add(0, k);
+            }
+        } finally {
+            m.release();
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized long remove(final byte[] key) {
+        assert key != null;
+        final Mapping m = this.mapping;
+        if (m == null || this.size == 0) return -1;
+        final int r = find(m, key);
+        if (r < 0) return -1;
+        final long old = readValue(m, r);
+        if (old < 0) return -1;
+        writeValue(m, r, -1);
+        this.size--;
+        return old;
+    }
+
+    @Override
+    public synchronized long removeone() {
+        final Mapping m = this.mapping;
+        if (m == null) return -1;
+        for (int r = m.rows - 1; r >= 0; r--) {
+            final long v = readValue(m, r);
+            if (v < 0) continue;
+            writeValue(m, r, -1);
+            this.size--;
+            return v;
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        return new KeyIterator(up, firstKey);
+    }
+
+    /**
+     * release the mapping. Lookups which are running are finished before the dump is unmapped.
+     */
+    @Override
+    public synchronized void close() {
+        final Mapping m = this.mapping;
+        this.mapping = null;
+        this.size = 0;
+        if (m != null) m.close();
+    }
+
+    int startRow(final boolean up, final byte[] firstKey) {
+        final Mapping m = acquire();
+        if (m == null) return -1;
+        try {
+            if (firstKey == null) return up ? 0 : m.rows - 1;
+            final int r = find(m, firstKey);
+            if (r >= 0) return r;
+            final int insertion = -r - 1;
+            return up ? insertion : insertion - 1;
+        } finally {
+            m.release();
+        }
+    }
+
+    private class KeyIterator implements CloneableIterator<byte[]> {
+
+        private final boolean up;
+        private int row;
+        private byte[] next;
+
+        public KeyIterator(final boolean up, final byte[] firstKey) {
+            this.up = up;
+            this.row = startRow(up, firstKey);
+            this.next = advance();
+        }
+
+        private byte[] advance() {
+            final Mapping m = acquire();
+            if (m == null) return null;
+            try {
+                while (this.row >= 0 && this.row < m.rows) {
+                    final int r = this.row;
+                    this.row += this.up ? 1 : -1;
+                    if (readValue(m, r) < 0) continue;
+                    final byte[] k = new byte[OffHeapHandleMap.this.keylength];
+                    readKey(m, r, k);
+                    return k;
+                }
+                return null;
+            } finally {
+                m.release();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            final byte[] k = this.next;
+            if (k == null) throw new NoSuchElementException();
+            this.next = advance();
+            return k;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CloneableIterator<byte[]> clone(final Object modifier) {
+            return new KeyIterator(this.up, (byte[]) modifier);
+        }
+
+        @Override
+        public void close() {
+            this.next = null;
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], Long>> iterator() {
+        final KeyIterator i = new KeyIterator(true, null);
+        return new Iterator<Map.Entry<byte[], Long>>() {
+
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+
+            @Override
+            public Map.Entry<byte[], Long> next() {
+                final byte[] k = i.next();
+                return new AbstractMap.SimpleEntry<byte[], Long>(k, get(k));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
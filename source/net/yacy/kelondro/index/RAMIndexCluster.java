@@ -28,53 +28,96 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import net.yacy.cora.order.CloneableIterator;
-import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.MergeIterator;
 import net.yacy.kelondro.util.StackIterator;
 
-
+/**
+ * An index in RAM which is split into partitions by the cardinal of the keys.
+ * Every partition holds its rows in a sorted array which is never changed after it is published,
+ * and the rows which were written after that in a concurrent skip list; rows of the array which were
+ * removed are marked with a tombstone in the skip list. Reads use both structures without locking.
+ * Writes lock only their partition; when the skip list of a partition becomes too large, it is merged with
+ * the array into a new array. The memory for the new array is requested from the MemoryControl before.
+ *
+ * Rows which are added with addUnique before the first read of a partition are collected unsorted and
+ * sorted at the first read (or with optimize() or removeDoubles(), which process all partitions in parallel).
+ */
 public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Cloneable {
 
+    private static final Map<String, RAMIndexCluster> objectTracker = Collections.synchronizedSortedMap(new TreeMap<String, RAMIndexCluster>());
+
+    private static final byte[] TOMBSTONE = new byte[0];
+    private static final int MIN_RECENT = 256; // the number of recent rows of a partition which are always kept before they are merged
+
     private final String             name;
     private final Row                rowdef;
-    private final RAMIndex[] cluster;
+    private final Partition[]        cluster;
 
     public RAMIndexCluster(final String name, final Row rowdef, final int clusterSize) {
         //assert arraySize < 100 : arraySize;
         this.name = name;
-        this.cluster = new RAMIndex[clusterSize];
+        this.cluster = new Partition[clusterSize];
         this.rowdef = rowdef;
         for (int i = 0; i < this.cluster.length; i++) {
-            this.cluster[i] = null; // lazy initialization, the actual initialization is at accessArray()
+            this.cluster[i] = new Partition();
         }
+        objectTracker.put(name, this);
     }
 
-    private RAMIndexCluster(final String name, final Row rowdef, final RAMIndex[] array) {
+    private RAMIndexCluster(final String name, final Row rowdef, final Partition[] array) {
         this.name = name;
         this.cluster = array;
         this.rowdef = rowdef;
+        objectTracker.put(name, this);
+    }
+
+    public static final Iterator<Map.Entry<String, RAMIndexCluster>> objects() {
+        return objectTracker.entrySet().iterator();
     }
 
+    /**
+     * sort and merge all partitions in parallel
+     */
     @Override
     public void optimize() {
-        for (final RAMIndex i: this.cluster) if (i != null) i.optimize();
+        try {
+            parallel(new PartitionTask<Void>() {
+                @Override
+                public Void process(final Partition p) throws SpaceExceededException {
+                    p.compact();
+                    return null;
+                }
+            });
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.warn("RAMIndexCluster", "cannot optimize " + this.name + ": " + e.getMessage());
+        }
     }
 
     @Override
     public RAMIndexCluster clone() {
-        final RAMIndex[] a = new RAMIndex[this.cluster.length];
+        final Partition[] a = new Partition[this.cluster.length];
         for (int i = 0; i < this.cluster.length; i++) {
-            a[i] = this.cluster[i] == null ? null : this.cluster[i].clone();
+            a[i] = this.cluster[i].copy();
         }
         return new RAMIndexCluster(this.name + ".clone", this.rowdef, a);
     }
@@ -87,42 +130,70 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
         return (int) ((this.rowdef.objectOrder.cardinal(row.bytes(), 0, row.getPrimaryKeyLength()) / 17) % (this.cluster.length));
     }
 
-    @Override
-    public final byte[] smallestKey() {
-        final HandleSet keysort = new RowHandleSet(this.rowdef.primaryKeyLength, this.rowdef.objectOrder, this.cluster.length);
-        synchronized (this.cluster) {
-            for (final RAMIndex rs: this.cluster) try {
-                keysort.put(rs.smallestKey());
-            } catch (final SpaceExceededException e) {
-                ConcurrentLog.logException(e);
+    private final byte[] normalizeKey(final byte[] key) {
+        if (key.length == this.rowdef.primaryKeyLength) return key;
+        final byte[] k = new byte[this.rowdef.primaryKeyLength];
+        System.arraycopy(key, 0, k, 0, Math.min(key.length, k.length));
+        return k;
+    }
+
+    private interface PartitionTask<A> {
+        public A process(Partition p) throws SpaceExceededException;
+    }
+
+    /**
+     * run a task on all partitions, in parallel if the index is large enough
+     */
+    private final <A> List<A> parallel(final PartitionTask<A> task) throws SpaceExceededException {
+        final List<A> result = new ArrayList<A>(this.cluster.length);
+        if (size() < RowSorter.parallelLimit || this.cluster.length == 1) {
+            for (final Partition p: this.cluster) result.add(task.process(p));
+            return result;
+        }
+        final List<Callable<A>> tasks = new ArrayList<Callable<A>>(this.cluster.length);
+        for (final Partition p: this.cluster) tasks.add(new Callable<A>() {
+            @Override
+            public A call() throws SpaceExceededException {
+                return task.process(p);
+            }
+        });
+        for (final Future<A> f: ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                result.add(f.get());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SpaceExceededException(0, "interrupted: " + e.getMessage());
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof SpaceExceededException) throw (SpaceExceededException) e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
             }
         }
-        return keysort.smallestKey();
+        return result;
     }
 
     @Override
-    public final byte[] largestKey() {
-        final HandleSet keysort = new RowHandleSet(this.rowdef.primaryKeyLength, this.rowdef.objectOrder, this.cluster.length);
-        synchronized (this.cluster) {
-            for (final RAMIndex rs: this.cluster) try {
-                keysort.put(rs.largestKey());
-            } catch (final SpaceExceededException e) {
-                ConcurrentLog.logException(e);
-            }
+    public final byte[] smallestKey() {
+        byte[] smallest = null;
+        for (final Partition p: this.cluster) {
+            final CloneableIterator<byte[]> i = p.keys(true, null);
+            if (!i.hasNext()) continue;
+            final byte[] k = i.next();
+            if (smallest == null || this.rowdef.objectOrder.compare(k, smallest) < 0) smallest = k;
         }
-        return keysort.largestKey();
+        return smallest;
     }
 
-    private final RAMIndex accessArray(final int i) {
-        RAMIndex r = this.cluster[i];
-        if (r == null) synchronized (this.cluster) {
-            r = this.cluster[i];
-            if (r == null) {
-                r = new RAMIndex(this.name + "." + i, this.rowdef);
-                this.cluster[i] = r;
-            }
+    @Override
+    public final byte[] largestKey() {
+        byte[] largest = null;
+        for (final Partition p: this.cluster) {
+            final CloneableIterator<byte[]> i = p.keys(false, null);
+            if (!i.hasNext()) continue;
+            final byte[] k = i.next();
+            if (largest == null || this.rowdef.objectOrder.compare(k, largest) > 0) largest = k;
         }
-        return r;
+        return largest;
     }
 
     @Override
@@ -130,7 +201,7 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
         final int i = indexFor(row);
         assert i >= 0 : "i = " + i;
         if (i < 0) return;
-        accessArray(i).addUnique(row);
+        this.cluster[i].addUnique(row);
     }
 
     public final void addUnique(final List<Entry> rows) throws SpaceExceededException {
@@ -139,21 +210,13 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
 
     @Override
     public final void clear() {
-        synchronized (this.cluster) {
-            for (final RAMIndex c: this.cluster) if (c != null) c.clear();
-        }
+        for (final Partition p: this.cluster) p.clear();
     }
 
     @Override
 	public final void close() {
-        synchronized (this.cluster) {
-            for (final RAMIndex c: this.cluster) {
-                if (c != null) {
-                    //Log.logInfo("RAMIndexCluster", "Closing RAM index at " + c.getName() + " with " + c.size() + " entries ...");
-                    c.close();
-                }
-            }
-        }
+        for (final Partition p: this.cluster) p.clear();
+        objectTracker.remove(this.name);
     }
 
     @Override
@@ -169,11 +232,29 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
 
     @Override
     public final Entry get(final byte[] key, final boolean forcecopy) {
+        if (!forcecopy) {
+            // the rows are never changed in place, therefore a view on the row is sufficient
+            final Entry view = this.rowdef.newView();
+            return get(key, view) ? view : null;
+        }
         final int i = indexFor(key);
         if (i < 0) return null;
-        final RAMIndex r = this.cluster[i];
-        if (r == null) return null;
-        return r.get(key, forcecopy);
+        final byte[] b = this.cluster[i].get(normalizeKey(key));
+        if (b == null) return null;
+        return this.rowdef.newEntry(b, 0, true);
+    }
+
+    /**
+     * point a view to the row with the given key without copying it. The rows of the sorted arrays are never
+     * changed (a merge creates a new array), so the view stays valid even if the index is changed later.
+     * @param key the primary key
+     * @param view an entry created with Row.newView()
+     * @return false if the key is not in the index
+     */
+    public final boolean get(final byte[] key, final Row.Entry view) {
+        final int i = indexFor(key);
+        if (i < 0) return false;
+        return this.cluster[i].get(normalizeKey(key), view);
     }
 
     @Override
@@ -192,22 +273,16 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
     public final boolean has(final byte[] key) {
         final int i = indexFor(key);
         if (i < 0) return false;
-        final RAMIndex r = this.cluster[i];
-        if (r == null) return false;
-        return r.has(key);
+        return this.cluster[i].get(normalizeKey(key)) != null;
     }
 
     @Override
     public final CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
-        synchronized (this.cluster) {
-            final Collection<CloneableIterator<byte[]>> col = new ArrayList<CloneableIterator<byte[]>>();
-            for (final RAMIndex element : this.cluster) {
-                if (element != null) {
-                    col.add(element.keys(up, firstKey));
-                }
-            }
-            return MergeIterator.cascade(col, this.rowdef.objectOrder, MergeIterator.simpleMerge, up);
+        final Collection<CloneableIterator<byte[]>> col = new ArrayList<CloneableIterator<byte[]>>();
+        for (final Partition p: this.cluster) {
+            col.add(p.keys(up, firstKey));
         }
+        return MergeIterator.cascade(col, this.rowdef.objectOrder, MergeIterator.simpleMerge, up);
     }
 
     /**
@@ -222,47 +297,39 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
         final int i = indexFor(row);
         assert i >= 0 : "i = " + i;
         if (i < 0) return true;
-        return accessArray(i).put(row);
+        return this.cluster[i].put(row) == null;
     }
 
     @Override
     public final boolean delete(final byte[] key) {
-        final int i = indexFor(key);
-        if (i < 0) return false;
-        return accessArray(i).delete(key);
+        return remove(key) != null;
     }
 
     @Override
     public final Entry remove(final byte[] key) {
         final int i = indexFor(key);
         if (i < 0) return null;
-        return accessArray(i).remove(key);
+        final byte[] b = this.cluster[i].remove(normalizeKey(key));
+        return b == null ? null : this.rowdef.newEntry(b);
     }
 
     @Override
     public final ArrayList<RowCollection> removeDoubles() throws SpaceExceededException {
         final ArrayList<RowCollection> col = new ArrayList<RowCollection>();
-        synchronized (this.cluster) {
-            for (int i = 0; i < this.cluster.length; i++) {
-                if (this.cluster[i] != null) {
-                    col.addAll(this.cluster[i].removeDoubles());
-                    if (this.cluster[i].isEmpty()) this.cluster[i] = null;
-                }
+        for (final List<RowCollection> d: parallel(new PartitionTask<List<RowCollection>>() {
+            @Override
+            public List<RowCollection> process(final Partition p) throws SpaceExceededException {
+                return p.removeDoubles();
             }
-        }
+        })) col.addAll(d);
         return col;
     }
 
     @Override
     public final Entry removeOne() {
-        synchronized (this.cluster) {
-            for (int i = 0; i < this.cluster.length; i++) {
-                if (this.cluster[i] != null) {
-                    final Entry entry = this.cluster[i].removeOne();
-                    if (this.cluster[i].isEmpty()) this.cluster[i] = null;
-                    return entry;
-                }
-            }
+        for (final Partition p: this.cluster) {
+            final byte[] b = p.removeOne();
+            if (b != null) return this.rowdef.newEntry(b);
         }
         return null;
     }
@@ -270,18 +337,10 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
     @Override
     public List<Row.Entry> top(final int count) {
         final List<Row.Entry> list = new ArrayList<Row.Entry>();
-        synchronized (this.cluster) {
-            for (final RAMIndex element : this.cluster) {
-                if (element != null) {
-                    try {
-                        final List<Row.Entry> list0 = element.top(count - list.size());
-                        list.addAll(list0);
-                    } catch (final IOException e) {
-                        continue;
-                    }
-                }
-                if (list.size() >= count) return list;
-            }
+        for (final Partition p: this.cluster) {
+            final CloneableIterator<Row.Entry> i = p.rows(false, null);
+            while (list.size() < count && i.hasNext()) list.add(i.next());
+            if (list.size() >= count) return list;
         }
         return list;
     }
@@ -289,18 +348,9 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
     @Override
     public List<Row.Entry> random(final int count) {
         final List<Row.Entry> list = new ArrayList<Row.Entry>();
-        synchronized (this.cluster) {
-            for (final RAMIndex element : this.cluster) {
-                if (element != null) {
-                    try {
-                        final List<Row.Entry> list0 = element.random(count - list.size());
-                        list.addAll(list0);
-                    } catch (final IOException e) {
-                        continue;
-                    }
-                }
-                if (list.size() >= count) return list;
-            }
+        for (final Partition p: this.cluster) {
+            p.random(count - list.size(), list);
+            if (list.size() >= count) return list;
         }
         return list;
     }
@@ -310,7 +360,8 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
         final int i = indexFor(row);
         assert i >= 0 : "i = " + i;
         if (i < 0) return null;
-        return accessArray(i).replace(row);
+        final byte[] b = this.cluster[i].put(row);
+        return b == null ? null : this.rowdef.newEntry(b);
     }
 
     @Override
@@ -321,17 +372,13 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
     @Override
     @SuppressWarnings("unchecked")
     public final CloneableIterator<Row.Entry> rows(final boolean up, final byte[] firstKey) {
-        synchronized (this.cluster) {
-            final List<CloneableIterator<Row.Entry>> col = new ArrayList<CloneableIterator<Row.Entry>>(this.cluster.length);
-            for (RAMIndex element : this.cluster) {
-                if (element != null) {
-                    col.add(element.rows(up, firstKey));
-                }
-            }
-            return StackIterator.stack(col.toArray((CloneableIterator<Row.Entry>[]) Array.newInstance(CloneableIterator.class, col.size())), getEntryComparator(), up);
+        final List<CloneableIterator<Row.Entry>> col = new ArrayList<CloneableIterator<Row.Entry>>(this.cluster.length);
+        for (final Partition p: this.cluster) {
+            col.add(p.rows(up, firstKey));
         }
+        return StackIterator.stack(col.toArray((CloneableIterator<Row.Entry>[]) Array.newInstance(CloneableIterator.class, col.size())), getEntryComparator(), up);
     }
-    
+
     private Comparator<Row.Entry> getEntryComparator() {
         return new Comparator<Row.Entry>() {
             @Override
@@ -349,20 +396,20 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
     @Override
     public final int size() {
         int c = 0;
-        for (final RAMIndex i: this.cluster) if (i != null) c += i.size();
+        for (final Partition p: this.cluster) c += p.size();
         return c;
     }
 
     @Override
     public long mem() {
         long m = 0;
-        for (final RAMIndex i: this.cluster) if (i != null)  m += i.mem();
+        for (final Partition p: this.cluster) m += p.mem();
         return m;
     }
 
     @Override
     public final boolean isEmpty() {
-        for (final RAMIndex i: this.cluster) if (i != null && !i.isEmpty()) return false;
+        for (final Partition p: this.cluster) if (p.size() > 0) return false;
         return true;
     }
 
@@ -374,6 +421,401 @@ public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Clonea
     public final long inc(final byte[] key, final int col, final long add, final Entry initrow) throws SpaceExceededException {
         final int i = indexFor(key);
         if (i < 0) return -1;
-        return accessArray(i).inc(key, col, add, initrow);
+        return this.cluster[i].inc(normalizeKey(key), col, add, initrow);
+    }
+
+    /**
+     * A partition of the cluster. All fields which are read without the lock of the partition are volatile;
+     * the recent map is changed only while the lock is held.
+     */
+    private final class Partition {
+
+        private volatile byte[] sorted;  // the sorted rows; this array is replaced but never changed
+        private final ConcurrentSkipListMap<byte[], byte[]> recent; // rows written after the sorted array was built, TOMBSTONE for removed rows
+        private volatile RowSet initial; // rows which are added in the initialization phase, null after the initialization
+        private volatile int size;
+        private int recentCount;
+
+        private Partition() {
+            this(new byte[0], new ConcurrentSkipListMap<byte[], byte[]>(RAMIndexCluster.this.rowdef.objectOrder), new RowSet(RAMIndexCluster.this.rowdef), 0, 0);
+        }
+
+        private Partition(final byte[] sorted, final ConcurrentSkipListMap<byte[], byte[]> recent, final RowSet initial, final int size, final int recentCount) {
+            this.sorted = sorted;
+            this.recent = recent;
+            this.initial = initial;
+            this.size = size;
+            this.recentCount = recentCount;
+        }
+
+        private synchronized Partition copy() {
+            final RowSet i = this.initial;
+            return new Partition(this.sorted, this.recent.clone(), i == null ? null : i.clone(), this.size, this.recentCount);
+        }
+
+        private int size() {
+            final RowSet i = this.initial;
+            return i == null ? this.size : i.size();
+        }
+
+        private long mem() {
+            final RowSet i = this.initial;
+            return this.sorted.length + (long) this.recentCount * (RAMIndexCluster.this.rowdef.objectsize + RAMIndexCluster.this.rowdef.primaryKeyLength + 64) + (i == null ? 0 : i.mem());
+        }
+
+        private synchronized void clear() {
+            this.sorted = new byte[0];
+            this.recent.clear();
+            this.recentCount = 0;
+            this.size = 0;
+            this.initial = new RowSet(RAMIndexCluster.this.rowdef);
+        }
+
+        /**
+         * sort the rows of the initialization phase and make them the sorted array
+         */
+        private synchronized void finishInitialization() {
+            final RowSet i = this.initial;
+            if (i == null) return;
+            i.sort();
+            i.uniq();
+            final int length = i.size() * RAMIndexCluster.this.rowdef.objectsize;
+            final byte[] s;
+            if (i.chunkcache.length == length) {
+                s = i.chunkcache;
+            } else {
+                s = new byte[length];
+                System.arraycopy(i.chunkcache, 0, s, 0, length);
+            }
+            this.size = i.size();
+            this.sorted = s;
+            this.initial = null;
+        }
+
+        private int compare(final byte[] s, final int p, final byte[] key) {
+            return RAMIndexCluster.this.rowdef.objectOrder.compare(s, p * RAMIndexCluster.this.rowdef.objectsize, key, 0, RAMIndexCluster.this.rowdef.primaryKeyLength);
+        }
+
+        /**
+         * binary search in a sorted array
+         * @return the position of the key or, if the key is not in the array, -(insertion point) - 1
+         */
+        private int find(final byte[] s, final byte[] key, int l) {
+            int r = s.length / RAMIndexCluster.this.rowdef.objectsize - 1;
+            while (l <= r) {
+                final int m = (l + r) >>> 1;
+                final int c = compare(s, m, key);
+                if (c < 0) l = m + 1; else if (c > 0) r = m - 1; else return m;
+            }
+            return -(l + 1);
+        }
+
+        private byte[] sortedRow(final byte[] s, final int p) {
+            final int objectsize = RAMIndexCluster.this.rowdef.objectsize;
+            final byte[] b = new byte[objectsize];
+            System.arraycopy(s, p * objectsize, b, 0, objectsize);
+            return b;
+        }
+
+        /**
+         * get a row; this does not lock the partition
+         * @param key a normalized key
+         * @return the row which must not be changed, or null
+         */
+        private byte[] get(final byte[] key) {
+            if (this.initial != null) finishInitialization();
+            // the recent map must be read first: a merge publishes the new sorted array before it clears the map
+            final byte[] r = this.recent.get(key);
+            if (r != null) return r == TOMBSTONE ? null : r;
+            final byte[] s = this.sorted;
+            final int p = find(s, key, 0);
+            return p < 0 ? null : sortedRow(s, p);
+        }
+
+        /**
+         * point a view to a row; this does not lock the partition and does not copy the row
+         * @param key a normalized key
+         * @return false if the key is not in the partition
+         */
+        private boolean get(final byte[] key, final Row.Entry view) {
+            if (this.initial != null) finishInitialization();
+            final byte[] r = this.recent.get(key);
+            if (r != null) {
+                if (r == TOMBSTONE) return false;
+                view.point(r, 0);
+                return true;
+            }
+            final byte[] s = this.sorted;
+            final int p = find(s, key, 0);
+            if (p < 0) return false;
+            view.point(s, p * RAMIndexCluster.this.rowdef.objectsize);
+            return true;
+        }
+
+        private synchronized void addUnique(final Entry row) throws SpaceExceededException {
+            final RowSet i = this.initial;
+            if (i != null) {
+                i.addUnique(row);
+                return;
+            }
+            put(row);
+        }
+
+        /**
+         * write a row
+         * @return the previous row or null
+         */
+        private synchronized byte[] put(final Entry row) throws SpaceExceededException {
+            if (this.initial != null) finishInitialization();
+            final byte[] b = new byte[RAMIndexCluster.this.rowdef.objectsize];
+            row.writeToArray(b, 0);
+            final byte[] key = new byte[RAMIndexCluster.this.rowdef.primaryKeyLength];
+            System.arraycopy(b, 0, key, 0, key.length);
+            final byte[] old = get(key);
+            if (old == null) ensureSpace();
+            if (this.recent.put(key, b) == null) this.recentCount++;
+            if (old == null) this.size++;
+            return old;
+        }
+
+        private synchronized byte[] remove(final byte[] key) {
+            if (this.initial != null) finishInitialization();
+            final byte[] old = get(key);
+            if (old == null) return null;
+            if (find(this.sorted, key, 0) >= 0) {
+                if (this.recent.put(key, TOMBSTONE) == null) this.recentCount++;
+            } else {
+                if (this.recent.remove(key) != null) this.recentCount--;
+            }
+            this.size--;
+            return old;
+        }
+
+        private synchronized byte[] removeOne() {
+            final CloneableIterator<byte[]> i = keys(false, null);
+            if (!i.hasNext()) return null;
+            return remove(i.next());
+        }
+
+        private synchronized long inc(final byte[] key, final int col, final long add, final Entry initrow) throws SpaceExceededException {
+            final byte[] old = get(key);
+            if (old == null) {
+                if (initrow == null) return Long.MIN_VALUE;
+                put(initrow);
+                return initrow.getColLong(col);
+            }
+            final Entry entry = RAMIndexCluster.this.rowdef.newEntry(old, 0, true);
+            final long l = entry.incCol(col, add);
+            put(entry);
+            return l;
+        }
+
+        private synchronized List<RowCollection> removeDoubles() throws SpaceExceededException {
+            final RowSet i = this.initial;
+            if (i == null) return new ArrayList<RowCollection>(0);
+            final List<RowCollection> d = i.removeDoubles();
+            finishInitialization();
+            return d;
+        }
+
+        /**
+         * merge the recent rows into the sorted array if there are too many of them
+         */
+        private void ensureSpace() throws SpaceExceededException {
+            if (this.recentCount >= Math.max(MIN_RECENT, this.sorted.length / RAMIndexCluster.this.rowdef.objectsize / 8)) compact();
+        }
+
+        /**
+         * merge the recent rows into a new sorted array
+         */
+        private synchronized void compact() throws SpaceExceededException {
+            if (this.initial != null) finishInitialization();
+            if (this.recentCount == 0) return;
+            final int objectsize = RAMIndexCluster.this.rowdef.objectsize;
+            final long needed = (long) this.size * objectsize;
+            if (needed > Integer.MAX_VALUE || !MemoryControl.request(needed + 32, true)) throw new SpaceExceededException(needed + 32, "RAMIndexCluster merge");
+            final byte[] s = this.sorted;
+            final int sc = s.length / objectsize;
+            final byte[] n = new byte[(int) needed];
+            int i = 0, o = 0;
+            for (final Map.Entry<byte[], byte[]> e: this.recent.entrySet()) {
+                int p = find(s, e.getKey(), i);
+                final boolean replaced = p >= 0;
+                if (!replaced) p = -p - 1;
+                System.arraycopy(s, i * objectsize, n, o * objectsize, (p - i) * objectsize);
+                o += p - i;
+                i = replaced ? p + 1 : p;
+                if (e.getValue() != TOMBSTONE) {
+                    System.arraycopy(e.getValue(), 0, n, o * objectsize, objectsize);
+                    o++;
+                }
+            }
+            System.arraycopy(s, i * objectsize, n, o * objectsize, (sc - i) * objectsize);
+            o += sc - i;
+            assert o == this.size : "o = " + o + ", size = " + this.size;
+            this.sorted = n;
+            this.recent.clear();
+            this.recentCount = 0;
+        }
+
+        private synchronized void random(final int count, final List<Row.Entry> list) {
+            if (this.initial != null) finishInitialization();
+            final byte[] s = this.sorted;
+            final int sc = s.length / RAMIndexCluster.this.rowdef.objectsize;
+            final Random r = new Random();
+            int c = 0;
+            for (int t = 0; t < count && sc > 0; t++) {
+                final byte[] b = get(sortedRow(s, r.nextInt(sc)));
+                if (b != null) {
+                    list.add(RAMIndexCluster.this.rowdef.newEntry(b, 0, true));
+                    c++;
+                }
+            }
+            // fill up with recent rows if the sorted array is too small
+            final Iterator<byte[]> i = this.recent.values().iterator();
+            while (c < count && i.hasNext()) {
+                final byte[] b = i.next();
+                if (b == TOMBSTONE || find(s, b, 0) >= 0) continue;
+                list.add(RAMIndexCluster.this.rowdef.newEntry(b, 0, true));
+                c++;
+            }
+        }
+
+        private synchronized PartitionIterator iterator(final boolean up, final byte[] firstKey) {
+            if (this.initial != null) finishInitialization();
+            return new PartitionIterator(this, this.sorted, this.recent.clone(), up, firstKey == null || firstKey.length == 0 ? null : normalizeKey(firstKey));
+        }
+
+        private CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+            final PartitionIterator i = iterator(up, firstKey);
+            return new CloneableIterator<byte[]>() {
+                @Override
+                public CloneableIterator<byte[]> clone(final Object modifier) {
+                    return keys(up, (byte[]) modifier);
+                }
+                @Override
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+                @Override
+                public byte[] next() {
+                    final byte[] b = i.next();
+                    final byte[] k = new byte[RAMIndexCluster.this.rowdef.primaryKeyLength];
+                    System.arraycopy(b, 0, k, 0, k.length);
+                    return k;
+                }
+                @Override
+                public void remove() {
+                    i.remove();
+                }
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        private CloneableIterator<Row.Entry> rows(final boolean up, final byte[] firstKey) {
+            final PartitionIterator i = iterator(up, firstKey);
+            return new CloneableIterator<Row.Entry>() {
+                @Override
+                public CloneableIterator<Row.Entry> clone(final Object modifier) {
+                    return rows(up, (byte[]) modifier);
+                }
+                @Override
+                public boolean hasNext() {
+                    return i.hasNext();
+                }
+                @Override
+                public Row.Entry next() {
+                    return RAMIndexCluster.this.rowdef.newEntry(i.next());
+                }
+                @Override
+                public void remove() {
+                    i.remove();
+                }
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * iterates the rows of a partition as they were when the iterator was created;
+     * the sorted array and a copy of the recent rows are merged
+     */
+    private final class PartitionIterator implements Iterator<byte[]> {
+
+        private final Partition partition;
+        private final byte[] sorted;
+        private final Iterator<Map.Entry<byte[], byte[]>> recent;
+        private final boolean up;
+        private int p;               // the next position in the sorted array
+        private Map.Entry<byte[], byte[]> r; // the next recent row
+        private byte[] next, last;
+
+        private PartitionIterator(final Partition partition, final byte[] sorted, final NavigableMap<byte[], byte[]> recent, final boolean up, final byte[] firstKey) {
+            this.partition = partition;
+            this.sorted = sorted;
+            this.up = up;
+            final int sc = sorted.length / RAMIndexCluster.this.rowdef.objectsize;
+            if (firstKey == null) {
+                this.p = up ? 0 : sc - 1;
+                this.recent = (up ? recent : recent.descendingMap()).entrySet().iterator();
+            } else {
+                int f = partition.find(sorted, firstKey, 0);
+                if (f < 0) f = up ? -f - 1 : -f - 2;
+                this.p = f;
+                this.recent = (up ? recent.tailMap(firstKey, true) : recent.headMap(firstKey, true).descendingMap()).entrySet().iterator();
+            }
+            this.r = this.recent.hasNext() ? this.recent.next() : null;
+            this.last = null;
+            this.next = advance();
+        }
+
+        private byte[] advance() {
+            final int sc = this.sorted.length / RAMIndexCluster.this.rowdef.objectsize;
+            while (true) {
+                final boolean hasSorted = this.p >= 0 && this.p < sc;
+                if (!hasSorted && this.r == null) return null;
+                int c = 0;
+                if (hasSorted && this.r != null) {
+                    c = this.partition.compare(this.sorted, this.p, this.r.getKey());
+                    if (!this.up) c = -c;
+                }
+                if (this.r == null || (hasSorted && c < 0)) {
+                    final byte[] b = this.partition.sortedRow(this.sorted, this.p);
+                    this.p += this.up ? 1 : -1;
+                    return b;
+                }
+                // the recent row replaces a sorted row with the same key
+                if (hasSorted && c == 0) this.p += this.up ? 1 : -1;
+                final byte[] b = this.r.getValue();
+                this.r = this.recent.hasNext() ? this.recent.next() : null;
+                if (b != TOMBSTONE) return b;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (this.next == null) throw new NoSuchElementException();
+            this.last = this.next;
+            this.next = advance();
+            return this.last;
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == null) throw new IllegalStateException();
+            final byte[] k = new byte[RAMIndexCluster.this.rowdef.primaryKeyLength];
+            System.arraycopy(this.last, 0, k, 0, k.length);
+            this.partition.remove(k);
+            this.last = null;
+        }
     }
 }
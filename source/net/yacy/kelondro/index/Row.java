@@ -61,6 +61,7 @@ public final class Row implements Serializable {
     public final int                objectsize;
     public final int                primaryKeyLength;
     protected Map<String, Object[]> nickref = null; // a mapping from nicknames to Object[2]{kelondroColumn, Integer(colstart)}
+    private byte[]                  emptyRow = null; // the initial target of views
 
     public Row(final Column[] row, final ByteOrder objectOrder) {
         assert objectOrder != null;
@@ -154,6 +155,51 @@ public final class Row implements Serializable {
         return new Entry();
     }
 
+    /**
+     * create a view: an entry which does not own a row but is pointed to rows in other arrays with Entry.point().
+     * A view can be re-used for many rows, which avoids the allocation of an entry and a copy of the row for each
+     * row during scans and lookups.
+     * @return an empty entry
+     */
+    public final Entry newView() {
+        if (this.emptyRow == null) this.emptyRow = new byte[this.objectsize];
+        return new Entry(this.emptyRow, 0, false);
+    }
+
+    /**
+     * decode a cardinal column of a row in place, without an entry object
+     * @param rowinstance the array containing the row
+     * @param start the offset of the row within the array
+     * @param column the column number
+     * @return the value of the column
+     */
+    public final long getColLong(final byte[] rowinstance, final int start, final int column) {
+        return decodeLong(rowinstance, start + this.colstart[column], this.row[column].encoder, this.row[column].cellwidth);
+    }
+
+    private static final long decodeLong(final byte[] rowinstance, final int p, final int encoder, final int length) {
+        switch (encoder) {
+        case Column.encoder_none:
+            throw new kelondroException("ROW", "getColLong has celltype none, no encoder given");
+        case Column.encoder_b64e:
+            // start - fix for badly stored parameters
+            if ((length >= 3) && (rowinstance[p] == '[') && (rowinstance[p + 1] == 'B') && (rowinstance[p + 2] == '@')) return 0;
+            if ((length == 2) && (rowinstance[p] == '[') && (rowinstance[p + 1] == 'B')) return 0;
+            if ((length == 1) && (rowinstance[p] == '[')) return 0;
+            boolean maxvalue = true;
+            for (int i = 0; i < length; i++) if (rowinstance[p + i] != '_') {maxvalue = false; break;}
+            if (maxvalue) return 0;
+            // stop - fix for badly stored parameters
+            return Base64Order.enhancedCoder.decodeLong(rowinstance, p, length);
+        case Column.encoder_b256:
+            return NaturalOrder.decodeLong(rowinstance, p, length);
+        case Column.encoder_bytes:
+            throw new kelondroException("ROW", "getColLong of celltype bytes not applicable");
+        default:
+            throw new kelondroException("ROW", "getColLong did not find appropriate encoding");
+        }
+    }
+
     public final Entry newEntry(final byte[] rowinstance) {
         if (rowinstance == null) return null;
         assert (this.objectOrder.wellformed(rowinstance, 0, this.primaryKeyLength)) :  "row not well-formed: rowinstance[0] = " + UTF8.String(rowinstance, 0, this.primaryKeyLength) + " / " + NaturalOrder.arrayList(rowinstance, 0, this.primaryKeyLength);
@@ -379,6 +425,19 @@ public final class Row implements Serializable {
             return h;
         }
 
+        /**
+         * point this entry to another row without copying it; see Row.newView()
+         * @param newrow the array containing the row; the content must not be changed as long as the entry is used
+         * @param start the offset of the row within the array
+         * @return this entry
+         */
+        public final Entry point(final byte[] newrow, final int start) {
+            assert newrow.length - start >= Row.this.objectsize : "newrow.length = " + newrow.length + ", start = " + start + ", objectsize = " + Row.this.objectsize;
+            this.rowinstance = newrow;
+            this.offset = start;
+            return this;
+        }
+
         public final byte[] bytes() {
             if (this.offset == 0 && this.rowinstance.length == Row.this.objectsize) {
                 return this.rowinstance;
@@ -545,26 +604,7 @@ public final class Row implements Serializable {
         }
 
         protected final long getColLong(final int encoder, final int clstrt, final int length) {
-            switch (encoder) {
-            case Column.encoder_none:
-                throw new kelondroException("ROW", "getColLong has celltype none, no encoder given");
-            case Column.encoder_b64e:
-                // start - fix for badly stored parameters
-                if ((length >= 3) && (this.rowinstance[this.offset + clstrt] == '[') && (this.rowinstance[this.offset + clstrt + 1] == 'B') && (this.rowinstance[this.offset + clstrt + 2] == '@')) return 0;
-                if ((length == 2) && (this.rowinstance[this.offset + clstrt] == '[') && (this.rowinstance[this.offset + clstrt + 1] == 'B')) return 0;
-                if ((length == 1) && (this.rowinstance[this.offset + clstrt] == '[')) return 0;
-                boolean maxvalue = true;
-                for (int i = 0; i < length; i++) if (this.rowinstance[this.offset + clstrt + i] != '_') {maxvalue = false; break;}
-                if (maxvalue) return 0;
-                // stop - fix for badly stored parameters
-                return Base64Order.enhancedCoder.decodeLong(this.rowinstance, this.offset + clstrt, length);
-            case Column.encoder_b256:
-                return NaturalOrder.decodeLong(this.rowinstance, this.offset + clstrt, length);
-            case Column.encoder_bytes:
-                throw new kelondroException("ROW", "getColLong of celltype bytes not applicable");
-            default:
-                throw new kelondroException("ROW", "getColLong did not find appropriate encoding");
-            }
+            return decodeLong(this.rowinstance, this.offset + clstrt, encoder, length);
         }
 
         public final byte getColByte(final int column) {
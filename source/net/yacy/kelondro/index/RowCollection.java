@@ -230,6 +230,18 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         return entry.bytes();
     }
 
+    /**
+     * export the collection in the compressed format of CompressedRowSet.
+     * The result can be imported with RowSet.importRowSet() like the result of exportCollection().
+     * @return the compressed collection
+     */
+    public synchronized byte[] exportCompressedCollection() {
+        if (!CompressedRowSet.canEncode(this.rowdef)) return exportCollection();
+        sort();
+        assert this.sortBound == this.chunkcount; // on case the collection is sorted
+        return CompressedRowSet.encode(this.rowdef, this.chunkcache, this.chunkcount, daysSince2000(System.currentTimeMillis()), daysSince2000(this.lastTimeWrote));
+    }
+
     public void saveCollection(final File file) throws IOException {
         FileUtils.copy(exportCollection(), file);
     }
@@ -371,6 +383,21 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         return entry;
     }
 
+    /**
+     * point a view to a row without copying it; the view is only valid as long as the collection is not changed
+     * @param index the position of the row
+     * @param view an entry created with Row.newView()
+     * @return false if there is no row at the position
+     */
+    public synchronized final boolean get(final int index, final Row.Entry view) {
+        if ((this.chunkcache == null) || (this.rowdef == null)) return false; // case may appear during shutdown
+        if (index < 0 || index >= this.chunkcount) return false;
+        final int addr = index * this.rowdef.objectsize;
+        if (addr + this.rowdef.objectsize > this.chunkcache.length) return false; // the whole chunk does not fit into the chunkcache
+        view.point(this.chunkcache, addr);
+        return true;
+    }
+
     public synchronized final void set(final int index, final Row.Entry a) throws SpaceExceededException {
         assert (index >= 0) : "set: access with index " + index + " is below zero";
         ensureSize(index + 1);
@@ -509,6 +536,36 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
     }
 
 
+    /**
+     * remove the rows at the given positions in one pass and keep the order of the remaining rows.
+     * This is much faster than a removal of the single rows with removeRow(p, true) because
+     * every row is moved only once.
+     * @param positions the positions of the rows to remove in ascending order
+     */
+    public synchronized final void removeRows(final int[] positions) {
+        if (positions.length == 0) return;
+        final int objectsize = this.rowdef.objectsize;
+        int target = positions[0];
+        int removedSorted = 0;
+        for (int i = 0; i < positions.length; i++) {
+            assert i == 0 || positions[i] > positions[i - 1] : "positions not ascending at " + i;
+            assert positions[i] < this.chunkcount : "p = " + positions[i] + ", chunkcount = " + this.chunkcount;
+            final int start = positions[i] + 1;
+            final int end = (i + 1 < positions.length) ? positions[i + 1] : this.chunkcount;
+            if (end > start) {
+                System.arraycopy(this.chunkcache, start * objectsize, this.chunkcache, target * objectsize, (end - start) * objectsize);
+                target += end - start;
+            }
+            if (positions[i] < this.sortBound) removedSorted++;
+        }
+        this.sortBound -= removedSorted;
+        this.chunkcount = target;
+        this.lastTimeWrote = System.currentTimeMillis();
+
+        // check if the chunkcache can shrink
+        checkShrink();
+    }
+
     @Override
     public final void delete(final int p) {
         removeRow(p, true);
@@ -645,6 +702,33 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         return new rowIterator();
     }
 
+    /**
+     * return an iterator which points one view to each row instead of copying the rows.
+     * The returned entry is the same object for every call of next(); it must not be stored and
+     * the collection must not be changed during the iteration
+     */
+    public Iterator<Row.Entry> views() {
+        return new Iterator<Row.Entry>() {
+            private final Row.Entry view = RowCollection.this.rowdef.newView();
+            private int p = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.p < RowCollection.this.chunkcount;
+            }
+
+            @Override
+            public Row.Entry next() {
+                return get(this.p++, this.view) ? this.view : null;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     /**
      * Iterator for kelondroRowCollection.
      * It supports remove() and keeps the order of the underlying
@@ -686,7 +770,11 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         synchronized (this) {
             if (this.sortBound == this.chunkcount) return; // check again
             //Log.logInfo("RowCollection.sort()", "sorting array of size " + this.chunkcount + ", sortBound = " + this.sortBound);
-            net.yacy.cora.sorting.Array.sort(this);
+            // sort the unsorted tail on the raw chunk cache and merge it into the sorted prefix;
+            // use the in-place quicksort if there is not enough memory for the merge buffers
+            if (!new RowSorter(this.rowdef).sort(this.chunkcache, this.sortBound, this.chunkcount)) {
+                net.yacy.cora.sorting.Array.sort(this);
+            }
             this.sortBound = this.chunkcount;
         }
     }
@@ -31,6 +31,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.TreeMap;
 
@@ -81,6 +82,7 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
     public final static RowSet importRowSet(final byte[] b, final Row rowdef) throws SpaceExceededException {
     	assert b.length >= exportOverheadSize : "b.length = " + b.length;
     	if (b.length < exportOverheadSize) return new RowSet(rowdef, 0);
+    	if (CompressedRowSet.isCompressed(b)) return CompressedRowSet.importRowSet(b, rowdef);
         final int size = (int) NaturalOrder.decodeLong(b, 0, 4);
         assert size >= 0 : "size = " + size;
         if (size < 0) return new RowSet(rowdef, 0);
@@ -108,6 +110,54 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
         return new RowSet(rowdef, size, chunkcache, orderbound);
     }
 
+    /**
+     * iterate the rows of an exported collection without importing the whole collection.
+     * This works for the compressed and the uncompressed export format.
+     * @param b an exported collection
+     * @param rowdef
+     * @return an iterator of the rows; the rows do not share their content with the exported collection
+     */
+    public final static Iterator<Row.Entry> importRows(final byte[] b, final Row rowdef) {
+        if (CompressedRowSet.isCompressed(b)) return CompressedRowSet.iterator(b, rowdef);
+        final int size = b.length < exportOverheadSize ? 0 : (int) Math.min(NaturalOrder.decodeLong(b, 0, 4), (b.length - exportOverheadSize) / rowdef.objectsize);
+        return new Iterator<Row.Entry>() {
+            private int p = 0;
+            @Override
+            public boolean hasNext() {
+                return this.p < size;
+            }
+            @Override
+            public Row.Entry next() {
+                if (this.p >= size) throw new NoSuchElementException();
+                return rowdef.newEntry(b, (int) exportOverheadSize + rowdef.objectsize * this.p++, true);
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * the number of rows in an exported collection
+     * @param head the first 4 bytes (or more) of an exported collection
+     * @return the number of rows
+     */
+    public final static int importRowCount(final byte[] head) {
+        if (head == null || head.length < 4) return 0;
+        return Math.max(0, CompressedRowSet.size(head));
+    }
+
+    /**
+     * check if a length fits to an uncompressed export of rows
+     * @param blength the length of an exported collection
+     * @param rowdef
+     * @return false if the export cannot be an uncompressed export, i.e. it must be a compressed export
+     */
+    public final static boolean isUncompressedExportLength(final long blength, final Row rowdef) {
+        return blength >= exportOverheadSize && (blength - exportOverheadSize) % rowdef.objectsize == 0;
+    }
+
     public final static int importRowCount(final long blength, final Row rowdef) {
         assert blength >= exportOverheadSize : "blength = " + blength;
         if (blength < exportOverheadSize) return 0;
@@ -145,6 +195,17 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
         return get(index, forcecopy);
     }
 
+    /**
+     * point a view to the row with the given key without copying it; see RowCollection.get(int, Row.Entry)
+     * @return false if the key is not in the set
+     */
+    public final synchronized boolean get(final byte[] key, final Row.Entry view) {
+        assert key.length == this.rowdef.primaryKeyLength;
+        final int index = find(key, 0);
+        if (index < 0) return false;
+        return get(index, view);
+    }
+
     @Override
     public Map<byte[], Row.Entry> get(final Collection<byte[]> keys, final boolean forcecopy) throws IOException, InterruptedException {
         final Map<byte[], Row.Entry> map = new TreeMap<byte[], Row.Entry>(row().objectOrder);
@@ -353,6 +414,50 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
         return l;
     }
 
+    /**
+     * galloping search in the sorted area of the collection, starting at a given position.
+     * The search first doubles the step width until a key is found which is not smaller than the given key
+     * and then makes a binary search in the last step. This is much faster than a binary search over
+     * the whole collection if the keys are probed in ascending order, as it is done in joins.
+     * @param key the key to search
+     * @param from the position where the search starts; all keys before that position must be smaller than the key
+     * @return the position of the key if the key exists, or the position of the first entry that is greater
+     *   than the key if the key does not exist. This is the size of the sorted area if all keys are smaller than the key
+     */
+    public final synchronized int gallopingPosition(final byte[] key, final int from) {
+        assert (this.rowdef.objectOrder != null);
+        if (from >= this.sortBound) return this.sortBound;
+        int l = from;
+        int step = 1;
+        while (l + step < this.sortBound && compare(key, 0, l + step) > 0) {
+            l += step;
+            step <<= 1;
+        }
+        if (compare(key, 0, l) <= 0) return l;
+        // the key is greater than the key at l and not greater than the key at l + step (if that exists)
+        l++;
+        int rbound = Math.min(l + step, this.sortBound);
+        int p;
+        int d;
+        while (l < rbound) {
+            p = (l + rbound) >> 1;
+            d = compare(key, 0, p);
+            if (d == 0) return p;
+            if (d < 0) rbound = p; else l = p + 1;
+        }
+        return l;
+    }
+
+    /**
+     * test if the key of the entry at the given position is equal to the given key
+     * @param key the key
+     * @param p the position of the entry
+     * @return true if the key exists at that position
+     */
+    public final synchronized boolean match(final byte[] key, final int p) {
+        return p >= 0 && p < this.chunkcount && match(key, 0, p);
+    }
+
     public final synchronized Iterator<byte[]> keys() {
         sort();
         return super.keys(true);
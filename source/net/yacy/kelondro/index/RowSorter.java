@@ -0,0 +1,307 @@
+// RowSorter.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.kelondro.util.MemoryControl;
+
+
+/**
+ * a merge sort for the rows of a RowCollection which works directly on the raw chunk cache.
+ * Ranges with more than parallelLimit rows are sorted and merged in parallel using the fork-join pool.
+ * A collection which has a sorted prefix is sorted by sorting the unsorted tail only and merging
+ * the tail into the prefix afterwards.
+ * Rows with base64 keys are not sorted with the merge sort but with the order-preserving long transform
+ * of the key prefix from Base64Order.key(), which replaces most key comparisons with long comparisons.
+ */
+final class RowSorter {
+
+    private static final int insertionSortLimit = 16;
+
+    /**
+     * number of rows of a sort or merge range above which the range is split into parallel tasks;
+     * set to Integer.MAX_VALUE to sort in the calling thread only
+     */
+    static int parallelLimit = ForkJoinPool.getCommonPoolParallelism() > 1 ? 8192 : Integer.MAX_VALUE;
+
+    /**
+     * use the long transform of base64 keys for sorting if possible
+     */
+    static boolean keySort = true;
+
+    private final int rowsize, keylength;
+    private final ByteOrder order;
+    private final Base64Order keyOrder; // the order if it has a long transform of the keys, otherwise null
+
+    RowSorter(final Row rowdef) {
+        this.rowsize = rowdef.objectsize;
+        this.keylength = rowdef.primaryKeyLength;
+        this.order = rowdef.objectOrder;
+        this.keyOrder = this.order instanceof Base64Order && ((Base64Order) this.order).hasKeyOrder() ? (Base64Order) this.order : null;
+    }
+
+    /**
+     * sort the rows [0, count) of a chunk cache where the rows [0, sortBound) are already sorted
+     * @param cache the chunk cache
+     * @param sortBound the number of sorted rows at the beginning of the cache
+     * @param count the number of rows in the cache
+     * @return false if there is not enough memory for the sort buffers; the cache is not modified in that case
+     */
+    boolean sort(final byte[] cache, final int sortBound, final int count) {
+        final int tail = count - sortBound;
+        if (tail <= 0) return true;
+        final boolean parallel = count >= parallelLimit;
+        final boolean parallelMerge = parallel && sortBound > 0 && tail >= count / 16;
+        final long scratchsize = (long) (parallelMerge ? count : tail) * this.rowsize;
+        if (scratchsize > Integer.MAX_VALUE || !MemoryControl.request(scratchsize, false)) return false;
+        final byte[] scratch = new byte[(int) scratchsize];
+
+        // sort the unsorted tail; the scratch row i corresponds to the cache row sortBound + i
+        if (tail > 1 && !(keySort && keySort(cache, scratch, sortBound, count))) {
+            System.arraycopy(cache, sortBound * this.rowsize, scratch, 0, tail * this.rowsize);
+            if (parallel && tail >= parallelLimit) {
+                ForkJoinPool.commonPool().invoke(new SortTask(scratch, -sortBound, cache, 0, sortBound, count));
+            } else {
+                mergeSort(scratch, -sortBound, cache, 0, sortBound, count);
+            }
+        }
+        if (sortBound == 0 || compare(cache, sortBound - 1, cache, sortBound) <= 0) return true; // the tail can just be appended
+
+        // merge the sorted prefix with the sorted tail
+        if (parallelMerge) {
+            System.arraycopy(cache, 0, scratch, 0, count * this.rowsize);
+            ForkJoinPool.commonPool().invoke(new MergeTask(scratch, 0, sortBound, sortBound, count, cache, 0));
+        } else {
+            System.arraycopy(cache, sortBound * this.rowsize, scratch, 0, tail * this.rowsize);
+            mergeBackward(cache, sortBound, scratch, tail);
+        }
+        return true;
+    }
+
+    private int compare(final byte[] a, final int i, final byte[] b, final int j) {
+        return this.order.compare(a, i * this.rowsize, b, j * this.rowsize, this.keylength);
+    }
+
+    /**
+     * sort the rows [from, to) of the cache using the long transform of the key prefix. Each row is represented
+     * by a long with the transformed prefix in the high bits and the row number in the low bits. These longs are
+     * sorted as primitives, rows with the same prefix are ordered with a full key comparison and finally the rows
+     * are moved to their sorted position through the scratch buffer.
+     * @return false if the keys cannot be sorted this way; the cache is not modified in that case
+     */
+    private boolean keySort(final byte[] cache, final byte[] scratch, final int from, final int to) {
+        if (this.keyOrder == null) return false;
+        final int n = to - from;
+        final int bits = 32 - Integer.numberOfLeadingZeros(n - 1); // bits for the row number
+        final int chars = Math.min(Math.min(this.keylength, 10), (63 - bits) / 6);
+        if (!MemoryControl.request(8L * n, false)) return false;
+        final long[] k = new long[n];
+        final long mask = (1L << bits) - 1;
+        long key;
+        for (int i = 0; i < n; i++) {
+            key = this.keyOrder.key(cache, (from + i) * this.rowsize, chars);
+            if (key < 0) return false; // not well-formed keys are ordered by the exception handling of the order
+            k[i] = (key << bits) | i;
+        }
+        if (n >= parallelLimit) Arrays.parallelSort(k); else Arrays.sort(k);
+
+        // rows with the same prefix are ordered by their row number; order them by the full key
+        if (chars < this.keylength) {
+            for (int i = 0; i < n;) {
+                final long prefix = k[i] >>> bits;
+                int j = i + 1;
+                while (j < n && (k[j] >>> bits) == prefix) j++;
+                if (j - i > insertionSortLimit) return false; // many equal prefixes: the merge sort is faster
+                for (int p = i + 1; p < j; p++) {
+                    final long x = k[p];
+                    int q = p;
+                    while (q > i && compare(cache, from + (int) (k[q - 1] & mask), cache, from + (int) (x & mask)) > 0) {
+                        k[q] = k[q - 1];
+                        q--;
+                    }
+                    k[q] = x;
+                }
+                i = j;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(cache, (from + (int) (k[i] & mask)) * this.rowsize, scratch, i * this.rowsize, this.rowsize);
+        }
+        System.arraycopy(scratch, 0, cache, from * this.rowsize, n * this.rowsize);
+        return true;
+    }
+
+    /**
+     * sort the rows [lo, hi) into dst. Both arrays must contain the same rows in that range when called;
+     * the row i is at the index soffset + i in src and at the index doffset + i in dst.
+     * The content of src is destroyed.
+     */
+    private void mergeSort(final byte[] src, final int soffset, final byte[] dst, final int doffset, final int lo, final int hi) {
+        final int n = hi - lo;
+        if (n < insertionSortLimit) {
+            insertionSort(dst, doffset + lo, doffset + hi);
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        if (n >= parallelLimit && ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(new SortTask(dst, doffset, src, soffset, lo, mid), new SortTask(dst, doffset, src, soffset, mid, hi));
+        } else {
+            mergeSort(dst, doffset, src, soffset, lo, mid);
+            mergeSort(dst, doffset, src, soffset, mid, hi);
+        }
+        if (compare(src, soffset + mid - 1, src, soffset + mid) <= 0) {
+            // both halves are already in order
+            System.arraycopy(src, (soffset + lo) * this.rowsize, dst, (doffset + lo) * this.rowsize, n * this.rowsize);
+            return;
+        }
+        merge(src, soffset + lo, soffset + mid, soffset + mid, soffset + hi, dst, doffset + lo);
+    }
+
+    private void insertionSort(final byte[] a, final int from, final int to) {
+        final byte[] row = new byte[this.rowsize];
+        for (int i = from + 1; i < to; i++) {
+            if (compare(a, i - 1, a, i) <= 0) continue;
+            System.arraycopy(a, i * this.rowsize, row, 0, this.rowsize);
+            int j = i - 1;
+            while (j > from && compare(a, j - 1, row, 0) > 0) j--;
+            System.arraycopy(a, j * this.rowsize, a, (j + 1) * this.rowsize, (i - j) * this.rowsize);
+            System.arraycopy(row, 0, a, j * this.rowsize, this.rowsize);
+        }
+    }
+
+    /**
+     * merge the sorted runs src[a, aEnd) and src[b, bEnd) into dst starting at row d.
+     * The merge is stable: equal rows from the first run are written before those from the second run.
+     */
+    private void merge(final byte[] src, int a, final int aEnd, int b, final int bEnd, final byte[] dst, int d) {
+        if ((aEnd - a) + (bEnd - b) >= parallelLimit && ForkJoinTask.inForkJoinPool()) {
+            // split the larger run in the middle and search the matching split position in the other run
+            final int am, bm;
+            if (aEnd - a >= bEnd - b) {
+                am = (a + aEnd) >>> 1;
+                bm = lowerBound(src, b, bEnd, am);
+            } else {
+                bm = (b + bEnd) >>> 1;
+                am = upperBound(src, a, aEnd, bm);
+            }
+            ForkJoinTask.invokeAll(
+                    new MergeTask(src, a, am, b, bm, dst, d),
+                    new MergeTask(src, am, aEnd, bm, bEnd, dst, d + (am - a) + (bm - b)));
+            return;
+        }
+        while (a < aEnd && b < bEnd) {
+            if (compare(src, b, src, a) < 0) {
+                System.arraycopy(src, b++ * this.rowsize, dst, d++ * this.rowsize, this.rowsize);
+            } else {
+                System.arraycopy(src, a++ * this.rowsize, dst, d++ * this.rowsize, this.rowsize);
+            }
+        }
+        if (a < aEnd) System.arraycopy(src, a * this.rowsize, dst, d * this.rowsize, (aEnd - a) * this.rowsize);
+        if (b < bEnd) System.arraycopy(src, b * this.rowsize, dst, d * this.rowsize, (bEnd - b) * this.rowsize);
+    }
+
+    /**
+     * merge the sorted rows tail[0, tailcount) into the sorted rows cache[0, sortBound) from the end of the cache;
+     * this needs only a buffer for the tail
+     */
+    private void mergeBackward(final byte[] cache, final int sortBound, final byte[] tail, final int tailcount) {
+        int i = sortBound - 1, j = tailcount - 1, k = sortBound + tailcount - 1;
+        while (j >= 0) {
+            if (i >= 0 && compare(cache, i, tail, j) > 0) {
+                System.arraycopy(cache, i-- * this.rowsize, cache, k-- * this.rowsize, this.rowsize);
+            } else {
+                System.arraycopy(tail, j-- * this.rowsize, cache, k-- * this.rowsize, this.rowsize);
+            }
+        }
+    }
+
+    /**
+     * @return the first position p in [from, to) with src[p] >= src[key], or to
+     */
+    private int lowerBound(final byte[] src, int from, int to, final int key) {
+        while (from < to) {
+            final int m = (from + to) >>> 1;
+            if (compare(src, m, src, key) < 0) from = m + 1; else to = m;
+        }
+        return from;
+    }
+
+    /**
+     * @return the first position p in [from, to) with src[p] > src[key], or to
+     */
+    private int upperBound(final byte[] src, int from, int to, final int key) {
+        while (from < to) {
+            final int m = (from + to) >>> 1;
+            if (compare(src, m, src, key) <= 0) from = m + 1; else to = m;
+        }
+        return from;
+    }
+
+    private final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 3315187632218146953L;
+        private final byte[] src, dst;
+        private final int soffset, doffset, lo, hi;
+
+        private SortTask(final byte[] src, final int soffset, final byte[] dst, final int doffset, final int lo, final int hi) {
+            this.src = src;
+            this.soffset = soffset;
+            this.dst = dst;
+            this.doffset = doffset;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            mergeSort(this.src, this.soffset, this.dst, this.doffset, this.lo, this.hi);
+        }
+    }
+
+    private final class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = -2904638726521846251L;
+        private final byte[] src, dst;
+        private final int a, aEnd, b, bEnd, d;
+
+        private MergeTask(final byte[] src, final int a, final int aEnd, final int b, final int bEnd, final byte[] dst, final int d) {
+            this.src = src;
+            this.a = a;
+            this.aEnd = aEnd;
+            this.b = b;
+            this.bEnd = bEnd;
+            this.dst = dst;
+            this.d = d;
+        }
+
+        @Override
+        protected void compute() {
+            merge(this.src, this.a, this.aEnd, this.b, this.bEnd, this.dst, this.d);
+        }
+    }
+}
@@ -46,18 +46,56 @@ public final class BufferedRecords {
     private final Records efs;
     private final int maxEntries;
     private final TreeMap<Long, byte[]> buffer;
+    private final WriteAheadLog wal;
 
     public BufferedRecords(final Records efs, final int maxEntries) {
+        this(efs, maxEntries, null);
+    }
+
+    /**
+     * @param wal a write-ahead log for all changes of the file, or null if changes are not logged
+     */
+    public BufferedRecords(final Records efs, final int maxEntries, final WriteAheadLog wal) {
         this.efs = efs;
         this.maxEntries = maxEntries;
         this.buffer = new TreeMap<Long, byte[]>();
+        this.wal = wal;
     }
     
     public synchronized void clear() {
+        if (this.wal != null) try {
+            this.wal.truncate(0);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
         this.efs.clear();
         this.buffer.clear();
     }
 
+    /**
+     * make the logged changes durable; this should be called after a write operation without holding
+     * a lock, so that the changes of concurrent writers are committed together
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        if (this.wal != null) this.wal.commit();
+    }
+
+    /**
+     * write all buffers to the file, force the file to the storage device and truncate the write-ahead log
+     * @throws IOException
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (this.wal == null) return;
+        flushBuffer0();
+        this.efs.force();
+        this.wal.checkpoint();
+    }
+
+    private void logged() throws IOException {
+        if (this.wal != null && this.wal.size() > WriteAheadLog.maxLogSize) checkpoint();
+    }
+
     /**
      * flush the buffer: this shall be called before any file-based iterations
      * on data structures on records are made
@@ -87,6 +125,10 @@ public final class BufferedRecords {
     public final synchronized void close() {
         try {
             flushBuffer0();
+            if (this.wal != null) {
+                this.efs.force();
+                this.wal.close();
+            }
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         }
@@ -116,6 +158,7 @@ public final class BufferedRecords {
         assert b.length - start >= this.efs.recordsize;
         final long s = size();
         if (index > s) throw new IndexOutOfBoundsException("kelondroBufferedEcoFS.put(" + index + ") outside bounds (" + size() + ")");
+        if (this.wal != null) this.wal.put(index, b, start);
         if (index == s) {
             this.efs.add(b, start);
         } else {
@@ -124,12 +167,15 @@ public final class BufferedRecords {
             this.buffer.put(Long.valueOf(index), bb);
             if (this.buffer.size() > this.maxEntries) flushBuffer0();
        }
+        logged();
     }
 
     public final synchronized void add(final byte[] b, final int start) throws IOException {
         assert b.length - start >= this.efs.recordsize;
         // index == size() == efs.size();
+        if (this.wal != null) this.wal.put(size(), b, start);
         this.efs.add(b, start);
+        logged();
     }
 
     public final synchronized void cleanLast(final byte[] b, final int start) throws IOException {
@@ -141,11 +187,19 @@ public final class BufferedRecords {
             System.arraycopy(bb, 0, b, start, this.efs.recordsize);
             this.efs.cleanLast();
         }
+        if (this.wal != null) {
+            this.wal.truncate(size());
+            logged();
+        }
     }
 
     public final synchronized void cleanLast() throws IOException {
         this.buffer.remove(Long.valueOf(size() - 1));
         this.efs.cleanLast();
+        if (this.wal != null) {
+            this.wal.truncate(size());
+            logged();
+        }
     }
 
     public final void deleteOnExit() {
@@ -0,0 +1,232 @@
+// MappedFileReader.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * A read-only view of a file which is mapped into memory.
+ * In contrast to the {@link Reader} implementations this class has no file pointer:
+ * all read methods take an absolute position and can therefore be called concurrently
+ * from any number of threads without synchronization.
+ * Files larger than 2GB are mapped in several chunks; reads which cross a chunk border
+ * are assembled from both chunks.
+ * The mapping covers the file length at the time of the construction of the object.
+ * Writes to the file within that range (i.e. from a RandomAccessFile) are visible to the
+ * reader, but the file must not be truncated while the mapping is in use.
+ * The mapping is released explicitly when the reader is closed and the running reads are finished,
+ * because on Windows a mapped file cannot be deleted before it is unmapped.
+ */
+public final class MappedFileReader {
+
+    /** the size of a single mapped chunk; must be a power of two */
+    private static final int  CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE  = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK  = CHUNK_SIZE - 1;
+
+    /** added to the number of users when the reader is closed */
+    private static final int CLOSED = 1 << 30;
+
+    /** sun.misc.Unsafe.invokeCleaner is available since Java 9; null on Java 8 */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final File file;
+    private final long length;
+    private volatile MappedByteBuffer[] chunks;
+    private final AtomicInteger users; // the number of running reads, plus CLOSED after close()
+
+    public MappedFileReader(final File file) throws IOException {
+        this.file = file;
+        this.users = new AtomicInteger(0);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            final int count = (int) ((this.length + CHUNK_MASK) >>> CHUNK_SHIFT);
+            this.chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long start = ((long) i) << CHUNK_SHIFT;
+                this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, this.length - start));
+            }
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    /**
+     * the length of the mapped part of the file
+     * @return the file length at the time when the file was mapped
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * get the mapped buffers for a read; the mapping is not released before release() is called
+     */
+    private MappedByteBuffer[] acquire() throws IOException {
+        if (this.users.getAndIncrement() >= CLOSED) {
+            release();
+            throw new IOException("file " + this.file + " is not mapped any more");
+        }
+        return this.chunks;
+    }
+
+    private void release() {
+        if (this.users.decrementAndGet() == CLOSED) unmap();
+    }
+
+    /**
+     * read bytes from an absolute position of the file
+     * @param pos the position in the file
+     * @param b the target array
+     * @param off the offset in the target array
+     * @param len the number of bytes to read
+     * @throws IOException if the requested range is outside of the mapped file
+     */
+    public void readFully(final long pos, final byte[] b, int off, int len) throws IOException {
+        if (pos < 0 || pos + len > this.length) throw new IOException("EOF in " + this.file.getName() + ", pos = " + pos + ", requested = " + len + ", length = " + this.length);
+        final MappedByteBuffer[] c = acquire();
+        try {
+            long p = pos;
+            while (len > 0) {
+                // a duplicate shares the content but has its own position; this is what makes the access thread-safe
+                final ByteBuffer chunk = c[(int) (p >>> CHUNK_SHIFT)].duplicate();
+                final int cp = (int) (p & CHUNK_MASK);
+                final int n = Math.min(len, chunk.capacity() - cp);
+                chunk.position(cp);
+                chunk.get(b, off, n);
+                p += n;
+                off += n;
+                len -= n;
+            }
+        } finally {
+            release();
+        }
+    }
+
+    public byte readByte(final long pos) throws IOException {
+        if (pos < 0 || pos >= this.length) throw new IOException("EOF in " + this.file.getName() + ", pos = " + pos + ", length = " + this.length);
+        final MappedByteBuffer[] c = acquire();
+        try {
+            return c[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK));
+        } finally {
+            release();
+        }
+    }
+
+    public int readInt(final long pos) throws IOException {
+        if (pos < 0 || pos + 4 > this.length) throw new IOException("EOF in " + this.file.getName() + ", pos = " + pos + ", length = " + this.length);
+        final int cp = (int) (pos & CHUNK_MASK);
+        if (cp + 4 <= CHUNK_SIZE) {
+            // absolute access does not change the buffer state
+            final MappedByteBuffer[] c = acquire();
+            try {
+                return c[(int) (pos >>> CHUNK_SHIFT)].getInt(cp);
+            } finally {
+                release();
+            }
+        }
+        // the int crosses a chunk border
+        final byte[] b = new byte[4];
+        readFully(pos, b, 0, 4);
+        return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+    }
+
+    /**
+     * release the mapping. Reads which are running are finished before the file is unmapped,
+     * later reads throw an IOException.
+     */
+    public void close() {
+        int u;
+        do {
+            u = this.users.get();
+            if (u >= CLOSED) return;
+        } while (!this.users.compareAndSet(u, u + CLOSED));
+        if (u == 0) unmap();
+    }
+
+    private void unmap() {
+        final MappedByteBuffer[] c;
+        synchronized (this) {
+            c = this.chunks;
+            this.chunks = null;
+        }
+        if (c == null) return;
+        for (final MappedByteBuffer chunk: c) unmap(chunk);
+    }
+
+    /**
+     * release a mapped buffer at once instead of waiting for the garbage collection of the buffer.
+     * The buffer must not be used any more; an access after the unmap crashes the JVM.
+     * @param buffer a buffer which was returned by FileChannel.map()
+     */
+    public static void unmap(final MappedByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                // Java 8: the buffer is a sun.nio.ch.DirectBuffer with a cleaner
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // the mapping is released by the garbage collection
+            ConcurrentLog.fine("MappedFileReader", "cannot unmap buffer: " + e.getMessage());
+        }
+    }
+
+}
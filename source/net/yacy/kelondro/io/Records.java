@@ -208,6 +208,16 @@ public final class Records {
         this.buffercount = 0;
     }
 
+    /**
+     * write the buffer to the file and force all changes of the file to the storage device
+     * @throws IOException
+     */
+    public final synchronized void force() throws IOException {
+        if (this.raf == null) return;
+        flushBuffer();
+        this.raf.getFD().sync();
+    }
+
     public final synchronized void close() {
         // close the file
         if (this.raf != null) try {
@@ -0,0 +1,332 @@
+// WriteAheadLog.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * An append-only log of all write operations on a Records file. Every change of the record file is
+ * logged before it is applied to the write buffers of BufferedRecords and Records, so the changes
+ * which are lost from the buffers after a crash can be replayed from the log when the file is opened again.
+ *
+ * The log contains only operations with absolute positions: a record is written to a given index,
+ * or the file is truncated to a given number of records. Such operations can be replayed in their
+ * original order on a file that already contains some of the changes.
+ *
+ * Entries are collected in memory and are written and forced to the storage device with a group commit:
+ * the first thread that calls sync() writes all pending entries of all threads with one fsync, while
+ * the other threads wait for it. If a sync interval is given, commit() forces the log at most once per
+ * interval and only hands over the entries to the operating system otherwise; this survives a crash of the
+ * process, but changes of the last interval may get lost on a power failure.
+ *
+ * A checkpoint is made when the log exceeds maxLogSize: the buffers of the record file are flushed, the
+ * file is forced to the storage device and the log is truncated. Therefore recovery only replays the
+ * operations after the last checkpoint.
+ */
+public final class WriteAheadLog {
+
+    private final static ConcurrentLog log = new ConcurrentLog("WAL");
+
+    /**
+     * the log size in bytes that triggers a checkpoint
+     */
+    public static long maxLogSize = 16L * 1024L * 1024L;
+
+    private static final int MAGIC = 0x5957414c; // "YWAL"
+    private static final int HEADER_SIZE = 8;
+    private static final byte PUT = 1, TRUNCATE = 2;
+    private static final int MAX_PENDING = 64 * 1024;
+
+    private final File file;
+    private final int recordsize;
+    private final long syncInterval;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final CRC32 crc;
+    private byte[] pending;
+    private int pendingSize;
+    private long appended;      // the log sequence number after the last appended entry
+    private long durable;       // all entries up to this log sequence number are forced to the device
+    private long writePosition; // the file position where the pending entries are written
+    private long lastForce;
+    private boolean flushing, closed;
+
+    /**
+     * open a new log; an existing log file must have been replayed before
+     * @param file the log file
+     * @param recordsize the size of the records of the logged file
+     * @param syncInterval 0 if commit() shall wait until the log is forced, otherwise the time in milliseconds between forced writes
+     * @throws IOException
+     */
+    public WriteAheadLog(final File file, final int recordsize, final long syncInterval) throws IOException {
+        this.file = file;
+        this.recordsize = recordsize;
+        this.syncInterval = syncInterval;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = this.raf.getChannel();
+        this.crc = new CRC32();
+        this.pending = new byte[4096];
+        this.pendingSize = 0;
+        this.appended = 0;
+        this.durable = 0;
+        this.lastForce = System.currentTimeMillis();
+        this.flushing = false;
+        this.closed = false;
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(this.recordsize).flip();
+        this.channel.truncate(0);
+        this.channel.write(header, 0);
+        this.channel.force(false);
+        this.writePosition = HEADER_SIZE;
+    }
+
+    /**
+     * log the write of a record
+     * @param index the record index
+     * @param b the array containing the record
+     * @param start the offset of the record in b
+     */
+    public synchronized void put(final long index, final byte[] b, final int start) throws IOException {
+        append(PUT, index, b, start);
+    }
+
+    /**
+     * log a change of the record file size
+     * @param size the new number of records
+     */
+    public synchronized void truncate(final long size) throws IOException {
+        append(TRUNCATE, size, null, 0);
+    }
+
+    private void append(final byte type, final long value, final byte[] b, final int start) throws IOException {
+        if (this.closed) throw new IOException("write-ahead log " + this.file + " is closed");
+        final int length = 1 + 8 + (b == null ? 0 : this.recordsize) + 4;
+        if (this.pendingSize + length > this.pending.length) {
+            final byte[] p = new byte[Math.max(this.pending.length * 2, this.pendingSize + length)];
+            System.arraycopy(this.pending, 0, p, 0, this.pendingSize);
+            this.pending = p;
+        }
+        final int p = this.pendingSize;
+        this.pending[p] = type;
+        for (int i = 0; i < 8; i++) this.pending[p + 1 + i] = (byte) (value >>> (56 - 8 * i));
+        if (b != null) System.arraycopy(b, start, this.pending, p + 9, this.recordsize);
+        this.crc.reset();
+        this.crc.update(this.pending, p, length - 4);
+        final int c = (int) this.crc.getValue();
+        for (int i = 0; i < 4; i++) this.pending[p + length - 4 + i] = (byte) (c >>> (24 - 8 * i));
+        this.pendingSize += length;
+        this.appended += length;
+        if (this.pendingSize > MAX_PENDING && !this.flushing) writePending();
+    }
+
+    /**
+     * hand over the pending entries to the operating system; must be called synchronized
+     * while no other thread is flushing
+     */
+    private void writePending() throws IOException {
+        if (this.pendingSize == 0) return;
+        this.channel.write(ByteBuffer.wrap(this.pending, 0, this.pendingSize), this.writePosition);
+        this.writePosition += this.pendingSize;
+        this.pendingSize = 0;
+    }
+
+    /**
+     * make the logged operations durable according to the sync interval
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        final long lsn;
+        synchronized (this) {
+            if (this.closed || this.durable >= this.appended) return;
+            lsn = this.appended;
+            if (this.syncInterval > 0 && System.currentTimeMillis() - this.lastForce < this.syncInterval) {
+                if (!this.flushing) writePending();
+                return;
+            }
+        }
+        sync(lsn);
+    }
+
+    /**
+     * wait until all operations up to the given log sequence number are forced to the storage device.
+     * Only one thread writes at a time; it takes the entries of all other threads with it.
+     * @param lsn a log sequence number
+     * @throws IOException
+     */
+    public void sync(final long lsn) throws IOException {
+        while (true) {
+            final byte[] chunk;
+            final long position, target;
+            synchronized (this) {
+                if (this.closed || this.durable >= lsn) return;
+                if (this.flushing) {
+                    try {
+                        this.wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted while waiting for " + this.file);
+                    }
+                    continue;
+                }
+                this.flushing = true;
+                chunk = new byte[this.pendingSize];
+                System.arraycopy(this.pending, 0, chunk, 0, this.pendingSize);
+                this.pendingSize = 0;
+                position = this.writePosition;
+                this.writePosition += chunk.length;
+                target = this.appended;
+            }
+            IOException failure = null;
+            try {
+                this.channel.write(ByteBuffer.wrap(chunk), position);
+                this.channel.force(false);
+            } catch (final IOException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                this.flushing = false;
+                if (failure == null) {
+                    this.durable = Math.max(this.durable, target);
+                    this.lastForce = System.currentTimeMillis();
+                }
+                this.notifyAll();
+            }
+            if (failure != null) throw failure;
+        }
+    }
+
+    /**
+     * @return the size of the log in bytes
+     */
+    public synchronized long size() {
+        return this.writePosition + this.pendingSize;
+    }
+
+    /**
+     * truncate the log after all logged operations have been written to the record file and the
+     * record file was forced to the storage device
+     * @throws IOException
+     */
+    public synchronized void checkpoint() throws IOException {
+        while (this.flushing) {
+            try {
+                this.wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for " + this.file);
+            }
+        }
+        this.pendingSize = 0;
+        writeHeader();
+        this.durable = this.appended;
+        this.lastForce = System.currentTimeMillis();
+        this.notifyAll();
+    }
+
+    /**
+     * close the log and delete the log file; this must only be done after a checkpoint
+     */
+    public synchronized void close() {
+        if (this.closed) return;
+        this.closed = true;
+        this.notifyAll();
+        try {
+            this.raf.close();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+        FileUtils.deletedelete(this.file);
+    }
+
+    /**
+     * replay a log file on a record file; this must be done before the record file is opened.
+     * The log file is deleted afterwards. Replay stops at the first incomplete or corrupted entry,
+     * which is the entry that was written when the process crashed.
+     * @param logfile the log file
+     * @param tablefile the record file
+     * @param recordsize the size of a record
+     * @return the number of replayed operations
+     * @throws IOException
+     */
+    public static int replay(final File logfile, final File tablefile, final int recordsize) throws IOException {
+        if (!logfile.exists()) return 0;
+        int count = 0;
+        final RandomAccessFile in = new RandomAccessFile(logfile, "r");
+        try {
+            if (in.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != recordsize) {
+                log.warn("ignoring write-ahead log " + logfile + " with a wrong header");
+                return 0;
+            }
+            final RandomAccessFile out = new RandomAccessFile(tablefile, "rw");
+            try {
+                final byte[] entry = new byte[1 + 8 + recordsize + 4];
+                final CRC32 crc = new CRC32();
+                long position = HEADER_SIZE;
+                final long end = in.length();
+                while (position + 13 <= end) {
+                    in.seek(position);
+                    in.readFully(entry, 0, 9);
+                    final int length = entry[0] == PUT ? entry.length : entry[0] == TRUNCATE ? 13 : -1;
+                    if (length < 0 || position + length > end) break;
+                    in.readFully(entry, 9, length - 9);
+                    crc.reset();
+                    crc.update(entry, 0, length - 4);
+                    int c = 0;
+                    for (int i = 0; i < 4; i++) c = (c << 8) | (entry[length - 4 + i] & 0xff);
+                    if (c != (int) crc.getValue()) break;
+                    long value = 0;
+                    for (int i = 0; i < 8; i++) value = (value << 8) | (entry[1 + i] & 0xff);
+                    if (entry[0] == PUT) {
+                        out.seek(value * recordsize);
+                        out.write(entry, 9, recordsize);
+                    } else {
+                        out.setLength(value * recordsize);
+                    }
+                    position += length;
+                    count++;
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        if (count > 0) log.info("replayed " + count + " operations from write-ahead log " + logfile);
+        FileUtils.deletedelete(logfile);
+        return count;
+    }
+}
@@ -0,0 +1,218 @@
+// JsonLinesHandler.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+
+import net.yacy.cora.date.ISO8601Formatter;
+
+/**
+ * A log handler which writes one JSON object per line:
+ * {"time":"2026-10-18T12:00:00Z","level":"INFO","logger":"CRAWLER","message":"...","thrown":"..."}
+ * Lines are collected in a batch which is written when it exceeds the batch size, when more than a second
+ * has passed since the last write, and when the handler is flushed; the ConcurrentLog worker flushes the
+ * handlers whenever its queue is empty. The file is rotated when it exceeds the limit.
+ *
+ * Properties (prefix net.yacy.kelondro.logging.JsonLinesHandler):
+ * pattern: the log file, with %g for the generation number (default DATA/LOG/yacy%g.jsonl)
+ * limit: the maximum size of a file in bytes (default 10485760)
+ * count: the number of files (default 5)
+ * level: the minimum level (default ALL)
+ * batch: the size of a batch in bytes (default 65536)
+ */
+public class JsonLinesHandler extends Handler {
+
+    private final String pattern;
+    private final long limit;
+    private final int count;
+    private final int batchSize;
+    private final StringBuilder batch;
+    private OutputStream os;
+    private long written;
+    private long lastWrite;
+
+    public JsonLinesHandler() {
+        this(LogManager.getLogManager(), JsonLinesHandler.class.getName());
+    }
+
+    private JsonLinesHandler(final LogManager manager, final String className) {
+        this(manager.getProperty(className + ".pattern") == null ? "DATA/LOG/yacy%g.jsonl" : manager.getProperty(className + ".pattern"),
+             property(manager, className + ".limit", 10 * 1024 * 1024),
+             (int) property(manager, className + ".count", 5),
+             (int) property(manager, className + ".batch", 64 * 1024));
+        final String level = manager.getProperty(className + ".level");
+        setLevel((level == null) ? Level.ALL : Level.parse(level));
+    }
+
+    /**
+     * create a handler without the properties of the LogManager
+     * @param pattern the log file, with %g for the generation number
+     * @param limit the maximum size of a file in bytes
+     * @param count the number of files
+     * @param batchSize the size of a batch in bytes
+     */
+    public JsonLinesHandler(final String pattern, final long limit, final int count, final int batchSize) {
+        super();
+        this.pattern = pattern;
+        this.limit = limit;
+        this.count = Math.max(1, count);
+        this.batchSize = batchSize;
+        this.batch = new StringBuilder(this.batchSize + 4096);
+        this.lastWrite = System.currentTimeMillis();
+        try {
+            open();
+        } catch (final IOException e) {
+            reportError("cannot open " + file(0), e, ErrorManager.OPEN_FAILURE);
+        }
+    }
+
+    private static long property(final LogManager manager, final String key, final long dflt) {
+        final String v = manager.getProperty(key);
+        if (v == null) return dflt;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (final NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    private File file(final int generation) {
+        return new File(this.pattern.replace("%g", Integer.toString(generation)));
+    }
+
+    private void open() throws IOException {
+        final File f = file(0);
+        final File parent = f.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        this.os = new FileOutputStream(f, true);
+        this.written = f.length();
+    }
+
+    private void rotate() throws IOException {
+        this.os.close();
+        this.os = null;
+        for (int g = this.count - 1; g > 0; g--) {
+            final File from = file(g - 1);
+            final File to = file(g);
+            if (!from.exists()) continue;
+            if (to.exists()) to.delete();
+            from.renameTo(to);
+        }
+        if (this.count == 1) file(0).delete();
+        open();
+    }
+
+    @Override
+    public synchronized void publish(final LogRecord record) {
+        if (!isLoggable(record)) return;
+        final StringBuilder b = this.batch;
+        b.append("{\"time\":\"").append(ISO8601Formatter.FORMATTER.format(new Date(record.getMillis())));
+        b.append("\",\"level\":\"").append(record.getLevel().getName());
+        b.append("\",\"logger\":");
+        appendString(b, record.getLoggerName());
+        b.append(",\"message\":");
+        appendString(b, record.getMessage());
+        if (record.getThrown() != null) {
+            final StringWriter w = new StringWriter();
+            record.getThrown().printStackTrace(new PrintWriter(w));
+            b.append(",\"thrown\":");
+            appendString(b, w.toString());
+        }
+        b.append("}\n");
+        if (b.length() >= this.batchSize || System.currentTimeMillis() - this.lastWrite > 1000) write();
+    }
+
+    private static void appendString(final StringBuilder b, final String s) {
+        if (s == null) {
+            b.append("null");
+            return;
+        }
+        b.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"': b.append("\\\""); break;
+                case '\\': b.append("\\\\"); break;
+                case '\n': b.append("\\n"); break;
+                case '\r': b.append("\\r"); break;
+                case '\t': b.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        b.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+            }
+        }
+        b.append('"');
+    }
+
+    private void write() {
+        this.lastWrite = System.currentTimeMillis();
+        if (this.batch.length() == 0 || this.os == null) return;
+        try {
+            final byte[] b = this.batch.toString().getBytes(StandardCharsets.UTF_8);
+            this.batch.setLength(0);
+            this.os.write(b);
+            this.written += b.length;
+            if (this.written >= this.limit) rotate();
+        } catch (final IOException e) {
+            reportError("cannot write " + file(0), e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        write();
+        if (this.os == null) return;
+        try {
+            this.os.flush();
+        } catch (final IOException e) {
+            reportError("cannot flush " + file(0), e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws SecurityException {
+        flush();
+        if (this.os == null) return;
+        try {
+            this.os.close();
+        } catch (final IOException e) {
+            reportError("cannot close " + file(0), e, ErrorManager.CLOSE_FAILURE);
+        }
+        this.os = null;
+    }
+}
@@ -27,11 +27,18 @@ package net.yacy.kelondro.rwi;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.blob.ArrayStack;
+import net.yacy.kelondro.util.IOBudget;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
 
 /**
@@ -45,26 +52,49 @@ import net.yacy.kelondro.util.MemoryControl;
  * to use this class, first instantiate a object and then start the concurrent execution
  * of merging with a call to the start() - method. To shut down all mergings, call terminate()
  * only once.
+ *
+ * dump jobs are always executed one after another in the dispatcher thread. Merge jobs are
+ * handed over to a pool of mergeWorkers threads; all merges together write not more than
+ * mergeIOBudget bytes per second.
  */
 public class IODispatcher extends Thread {
 
     private static final ConcurrentLog log = new ConcurrentLog("IODispatcher");
 
+    /** the number of merge jobs that may run at the same time. Overwrite this before a dispatcher is created. */
+    public static int mergeWorkers = 1;
+
+    /** the number of bytes per second that all merge jobs together may write; 0 means no limit */
+    public static long mergeIOBudget = 0;
+
+    /** the maximum number of files which are merged in one pass */
+    public static int maxMergeFanIn = 8;
+
     private   Semaphore                    controlQueue; // controls that only one io job is running
     private   final Semaphore              termination; // released if thread is safe to terminate
     private   ArrayBlockingQueue<MergeJob> mergeQueue;
     private   ArrayBlockingQueue<DumpJob<? extends Reference>> dumpQueue;
     private   boolean                      terminate;
     private final int                      writeBufferSize;
+    private final ThreadPoolExecutor       mergeExecutor;
+    private final Semaphore                mergeSlots; // one permit for each merge worker which is not busy
+    private final AtomicInteger            deferredMerges; // number of controlQueue permits which were taken while all merge workers were busy
+    private final IOBudget                 mergeBudget;
 
     public IODispatcher(final int dumpQueueLength, final int mergeQueueLength, final int writeBufferSize) {
     	super("IODispatcher");
         this.termination = new Semaphore(0);
         this.controlQueue = new Semaphore(0);
         this.dumpQueue = new ArrayBlockingQueue<DumpJob<? extends Reference>>(dumpQueueLength);
-        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(mergeQueueLength);
+        final int workers = Math.max(1, mergeWorkers);
+        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(Math.max(mergeQueueLength, 2 * workers));
         this.writeBufferSize = writeBufferSize;
         this.terminate = false;
+        this.mergeSlots = new Semaphore(workers);
+        this.deferredMerges = new AtomicInteger(0);
+        this.mergeBudget = new IOBudget(mergeIOBudget);
+        this.mergeExecutor = new ThreadPoolExecutor(workers, workers, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("IODispatcher.merge"));
+        this.mergeExecutor.allowCoreThreadTimeOut(true);
     }
 
     public void terminate() {
@@ -108,46 +138,117 @@ public class IODispatcher extends Thread {
     }
 
     protected synchronized int queueLength() {
-        return (this.controlQueue == null || !isAlive()) ? 0 : this.controlQueue.availablePermits();
+        // jobs which wait for a free merge worker are still in the queue
+        return (this.controlQueue == null || !isAlive()) ? 0 : this.controlQueue.availablePermits() + this.deferredMerges.get();
     }
 
-    protected synchronized void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+    protected void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        merge((f2 == null) ? new File[]{f1} : new File[]{f1, f2}, factory, array, newFile);
+    }
+
+    /**
+     * queue a merge of any number of files. If only one file is given, the file is rewritten.
+     * @param files the files to be merged; they must be unmounted from the array
+     * @param factory
+     * @param array the array where the result is mounted
+     * @param newFile the file name of the result
+     */
+    protected synchronized void merge(final File[] files, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        final String names = names(files);
         if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
-            if (f2 == null) {
-                log.warn("emergency rewrite of file " + f1.getName() + " to " + newFile.getName());
+            if (files.length == 1) {
+                log.warn("emergency rewrite of file " + names + " to " + newFile.getName());
             } else {
-                log.warn("emergency merge of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
+                log.warn("emergency merge of files " + names + " to " + newFile.getName());
             }
-            array.mergeMount(f1, f2, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
+            array.mergeMount(files, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), this.mergeBudget);
         } else {
-            final MergeJob job = new MergeJob(f1, f2, factory, array, newFile);
+            final MergeJob job = new MergeJob(files, factory, array, newFile);
             if (isAlive()) {
                 try {
                     this.mergeQueue.add(job);
-                    if (f2 == null) {
-                        log.info("appended rewrite job of file " + f1.getName() + " to " + newFile.getName());
+                    if (files.length == 1) {
+                        log.info("appended rewrite job of file " + names + " to " + newFile.getName());
                     } else {
-                        log.info("appended merge job of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
+                        log.info("appended merge job of files " + names + " to " + newFile.getName());
                     }
-                } catch (final IllegalStateException e) { // because mergeQueue size is 1, IllegalStateException could happen frequently (serial execution ensured in run() )
+                } catch (final IllegalStateException e) { // the mergeQueue is small, IllegalStateException could happen frequently
                 	log.warn("Could not add merge job to queue: " + e.getMessage());
                 } finally {
                     this.controlQueue.release();
                 }
             } else {
                 job.merge();
-                if (f2 == null) {
-                    log.warn("dispatcher not running, merged files " + f1.getName() + " to " + newFile.getName());
+                if (files.length == 1) {
+                    log.warn("dispatcher not running, rewrote file " + names + " to " + newFile.getName());
                 } else {
-                    log.warn("dispatcher not running, rewrote file " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
+                    log.warn("dispatcher not running, merged files " + names + " to " + newFile.getName());
                 }
             }
         }
     }
 
+    private static String names(final File[] files) {
+        final StringBuilder sb = new StringBuilder();
+        for (final File f: files) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(f.getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * the number of merge jobs which are currently executed
+     * @return the number of busy merge workers
+     */
+    public int activeMerges() {
+        return this.mergeExecutor.getActiveCount();
+    }
+
+    /**
+     * hand over a merge job to a merge worker. When the job is finished, the dispatcher is woken up
+     * if a job was deferred because all workers were busy.
+     */
+    private void startMerge(final MergeJob job) {
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    job.merge();
+                } catch (final Throwable e) {
+                    if (job.files.length == 1) {
+                        log.severe("merge job had errors, dump to " + job.newFile + " failed. Input file is " + names(job.files), e);
+                    } else {
+                        log.severe("merge job had errors, dump to " + job.newFile + " failed. Input files are " + names(job.files), e);
+                    }
+                } finally {
+                    IODispatcher.this.mergeSlots.release();
+                    wakeDeferred();
+                }
+            }
+        };
+        try {
+            this.mergeExecutor.execute(worker);
+        } catch (final RejectedExecutionException e) {
+            // the executor is shut down; merge in this thread
+            worker.run();
+        }
+    }
+
+    private void wakeDeferred() {
+        while (true) {
+            final int d = this.deferredMerges.get();
+            if (d <= 0) return;
+            if (this.deferredMerges.compareAndSet(d, d - 1)) {
+                final Semaphore control = this.controlQueue;
+                if (control != null) control.release();
+                return;
+            }
+        }
+    }
+
     @Override
     public void run() {
-        MergeJob mergeJob;
         DumpJob<? extends Reference> dumpJob;
         try {
             loop: while (true) try {
@@ -171,23 +272,26 @@ public class IODispatcher extends Thread {
                     continue loop;
                 }
 
-                // otherwise do a merge operation
+                // otherwise start a merge operation
                 if (!this.mergeQueue.isEmpty() && !MemoryControl.shortStatus()) {
-                	File f = null, f1 = null, f2 = null;
+                    if (!this.mergeSlots.tryAcquire()) {
+                        // all merge workers are busy; the job is started when a worker becomes free
+                        this.deferredMerges.incrementAndGet();
+                        // check again in case that a worker finished in the meantime; this may cause a spare wake-up but never a lost one
+                        if (!this.mergeSlots.tryAcquire()) {
+                            if (this.terminate) this.controlQueue.release();
+                            continue loop;
+                        }
+                    }
+                    MergeJob mergeJob = null;
                     try {
                         mergeJob = this.mergeQueue.take();
-                        f = mergeJob.newFile;
-                        f1 = mergeJob.f1;
-                        f2 = mergeJob.f2;
-                        mergeJob.merge();
+                        startMerge(mergeJob);
                     } catch (final InterruptedException e) {
                         log.severe("main run job was interrupted (2)", e);
+                        this.mergeSlots.release();
                     } catch (final Throwable e) {
-                        if (f2 == null) {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input file is " + f1, e);
-                        } else {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input files are " + f1 + " and " + f2, e);
-                        }
+                        log.severe("main run job had errors (2), merge to " + (mergeJob == null ? null : mergeJob.newFile) + " failed.", e);
                     } finally {
                         // make sure (on error) loop never hangs on controlQueue.acquire() (after/on error)
                         if (this.terminate) this.controlQueue.release();
@@ -209,6 +313,12 @@ public class IODispatcher extends Thread {
             log.severe("main run job failed (4)", e);
         } finally {
             log.info("terminating run job");
+            this.mergeExecutor.shutdown();
+            try {
+                this.mergeExecutor.awaitTermination(10, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                log.warn("interrupted while waiting for running merge jobs");
+            }
             this.controlQueue = null;
             this.dumpQueue = null;
             this.mergeQueue = null;
@@ -237,33 +347,30 @@ public class IODispatcher extends Thread {
 
     private class MergeJob {
 
-        private final File f1, f2, newFile;
+        private final File[] files;
+        private final File newFile;
         private final ArrayStack array;
         private final ReferenceFactory<? extends Reference> factory;
 
         private MergeJob(
-                final File f1,
-                final File f2,
+                final File[] files,
                 final ReferenceFactory<? extends Reference> factory,
                 final ArrayStack array,
                 final File newFile) {
-            this.f1 = f1;
-            this.f2 = f2;
+            this.files = files;
             this.factory = factory;
             this.newFile = newFile;
             this.array = array;
         }
 
         private File merge() {
-        	if (!this.f1.exists()) {
-        	    log.warn("merge of file (1) " + this.f1.getName() + " failed: file does not exists");
-        		return null;
-        	}
-        	if (this.f2 != null && !this.f2.exists()) {
-        	    log.warn("merge of file (2) " + this.f2.getName() + " failed: file does not exists");
-        		return null;
-        	}
-            return this.array.mergeMount(this.f1, this.f2, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize));
+            for (final File f: this.files) {
+                if (!f.exists()) {
+                    log.warn("merge of file " + f.getName() + " failed: file does not exists");
+                    return null;
+                }
+            }
+            return this.array.mergeMount(this.files, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / (3 * Math.max(1, mergeWorkers)), IODispatcher.this.writeBufferSize), IODispatcher.this.mergeBudget);
         }
     }
 
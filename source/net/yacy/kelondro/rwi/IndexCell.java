@@ -69,12 +69,14 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     // class variables
     private final ReferenceContainerArray<ReferenceType> array;
-    private       ReferenceContainerCache<ReferenceType> ram;
+    private volatile ReferenceContainerCache<ReferenceType> ram;
+    private final Object                                 ramInstalled; // notified when a fresh RAM cache replaced the old one
     private final ComparableARC<byte[], Integer>         countCache;
     private       int                                    maxRamEntries;
     private       IODispatcher                           merger; // pointer to shared merger
     private       long                                   lastCleanup;
-    private long  lastDump;
+    private volatile long lastDump;
+    private volatile long lastDumpRequest;
     private final long                                   targetFileSize, maxFileSize;
     private final int                                    writeBufferSize;
     private final Map<byte[], HandleSet>                 removeDelayedURLs; // mapping from word hashes to a list of url hashes
@@ -98,10 +100,12 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.merger = merger;
         this.array = new ReferenceContainerArray<ReferenceType>(cellPath, prefix, factory, termOrder, termSize);
         this.ram = new ReferenceContainerCache<ReferenceType>(factory, termOrder, termSize);
+        this.ramInstalled = new Object();
         this.countCache = new ComparableARC<byte[], Integer>(1000, termOrder);
         this.maxRamEntries = maxRamEntries;
         this.lastCleanup = System.currentTimeMillis();
         this.lastDump = System.currentTimeMillis();
+        this.lastDumpRequest = 0;
         this.targetFileSize = targetFileSize;
         this.maxFileSize = maxFileSize;
         this.writeBufferSize = writeBufferSize;
@@ -149,11 +153,15 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
                         ReferenceContainerCache<ReferenceType> ramdump;
                         final ByteOrder termOrder = IndexCell.this.ram.termKeyOrdering();
                         final int termSize = IndexCell.this.ram.termKeyLength();
-                        synchronized (this) {
+                        synchronized (IndexCell.this.ramInstalled) {
                             ramdump = IndexCell.this.ram;
                             // get a fresh ram cache
                             IndexCell.this.ram = new ReferenceContainerCache<ReferenceType>(IndexCell.this.factory, termOrder, termSize);
+                            IndexCell.this.ramInstalled.notifyAll();
                         }
+                        // indexing threads which still write into the old cache are finished after sealing;
+                        // later writes go to the fresh cache, so indexing does not wait for the dump
+                        ramdump.seal(IndexCell.this.ram);
                         // WARNING : if this cell is queried before this dump termination, terms are no longer in the cache and would therefore not be found
                         // dump the buffer
                         IndexCell.this.merger.dump(ramdump, dumpFile, IndexCell.this.array);
@@ -187,8 +195,17 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         if (this.array.entries() < 2) return false;
         boolean donesomething = false;
 
-        // first try to merge small files that match
+        // first merge many small files in one pass
         int term = 10;
+        if (IODispatcher.maxMergeFanIn > 2) {
+            while (term-- > 0 && (this.merger.queueLength() < 3 || this.array.entries() >= 50)) {
+                if (!this.array.shrinkManySmallFiles(this.merger, targetFileSize, IODispatcher.maxMergeFanIn)) break;
+                donesomething = true;
+            }
+        }
+
+        // then try to merge small files that match
+        term = 10;
         while (term-- > 0 && (this.merger.queueLength() < 3 || this.array.entries() >= 50)) {
             if (!this.array.shrinkBestSmallFiles(this.merger, targetFileSize)) break;
             donesomething = true;
@@ -273,29 +290,61 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     @Override
     public void add(final ReferenceContainer<ReferenceType> newEntries) throws IOException, SpaceExceededException {
         try {
-            this.ram.add(newEntries);
+            addRam(newEntries);
             final long t = System.currentTimeMillis();
             if (this.ram.size() % 1000 == 0 || this.lastCleanup + cleanupCycle < t || this.lastDump + dumpCycle < t) {
                 EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
             }
         } catch (final SpaceExceededException e) {
             EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
-            this.ram.add(newEntries);
+            addRam(newEntries);
         }
 
     }
 
+    private void addRam(final ReferenceContainer<ReferenceType> newEntries) throws SpaceExceededException {
+        ReferenceContainerCache<ReferenceType> cache = this.ram;
+        while (!cache.tryAdd(newEntries)) cache = freshRam(cache);
+    }
+
+    private void addRam(final byte[] termHash, final ReferenceType entry) throws SpaceExceededException {
+        ReferenceContainerCache<ReferenceType> cache = this.ram;
+        while (!cache.tryAdd(termHash, entry)) cache = freshRam(cache);
+    }
+
+    /**
+     * wait until the given sealed cache is replaced by a fresh RAM cache
+     * @param sealed a cache which did not accept references because it was sealed for a dump
+     * @return the RAM cache which replaced the sealed cache
+     */
+    private ReferenceContainerCache<ReferenceType> freshRam(final ReferenceContainerCache<ReferenceType> sealed) {
+        boolean interrupted = false;
+        synchronized (this.ramInstalled) {
+            // the cache is replaced before it is sealed, so this does usually not wait at all
+            while (this.ram == sealed) {
+                try {
+                    this.ramInstalled.wait();
+                } catch (final InterruptedException e) {
+                    // the references must not get lost; wait again and restore the interrupt afterwards
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            return this.ram;
+        }
+    }
+
     @Override
     public void add(final byte[] termHash, final ReferenceType entry) throws IOException, SpaceExceededException {
         try {
-            this.ram.add(termHash, entry);
+            addRam(termHash, entry);
             final long t = System.currentTimeMillis();
             if (this.ram.size() % 1000 == 0 || this.lastCleanup + cleanupCycle < t || this.lastDump + dumpCycle < t) {
                 EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
             }
         } catch (final SpaceExceededException e) {
             EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
-            this.ram.add(termHash, entry);
+            addRam(termHash, entry);
         }
     }
 
@@ -589,6 +638,18 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.countCache.clear();
     }
 
+    /**
+     * let the flush thread dump the RAM buffer in its next cycle, i.e. within three seconds.
+     * Requests are granted at most once per dump cycle and only for a buffer with more than 3000 terms,
+     * so that a caller which asks repeatedly does not produce many small BLOB files.
+     */
+    public void requestDump() {
+        final long t = System.currentTimeMillis();
+        if (this.ram.size() <= 3000 || this.lastDumpRequest + dumpCycle > t) return;
+        this.lastDumpRequest = t;
+        this.lastDump = 0;
+    }
+
     /**
      * when a cell is closed, the current RAM is dumped to a file which will be opened as
      * BLOB file the next time a cell is opened. A name for the dump is automatically generated
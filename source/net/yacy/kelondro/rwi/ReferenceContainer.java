@@ -42,6 +42,7 @@ import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowSet;
 
@@ -60,6 +61,8 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
     private   byte[] termHash;
     protected ReferenceFactory<ReferenceType> factory;
     public static int maxReferences = 0; // overwrite this to enable automatic index shrinking. 0 means no shrinking
+    public static boolean compressWordReferences = false; // overwrite this to store word reference containers in the compressed format
+    public static boolean gallopingJoin = true; // overwrite this to use the pairwise join and exclusion of containers
 
     public ReferenceContainer(final ReferenceFactory<ReferenceType> factory, final byte[] termHash, final RowSet collection) {
         super(collection);
@@ -84,6 +87,16 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         this.lastTimeWrote = 0;
     }
 
+    /**
+     * export the container for the storage in a BLOB file. Word reference containers are
+     * compressed if compressWordReferences is set; both formats are read with RowSet.importRowSet().
+     * @return the exported container
+     */
+    public byte[] exportStorageCollection() {
+        if (compressWordReferences && this.rowdef == WordReferenceRow.urlEntryRow) return exportCompressedCollection();
+        return exportCollection();
+    }
+
     public ReferenceContainer<ReferenceType> topLevelClone() throws SpaceExceededException {
         final ReferenceContainer<ReferenceType> newContainer = new ReferenceContainer<ReferenceType>(this.factory, this.termHash, size());
         newContainer.addAllUnique(this);
@@ -156,7 +169,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         if (c == null) return 0;
         int x = 0;
         synchronized (c) {
-            final Iterator<ReferenceType> i = c.entries();
+            final Iterator<ReferenceType> i = c.entryViews();
             while (i.hasNext()) {
                 try {
                     if (putRecent(i.next())) x++;
@@ -232,7 +245,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
     	List<Integer> positions;
     	ReferenceType r;
 		final TreeMap<Long, List<Integer>> tm = new TreeMap<Long, List<Integer>>();
-    	final Iterator<ReferenceType> i = this.entries();
+    	final Iterator<ReferenceType> i = this.entryViews();
     	int pos = 0;
     	while (i.hasNext()) {
     		r = i.next();
@@ -251,6 +264,30 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return new entryIterator();
     }
 
+    /**
+     * iterate the references without copying the rows: each reference is a view on a row of this container and
+     * is only valid until the next call of next(). This is used by scans which only read the references or copy them.
+     */
+    private Iterator<ReferenceType> entryViews() {
+        final Iterator<Row.Entry> i = views();
+        return new Iterator<ReferenceType>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+            @Override
+            public ReferenceType next() {
+                final Row.Entry rentry = i.next();
+                if (rentry == null) return null;
+                return ReferenceContainer.this.factory.produceSlow(rentry);
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     public class entryIterator implements Iterator<ReferenceType> {
 
         Iterator<Row.Entry> rowEntryIterator;
@@ -349,6 +386,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
 
         // check if there is any result
         if (map.isEmpty()) return null; // no result, nothing found
+        if (gallopingJoin && map.size() > 1) return joinGalloping(factory, new ArrayList<ReferenceContainer<ReferenceType>>(map.values()), maxDistance);
 
         // the map now holds the search results in order of number of hits per word
         // we now must pairwise build up a conjunction of these sets
@@ -380,7 +418,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
 
         final Iterator<ReferenceContainer<ReferenceType>> i = containers.iterator();
         while (i.hasNext()) {
-        	pivot = excludeDestructive(factory, pivot, i.next());
+        	pivot = gallopingJoin ? excludeGalloping(pivot, i.next()) : excludeDestructive(factory, pivot, i.next());
         	if (pivot == null || pivot.isEmpty()) return null;
         }
 
@@ -394,6 +432,50 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return l;
     }
 
+    /**
+     * join all containers in one pass: the smallest container is enumerated and every url hash is
+     * probed in the other containers with a galloping search over their sorted rows. Because the url hashes
+     * are probed in ascending order, each probe starts at the position of the previous probe; the
+     * large containers are neither copied nor enumerated and only the hits are produced as references.
+     * @param containers the containers, ordered by size with the smallest container first
+     * @return the joined references or null if there is no result
+     */
+    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinGalloping(
+            final ReferenceFactory<ReferenceType> factory,
+            final List<ReferenceContainer<ReferenceType>> containers,
+            final int maxDistance) throws SpaceExceededException {
+        final ReferenceContainer<ReferenceType> small = containers.get(0);
+        final String signature = small.rowdef.getOrdering().signature();
+        for (final ReferenceContainer<ReferenceType> c: containers) {
+            assert small.rowdef.equals(c.rowdef) : "small = " + small.rowdef.toString() + "; c = " + c.rowdef.toString();
+            if (!signature.equals(c.rowdef.getOrdering().signature())) return null; // ordering must be equal
+            c.sort();
+        }
+        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
+        final int[] cursor = new int[containers.size()];
+        final int smallSize = small.size();
+        byte[] urlhash;
+        ReferenceType ie;
+        scan: for (int i = 0; i < smallSize; i++) {
+            urlhash = small.getKey(i);
+            for (int c = 1; c < cursor.length; c++) {
+                final ReferenceContainer<ReferenceType> large = containers.get(c);
+                cursor[c] = large.gallopingPosition(urlhash, cursor[c]);
+                if (cursor[c] >= large.size()) break scan; // all remaining url hashes are greater than the url hashes in this container
+                if (!large.match(urlhash, cursor[c])) continue scan;
+            }
+            // we have found the same url in all searches: calculate the word distance
+            ie = factory.produceFast(factory.produceSlow(small.get(i, false)), true);
+            for (int c = 1; c < cursor.length; c++) {
+                ie.join(factory.produceSlow(containers.get(c).get(cursor[c], false)));
+                if (ie.distance() > maxDistance) continue scan;
+            }
+            conj.add(ie);
+        }
+        if (conj.isEmpty()) return null;
+        return conj;
+    }
+
     public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructive(
             final ReferenceFactory<ReferenceType> factory,
             final ReferenceContainer<ReferenceType> i1,
@@ -426,7 +508,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         final int keylength = small.rowdef.width(0);
         assert (keylength == large.rowdef.width(0));
         final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
-        final Iterator<ReferenceType> se = small.entries();
+        final Iterator<ReferenceType> se = small.entryViews();
         ReferenceType ie1;
         ReferenceType ie2;
         while (se.hasNext()) {
@@ -457,8 +539,8 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
         if (!((i1.rowdef.getOrdering().signature().equals(i2.rowdef.getOrdering().signature())))) return conj; // ordering must be equal
         final ByteOrder ordering = i1.rowdef.getOrdering();
-        final Iterator<ReferenceType> e1 = i1.entries();
-        final Iterator<ReferenceType> e2 = i2.entries();
+        final Iterator<ReferenceType> e1 = i1.entryViews();
+        final Iterator<ReferenceType> e2 = i2.entryViews();
         int c;
         if ((e1.hasNext()) && (e2.hasNext())) {
             ReferenceType ie1;
@@ -510,6 +592,41 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return excludeDestructiveByEnumeration(factory, pivot, excl);
     }
 
+    /**
+     * remove all url hashes of the exclusion container from the pivot container. The smaller container is
+     * enumerated and its url hashes are probed in ascending order in the other container with a galloping search.
+     * The hits are removed from the pivot in one pass that keeps the pivot sorted.
+     */
+    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeGalloping(
+            final ReferenceContainer<ReferenceType> pivot,
+            final ReferenceContainer<ReferenceType> excl) {
+        if (pivot == null) return null;
+        if (excl == null) return pivot;
+        if (pivot.isEmpty()) return null;
+        if (excl.isEmpty()) return pivot;
+        assert pivot.rowdef.equals(excl.rowdef) : "pivot = " + pivot.rowdef.toString() + "; excl = " + excl.rowdef.toString();
+        if (!((pivot.rowdef.getOrdering().signature().equals(excl.rowdef.getOrdering().signature())))) return pivot; // ordering must be equal
+        pivot.sort();
+        excl.sort();
+        final boolean iteratePivot = pivot.size() <= excl.size();
+        final ReferenceContainer<ReferenceType> enumerated = iteratePivot ? pivot : excl;
+        final ReferenceContainer<ReferenceType> probed = iteratePivot ? excl : pivot;
+        final int enumeratedSize = enumerated.size();
+        final int probedSize = probed.size();
+        final int[] remove = new int[Math.min(enumeratedSize, probedSize)];
+        int removeCount = 0;
+        int cursor = 0;
+        byte[] urlhash;
+        for (int i = 0; i < enumeratedSize; i++) {
+            urlhash = enumerated.getKey(i);
+            cursor = probed.gallopingPosition(urlhash, cursor);
+            if (cursor >= probedSize) break;
+            if (probed.match(urlhash, cursor)) remove[removeCount++] = iteratePivot ? i : cursor;
+        }
+        pivot.removeRows(Arrays.copyOf(remove, removeCount));
+        return pivot;
+    }
+
     private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructiveByTest(
             final ReferenceContainer<ReferenceType> pivot,
             final ReferenceContainer<ReferenceType> excl) {
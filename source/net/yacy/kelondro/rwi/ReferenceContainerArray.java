@@ -26,6 +26,7 @@ package net.yacy.kelondro.rwi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 
@@ -37,6 +38,8 @@ import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.BLOB;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.index.CompressedRowSet;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowSet;
 
@@ -304,8 +307,9 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
      */
     public ReferenceContainer<ReferenceType> get(final byte[] termHash) throws IOException, SpaceExceededException {
         final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
-        final Iterator<byte[]> entries = this.array.getAll(termHash).iterator();
-    	if (entries == null || !entries.hasNext()) return null;
+        // the blobs are read concurrently; blobs which cannot have the term are skipped using their key filter
+        final Iterator<byte[]> entries = this.array.getAllConcurrently(termHash).iterator();
+    	if (!entries.hasNext()) return null;
     	final byte[] a = entries.next();
     	int k = 1;
     	ReferenceContainer<ReferenceType> c = new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(a, this.factory.getRow()));
@@ -325,10 +329,15 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     }
 
     public int count(final byte[] termHash) throws IOException {
+        if (ReferenceContainer.compressWordReferences && this.factory.getRow() == WordReferenceRow.urlEntryRow) {
+            // word reference containers are compressed; their size cannot be computed from the BLOB length
+            return countHeads(termHash);
+        }
         final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
         final Iterator<Long> entries = this.array.lengthAll(termHash).iterator();
         if (entries == null || !entries.hasNext()) return 0;
         final Long a = entries.next();
+        if (!isUncompressedLength(a)) return countHeads(termHash);
         int k = 1;
         int c = RowSet.importRowCount(a, this.factory.getRow());
         assert c >= 0;
@@ -337,7 +346,9 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
             return c;
         }
         while (entries.hasNext()) {
-            c += RowSet.importRowCount(entries.next(), this.factory.getRow());
+            final Long l = entries.next();
+            if (!isUncompressedLength(l)) return countHeads(termHash);
+            c += RowSet.importRowCount(l, this.factory.getRow());
             assert c >= 0;
             k++;
             if (System.currentTimeMillis() > timeout) {
@@ -349,6 +360,23 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return c;
     }
 
+    /**
+     * count the references of a term from the heads of the containers; this works for compressed containers
+     */
+    private int countHeads(final byte[] termHash) throws IOException {
+        int c = 0;
+        for (final byte[] head: this.array.headAll(termHash, 4)) c += RowSet.importRowCount(head);
+        return c;
+    }
+
+    /**
+     * check if a container of the given length may be uncompressed. A compressed container, i.e. one
+     * which was written before the compression was switched off, has most probably another length.
+     */
+    private boolean isUncompressedLength(final long length) {
+        return this.factory.getRow() != WordReferenceRow.urlEntryRow || RowSet.isUncompressedExportLength(length, this.factory.getRow());
+    }
+
     /**
      * delete a indexContainer from the heap cache. This can only be used for write-enabled heaps
      * @param wordHash
@@ -379,10 +407,22 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
             if (b == null) return null;
             final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(new ReferenceContainer<ReferenceType>(ReferenceContainerArray.this.factory, this.wordHash, RowSet.importRowSet(b, ReferenceContainerArray.this.factory.getRow())));
             if (c == null) return null;
-            final byte bb[] = c.exportCollection();
-            assert bb.length <= b.length;
+            // the heap can only replace the BLOB in place if the new BLOB has the same length or is at least 4 bytes
+            // shorter, because a shorter BLOB leaves a gap record. A compressed container may shrink less or even grow
+            // if rows are removed.
+            final byte[] bb = c.exportStorageCollection();
+            if (fitsInPlace(bb, b)) return bb;
+            final byte[] plain = c.exportCollection();
+            if (fitsInPlace(plain, b)) return plain;
+            // the decoder of a compressed container reads only the announced number of rows; trailing zeros are ignored
+            if (CompressedRowSet.isCompressed(bb) && bb.length < b.length) return Arrays.copyOf(bb, b.length);
+            // the BLOB grows; the heap moves it to the end of the file
             return bb;
         }
+
+        private boolean fitsInPlace(final byte[] bb, final byte[] b) {
+            return bb.length == b.length || bb.length <= b.length - 4;
+        }
     }
 
     public interface ContainerReducer<ReferenceType extends Reference> {
@@ -407,6 +447,14 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return true;
     }
 
+    public boolean shrinkManySmallFiles(final IODispatcher merger, final long targetFileSize, final int maxFiles) {
+        final File[] ff = this.array.unmountSmallest(3, maxFiles, targetFileSize);
+        if (ff == null) return false;
+        ConcurrentLog.info("RICELL-shrink0", "unmountSmallest(3, " + maxFiles + ", " + targetFileSize + "): " + ff.length + " files");
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile());
+        return true;
+    }
+
     public boolean shrinkAnySmallFiles(final IODispatcher merger, final long targetFileSize) {
         final File[] ff = this.array.unmountSmallest(targetFileSize);
         if (ff == null) return false;
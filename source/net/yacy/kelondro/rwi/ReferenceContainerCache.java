@@ -66,6 +66,9 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
     private final ByteOrder termOrder;
     private final ContainerOrder<ReferenceType> containerOrder;
     private ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>> cache;
+    private final Object[] stripes; // locks for the modification of containers; a term hash is always locked by the same stripe
+    private volatile boolean sealed; // if true, no more references are accepted by the tryAdd methods
+    private volatile ReferenceContainerCache<ReferenceType> successor; // the cache which replaced this cache when it was sealed
 
     
     /**
@@ -82,7 +85,53 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         this.termOrder = termOrder;
         this.termSize = termSize;
         this.containerOrder = new ContainerOrder<ReferenceType>(this.termOrder);
-        this.cache = new ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>>();
+        // use more stripes than cores to make it unlikely that two indexing threads write to the same stripe
+        int stripeCount = 1;
+        while (stripeCount < 4 * Runtime.getRuntime().availableProcessors()) stripeCount <<= 1;
+        this.cache = new ConcurrentHashMap<ByteArray, ReferenceContainer<ReferenceType>>(1024, 0.75f, stripeCount);
+        this.stripes = new Object[stripeCount];
+        for (int i = 0; i < stripeCount; i++) this.stripes[i] = new Object();
+        this.sealed = false;
+    }
+
+    /**
+     * get the lock for all modifications of the container of a term
+     * @param term the term hash
+     * @return the lock object of the stripe where the term belongs to
+     */
+    private Object stripe(final ByteArray term) {
+        final int h = term.hashCode();
+        return this.stripes[(h ^ (h >>> 16)) & (this.stripes.length - 1)];
+    }
+
+    /**
+     * seal the cache: after this call the tryAdd methods do not accept any more references
+     * and all add operations which were running during the call are finished. This is used when
+     * a full cache is swapped against an empty cache and then dumped: indexing threads which still
+     * hold the old cache write to the new cache instead, without waiting for the dump.
+     */
+    public void seal() {
+        seal(null);
+    }
+
+    /**
+     * seal the cache and name the cache which replaces it: the add methods of a sealed cache
+     * write the references to the successor
+     * @param successor the new cache or null if there is none
+     */
+    public void seal(final ReferenceContainerCache<ReferenceType> successor) {
+        this.successor = successor;
+        this.sealed = true;
+        // wait for running add operations; they hold the lock of their stripe
+        for (final Object stripe: this.stripes) {
+            synchronized (stripe) {
+                assert this.sealed;
+            }
+        }
+    }
+
+    public boolean isSealed() {
+        return this.sealed;
     }
 
     public Row rowdef() {
@@ -157,7 +206,7 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
             if (container != null && term.length == this.termSize) {
                 //System.out.println("Dump: " + wordHash);
                 try {
-                    dump.add(term, container.exportCollection());
+                    dump.add(term, container.exportStorageCollection());
                 } catch (final IOException e) {
                     ConcurrentLog.logException(e);
                 } catch (final SpaceExceededException e) {
@@ -184,10 +233,9 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
      */
     private List<ReferenceContainer<ReferenceType>> sortedClone() {
         final List<ReferenceContainer<ReferenceType>> cachecopy = new ArrayList<ReferenceContainer<ReferenceType>>(this.cache.size());
-        synchronized (this.cache) {
-            for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: this.cache.entrySet()) {
-                if (entry.getValue() != null && entry.getValue().getTermHash() != null) cachecopy.add(entry.getValue());
-            }
+        // the iteration of the concurrent map does not block writers
+        for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: this.cache.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getTermHash() != null) cachecopy.add(entry.getValue());
         }
         Collections.sort(cachecopy, this.containerOrder);
         return cachecopy;
@@ -195,10 +243,8 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
 
     private List<Rating<ByteArray>> ratingList() {
         final List<Rating<ByteArray>> list = new ArrayList<Rating<ByteArray>>(this.cache.size());
-        synchronized (this.cache) {
-            for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: this.cache.entrySet()) {
-                if (entry.getValue() != null && entry.getValue().getTermHash() != null) list.add(new Rating<ByteArray>(entry.getKey(), entry.getValue().size()));
-            }
+        for (final Map.Entry<ByteArray, ReferenceContainer<ReferenceType>> entry: this.cache.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getTermHash() != null) list.add(new Rating<ByteArray>(entry.getKey(), entry.getValue().size()));
         }
         return list;
     }
@@ -490,7 +536,10 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         // returns the index that had been deleted
         assert this.cache != null;
         if (this.cache == null) return null;
-        return this.cache.remove(new ByteArray(termHash));
+        final ByteArray tha = new ByteArray(termHash);
+        synchronized (stripe(tha)) {
+            return this.cache.remove(tha);
+        }
     }
 
     @Override
@@ -498,7 +547,10 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         // returns the index that had been deleted
         assert this.cache != null;
         if (this.cache == null) return;
-        this.cache.remove(new ByteArray(termHash));
+        final ByteArray tha = new ByteArray(termHash);
+        synchronized (stripe(tha)) {
+            this.cache.remove(tha);
+        }
     }
 
     @Override
@@ -511,15 +563,11 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         assert this.cache != null;
         if (this.cache == null) return false;
         final ByteArray tha = new ByteArray(termHash);
-        synchronized (this.cache) {
+        synchronized (stripe(tha)) {
 	        final ReferenceContainer<ReferenceType> c = this.cache.get(tha);
 	        if (c != null && c.delete(urlHashBytes)) {
 	            // removal successful
-	            if (c.isEmpty()) {
-	                delete(termHash);
-	            } else {
-	                this.cache.put(tha, c);
-	            }
+	            if (c.isEmpty()) this.cache.remove(tha);
 	            return true;
 	        }
         }
@@ -533,15 +581,11 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         if (urlHashes.isEmpty()) return 0;
         final ByteArray tha = new ByteArray(termHash);
         int count;
-        synchronized (this.cache) {
+        synchronized (stripe(tha)) {
             final ReferenceContainer<ReferenceType> c = this.cache.get(tha);
             if ((c != null) && ((count = c.removeEntries(urlHashes)) > 0)) {
                 // removal successful
-                if (c.isEmpty()) {
-                    delete(termHash);
-                } else {
-                    this.cache.put(tha, c);
-                }
+                if (c.isEmpty()) this.cache.remove(tha);
                 return count;
             }
         }
@@ -553,59 +597,66 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
 
     @Override
     public void add(final ReferenceContainer<ReferenceType> container) throws SpaceExceededException {
+        if (tryAdd(container)) return;
+        if (this.successor == null) throw new IllegalStateException("references for term " + ASCII.String(container.getTermHash()) + " not added to a sealed cache");
+        this.successor.add(container);
+    }
+
+    /**
+     * add the references of a container to the cache
+     * @param container
+     * @return false if the cache is sealed and the references were not added, true otherwise
+     * @throws SpaceExceededException
+     */
+    public boolean tryAdd(final ReferenceContainer<ReferenceType> container) throws SpaceExceededException {
         // this puts the entries into the cache
-        if (this.cache == null || container == null || container.isEmpty()) return;
+        if (this.cache == null || container == null || container.isEmpty()) return true;
 
         // put new words into cache
         final ByteArray tha = new ByteArray(container.getTermHash());
-        int added = 0;
-        synchronized (this.cache) {
-            ReferenceContainer<ReferenceType> entries = this.cache.get(tha); // null pointer exception? wordhash != null! must be cache==null
+        synchronized (stripe(tha)) {
+            if (this.sealed) return false;
+            final ReferenceContainer<ReferenceType> entries = this.cache.get(tha);
             if (entries == null) {
-                entries = container.topLevelClone();
-                added = entries.size();
+                this.cache.put(tha, container.topLevelClone());
             } else {
-                added = entries.putAllRecent(container);
-            }
-            if (added > 0) {
-                this.cache.put(tha, entries);
+                entries.putAllRecent(container);
             }
-            entries = null;
-            return;
         }
+        return true;
     }
 
     @Override
     public void add(final byte[] termHash, final ReferenceType newEntry) throws SpaceExceededException {
+        if (tryAdd(termHash, newEntry)) return;
+        if (this.successor == null) throw new IllegalStateException("reference for term " + ASCII.String(termHash) + " not added to a sealed cache");
+        this.successor.add(termHash, newEntry);
+    }
+
+    /**
+     * add a reference to the cache. Only the stripe of the term is locked, so
+     * indexing threads which write references for different terms do not block each other.
+     * @param termHash
+     * @param newEntry
+     * @return false if the cache is sealed and the reference was not added, true otherwise
+     * @throws SpaceExceededException
+     */
+    public boolean tryAdd(final byte[] termHash, final ReferenceType newEntry) throws SpaceExceededException {
         assert this.cache != null;
-        if (this.cache == null) return;
+        if (this.cache == null) return true;
         final ByteArray tha = new ByteArray(termHash);
-
-        // first access the cache without synchronization
-        ReferenceContainer<ReferenceType> container = this.cache.remove(tha);
-        if (container == null) container = new ReferenceContainer<ReferenceType>(this.factory, termHash, 1);
-        container.put(newEntry);
-
-        // synchronization: check if the entry is still empty and set new value
-        final ReferenceContainer<ReferenceType> container0 = this.cache.put(tha, container);
-        if (container0 != null) synchronized (this.cache) {
-            // no luck here, we get a lock exclusively to sort this out
-            final ReferenceContainer<ReferenceType> containerNew = this.cache.put(tha, container0);
-            if (containerNew == null) return;
-            if (container0 == containerNew) {
-                // The containers are the same, so nothing needs to be done
-                return;
-            }
-            // Now merge the smaller container into the lager.
-            // The other way around can become very slow
-            if (container0.size() >= containerNew.size()) {
-                container0.putAllRecent(containerNew);
-       	        this.cache.put(tha, container0);
+        synchronized (stripe(tha)) {
+            if (this.sealed) return false;
+            ReferenceContainer<ReferenceType> container = this.cache.get(tha);
+            if (container == null) {
+                container = new ReferenceContainer<ReferenceType>(this.factory, termHash, 1);
+                container.put(newEntry);
+                this.cache.put(tha, container);
             } else {
-                containerNew.putAllRecent(container0);
-                this.cache.put(tha, containerNew);
+                container.put(newEntry);
             }
         }
+        return true;
     }
 
     @Override
@@ -36,9 +36,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.order.Digest;
 import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.util.ConcurrentLog;
@@ -52,8 +56,11 @@ import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.index.RowSet;
 import net.yacy.kelondro.io.BufferedRecords;
 import net.yacy.kelondro.io.Records;
+import net.yacy.kelondro.io.WriteAheadLog;
+import net.yacy.kelondro.util.BufferPool;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 import net.yacy.kelondro.util.kelondroException;
 
 
@@ -76,13 +83,34 @@ public class Table implements Index, Iterable<Row.Entry> {
     private final static TreeMap<String, Table> tableTracker = new TreeMap<String, Table>();
     private final static long maxarraylength = 134217727L; // (2^27-1) that may be the maximum size of array length in some JVMs
 
+    /** if true, all changes of table files are logged in a write-ahead log which is replayed after a crash */
+    public static boolean writeAheadLog = false;
+
+    /** the maximum time in milliseconds between two syncs of the write-ahead log; 0 syncs after each write */
+    public static long walSyncInterval = 1000;
+
+    /** if true, the index of a table is written to a snapshot file when the table is closed and read from there when it is opened again */
+    public static boolean indexSnapshots = false;
+
+    /** the number of bytes per second which all tables together may read to load their table copies in the background */
+    public static long prefetchBytesPerSecond = 16L * 1024L * 1024L;
+
+    private final static int MIN_SNAPSHOT_SIZE = 1000; // smaller tables are read fast enough from the table file
+    private final static ThreadPoolExecutor prefetcher = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("Table.prefetch"));
+    static {
+        prefetcher.allowCoreThreadTimeOut(true);
+    }
+
     private final long minmemremaining; // if less than this memory is remaininig, the memory copy of a table is abandoned
     private final int buffersize;
     private final Row rowdef;
     private final Row taildef;
+    private final BufferPool scratch; // buffers for the rows which are moved or written, the content is copied by the records and the index
     private       HandleMap index;
     private       BufferedRecords file;
     private       RowSet table;
+    private       File snapshot;     // the index snapshot which matches the index, null if the index was changed after it was read
+    private       Prefetch prefetch; // the background loading of a table which was opened from a snapshot
 
     public Table(
     		final File tablefile,
@@ -103,6 +131,7 @@ public class Table implements Index, Iterable<Row.Entry> {
             cols[i] = rowdef.column(i + 1);
         }
         this.taildef = new Row(cols, NaturalOrder.naturalOrder);
+        this.scratch = new BufferPool(rowdef.objectsize, 4);
 
         // initialize table file
         boolean freshFile = false;
@@ -124,124 +153,137 @@ public class Table implements Index, Iterable<Row.Entry> {
         }
 
         try {
+            // recover changes which were not written to the table file before a crash
+            final File walfile = walFile(tablefile);
+            if (walfile.exists()) WriteAheadLog.replay(walfile, tablefile, rowdef.objectsize);
+
             // open an existing table file
             final int fileSize = (int) tableSize(tablefile, rowdef.objectsize, true);
 
             // initialize index and copy table
             final int  records = Math.max(fileSize, initialSpace);
             final long neededRAM4table = 200L * 1024L * 1024L + records * (this.taildef.objectsize + rowdef.primaryKeyLength + 4L) * 3L / 2L;
+            final boolean tableCopy = (exceed134217727 || neededRAM4table < maxarraylength) && useTailCache && MemoryControl.available() > 600L * 1024L * 1024L;
             this.table = null;
-            
-            try {
-                this.table = ((exceed134217727 || neededRAM4table < maxarraylength) &&
-            	    	      useTailCache && MemoryControl.available() > 600L * 1024L * 1024L &&
-            	    	      MemoryControl.request(neededRAM4table, true)) ? new RowSet(this.taildef, records) : null;
-            } catch (final SpaceExceededException e) {
-            	this.table = null;
-            } catch (final Throwable e) {
-            	this.table = null;
-            }
-            
-            if (log.isFine()) log.fine("initialization of " + tablefile.getName() + ". table copy: " + ((this.table == null) ? "no" : "yes") + ", available RAM: " + (MemoryControl.available() / 1024L / 1024L) + "MB, needed: " + (neededRAM4table / 1024L / 1024L) + "MB, allocating space for " + records + " entries");
-            final long neededRAM4index = 100L * 1024L * 1024L + records * (rowdef.primaryKeyLength + 4L) * 3L / 2L;
-            if (records > 0 && !MemoryControl.request(neededRAM4index, true)) {
-                // despite calculations seemed to show that there is enough memory for the table AND the index
-                // there is now not enough memory left for the index. So delete the table again to free the memory
-                // for the index
-                log.severe(tablefile.getName() + ": not enough RAM (" + (MemoryControl.available() / 1024L / 1024L) + "MB) left for index, deleting allocated table space to enable index space allocation (needed: " + (neededRAM4index / 1024L / 1024L) + "MB)");
-                this.table = null; System.gc();
-                log.severe(tablefile.getName() + ": RAM after releasing the table: " + (MemoryControl.available() / 1024L / 1024L) + "MB");
-            }
-            this.index = new RowHandleMap(rowdef.primaryKeyLength, rowdef.objectOrder, 4, records, tablefile.getAbsolutePath());
-            final RowHandleMap errors = new RowHandleMap(rowdef.primaryKeyLength, NaturalOrder.naturalOrder, 4, records, tablefile.getAbsolutePath() + ".errors");
-            if (log.isFine()) log.fine(tablefile + ": TABLE " + tablefile.toString() + " has table copy " + ((this.table == null) ? "DISABLED" : "ENABLED"));
-
-            // read all elements from the file into the copy table
-            if (log.isFine()) log.fine("initializing RAM index for TABLE " + tablefile.getName() + ", please wait.");
-            int i = 0;
-            byte[] key;
-            if (this.table == null) {
-                final ChunkIterator ki = new ChunkIterator(tablefile, rowdef.objectsize, rowdef.primaryKeyLength);
-                try {
-                	while (ki.hasNext()) {
-                		key = ki.next();
-                		// write the key into the index table
-                		assert key != null;
-                		if (key == null) {i++; continue;}
-                		if (rowdef.objectOrder.wellformed(key)) {
-                			this.index.putUnique(key, i++);
-                		} else {
-                			errors.putUnique(key, i++);
-                		}
-                	}
-                } finally {
-					/* If any error occurred while looping over the iterator, we
-					 * must ensure the underlying stream is closed before
-					 * transmitting the exception to the upper layer
-					 */
-                	if(ki.hasNext()) {
-                		try {
-                			ki.close();
-                		} catch(IOException ioe) {
-                			/* Do not block if closing is not possible but anyway keep a trace in log */
-                			log.warn("Could not close input stream on the file " + tablefile);
-                		}
-                	}
-                }
+
+            // read the index from a snapshot if one matches the table file; the table copy is then loaded in the background
+            final RowHandleMap snapshotIndex = (indexSnapshots && !freshFile && fileSize >= MIN_SNAPSHOT_SIZE) ? readSnapshot(tablefile, fileSize) : null;
+            final RowHandleMap errors;
+            if (snapshotIndex != null) {
+                this.index = snapshotIndex;
+                errors = new RowHandleMap(rowdef.primaryKeyLength, NaturalOrder.naturalOrder, 4, 0, tablefile.getAbsolutePath() + ".errors");
+                log.info("read index of " + tablefile.getName() + " with " + fileSize + " entries from snapshot " + this.snapshot.getName());
             } else {
-                byte[] record;
-                key = new byte[rowdef.primaryKeyLength];
-                final ChunkIterator ri = new ChunkIterator(tablefile, rowdef.objectsize, rowdef.objectsize);
                 try {
-                	while (ri.hasNext()) {
-                		record = ri.next();
-                		assert record != null;
-                		if (record == null) {i++; continue;}
-                		System.arraycopy(record, 0, key, 0, rowdef.primaryKeyLength);
-
-                		// write the key into the index table
-                		if (rowdef.objectOrder.wellformed(key)) {
-                			this.index.putUnique(key, i++);
-                			// write the tail into the table
-                			try {
-                				this.table.addUnique(this.taildef.newEntry(record, rowdef.primaryKeyLength, true));
-                			} catch (final SpaceExceededException e) {
-                				this.table = null;
-                				try {
-                					ri.close(); // close inputstream of chunkiterator
-                				} finally {
-                					/* Do not block if closing is not possible but anyway keep a trace in log */
-                        			log.warn("Could not close input stream on the file " + tablefile);
-                        		}
-                				break;
-                			}
-                		} else {
-                			errors.putUnique(key, i++);
-                		}
-                	}
-                } finally {
-					/* If any error occurred while looping over the iterator, we
-					 * must ensure the underlying stream is closed before
-					 * transmitting the exception to the upper layer
-					 */
-                	if(ri.hasNext()) {
-                		try {
-                			ri.close();
-                		} catch(IOException ioe) {
-                			/* Do not block if closing is not possible but anyway keep a trace in log */
-                			log.warn("Could not close input stream on the file " + tablefile);
-                		}
-                	}
+                    this.table = (tableCopy && MemoryControl.request(neededRAM4table, true)) ? new RowSet(this.taildef, records) : null;
+                } catch (final SpaceExceededException e) {
+                	this.table = null;
+                } catch (final Throwable e) {
+                	this.table = null;
                 }
-                Runtime.getRuntime().gc();
-                if (abandonTable()) {
-                    this.table = null;
+            
+                if (log.isFine()) log.fine("initialization of " + tablefile.getName() + ". table copy: " + ((this.table == null) ? "no" : "yes") + ", available RAM: " + (MemoryControl.available() / 1024L / 1024L) + "MB, needed: " + (neededRAM4table / 1024L / 1024L) + "MB, allocating space for " + records + " entries");
+                final long neededRAM4index = 100L * 1024L * 1024L + records * (rowdef.primaryKeyLength + 4L) * 3L / 2L;
+                if (records > 0 && !MemoryControl.request(neededRAM4index, true)) {
+                    // despite calculations seemed to show that there is enough memory for the table AND the index
+                    // there is now not enough memory left for the index. So delete the table again to free the memory
+                    // for the index
+                    log.severe(tablefile.getName() + ": not enough RAM (" + (MemoryControl.available() / 1024L / 1024L) + "MB) left for index, deleting allocated table space to enable index space allocation (needed: " + (neededRAM4index / 1024L / 1024L) + "MB)");
+                    this.table = null; System.gc();
+                    log.severe(tablefile.getName() + ": RAM after releasing the table: " + (MemoryControl.available() / 1024L / 1024L) + "MB");
+                }
+                this.index = new RowHandleMap(rowdef.primaryKeyLength, rowdef.objectOrder, 4, records, tablefile.getAbsolutePath());
+                errors = new RowHandleMap(rowdef.primaryKeyLength, NaturalOrder.naturalOrder, 4, records, tablefile.getAbsolutePath() + ".errors");
+                if (log.isFine()) log.fine(tablefile + ": TABLE " + tablefile.toString() + " has table copy " + ((this.table == null) ? "DISABLED" : "ENABLED"));
+
+                // read all elements from the file into the copy table
+                if (log.isFine()) log.fine("initializing RAM index for TABLE " + tablefile.getName() + ", please wait.");
+                int i = 0;
+                byte[] key;
+                if (this.table == null) {
+                    final ChunkIterator ki = new ChunkIterator(tablefile, rowdef.objectsize, rowdef.primaryKeyLength);
+                    try {
+                    	while (ki.hasNext()) {
+                    		key = ki.next();
+                    		// write the key into the index table
+                    		assert key != null;
+                    		if (key == null) {i++; continue;}
+                    		if (rowdef.objectOrder.wellformed(key)) {
+                    			this.index.putUnique(key, i++);
+                    		} else {
+                    			errors.putUnique(key, i++);
+                    		}
+                    	}
+                    } finally {
+    					/* If any error occurred while looping over the iterator, we
+    					 * must ensure the underlying stream is closed before
+    					 * transmitting the exception to the upper layer
+    					 */
+                    	if(ki.hasNext()) {
+                    		try {
+                    			ki.close();
+                    		} catch(IOException ioe) {
+                    			/* Do not block if closing is not possible but anyway keep a trace in log */
+                    			log.warn("Could not close input stream on the file " + tablefile);
+                    		}
+                    	}
+                    }
+                } else {
+                    byte[] record;
+                    key = new byte[rowdef.primaryKeyLength];
+                    final ChunkIterator ri = new ChunkIterator(tablefile, rowdef.objectsize, rowdef.objectsize);
+                    try {
+                    	while (ri.hasNext()) {
+                    		record = ri.next();
+                    		assert record != null;
+                    		if (record == null) {i++; continue;}
+                    		System.arraycopy(record, 0, key, 0, rowdef.primaryKeyLength);
+
+                    		// write the key into the index table
+                    		if (rowdef.objectOrder.wellformed(key)) {
+                    			this.index.putUnique(key, i++);
+                    			// write the tail into the table
+                    			try {
+                    				this.table.addUnique(this.taildef.newEntry(record, rowdef.primaryKeyLength, true));
+                    			} catch (final SpaceExceededException e) {
+                    				this.table = null;
+                    				try {
+                    					ri.close(); // close inputstream of chunkiterator
+                    				} finally {
+                    					/* Do not block if closing is not possible but anyway keep a trace in log */
+                            			log.warn("Could not close input stream on the file " + tablefile);
+                            		}
+                    				break;
+                    			}
+                    		} else {
+                    			errors.putUnique(key, i++);
+                    		}
+                    	}
+                    } finally {
+    					/* If any error occurred while looping over the iterator, we
+    					 * must ensure the underlying stream is closed before
+    					 * transmitting the exception to the upper layer
+    					 */
+                    	if(ri.hasNext()) {
+                    		try {
+                    			ri.close();
+                    		} catch(IOException ioe) {
+                    			/* Do not block if closing is not possible but anyway keep a trace in log */
+                    			log.warn("Could not close input stream on the file " + tablefile);
+                    		}
+                    	}
+                    }
+                    Runtime.getRuntime().gc();
+                    if (abandonTable()) {
+                        this.table = null;
+                    }
                 }
             }
             //optimize();
 
             // open the file
-            this.file = new BufferedRecords(new Records(tablefile, rowdef.objectsize), this.buffersize);
+            this.file = new BufferedRecords(new Records(tablefile, rowdef.objectsize), this.buffersize,
+                    writeAheadLog ? new WriteAheadLog(walfile, rowdef.objectsize, walSyncInterval) : null);
             assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
 
             // clean up the file by cleaning badly formed entries
@@ -251,7 +293,7 @@ public class Table implements Index, Iterable<Row.Entry> {
             for (final Map.Entry<byte[], Long> entry: errors) {
                 idx = (int) entry.getValue().longValue();
                 removeInFile(idx);
-                key = entry.getKey();
+                final byte[] key = entry.getKey();
                 if (key == null) continue;
                 log.warn("removing not well-formed entry " + idx + " with key: " + NaturalOrder.arrayList(key, 0, key.length) + ", " + errorcc++ + "/" + errorc);
             }
@@ -259,7 +301,12 @@ public class Table implements Index, Iterable<Row.Entry> {
             assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
 
             // warm up
-            if (!freshFile && warmUp) {warmUp0();}
+            if (snapshotIndex != null) {
+                if (warmUp || tableCopy) {
+                    this.prefetch = new Prefetch(warmUp, tableCopy ? neededRAM4table : 0);
+                    prefetcher.execute(this.prefetch);
+                }
+            } else if (!freshFile && warmUp) {warmUp0();}
         } catch (final FileNotFoundException e) {
             // should never happen
             log.severe("", e);
@@ -275,6 +322,193 @@ public class Table implements Index, Iterable<Row.Entry> {
 
     public synchronized void warmUp() {
         warmUp0();
+        try {
+            commit();
+        } catch (final IOException e) {
+            log.severe("", e);
+        }
+    }
+
+    private static File walFile(final File tablefile) {
+        return new File(tablefile.getParentFile(), tablefile.getName() + ".wal");
+    }
+
+    /**
+     * make the changes durable which are logged in the write-ahead log. This is called after the lock
+     * of the table is released, so that concurrent writers share one sync of the log
+     * @throws IOException
+     */
+    private void commit() throws IOException {
+        final BufferedRecords f = this.file;
+        if (f != null) f.commit();
+    }
+
+    private static File snapshotFile(final File tablefile) {
+        final String fingerprint = Digest.fastFingerprintB64(tablefile, true);
+        if (fingerprint == null) return null;
+        return new File(tablefile.getParentFile(), tablefile.getName() + "." + fingerprint.substring(0, 12) + ".idx");
+    }
+
+    private static void deleteSnapshots(final File tablefile, final String exception) {
+        final String[] l = tablefile.getParentFile().list();
+        if (l == null) return;
+        final String n = tablefile.getName();
+        for (final String s: l) {
+            if (s.length() == n.length() + 17 && s.startsWith(n + ".") && s.endsWith(".idx") && !s.equals(exception)) {
+                FileUtils.deletedelete(new File(tablefile.getParentFile(), s));
+            }
+        }
+    }
+
+    /**
+     * read the index from the snapshot which matches the fingerprint of the table file
+     * @param tablefile
+     * @param fileSize the number of records in the table file
+     * @return the index or null if there is no matching snapshot
+     */
+    private RowHandleMap readSnapshot(final File tablefile, final int fileSize) {
+        final File f = snapshotFile(tablefile);
+        if (f == null || !f.exists()) {
+            deleteSnapshots(tablefile, null);
+            return null;
+        }
+        try {
+            final RowHandleMap map = new RowHandleMap(this.rowdef.primaryKeyLength, this.rowdef.objectOrder, 4, f);
+            if (map.size() == fileSize) {
+                this.snapshot = f;
+                return map;
+            }
+            map.close();
+            log.warn("index snapshot " + f.getName() + " has " + map.size() + " entries but the table has " + fileSize + "; reading the table file");
+        } catch (final IOException e) {
+            log.warn("cannot read index snapshot " + f.getName() + ": " + e.getMessage());
+        } catch (final SpaceExceededException e) {
+            log.warn("cannot read index snapshot " + f.getName() + ": " + e.getMessage());
+        }
+        FileUtils.deletedelete(f);
+        return null;
+    }
+
+    /**
+     * write the index to a snapshot which is named after the fingerprint of the closed table file;
+     * nothing is written if the index was read from a snapshot and was not changed
+     * @param tablefile
+     */
+    private void writeSnapshot(final File tablefile) {
+        if (!tablefile.exists()) return;
+        if (this.index.size() < MIN_SNAPSHOT_SIZE) {
+            deleteSnapshots(tablefile, null);
+            return;
+        }
+        final File f = snapshotFile(tablefile);
+        if (f == null) return;
+        if (!f.equals(this.snapshot) || !f.exists()) try {
+            this.index.dump(f);
+        } catch (final IOException e) {
+            log.warn("cannot write index snapshot " + f.getName() + ": " + e.getMessage());
+            FileUtils.deletedelete(f);
+            return;
+        }
+        deleteSnapshots(tablefile, f.getName());
+    }
+
+    /**
+     * must be called before the record at position i is overwritten with the given row or, if row is null,
+     * before the records at position i and above are moved or removed: the snapshot does not match the
+     * index any more and a table copy which is loaded in the background must be updated
+     * @param i a position in the file
+     * @param row the new record or null
+     */
+    private void changed(final int i, final byte[] row) {
+        if (this.snapshot != null) {
+            FileUtils.deletedelete(this.snapshot);
+            this.snapshot = null;
+        }
+        final Prefetch p = this.prefetch;
+        if (p != null) p.changed(i, row);
+    }
+
+    /**
+     * Loads the structures of a table which was opened from an index snapshot in the background: double
+     * index entries are removed and the table copy is read from the file. The records are read in chunks
+     * while the table is locked; reads are served from the file until the table copy is complete.
+     * After each chunk the prefetch pauses to stay within prefetchBytesPerSecond; this budget is shared
+     * by all tables because there is only one prefetch thread.
+     */
+    private final class Prefetch implements Runnable {
+
+        private final boolean warmUp;
+        private final long neededRAM;
+        private RowSet rows;  // the table copy which is loaded, null if no copy is loaded
+        private int loaded;   // the number of records at the beginning of the file which are in rows
+        private volatile boolean canceled;
+
+        private Prefetch(final boolean warmUp, final long neededRAM) {
+            this.warmUp = warmUp;
+            this.neededRAM = neededRAM;
+            this.rows = null;
+            this.loaded = 0;
+            this.canceled = false;
+        }
+
+        @Override
+        public void run() {
+            final int chunk = Math.max(1, 65536 / Table.this.rowdef.objectsize);
+            final byte[] b = new byte[Table.this.rowdef.objectsize];
+            try {
+                synchronized (Table.this) {
+                    if (this.canceled || Table.this.file == null) return;
+                    if (this.warmUp) warmUp0();
+                    if (this.neededRAM == 0 || !MemoryControl.request(this.neededRAM, true)) return;
+                    this.rows = new RowSet(Table.this.taildef, (int) Table.this.file.size());
+                }
+                while (true) {
+                    synchronized (Table.this) {
+                        if (this.canceled || Table.this.file == null || abandonTable()) return;
+                        final long size = Table.this.file.size();
+                        final long end = Math.min(size, (long) this.loaded + chunk);
+                        while (this.loaded < end) {
+                            Table.this.file.get(this.loaded, b, 0);
+                            this.rows.addUnique(Table.this.taildef.newEntry(b, Table.this.rowdef.primaryKeyLength, true));
+                            this.loaded++;
+                        }
+                        if (this.loaded == size) {
+                            Table.this.table = this.rows;
+                            if (log.isFine()) log.fine("loaded table copy of " + filename() + " with " + size + " entries");
+                            return;
+                        }
+                    }
+                    if (prefetchBytesPerSecond > 0) Thread.sleep(chunk * Table.this.rowdef.objectsize * 1000L / prefetchBytesPerSecond);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException e) {
+                log.warn("cannot load table copy of " + Table.this.file + ": " + e.getMessage());
+            } catch (final SpaceExceededException e) {
+                log.warn("cannot load table copy of " + Table.this.file + ": " + e.getMessage());
+            } finally {
+                synchronized (Table.this) {
+                    if (Table.this.prefetch == this) Table.this.prefetch = null;
+                    this.rows = null;
+                }
+            }
+        }
+
+        private void changed(final int i, final byte[] row) {
+            if (this.rows == null || i >= this.loaded) return;
+            if (row != null) {
+                try {
+                    this.rows.set(i, Table.this.taildef.newEntry(row, Table.this.rowdef.primaryKeyLength, true));
+                    return;
+                } catch (final SpaceExceededException e) {
+                    // fall through and read the record again
+                }
+            }
+            while (this.loaded > i) {
+                this.rows.removeOne();
+                this.loaded--;
+            }
+        }
     }
 
     private void warmUp0() {
@@ -477,10 +711,18 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public synchronized void addUnique(final Entry row) throws IOException, SpaceExceededException {
+    public void addUnique(final Entry row) throws IOException, SpaceExceededException {
+        synchronized (this) {
+            addUnique0(row);
+        }
+        commit();
+    }
+
+    private void addUnique0(final Entry row) throws IOException, SpaceExceededException {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
         final int i = (int) this.file.size();
+        changed(i, null);
         try {
             this.index.putUnique(row.getPrimaryKeyBytes(), i);
         } catch (final SpaceExceededException e) {
@@ -503,18 +745,21 @@ public class Table implements Index, Iterable<Row.Entry> {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
     }
 
-    public synchronized void addUnique(final List<Entry> rows) throws IOException, SpaceExceededException {
-        assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
-        for (final Entry entry: rows) {
-            try {
-                addUnique(entry);
-            } catch (final SpaceExceededException e) {
-                if (this.table == null) throw e;
-                this.table = null;
-                addUnique(entry);
+    public void addUnique(final List<Entry> rows) throws IOException, SpaceExceededException {
+        synchronized (this) {
+            assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
+            for (final Entry entry: rows) {
+                try {
+                    addUnique0(entry);
+                } catch (final SpaceExceededException e) {
+                    if (this.table == null) throw e;
+                    this.table = null;
+                    addUnique0(entry);
+                }
             }
+            assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         }
-        assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
+        commit();
     }
 
     /**
@@ -574,15 +819,24 @@ public class Table implements Index, Iterable<Row.Entry> {
             }
         }
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
+        commit();
         return report;
     }
 
+    /**
+     * close the table. The method holds the table lock like each chunk of the prefetch, so the prefetch
+     * does not read from the closed file; it finds the cancel flag with the next chunk and terminates.
+     */
     @Override
-    public void close() {
+    public synchronized void close() {
     	String tablefile = null;
+        final Prefetch p = this.prefetch;
+        if (p != null) p.canceled = true;
         if (this.file != null) {
-        	tablefile = this.file.filename().toString();
+            final File f = this.file.filename();
+        	tablefile = f.toString();
         	this.file.close();
+        	if (indexSnapshots && this.index != null) writeSnapshot(f);
         }
         this.file = null;
         if (this.table != null) this.table.close();
@@ -666,6 +920,12 @@ public class Table implements Index, Iterable<Row.Entry> {
 
     @Override
     public Entry replace(final Entry row) throws IOException, SpaceExceededException {
+        final Entry old = replace0(row);
+        commit();
+        return old;
+    }
+
+    private Entry replace0(final Entry row) throws IOException, SpaceExceededException {
         assert row != null;
         if (this.file == null || row == null) return null;
         final byte[] rowb = row.bytes();
@@ -678,14 +938,15 @@ public class Table implements Index, Iterable<Row.Entry> {
             final int i = (int) this.index.get(key);
             if (i == -1) {
                 try {
-                    addUnique(row);
+                    addUnique0(row);
                 } catch (final SpaceExceededException e) {
                     if (this.table == null) throw e;
                     this.table = null;
-                    addUnique(row);
+                    addUnique0(row);
                 }
                 return null;
             }
+            changed(i, rowb);
 
             final byte[] b = new byte[this.rowdef.objectsize];
             Row.Entry cacherow;
@@ -724,6 +985,12 @@ public class Table implements Index, Iterable<Row.Entry> {
      */
     @Override
     public boolean put(final Entry row) throws IOException, SpaceExceededException {
+        final boolean added = put0(row);
+        commit();
+        return added;
+    }
+
+    private boolean put0(final Entry row) throws IOException, SpaceExceededException {
         assert row != null;
         if (this.file == null || row == null) return true;
         final byte[] rowb = row.bytes();
@@ -736,14 +1003,15 @@ public class Table implements Index, Iterable<Row.Entry> {
             final int i = (int) this.index.get(key);
             if (i == -1) {
                 try {
-                    addUnique(row);
+                    addUnique0(row);
                 } catch (final SpaceExceededException e) {
                     if (this.table == null) throw e;
                     this.table = null;
-                    addUnique(row);
+                    addUnique0(row);
                 }
                 return true;
             }
+            changed(i, rowb);
 
             if (this.table == null) {
                 // write new value
@@ -771,59 +1039,64 @@ public class Table implements Index, Iterable<Row.Entry> {
      */
     private void removeInFile(final int i) throws IOException, SpaceExceededException {
         assert i >= 0;
+        changed(i, null);
 
-        final byte[] p = new byte[this.rowdef.objectsize];
-        if (this.table == null) {
-            if (i == this.index.size() - 1) {
-                this.file.cleanLast();
-            } else {
-                while (this.file.size() > 0) {
-                    this.file.cleanLast(p, 0);
-                    if (!(this.rowdef.objectOrder.wellformed(p, 0, this.rowdef.primaryKeyLength))) {
-                        continue;
+        final byte[] p = this.scratch.take();
+        try {
+            if (this.table == null) {
+                if (i == this.index.size() - 1) {
+                    this.file.cleanLast();
+                } else {
+                    while (this.file.size() > 0) {
+                        this.file.cleanLast(p, 0);
+                        if (!(this.rowdef.objectOrder.wellformed(p, 0, this.rowdef.primaryKeyLength))) {
+                            continue;
+                        }
+                        this.file.put(i, p, 0);
+                        final byte[] k = new byte[this.rowdef.primaryKeyLength];
+                        System.arraycopy(p, 0, k, 0, this.rowdef.primaryKeyLength);
+                        this.index.put(k, i);
+                        break;
                     }
-                    this.file.put(i, p, 0);
-                    final byte[] k = new byte[this.rowdef.primaryKeyLength];
-                    System.arraycopy(p, 0, k, 0, this.rowdef.primaryKeyLength);
-                    this.index.put(k, i);
-                    break;
                 }
-            }
-        } else {
-            if (i == this.index.size() - 1) {
-                // special handling if the entry is the last entry in the file
-                this.table.removeRow(i, false);
-                this.file.cleanLast();
             } else {
-                // switch values
-                final Row.Entry te = this.table.removeOne();
-                try {
-                    this.table.set(i, te);
-                } catch (final SpaceExceededException e) {
-                    this.table = null;
-                }
-
-                while (this.file.size() > 0) {
-                    this.file.cleanLast(p, 0);
-                    final Row.Entry lr = this.rowdef.newEntry(p);
-                    if (lr == null) {
-                        // in case that p is not well-formed lr may be null
-                        // drop table copy because that becomes too complicated here
-                        this.table.clear();
+                if (i == this.index.size() - 1) {
+                    // special handling if the entry is the last entry in the file
+                    this.table.removeRow(i, false);
+                    this.file.cleanLast();
+                } else {
+                    // switch values
+                    final Row.Entry te = this.table.removeOne();
+                    try {
+                        this.table.set(i, te);
+                    } catch (final SpaceExceededException e) {
                         this.table = null;
-                        continue;
                     }
-                    this.file.put(i, p, 0);
-                    byte[] pk = lr.getPrimaryKeyBytes();
-                    if (pk == null) {
-                        // Table file might be corrupt
-                        log.warn("Possible corruption found in table " + this.filename() + " detected. i=" + i + ",p=" + p);
-                        continue;
+
+                    while (this.file.size() > 0) {
+                        this.file.cleanLast(p, 0);
+                        final Row.Entry lr = this.rowdef.newEntry(p);
+                        if (lr == null) {
+                            // in case that p is not well-formed lr may be null
+                            // drop table copy because that becomes too complicated here
+                            this.table.clear();
+                            this.table = null;
+                            continue;
+                        }
+                        this.file.put(i, p, 0);
+                        byte[] pk = lr.getPrimaryKeyBytes();
+                        if (pk == null) {
+                            // Table file might be corrupt
+                            log.warn("Possible corruption found in table " + this.filename() + " detected. i=" + i + ",p=" + p);
+                            continue;
+                        }
+                        this.index.put(pk, i);
+                        break;
                     }
-                    this.index.put(pk, i);
-                    break;
                 }
             }
+        } finally {
+            this.scratch.release(p);
         }
     }
 
@@ -833,107 +1106,125 @@ public class Table implements Index, Iterable<Row.Entry> {
     }
 
     @Override
-    public synchronized Entry remove(final byte[] key) throws IOException {
+    public Entry remove(final byte[] key) throws IOException {
+        final Entry old = remove0(key);
+        commit();
+        return old;
+    }
+
+    private synchronized Entry remove0(final byte[] key) throws IOException {
         assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
         assert key.length == this.rowdef.primaryKeyLength;
         final int i = (int) this.index.get(key);
         if (i == -1) return null; // nothing to do
+        changed(i, null);
 
         // prepare result
         final byte[] b = new byte[this.rowdef.objectsize];
-        final byte[] p = new byte[this.rowdef.objectsize];
-        final int sb = this.index.size();
-        int ix;
-        assert i < this.index.size();
-        final Row.Entry cacherow;
-        if (this.table == null || (cacherow = this.table.get(i, false)) == null) {
-            if (i == this.index.size() - 1) {
-                // element is at last entry position
-                ix = (int) this.index.remove(key);
-                assert this.index.size() < i + 1 : "index.size() = " + this.index.size() + ", i = " + i;
-                assert ix == i;
-                this.file.cleanLast(b, 0);
-            } else {
-                // remove entry from index
-                assert i < this.index.size() - 1 : "index.size() = " + this.index.size() + ", i = " + i;
-                ix = (int) this.index.remove(key);
-                assert i < this.index.size() : "index.size() = " + this.index.size() + ", i = " + i;
-                assert ix == i;
-
-                // read element that shall be removed
-                this.file.get(i, b, 0);
-
-                // fill the gap with value from last entry in file
-                this.file.cleanLast(p, 0);
-                this.file.put(i, p, 0);
-                final byte[] k = new byte[this.rowdef.primaryKeyLength];
-                System.arraycopy(p, 0, k, 0, this.rowdef.primaryKeyLength);
-                try {
-                    this.index.put(k, i);
-                } catch (final SpaceExceededException e) {
-                    ConcurrentLog.logException(e);
-                    throw new IOException("RowSpaceExceededException: " + e.getMessage());
+        final byte[] p = this.scratch.take();
+        try {
+            final int sb = this.index.size();
+            int ix;
+            assert i < this.index.size();
+            final Row.Entry cacherow;
+            if (this.table == null || (cacherow = this.table.get(i, false)) == null) {
+                if (i == this.index.size() - 1) {
+                    // element is at last entry position
+                    ix = (int) this.index.remove(key);
+                    assert this.index.size() < i + 1 : "index.size() = " + this.index.size() + ", i = " + i;
+                    assert ix == i;
+                    this.file.cleanLast(b, 0);
+                } else {
+                    // remove entry from index
+                    assert i < this.index.size() - 1 : "index.size() = " + this.index.size() + ", i = " + i;
+                    ix = (int) this.index.remove(key);
+                    assert i < this.index.size() : "index.size() = " + this.index.size() + ", i = " + i;
+                    assert ix == i;
+
+                    // read element that shall be removed
+                    this.file.get(i, b, 0);
+
+                    // fill the gap with value from last entry in file
+                    this.file.cleanLast(p, 0);
+                    this.file.put(i, p, 0);
+                    final byte[] k = new byte[this.rowdef.primaryKeyLength];
+                    System.arraycopy(p, 0, k, 0, this.rowdef.primaryKeyLength);
+                    try {
+                        this.index.put(k, i);
+                    } catch (final SpaceExceededException e) {
+                        ConcurrentLog.logException(e);
+                        throw new IOException("RowSpaceExceededException: " + e.getMessage());
+                    }
                 }
-            }
-            assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
-        } else {
-            // get result value from the table copy, so we don't need to read it from the file
-            System.arraycopy(key, 0, b, 0, key.length);
-            System.arraycopy(cacherow.bytes(), 0, b, this.rowdef.primaryKeyLength, this.taildef.objectsize);
-
-            if (i == this.index.size() - 1) {
-                // special handling if the entry is the last entry in the file
-                ix = (int) this.index.remove(key);
-                assert this.index.size() < i + 1  : "index.size() = " + this.index.size() + ", i = " + i;
-                assert ix == i;
-                this.table.removeRow(i, false);
-                this.file.cleanLast();
+                assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
             } else {
-                // remove entry from index
-                ix = (int) this.index.remove(key);
-                assert i < this.index.size() : "index.size() = " + this.index.size() + ", i = " + i;
-                assert ix == i;
-
-                // switch values:
-                // remove last entry from the file copy to fill it in the gap
-                final Row.Entry te = this.table.removeOne();
-                // fill the gap in file copy
-                try {
-                    this.table.set(i, te);
-                } catch (final SpaceExceededException e) {
-                    ConcurrentLog.logException(e);
-                    this.table = null;
-                }
+                // get result value from the table copy, so we don't need to read it from the file
+                System.arraycopy(key, 0, b, 0, key.length);
+                System.arraycopy(cacherow.bytes(), 0, b, this.rowdef.primaryKeyLength, this.taildef.objectsize);
+
+                if (i == this.index.size() - 1) {
+                    // special handling if the entry is the last entry in the file
+                    ix = (int) this.index.remove(key);
+                    assert this.index.size() < i + 1  : "index.size() = " + this.index.size() + ", i = " + i;
+                    assert ix == i;
+                    this.table.removeRow(i, false);
+                    this.file.cleanLast();
+                } else {
+                    // remove entry from index
+                    ix = (int) this.index.remove(key);
+                    assert i < this.index.size() : "index.size() = " + this.index.size() + ", i = " + i;
+                    assert ix == i;
+
+                    // switch values:
+                    // remove last entry from the file copy to fill it in the gap
+                    final Row.Entry te = this.table.removeOne();
+                    // fill the gap in file copy
+                    try {
+                        this.table.set(i, te);
+                    } catch (final SpaceExceededException e) {
+                        ConcurrentLog.logException(e);
+                        this.table = null;
+                    }
 
-                // move entry from last entry in file to gap position
-                this.file.cleanLast(p, 0);
-                this.file.put(i, p, 0);
-                // set new index for moved entry in index
-                final Row.Entry lr = this.rowdef.newEntry(p);
-                try {
-                    this.index.put(lr.getPrimaryKeyBytes(), i);
-                } catch (final SpaceExceededException e) {
-                    this.table = null;
-                    throw new IOException("RowSpaceExceededException: " + e.getMessage());
+                    // move entry from last entry in file to gap position
+                    this.file.cleanLast(p, 0);
+                    this.file.put(i, p, 0);
+                    // set new index for moved entry in index
+                    final Row.Entry lr = this.rowdef.newEntry(p);
+                    try {
+                        this.index.put(lr.getPrimaryKeyBytes(), i);
+                    } catch (final SpaceExceededException e) {
+                        this.table = null;
+                        throw new IOException("RowSpaceExceededException: " + e.getMessage());
+                    }
                 }
+                assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
+                assert this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
             }
             assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
-            assert this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
+            assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
+            assert this.index.size() + 1 == sb : "index.size() = " + this.index.size() + ", sb = " + sb;
+            return this.rowdef.newEntry(b);
+        } finally {
+            this.scratch.release(p);
         }
-        assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
-        assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
-        assert this.index.size() + 1 == sb : "index.size() = " + this.index.size() + ", sb = " + sb;
-        return this.rowdef.newEntry(b);
     }
 
     @Override
-    public synchronized Entry removeOne() throws IOException {
+    public Entry removeOne() throws IOException {
+        final Entry last = removeOne0();
+        commit();
+        return last;
+    }
+
+    private synchronized Entry removeOne0() throws IOException {
         //assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size();
         assert this.table == null || this.table.size() == this.index.size() : "table.size() = " + this.table.size() + ", index.size() = " + this.index.size();
         final byte[] le = new byte[this.rowdef.objectsize];
         final long fsb = this.file.size();
         assert fsb != 0 : "file.size() = " + fsb;
+        changed((int) fsb - 1, null);
         this.file.cleanLast(le, 0);
         assert this.file.size() < fsb : "file.size() = " + this.file.size();
         final Row.Entry lr = this.rowdef.newEntry(le);
@@ -989,10 +1280,12 @@ public class Table implements Index, Iterable<Row.Entry> {
 
     @Override
     public synchronized void clear() throws IOException {
+        changed(0, null);
         this.file.clear();
         // initialize index and copy table
         this.table = (this.table == null) ? null : new RowSet(this.taildef);
         this.index.clear();
+        commit();
     }
 
     @Override
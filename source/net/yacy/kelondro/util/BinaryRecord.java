@@ -0,0 +1,317 @@
+// BinaryRecord.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.UTF8;
+
+/**
+ * A binary record format for the property maps of MapHeap and BEncodedHeap. It replaces the
+ * text lines of MapHeap and the bencoded dictionaries of BEncodedHeap; both old formats start
+ * with a printable character ('#' or 'd') so they can be distinguished from a binary record by the first byte.
+ *
+ * A record has the form
+ * <pre>
+ * MAGIC, schema id, varint field count, (varint tag, [varint name length, name,] varint value length, value)*
+ * </pre>
+ * A tag greater than zero is the position + 1 of the column name in the schema of the record; a tag of zero
+ * is followed by the column name itself. Column names which are not part of the schema are therefore
+ * still stored, only less compact.
+ * The schema id is stored in every record, so a record can be decoded without knowing which
+ * schema was used to write it. For the same reason a schema must never be changed other than by
+ * appending new column names.
+ *
+ * Single columns can be read with get() which skips over the other fields without decoding them.
+ */
+public final class BinaryRecord {
+
+    public static final byte MAGIC = 1;
+
+    /**
+     * if true, MapHeap and BEncodedHeap write new and updated records in this format.
+     * Records in the old formats can always be read, they are converted when they are written the next time.
+     */
+    public static boolean writeBinaryRecords = false;
+
+    private static final Schema[] schemas = new Schema[256];
+
+    /**
+     * the schema without column names; all names are stored inline
+     */
+    public static final Schema NONE = new Schema(0);
+
+    /**
+     * the properties of a peer seed
+     */
+    public static final Schema SEED = new Schema(1,
+            "Hash", "Name", "PeerType", "Version", "LastSeen", "UTC", "BDate", "Flags", "Tags",
+            "IP", "IP6", "Port", "PortSSL", "seedURL", "news", "dct", "SorlAvail",
+            "ISpeed", "RSpeed", "USpeed", "Uptime", "LCount", "NCount", "RCount", "ICount", "SCount", "CCount",
+            "sI", "rI", "sU", "rU", "yourtype", "MyTime");
+
+    /**
+     * the response headers of the HTCache
+     */
+    public static final Schema RESPONSE_HEADER = new Schema(2,
+            "@@URL", "Content-Type", "Content-Length", "Content-Encoding", "Content-Language", "Content-Location",
+            "Transfer-Encoding", "Cache-Control", "Pragma", "Expires", "Date", "Last-Modified", "ETag",
+            "Server", "Connection", "Keep-Alive", "Vary", "Accept-Ranges", "Age", "Via", "Location",
+            "Set-Cookie", "X-Powered-By", "X-Robots-Tag", "X-Frame-Options", "X-Content-Type-Options",
+            "X-XSS-Protection", "Strict-Transport-Security", "Access-Control-Allow-Origin", "Link",
+            "STATUS_CODE", "ResponseTimeMillis");
+
+    public static final class Schema {
+
+        private final int id;
+        private final String[] names;
+        private final Map<String, Integer> tags;
+
+        private Schema(final int id, final String... names) {
+            assert schemas[id] == null : "duplicate schema id " + id;
+            this.id = id;
+            this.names = names;
+            this.tags = new HashMap<String, Integer>();
+            for (int i = 0; i < names.length; i++) this.tags.put(names[i], i + 1);
+            schemas[id] = this;
+        }
+
+        public int id() {
+            return this.id;
+        }
+
+        private int tag(final String name) {
+            final Integer tag = this.tags.get(name);
+            return tag == null ? 0 : tag.intValue();
+        }
+
+        private String name(final int tag) throws IOException {
+            if (tag > this.names.length) throw new IOException("unknown tag " + tag + " in schema " + this.id);
+            return this.names[tag - 1];
+        }
+    }
+
+    private BinaryRecord() {}
+
+    /**
+     * check if a stored record is in the binary format
+     * @param b the record
+     * @return true if the record can be decoded with this class
+     */
+    public static boolean isBinary(final byte[] b) {
+        return b != null && b.length >= 3 && b[0] == MAGIC;
+    }
+
+    /**
+     * encode a map with byte[] values; null values are omitted
+     * @param map the properties
+     * @param schema the schema with the column names that are stored as tags
+     * @return the record
+     */
+    public static byte[] encode(final Map<String, byte[]> map, final Schema schema) {
+        final String[] names = new String[map.size()];
+        final byte[][] values = new byte[map.size()][];
+        int n = 0;
+        for (final Map.Entry<String, byte[]> entry: map.entrySet()) {
+            if (entry.getValue() == null || n == names.length) continue;
+            names[n] = entry.getKey();
+            values[n++] = entry.getValue();
+        }
+        return encode(names, values, n, schema);
+    }
+
+    /**
+     * encode a map with String values; the values are stored UTF-8 encoded, null values are omitted
+     * @param map the properties
+     * @param schema the schema with the column names that are stored as tags
+     * @return the record
+     */
+    public static byte[] encodeStrings(final Map<String, String> map, final Schema schema) {
+        final String[] names = new String[map.size()];
+        final byte[][] values = new byte[map.size()][];
+        int n = 0;
+        for (final Map.Entry<String, String> entry: map.entrySet()) {
+            if (entry.getValue() == null || n == names.length) continue;
+            names[n] = entry.getKey();
+            values[n++] = UTF8.getBytes(entry.getValue());
+        }
+        return encode(names, values, n, schema);
+    }
+
+    private static byte[] encode(final String[] names, final byte[][] values, final int n, final Schema schema) {
+        final int[] tags = new int[n];
+        final byte[][] inline = new byte[n][];
+        int size = 2 + varintSize(n);
+        for (int i = 0; i < n; i++) {
+            tags[i] = schema.tag(names[i]);
+            size += varintSize(tags[i]);
+            if (tags[i] == 0) {
+                inline[i] = UTF8.getBytes(names[i]);
+                size += varintSize(inline[i].length) + inline[i].length;
+            }
+            size += varintSize(values[i].length) + values[i].length;
+        }
+        final byte[] b = new byte[size];
+        b[0] = MAGIC;
+        b[1] = (byte) schema.id;
+        int p = putVarint(b, 2, n);
+        for (int i = 0; i < n; i++) {
+            p = putVarint(b, p, tags[i]);
+            if (tags[i] == 0) {
+                p = putVarint(b, p, inline[i].length);
+                System.arraycopy(inline[i], 0, b, p, inline[i].length);
+                p += inline[i].length;
+            }
+            p = putVarint(b, p, values[i].length);
+            System.arraycopy(values[i], 0, b, p, values[i].length);
+            p += values[i].length;
+        }
+        assert p == size;
+        return b;
+    }
+
+    /**
+     * decode a record into a map with byte[] values
+     * @param b the record
+     * @return a new map with all properties of the record
+     * @throws IOException if the record is corrupted or uses an unknown schema
+     */
+    public static Map<String, byte[]> decode(final byte[] b) throws IOException {
+        final Reader r = new Reader(b);
+        final Map<String, byte[]> map = new HashMap<String, byte[]>(r.count * 4 / 3 + 1);
+        for (int i = 0; i < r.count; i++) {
+            final String name = r.name();
+            final int length = r.varint();
+            map.put(name, Arrays.copyOfRange(b, r.p, r.skip(length)));
+        }
+        return map;
+    }
+
+    /**
+     * decode a record with UTF-8 values into a given map
+     * @param b the record
+     * @param map the map where the properties are stored
+     * @return the map
+     * @throws IOException if the record is corrupted or uses an unknown schema
+     */
+    public static Map<String, String> decodeStrings(final byte[] b, final Map<String, String> map) throws IOException {
+        final Reader r = new Reader(b);
+        for (int i = 0; i < r.count; i++) {
+            final String name = r.name();
+            final int length = r.varint();
+            final int start = r.p;
+            map.put(name, UTF8.String(b, start, r.skip(length) - start));
+        }
+        return map;
+    }
+
+    /**
+     * read a single column from a record without decoding the other fields
+     * @param b the record
+     * @param column the column name
+     * @return the value of the column or null if the record has no such column
+     * @throws IOException if the record is corrupted or uses an unknown schema
+     */
+    public static byte[] get(final byte[] b, final String column) throws IOException {
+        final Reader r = new Reader(b);
+        final int tag = r.schema.tag(column);
+        final byte[] name = tag == 0 ? UTF8.getBytes(column) : null;
+        for (int i = 0; i < r.count; i++) {
+            final int t = r.varint();
+            boolean match = t == tag;
+            if (t == 0) {
+                final int nl = r.varint();
+                match = name != null && nl == name.length && equals(b, r.p, name);
+                r.skip(nl);
+            }
+            final int length = r.varint();
+            if (match) return Arrays.copyOfRange(b, r.p, r.skip(length));
+            r.skip(length);
+        }
+        return null;
+    }
+
+    private static boolean equals(final byte[] b, final int offset, final byte[] name) {
+        for (int i = 0; i < name.length; i++) if (b[offset + i] != name[i]) return false;
+        return true;
+    }
+
+    private static int varintSize(int v) {
+        int s = 1;
+        while ((v >>>= 7) != 0) s++;
+        return s;
+    }
+
+    private static int putVarint(final byte[] b, int p, int v) {
+        while ((v & ~0x7F) != 0) {
+            b[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[p++] = (byte) v;
+        return p;
+    }
+
+    private static final class Reader {
+
+        private final byte[] b;
+        private final Schema schema;
+        private final int count;
+        private int p;
+
+        private Reader(final byte[] b) throws IOException {
+            if (!isBinary(b)) throw new IOException("not a binary record");
+            this.b = b;
+            this.schema = schemas[b[1] & 0xFF];
+            if (this.schema == null) throw new IOException("unknown schema " + (b[1] & 0xFF));
+            this.p = 2;
+            this.count = varint();
+        }
+
+        private int varint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (this.p >= this.b.length) throw new IOException("truncated binary record");
+                final byte x = this.b[this.p++];
+                v |= (x & 0x7F) << shift;
+                if (x >= 0) return v;
+            }
+            throw new IOException("corrupted varint in binary record");
+        }
+
+        private int skip(final int length) throws IOException {
+            if (length < 0 || this.p + length > this.b.length) throw new IOException("truncated binary record");
+            return this.p += length;
+        }
+
+        private String name() throws IOException {
+            final int tag = varint();
+            if (tag > 0) return this.schema.name(tag);
+            final int length = varint();
+            final int start = this.p;
+            return UTF8.String(this.b, start, skip(length) - start);
+        }
+    }
+}
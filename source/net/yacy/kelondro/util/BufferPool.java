@@ -0,0 +1,74 @@
+// BufferPool.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * a pool of scratch buffers of a fixed size. Buffers are taken for the duration of a write operation
+ * and released afterwards; the pool never blocks: if it is empty a new buffer is allocated and if it is
+ * full a released buffer is left to the garbage collector. A buffer must not be used after it was released
+ * and must not be released if a reference to it is kept somewhere else.
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> pool;
+
+    /**
+     * @param bufferSize the size of the buffers in bytes
+     * @param capacity the maximum number of buffers which are kept
+     */
+    public BufferPool(final int bufferSize, final int capacity) {
+        this.bufferSize = bufferSize;
+        this.pool = new ArrayBlockingQueue<byte[]>(Math.max(1, capacity));
+    }
+
+    /**
+     * @return a buffer of the pool size; the content is undefined
+     */
+    public byte[] take() {
+        final byte[] b = this.pool.poll();
+        return b == null ? new byte[this.bufferSize] : b;
+    }
+
+    /**
+     * return a buffer to the pool
+     * @param b a buffer which was taken from this pool
+     */
+    public void release(final byte[] b) {
+        if (b == null || b.length != this.bufferSize) return;
+        this.pool.offer(b);
+    }
+
+    public int bufferSize() {
+        return this.bufferSize;
+    }
+
+    /**
+     * @return the number of buffers which are ready to be taken
+     */
+    public int available() {
+        return this.pool.size();
+    }
+}
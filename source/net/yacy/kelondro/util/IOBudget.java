@@ -0,0 +1,77 @@
+// IOBudget.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.util;
+
+/**
+ * a limit for the number of bytes per second which background jobs may read or write.
+ * The budget is shared by all threads which consume from it: a thread which exceeds the
+ * budget is delayed until the consumed bytes are covered again. Bursts of up to one second
+ * of the budget are possible.
+ */
+public final class IOBudget {
+
+    /** a budget which never delays */
+    public static final IOBudget UNLIMITED = new IOBudget(0);
+
+    private final long bytesPerSecond;
+    private long available;
+    private long last;
+
+    /**
+     * @param bytesPerSecond the number of bytes per second; zero or less means no limit
+     */
+    public IOBudget(final long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.available = bytesPerSecond;
+        this.last = System.currentTimeMillis();
+    }
+
+    public boolean isLimited() {
+        return this.bytesPerSecond > 0;
+    }
+
+    public long bytesPerSecond() {
+        return this.bytesPerSecond;
+    }
+
+    /**
+     * consume bytes from the budget; this waits if the budget is exhausted
+     * @param bytes the number of bytes which had been read or written
+     */
+    public void consume(final long bytes) {
+        if (this.bytesPerSecond <= 0 || bytes <= 0) return;
+        final long wait;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            this.available = Math.min(this.bytesPerSecond, this.available + (now - this.last) * this.bytesPerSecond / 1000);
+            this.last = now;
+            this.available -= bytes;
+            wait = this.available < 0 ? -this.available * 1000 / this.bytesPerSecond : 0;
+        }
+        if (wait > 0) try {
+            Thread.sleep(wait);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+// MemoryGovernor.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * A governor for the memory of caches and buffers. Each subsystem registers a consumer with a minimum
+ * and a maximum budget; a controller thread shares a memory pool among the consumers and asks those
+ * which hold more than their budget to evict entries.
+ *
+ * The pool is regulated with additive increase and multiplicative decrease: it grows slowly while the
+ * live heap (the heap usage after the last garbage collection, which does not count garbage) and the time spent in the garbage collector are below the low watermarks and is cut when
+ * one of them exceeds the high watermarks. Between the watermarks the pool is kept, which prevents the
+ * oscillation between wasted RAM and thrashing. The pool is shared in proportion to the hit rates, so
+ * that a cache which is rarely hit gives its memory to the caches which are useful.
+ */
+public class MemoryGovernor {
+
+    private final static ConcurrentLog log = new ConcurrentLog("MEMORY");
+
+    public enum Pressure {LOW, NORMAL, HIGH, CRITICAL}
+
+    /**
+     * a subsystem which holds memory that can be released
+     */
+    public interface Consumer {
+
+        /**
+         * @return the estimated number of bytes held by the consumer, or -1 if unknown
+         */
+        public long used();
+
+        /**
+         * @return the hit rate of the consumer between 0 and 1, or -1 if the consumer is not a cache
+         */
+        public float hitRate();
+
+        /**
+         * release memory until the consumer holds at most the given number of bytes
+         * @param target the number of bytes which may be kept
+         */
+        public void evict(long target);
+    }
+
+    public final static class Budget {
+        private final String name;
+        private final Consumer consumer;
+        private final long min, max;
+        private volatile long budget, used;
+        private volatile float hitRate;
+        private volatile int evictions;
+
+        private Budget(final String name, final Consumer consumer, final long min, final long max) {
+            this.name = name;
+            this.consumer = consumer;
+            this.min = min;
+            this.max = Math.max(min, max);
+            this.budget = this.max;
+            this.used = 0;
+            this.hitRate = -1;
+            this.evictions = 0;
+        }
+
+        public String getName() {return this.name;}
+        public long getMin() {return this.min;}
+        public long getMax() {return this.max;}
+        public long getBudget() {return this.budget;}
+        public long getUsed() {return this.used;}
+        public float getHitRate() {return this.hitRate;}
+        public int getEvictions() {return this.evictions;}
+    }
+
+    // the watermarks as fraction of the maximum heap and as fraction of the time spent in the garbage collector
+    public static double heapLow = 0.6d, heapHigh = 0.85d, gcLow = 0.02d, gcHigh = 0.1d;
+
+    private final static Map<String, Budget> budgets = new ConcurrentSkipListMap<String, Budget>();
+    private static volatile long pool = -1;
+    private static volatile Pressure pressure = Pressure.NORMAL;
+    private static volatile double heapUsage = 0d, gcUsage = 0d;
+    private static long lastGCTime = -1, lastCycle = 0;
+    private static Controller controller = null;
+
+    /**
+     * register a consumer; a consumer with the same name is replaced
+     * @param name the name of the subsystem, shown on the performance page
+     * @param min the budget which is always granted in bytes
+     * @param max the budget which is never exceeded in bytes
+     * @param consumer the callback for the memory usage and the eviction
+     */
+    public static void register(final String name, final long min, final long max, final Consumer consumer) {
+        budgets.put(name, new Budget(name, consumer, min, max));
+    }
+
+    public static void unregister(final String name) {
+        budgets.remove(name);
+    }
+
+    /**
+     * @return the current budget of a consumer in bytes, or -1 if the consumer is not registered
+     */
+    public static long budget(final String name) {
+        final Budget b = budgets.get(name);
+        return b == null ? -1 : b.budget;
+    }
+
+    public static Collection<Budget> budgets() {
+        return budgets.values();
+    }
+
+    public static long pool() {
+        return pool;
+    }
+
+    public static Pressure pressure() {
+        return pressure;
+    }
+
+    public static double heapUsage() {
+        return heapUsage;
+    }
+
+    public static double gcUsage() {
+        return gcUsage;
+    }
+
+    /**
+     * start the controller thread
+     * @param cycle the time between two balancing steps in milliseconds
+     */
+    public static synchronized void start(final long cycle) {
+        if (controller != null) return;
+        controller = new Controller(cycle);
+        controller.start();
+    }
+
+    public static synchronized void stop() {
+        if (controller == null) return;
+        controller.running = false;
+        controller.interrupt();
+        try {controller.join(1000);} catch (final InterruptedException e) {}
+        controller = null;
+    }
+
+    private final static class Controller extends Thread {
+        private final long cycle;
+        private volatile boolean running;
+
+        private Controller(final long cycle) {
+            super("MemoryGovernor");
+            this.cycle = cycle;
+            this.running = true;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (this.running) {
+                try {
+                    Thread.sleep(this.cycle);
+                } catch (final InterruptedException e) {
+                    continue;
+                }
+                try {
+                    final long max = MemoryControl.maxMemory();
+                    balance(max, (double) liveHeap() / (double) max, gcFraction(), MemoryControl.shortStatus());
+                } catch (final Throwable e) {
+                    ConcurrentLog.logException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The used heap counts the garbage which is not yet collected and is near the maximum heap before each
+     * collection; the usage of the heap pools after their last collection only counts the live objects.
+     * @return the bytes of the heap which were used after the last garbage collection, or the used heap if
+     * the JVM does not report the collection usage
+     */
+    static long liveHeap() {
+        long live = 0;
+        boolean reported = false;
+        for (final MemoryPoolMXBean memoryPool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() != MemoryType.HEAP) continue;
+            final MemoryUsage usage = memoryPool.getCollectionUsage();
+            if (usage == null) continue;
+            live += usage.getUsed();
+            reported = true;
+        }
+        return reported ? live : MemoryControl.used();
+    }
+
+    /**
+     * @return the fraction of the time since the last call which was spent in the garbage collector
+     */
+    private static double gcFraction() {
+        long time = 0;
+        for (final GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) time += Math.max(0, gc.getCollectionTime());
+        final long now = System.currentTimeMillis();
+        final double fraction = lastGCTime < 0 || now <= lastCycle ? 0d : (double) (time - lastGCTime) / (double) (now - lastCycle);
+        lastGCTime = time;
+        lastCycle = now;
+        return Math.min(1d, Math.max(0d, fraction));
+    }
+
+    /**
+     * one balancing step: adjust the pool to the pressure, share it among the consumers and let the consumers
+     * above their budget evict entries
+     * @param maxMemory the maximum heap in bytes
+     * @param heap the live fraction of the heap
+     * @param gc the fraction of the time spent in the garbage collector
+     * @param shortStatus true if a memory request has failed
+     */
+    static synchronized void balance(final long maxMemory, final double heap, final double gc, final boolean shortStatus) {
+        heapUsage = heap;
+        gcUsage = gc;
+        final List<Budget> list = new ArrayList<Budget>(budgets.values());
+        long minSum = 0, maxSum = 0, usedSum = 0;
+        for (final Budget b: list) {
+            b.used = b.consumer.used();
+            b.hitRate = b.consumer.hitRate();
+            minSum += b.min;
+            maxSum += b.max;
+            if (b.used > 0) usedSum += b.used;
+        }
+
+        // regulate the pool
+        pressure = shortStatus ? Pressure.CRITICAL : (heap > heapHigh || gc > gcHigh) ? Pressure.HIGH : (heap < heapLow && gc < gcLow) ? Pressure.LOW : Pressure.NORMAL;
+        long p = pool < 0 ? maxSum : pool;
+        switch (pressure) {
+            case CRITICAL: p = minSum; break;
+            case HIGH: p = Math.min(p, usedSum) / 2 + minSum / 2; break;
+            case LOW: p += maxMemory / 20; break;
+            default: break;
+        }
+        p = Math.max(minSum, Math.min(maxSum, p));
+        if (p != pool && pool >= 0 && log.isFine()) log.fine("memory pool " + (p >> 20) + " MB, pressure " + pressure + ", heap " + (int) (heap * 100) + "%, gc " + (int) (gc * 100) + "%");
+        pool = p;
+
+        // share the pool: each consumer gets its minimum and a part of the rest weighted with its hit rate
+        long rest = p - minSum;
+        final List<Budget> open = new ArrayList<Budget>();
+        for (final Budget b: list) {
+            b.budget = b.min;
+            if (b.max > b.min) open.add(b);
+        }
+        while (rest > 0 && !open.isEmpty()) {
+            double weights = 0d;
+            for (final Budget b: open) weights += weight(b);
+            long granted = 0;
+            final List<Budget> next = new ArrayList<Budget>();
+            for (final Budget b: open) {
+                final long share = (long) (rest * weight(b) / weights);
+                final long add = Math.min(share, b.max - b.budget);
+                b.budget += add;
+                granted += add;
+                if (b.budget < b.max) next.add(b);
+            }
+            rest -= granted;
+            if (granted == 0 || next.size() == open.size()) break;
+            open.clear();
+            open.addAll(next);
+        }
+
+        // evict
+        for (final Budget b: list) {
+            if (b.used > b.budget || (pressure == Pressure.CRITICAL && b.used < 0)) {
+                b.evictions++;
+                try {
+                    b.consumer.evict(b.budget);
+                } catch (final Throwable e) {
+                    ConcurrentLog.logException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * forget the pool, the next balancing step starts with the sum of the maximum budgets
+     */
+    static synchronized void reset() {
+        pool = -1;
+        pressure = Pressure.NORMAL;
+    }
+
+    private static double weight(final Budget b) {
+        // a cache without a known hit rate is weighted like a cache with a hit rate of 50%
+        return (b.max - b.min) * (0.5d + (b.hitRate < 0 ? 0.5d : b.hitRate));
+    }
+
+}
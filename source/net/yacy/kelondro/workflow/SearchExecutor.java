@@ -0,0 +1,384 @@
+// SearchExecutor.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.workflow;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * The executor for the concurrent tasks of a search: local and remote searches, the normalization of
+ * references and the snippet fetch. All search events share one bounded thread pool, or virtual threads
+ * if they are switched on and the JVM supports them, instead of starting new threads for each task.
+ *
+ * A task is written like a thread: it overrides run() and offers start(), isAlive(), join() and interrupt().
+ * The tasks of a search event belong to a group which is cancelled when the event is cleaned up; a task
+ * can also be started with a deadline after which it is interrupted, or dropped if it is still waiting.
+ *
+ * To prevent that tasks which wait for other tasks block the pool, a task which is started by another task
+ * gets an own thread if the pool is busy, and a task which is joined without a timeout before it was started
+ * is run by the joining thread.
+ */
+public final class SearchExecutor {
+
+    private final static ConcurrentLog log = new ConcurrentLog("SearchExecutor");
+
+    /** the maximum number of pooled threads; 0 for a number depending on the cores */
+    public static int maxThreads = 0;
+
+    /** use virtual threads instead of the pool if the JVM supports them */
+    public static boolean virtualThreads = false;
+
+    private final static ThreadLocal<Task> current = new ThreadLocal<Task>();
+    private final static AtomicLong submitted = new AtomicLong(0), completed = new AtomicLong(0), cancelled = new AtomicLong(0), expired = new AtomicLong(0), overflow = new AtomicLong(0), waitTime = new AtomicLong(0);
+    private final static AtomicInteger active = new AtomicInteger(0), queued = new AtomicInteger(0), peak = new AtomicInteger(0);
+
+    private static ExecutorService executor = null;
+    private static ScheduledThreadPoolExecutor watchdog = null;
+    private static boolean virtual = false;
+    private static int poolSize = 0;
+
+    private static synchronized ExecutorService executor() {
+        if (executor != null) return executor;
+        poolSize = maxThreads > 0 ? maxThreads : Math.max(64, 16 * Runtime.getRuntime().availableProcessors());
+        if (virtualThreads) try {
+            // Executors.newVirtualThreadPerTaskExecutor() is available since Java 21
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtual = true;
+            log.info("using virtual threads for search tasks");
+            return executor;
+        } catch (final ReflectiveOperationException e) {
+            log.info("virtual threads are not supported by this JVM, using a pool of " + poolSize + " threads");
+        }
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("SearchExecutor"));
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        virtual = false;
+        return executor;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor watchdog() {
+        if (watchdog != null) return watchdog;
+        watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "SearchExecutor.watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        watchdog.setRemoveOnCancelPolicy(true);
+        return watchdog;
+    }
+
+    /**
+     * stop the executor; running tasks are interrupted. The executor is created again when a task is started.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) executor.shutdownNow();
+        if (watchdog != null) watchdog.shutdownNow();
+        executor = null;
+        watchdog = null;
+    }
+
+    public static boolean isVirtual() {return virtual;}
+    public static int poolSize() {return virtual ? 0 : poolSize;}
+    public static long submitted() {return submitted.get();}
+    public static long completed() {return completed.get();}
+    public static long cancelled() {return cancelled.get();}
+    public static long expired() {return expired.get();}
+    public static long overflow() {return overflow.get();}
+    public static int active() {return active.get();}
+    public static int queued() {return queued.get();}
+    public static int peak() {return peak.get();}
+
+    /**
+     * @return the average time between the start and the execution of a task in milliseconds
+     */
+    public static long averageWaitTime() {
+        final long c = completed.get();
+        return c == 0 ? 0 : waitTime.get() / c;
+    }
+
+    /**
+     * the tasks of one search event
+     */
+    public static final class Group {
+
+        private final String name;
+        private final Set<Task> tasks;
+        private volatile boolean cancelled;
+
+        public Group(final String name) {
+            this.name = name;
+            this.tasks = ConcurrentHashMap.newKeySet();
+            this.cancelled = false;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        private boolean add(final Task task) {
+            this.tasks.add(task);
+            if (this.cancelled) {
+                this.tasks.remove(task);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * interrupt the running tasks, drop the waiting tasks and refuse the start of new tasks
+         */
+        public void cancel() {
+            this.cancelled = true;
+            for (final Task task: this.tasks) task.interrupt();
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * @return the number of tasks which are running or waiting
+         */
+        public int alive() {
+            return this.tasks.size();
+        }
+
+        /**
+         * @return the number of tasks which are waiting for a thread
+         */
+        public int waiting() {
+            int c = 0;
+            for (final Task task: this.tasks) if (task.state.get() == Task.QUEUED) c++;
+            return c;
+        }
+    }
+
+    /**
+     * a task of a search, used like a thread
+     */
+    public static abstract class Task implements Runnable {
+
+        private final static int NEW = 0, QUEUED = 1, RUNNING = 2, DONE = 3;
+
+        private final Group group;
+        private final String name;
+        private final AtomicInteger state;
+        private final CountDownLatch done;
+        private Thread runner;
+        private long startTime;
+        private volatile ScheduledFuture<?> timer;
+
+        /**
+         * @param group the group of the task, may be null
+         * @param name the name of the thread while the task is running
+         */
+        public Task(final Group group, final String name) {
+            this.group = group;
+            this.name = name;
+            this.state = new AtomicInteger(NEW);
+            this.done = new CountDownLatch(1);
+            this.runner = null;
+            this.timer = null;
+        }
+
+        public final String getName() {
+            return this.name;
+        }
+
+        /**
+         * start the task without a deadline
+         * @return this task
+         */
+        public final Task start() {
+            return start(0);
+        }
+
+        /**
+         * start the task
+         * @param timeout the time in milliseconds after which the task is interrupted, or dropped if it is still waiting; 0 for no deadline
+         * @return this task
+         */
+        public final Task start(final long timeout) {
+            if (!this.state.compareAndSet(NEW, QUEUED)) throw new IllegalStateException("task " + this.name + " was already started");
+            if (this.group != null && !this.group.add(this)) {
+                this.state.set(DONE);
+                cancelled.incrementAndGet();
+                this.done.countDown();
+                return this;
+            }
+            submitted.incrementAndGet();
+            queued.incrementAndGet();
+            this.startTime = System.currentTimeMillis();
+            if (timeout > 0) this.timer = watchdog().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (Task.this.isAlive()) {
+                        expired.incrementAndGet();
+                        Task.this.interrupt();
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            final Runnable r = new Runnable() {
+                @Override
+                public void run() {
+                    Task.this.execute();
+                }
+            };
+            final ExecutorService e = executor();
+            if (!virtual && current.get() != null && active.get() + queued.get() >= poolSize) {
+                // a task started by a task must not wait behind tasks which may wait for it
+                startOverflow(r);
+                return this;
+            }
+            try {
+                e.execute(r);
+            } catch (final RejectedExecutionException ex) {
+                startOverflow(r);
+            }
+            return this;
+        }
+
+        private void startOverflow(final Runnable r) {
+            overflow.incrementAndGet();
+            final Thread t = new Thread(r, this.name);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private void execute() {
+            final Thread thread = Thread.currentThread();
+            // a task which is run by a joining thread must not take the interrupt status of that thread
+            final boolean callerInterrupted = Thread.interrupted();
+            // the runner is set together with the state, so interrupt() does not miss a task which has just been started
+            synchronized (this) {
+                if (!this.state.compareAndSet(QUEUED, RUNNING)) {
+                    if (callerInterrupted) thread.interrupt();
+                    return;
+                }
+                this.runner = thread;
+            }
+            queued.decrementAndGet();
+            waitTime.addAndGet(System.currentTimeMillis() - this.startTime);
+            final int a = active.incrementAndGet();
+            int p;
+            while (a > (p = peak.get()) && !peak.compareAndSet(p, a)) {}
+            final String threadName = thread.getName();
+            final Task parent = current.get();
+            thread.setName(this.name);
+            current.set(this);
+            try {
+                run();
+            } catch (final Throwable e) {
+                ConcurrentLog.logException(e);
+            } finally {
+                synchronized (this) {
+                    this.runner = null;
+                    this.state.set(DONE);
+                }
+                // clear an interrupt which was meant for this task, but keep the interrupt of a joining thread
+                Thread.interrupted();
+                if (callerInterrupted) thread.interrupt();
+                current.set(parent);
+                thread.setName(threadName);
+                active.decrementAndGet();
+                completed.incrementAndGet();
+                finish();
+            }
+        }
+
+        private void finish() {
+            final ScheduledFuture<?> t = this.timer;
+            if (t != null) t.cancel(false);
+            if (this.group != null) this.group.tasks.remove(this);
+            this.done.countDown();
+        }
+
+        /**
+         * @return true if the task was started and has not terminated
+         */
+        public final boolean isAlive() {
+            final int s = this.state.get();
+            return s == QUEUED || s == RUNNING;
+        }
+
+        /**
+         * interrupt the task if it is running, drop it if it is waiting
+         */
+        public final void interrupt() {
+            if (this.state.compareAndSet(QUEUED, DONE)) {
+                queued.decrementAndGet();
+                cancelled.incrementAndGet();
+                finish();
+                return;
+            }
+            synchronized (this) {
+                if (this.runner != null && this.state.get() == RUNNING) this.runner.interrupt();
+            }
+        }
+
+        /**
+         * wait for the termination of the task; a task which is still waiting for a thread is run by the caller
+         * @throws InterruptedException
+         */
+        public final void join() throws InterruptedException {
+            if (this.state.get() == QUEUED) execute();
+            this.done.await();
+        }
+
+        /**
+         * wait for the termination of the task; the task is not run by the caller because it could not keep the timeout
+         * @param millis the maximum waiting time, 0 to wait forever
+         * @throws InterruptedException
+         */
+        public final void join(final long millis) throws InterruptedException {
+            if (millis == 0) {
+                join();
+                return;
+            }
+            this.done.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+}
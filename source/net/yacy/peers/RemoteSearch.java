@@ -42,6 +42,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.Memory;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.workflow.SearchExecutor;
 import net.yacy.repository.Blacklist;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
@@ -53,9 +54,8 @@ import net.yacy.search.query.SecondarySearchSuperviser;
 /**
  * Handle remote YaCy peers selection and search requests on them, targeting either their Solr index or RWI (Reverse Word Index)
  */
-public class RemoteSearch extends Thread {
+public class RemoteSearch extends SearchExecutor.Task {
 
-    private static final ThreadGroup ysThreadGroup = new ThreadGroup("yacySearchThreadGroup");
     public static final ConcurrentLog log = new ConcurrentLog("DHT");
     
     final private SearchEvent event;
@@ -87,7 +87,7 @@ public class RemoteSearch extends Thread {
               final Seed targetPeer,
               final SecondarySearchSuperviser secondarySearchSuperviser,
               final Blacklist blacklist) {
-        super(ysThreadGroup, "yacySearch_" + targetPeer.getName());
+        super(event.tasks, "yacySearch_" + targetPeer.getName());
         this.event = event;
         this.wordhashes = wordhashes;
         this.excludehashes = excludehashes;
@@ -279,7 +279,7 @@ public class RemoteSearch extends Thread {
 								SwitchboardConstants.REMOTESEARCH_MAXLOAD_SOLR_DEFAULT)) {
 					continue;
 				}
-                Thread t = solrRemoteSearch(event, solrQuery, start, count, s, targets, blacklist, useFacets, true);
+                SearchExecutor.Task t = solrRemoteSearch(event, solrQuery, start, count, s, targets, blacklist, useFacets, true);
                 event.nodeSearchThreads.add(t);
             }
         }
@@ -308,7 +308,7 @@ public class RemoteSearch extends Thread {
                         dhtPeer,
                         event.secondarySearchSuperviser,
                         blacklist);
-                    rs.start();
+                    rs.start(2 * time); // a search which did not get a thread within its search time is dropped
                     event.primarySearchThreadsL.add(rs);
                 } catch (final OutOfMemoryError e) {
                     ConcurrentLog.logException(e);
@@ -318,7 +318,7 @@ public class RemoteSearch extends Thread {
         }
     }
 
-    public static Thread secondaryRemoteSearch(
+    public static SearchExecutor.Task secondaryRemoteSearch(
     		final SearchEvent event,
             final Set<String> wordhashes,
             final String urlhashes,
@@ -334,7 +334,7 @@ public class RemoteSearch extends Thread {
         // prepare seed targets and threads
         final Seed targetPeer = event.peers.getConnected(targethash);
         if (targetPeer == null || targetPeer.hash == null) return null;
-        Thread secondary = new Thread("RemoteSearch.secondaryRemoteSearch(" + wordhashes + " to " + targethash + ")") {
+        SearchExecutor.Task secondary = new SearchExecutor.Task(event.tasks, "RemoteSearch.secondaryRemoteSearch(" + wordhashes + " to " + targethash + ")") {
             @Override
             public void run() {
                 event.oneFeederStarted();
@@ -368,12 +368,12 @@ public class RemoteSearch extends Thread {
                 }
             }
         };
-        secondary.start();
+        secondary.start(2 * time);
         return secondary;
     }
 
     /**
-     * Create and start a thread running a Solr query on the specified target or on this peer when the target is null.
+     * Create and start a task running a Solr query on the specified target or on this peer when the target is null.
      * @param event the origin search event. Must not be null.
      * @param solrQuery the Solr query derived from the search event. Must not be null.
      * @param start offset start index
@@ -383,9 +383,9 @@ public class RemoteSearch extends Thread {
      * @param blacklist the blacklist to use. Can be empty but must not be null.
      * @param useSolrFacets when true, use Solr computed facets when possible to update the event navigators counters
      * @param incrementNavigators when true, increment event navigators either with facet counts or with individual results
-     * @return the created and running Thread instance
+     * @return the created and running task
      */
-    public static Thread solrRemoteSearch(
+    public static SearchExecutor.Task solrRemoteSearch(
                     final SearchEvent event,
                     final SolrQuery solrQuery,
                     final int start,
@@ -402,7 +402,7 @@ public class RemoteSearch extends Thread {
         // check own peer status
         if (event.peers.mySeed() == null) { return null; }
         // prepare threads
-        Thread solr = new Thread("RemoteSearch.solrRemoteSearch(" + solrQuery.getQuery() + " to " + (targetPeer == null ? "myself" : targetPeer.hash) + ")") {
+        SearchExecutor.Task solr = new SearchExecutor.Task(event.tasks, "RemoteSearch.solrRemoteSearch(" + solrQuery.getQuery() + " to " + (targetPeer == null ? "myself" : targetPeer.hash) + ")") {
             @Override
             public void run() {
                     int urls = 0;
@@ -192,19 +192,25 @@ import net.yacy.http.YaCyHttpServer;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.BEncodedHeap;
 import net.yacy.kelondro.blob.Tables;
-import net.yacy.kelondro.blob.Tables.SortDirection;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.logging.GuiHandler;
 import net.yacy.kelondro.logging.ThreadDump;
+import net.yacy.kelondro.rwi.IODispatcher;
+import net.yacy.kelondro.rwi.IndexCell;
 import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.table.Table;
+import net.yacy.kelondro.util.BinaryRecord;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.MemoryGovernor;
 import net.yacy.kelondro.util.OS;
 import net.yacy.kelondro.util.SetTools;
 import net.yacy.kelondro.workflow.BusyThread;
 import net.yacy.kelondro.workflow.InstantBusyThread;
 import net.yacy.kelondro.workflow.OneTimeBusyThread;
+import net.yacy.kelondro.workflow.SearchExecutor;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.kelondro.workflow.WorkflowTask;
 import net.yacy.kelondro.workflow.WorkflowThread;
@@ -585,6 +591,20 @@ public final class Switchboard extends serverSwitch {
 
         // initialize index
         ReferenceContainer.maxReferences = getConfigInt("index.maxReferences", 0);
+        ReferenceContainer.compressWordReferences = getConfigBool("index.compressWordReferences", false);
+        ReferenceContainer.gallopingJoin = getConfigBool("index.gallopingJoin", true);
+        ArrayStack.mapReadOnlyBLOBs = getConfigBool("index.mapReadOnlyBLOBs", false);
+        ArrayStack.offHeapIndexes = getConfigBool("index.offHeapIndexes", false);
+        BinaryRecord.writeBinaryRecords = getConfigBool("index.binaryRecords", false);
+        Table.writeAheadLog = getConfigBool("index.writeAheadLog", false);
+        Table.walSyncInterval = getConfigLong("index.writeAheadLog.syncInterval", 1000);
+        Table.indexSnapshots = getConfigBool("index.tableSnapshots", false);
+        Table.prefetchBytesPerSecond = getConfigLong("index.tableSnapshots.prefetchMBPerSecond", 16) * 1024L * 1024L;
+        IODispatcher.mergeWorkers = getConfigInt("index.merge.workers", 1);
+        IODispatcher.maxMergeFanIn = getConfigInt("index.merge.maxFanIn", 8);
+        IODispatcher.mergeIOBudget = getConfigLong("index.merge.ioBudget", 0) * 1024L;
+        SearchExecutor.maxThreads = getConfigInt("search.executor.threads", 0);
+        SearchExecutor.virtualThreads = getConfigBool("search.executor.virtualThreads", false);
         final File segmentsPath = new File(new File(indexPath, networkName), "SEGMENTS");
         try {this.index = new Segment(this.log, segmentsPath, archivePath, solrCollectionConfigurationWork, solrWebgraphConfigurationWork);} catch (IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) try {
@@ -598,6 +618,8 @@ public final class Switchboard extends serverSwitch {
             try {this.index.fulltext().connectLocalSolr();} catch (final IOException e) {ConcurrentLog.logException(e);}
         }
         this.index.fulltext().setUseWebgraph(this.getConfigBool(SwitchboardConstants.CORE_SERVICE_WEBGRAPH, false));
+        openResultCache(segmentsPath);
+        openSnippetStores(segmentsPath);
 
         // set up the solr interface
         final String solrurls = getConfig(SwitchboardConstants.FEDERATED_SERVICE_SOLR_INDEXING_URL, "http://127.0.0.1:8983/solr");
@@ -1118,6 +1140,12 @@ public final class Switchboard extends serverSwitch {
         this.log.config("Starting Threads");
         MemoryControl.gc(10000, "plasmaSwitchboard, help for profiler"); // help for profiler - thq
 
+        // share the memory of the caches and buffers
+        if (getConfigBool("memory.governor", false)) {
+            registerMemoryConsumers();
+            MemoryGovernor.start(getConfigLong("memory.governor.cycle", 5000));
+        }
+
         deployThread(
                 SwitchboardConstants.CLEANUP,
                 "Cleanup",
@@ -1506,6 +1534,8 @@ public final class Switchboard extends serverSwitch {
             this.crawlStacker.announceClose();
             this.crawlStacker.close();
 
+            SearchEventCache.closeResultCache();
+            TextSnippet.snippetsCache.close();
             this.index.close();
             this.webStructure.close();
 
@@ -1552,6 +1582,8 @@ public final class Switchboard extends serverSwitch {
                 this.index.fulltext().connectLocalSolr();
             }
             this.index.fulltext().setUseWebgraph(this.getConfigBool(SwitchboardConstants.CORE_SERVICE_WEBGRAPH, false));
+            openResultCache(segmentsPath);
+            openSnippetStores(segmentsPath);
 
             // set up the solr interface
             final String solrurls = getConfig(SwitchboardConstants.FEDERATED_SERVICE_SOLR_INDEXING_URL, "http://127.0.0.1:8983/solr");
@@ -2024,7 +2056,9 @@ public final class Switchboard extends serverSwitch {
         System.out.println("SWITCHBOARD Performing shutdown steps...");
 
         MemoryTracker.stopSystemProfiling();
+        MemoryGovernor.stop();
         terminateAllThreads(true);
+        SearchExecutor.shutdown();
         net.yacy.gui.framework.Switchboard.shutdown();
         this.log.config("SWITCHBOARD SHUTDOWN STEP 2: sending termination signal to threaded indexing");
         // closing all still running db importer jobs
@@ -2051,6 +2085,9 @@ public final class Switchboard extends serverSwitch {
         this.webStructure.close();
         this.crawler.close();
         this.log.config("SWITCHBOARD SHUTDOWN STEP 3: sending termination signal to database manager (stand by...)");
+        SearchEventCache.cleanupEvents(true); // store the results of the cached events in the result cache
+        SearchEventCache.closeResultCache();
+        TextSnippet.snippetsCache.close();
         this.index.close();
         this.peers.close();
         Cache.close();
@@ -2498,6 +2535,101 @@ public final class Switchboard extends serverSwitch {
         return false;
     }
 
+    /**
+     * open the cache for the results of evicted search events if it is switched on
+     * @param segmentsPath the path of the index, the cache is stored there
+     */
+    private void openResultCache(final File segmentsPath) {
+        if (!getConfigBool("search.resultcache", false)) return;
+        SearchEventCache.resultCacheMaxResults = getConfigInt("search.resultcache.maxResults", 300);
+        SearchEventCache.openResultCache(
+                new File(segmentsPath, "queryresults.heap"),
+                this.index.fulltext(),
+                getConfigInt("search.resultcache.maxEntries", 5000),
+                getConfigLong("search.resultcache.maxAge", 86400000L),
+                getConfigLong("search.resultcache.maxChanges", 1000));
+    }
+
+    /**
+     * open the sentence store of the index and the disk level of the snippet cache, if they are switched on
+     */
+    private void openSnippetStores(final File segmentsPath) {
+        if (getConfigBool("index.sentences", false)) try {
+            this.index.connectSentences(getConfigLong("index.sentences.maxSize", 1024) * 1024L * 1024L);
+        } catch (final IOException e) {ConcurrentLog.logException(e);}
+        if (getConfigBool("search.snippetcache.disk", false)) try {
+            TextSnippet.snippetsCache.open(new File(segmentsPath, "snippets.array"), getConfigLong("search.snippetcache.disk.maxSize", 64) * 1024L * 1024L);
+        } catch (final IOException e) {ConcurrentLog.logException(e);}
+    }
+
+    /**
+     * register the caches and buffers at the MemoryGovernor; the consumers look up the current index
+     * because the index is replaced when the network is switched
+     */
+    private void registerMemoryConsumers() {
+        final long max = MemoryControl.maxMemory();
+        MemoryGovernor.register("RWI buffer", 16L * 1024L * 1024L, max / 4, new MemoryGovernor.Consumer() {
+            @Override
+            public long used() {
+                final IndexCell<WordReference> cell = Switchboard.this.index.termIndex();
+                return cell == null ? 0 : cell.getBufferSizeBytes();
+            }
+            @Override
+            public float hitRate() {
+                return -1;
+            }
+            @Override
+            public void evict(final long target) {
+                final IndexCell<WordReference> cell = Switchboard.this.index.termIndex();
+                if (cell != null) cell.requestDump();
+            }
+        });
+        MemoryGovernor.register("search events", 2 * SearchEventCache.eventMemoryEstimate, max / 8, new MemoryGovernor.Consumer() {
+            @Override
+            public long used() {
+                return SearchEventCache.size() * SearchEventCache.eventMemoryEstimate;
+            }
+            @Override
+            public float hitRate() {
+                final long requests = SearchEventCache.cacheHit + SearchEventCache.cacheMiss;
+                return requests == 0 ? -1 : (float) SearchEventCache.cacheHit / (float) requests;
+            }
+            @Override
+            public void evict(final long target) {
+                SearchEventCache.cleanupEvents((int) (target / SearchEventCache.eventMemoryEstimate));
+            }
+        });
+        MemoryGovernor.register("object caches", 4L * 1024L * 1024L, max / 10, new MemoryGovernor.Consumer() {
+            @Override
+            public long used() {
+                return net.yacy.kelondro.index.Cache.cacheMem();
+            }
+            @Override
+            public float hitRate() {
+                return net.yacy.kelondro.index.Cache.hitRate();
+            }
+            @Override
+            public void evict(final long target) {
+                net.yacy.kelondro.index.Cache.shrinkCaches(target);
+            }
+        });
+        // the memory of the solr caches is not known, they are only cleared when memory is short
+        MemoryGovernor.register("solr caches", 0, 0, new MemoryGovernor.Consumer() {
+            @Override
+            public long used() {
+                return -1;
+            }
+            @Override
+            public float hitRate() {
+                return -1;
+            }
+            @Override
+            public void evict(final long target) {
+                Switchboard.this.index.fulltext().clearCaches();
+            }
+        });
+    }
+
     public static void clearCaches() {
         // flush caches in used libraries
         pdfParser.clearPdfBoxCaches();
@@ -2539,8 +2671,7 @@ public final class Switchboard extends serverSwitch {
         final Collection<String> pks = new LinkedHashSet<String>();
         final Date now = new Date();
         try {
-            final Iterator<Tables.Row> plainIterator = this.tables.iterator(WorkTables.TABLE_API_NAME);
-            final Iterator<Tables.Row> mapIterator = Tables.orderByDate(plainIterator, WorkTables.TABLE_API_COL_DATE_LAST_EXEC, null, SortDirection.ASC).iterator();
+            final Iterator<Tables.Row> mapIterator = this.tables.scheduledAPICallCandidates(now).iterator();
             while (mapIterator.hasNext()) {
                 row = mapIterator.next();
                 if (row == null) continue;
@@ -2558,7 +2689,7 @@ public final class Switchboard extends serverSwitch {
 
                 // select api calls according to event settings
                 final String kind = row.get(WorkTables.TABLE_API_COL_APICALL_EVENT_KIND, "off");
-                if (!"off".equals(kind)) {
+                if (!"off".equals(kind) && !kind.isEmpty()) {
                     String action = row.get(WorkTables.TABLE_API_COL_APICALL_EVENT_ACTION, "startup");
                     if ("startup".equals(action)) {
                         if (startupAction) {
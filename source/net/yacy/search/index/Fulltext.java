@@ -40,6 +40,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import java.util.zip.Deflater;
@@ -79,6 +80,7 @@ import net.yacy.search.schema.CollectionSchema;
 import net.yacy.search.schema.WebgraphConfiguration;
 import net.yacy.search.schema.WebgraphSchema;
 
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
@@ -106,6 +108,11 @@ public final class Fulltext {
     private final WebgraphConfiguration   webgraphConfiguration;
     private       boolean                 writeWebgraph;
 
+    /** incremented when documents are deleted in bulk or the index is cleared */
+    private final AtomicLong              generation;
+    /** incremented for each stored or removed document */
+    private final AtomicLong              changes;
+
     protected Fulltext(final File segmentPath, final File archivePath,
             final CollectionConfiguration collectionConfiguration, final WebgraphConfiguration webgraphConfiguration) {
         this.segmentPath = segmentPath;
@@ -116,6 +123,23 @@ public final class Fulltext {
         this.collectionConfiguration = collectionConfiguration;
         this.webgraphConfiguration = webgraphConfiguration;
         this.writeWebgraph = false;
+        this.generation = new AtomicLong(0);
+        this.changes = new AtomicLong(0);
+    }
+
+    /**
+     * @return a counter which is incremented whenever documents are deleted in bulk or the index is cleared;
+     * results of searches from an older generation may contain documents which do not exist any more
+     */
+    public long generation() {
+        return this.generation.get();
+    }
+
+    /**
+     * @return a counter which is incremented for each document which is stored or removed
+     */
+    public long changes() {
+        return this.changes.get();
     }
 
     public void setUseWebgraph(boolean check) {
@@ -265,6 +289,7 @@ public final class Fulltext {
                 this.commit(false);
             }
             this.solrInstances.clearCaches();
+            this.generation.incrementAndGet();
         } finally {
             this.solrInstancesLock.unlock();
         }
@@ -280,6 +305,7 @@ public final class Fulltext {
                 }
             }
             this.solrInstances.clearCaches();
+            this.generation.incrementAndGet();
         } finally {
             this.solrInstancesLock.unlock();
         }
@@ -351,6 +377,43 @@ public final class Fulltext {
         return getMetadata(urlHash, null, 0L);
     }
 
+    /**
+     * get the metadata of several documents; the documents are requested with one query for each 1000 url hashes,
+     * which is below the maxBooleanClauses limit of the solr configuration
+     * @param urlHashes the url hashes of the documents
+     * @return the metadata of the documents which are in the index, with their id as key
+     */
+    public Map<String, URIMetadataNode> getMetadata(final Collection<byte[]> urlHashes) {
+        final Map<String, URIMetadataNode> nodes = new HashMap<String, URIMetadataNode>();
+        if (urlHashes == null || urlHashes.isEmpty()) return nodes;
+        final List<byte[]> hashes = new ArrayList<byte[]>(urlHashes);
+        for (int i = 0; i < hashes.size(); i += 1000) {
+            final List<byte[]> subset = hashes.subList(i, Math.min(hashes.size(), i + 1000));
+            final StringBuilder q = new StringBuilder();
+            for (final byte[] urlHash: subset) {
+                if (q.length() > 0) q.append(" OR ");
+                q.append("({!cache=false raw f=").append(CollectionSchema.id.getSolrFieldName()).append('}').append(ASCII.String(urlHash)).append(")");
+            }
+            final SolrQuery query = new SolrQuery();
+            query.setQuery(q.toString());
+            query.clearSorts();
+            query.setRows(subset.size());
+            query.setStart(0);
+            query.setIncludeScore(false);
+            try {
+                final SolrDocumentList docs = this.getDefaultConnector().getDocumentListByParams(query);
+                if (docs == null) continue;
+                for (final SolrDocument doc: docs) {
+                    final URIMetadataNode node = new URIMetadataNode(doc, null, 0L);
+                    nodes.put(ASCII.String(node.hash()), node);
+                }
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+        }
+        return nodes;
+    }
+
     private URIMetadataNode getMetadata(final byte[] urlHash, final WordReferenceVars wre, final long score) {
         String u = ASCII.String(urlHash);
 
@@ -379,6 +442,7 @@ public final class Fulltext {
         } catch (final SolrException e) {
             throw new IOException(e.getMessage(), e);
         }
+        this.changes.incrementAndGet();
         if (MemoryControl.shortStatus()) clearCaches();
     }
 
@@ -436,6 +500,7 @@ public final class Fulltext {
      */
     public void deleteStaleDomainHashes(final Set<String> hosthashes, Date freshdate) {
         // delete in solr
+        this.generation.incrementAndGet();
         Date now = new Date();
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_id_s.getSolrFieldName(), hosthashes,
                 (freshdate == null || freshdate.after(now)) ? null :
@@ -446,7 +511,7 @@ public final class Fulltext {
     }
 
     public void deleteStaleDomainNames(final Set<String> hostnames, Date freshdate) {
-
+        this.generation.incrementAndGet();
         Date now = new Date();
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_s.getSolrFieldName(), hostnames,
                 (freshdate == null || freshdate.after(now)) ? null :
@@ -490,6 +555,7 @@ public final class Fulltext {
         Date deleteageDate = new Date(System.currentTimeMillis() - deltaToNow);
         final String collection1Query = (loaddate ? CollectionSchema.load_date_dt : CollectionSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
         final String webgraphQuery = (loaddate ? WebgraphSchema.load_date_dt : WebgraphSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
+        this.generation.incrementAndGet();
         try {
             this.getDefaultConnector().deleteByQuery(collection1Query);
             if (this.getWebgraphConnector() != null) this.getWebgraphConnector().deleteByQuery(webgraphQuery);
@@ -532,6 +598,7 @@ public final class Fulltext {
      */
     public void remove(final Collection<String> deleteIDs) {
         if (deleteIDs == null || deleteIDs.size() == 0) return;
+        this.generation.incrementAndGet();
         try {
             this.getDefaultConnector().deleteByIds(deleteIDs);
             if (this.writeWebgraph) { // Webgraph.id is combination of sourceHash+targetHash+hexCounter, to be successful use source_id_s and/or target_id_s
@@ -556,6 +623,7 @@ public final class Fulltext {
         try {
             String id = ASCII.String(urlHash);
             this.getDefaultConnector().deleteById(id);
+            this.changes.incrementAndGet();
             if (this.writeWebgraph) { // Webgraph.id is combination of sourceHash+targetHash+hexCounter, to be successful use source_id_s and/or target_id_s
                 /* Add quotes around the url hash to prevent Solr logging a ParseException stack trace when the hash start with a '-' character */
                 this.getWebgraphConnector().deleteByQuery(WebgraphSchema.source_id_s + ":\"" + id + "\"");
@@ -660,6 +728,7 @@ public final class Fulltext {
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
             } finally {
+                this.generation.incrementAndGet();
                 this.solrInstances = new InstanceMirror();
                 try {
                     this.connectLocalSolr();
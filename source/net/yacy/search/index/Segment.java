@@ -112,6 +112,7 @@ public class Segment {
     public static final String termIndexName = "text.index";
     public static final String citationIndexName = "citation.index";
     public static final String firstseenIndexName = "firstseen.index";
+    public static final String sentencesStoreName = "sentences.array";
 
     // the reference factory
     public static final ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
@@ -124,6 +125,7 @@ public class Segment {
     protected       IndexCell<WordReference>       termIndex;
     protected       IndexCell<CitationReference>   urlCitationIndex;
     protected       IndexTable                     firstSeenIndex;
+    protected       SentenceStore                  sentences;
     protected       IODispatcher                   merger = null; // shared iodispatcher for kelondro indexes
 
     /**
@@ -142,6 +144,7 @@ public class Segment {
         this.fulltext = new Fulltext(segmentPath, archivePath, collectionConfiguration, webgraphConfiguration);
         this.termIndex = null;
         this.urlCitationIndex = null;
+        this.sentences = null;
         this.firstSeenIndex = new IndexTable(new File(segmentPath, firstseenIndexName), 12, 8, false, false);
     }
     
@@ -205,6 +208,30 @@ public class Segment {
         this.urlCitationIndex = null;
     }
 
+    public boolean connectedSentences() {
+        return this.sentences != null;
+    }
+
+    /**
+     * open the store of the sentences of the documents which are used for the snippet computation
+     * @param maxSize the maximum size of the store in bytes
+     * @throws IOException
+     */
+    public void connectSentences(final long maxSize) throws IOException {
+        if (this.sentences != null) return;
+        this.sentences = new SentenceStore(new File(new File(this.segmentPath, "default"), sentencesStoreName), maxSize);
+    }
+
+    public void disconnectSentences() {
+        if (this.sentences == null) return;
+        this.sentences.close();
+        this.sentences = null;
+    }
+
+    public SentenceStore sentences() {
+        return this.sentences;
+    }
+
     public int citationCount() {
         return this.urlCitationIndex == null ? 0 : this.urlCitationIndex.sizesMax();
     }
@@ -463,6 +490,7 @@ public class Segment {
             if (this.fulltext != null) this.fulltext.clearLocalSolr();
             if (this.fulltext != null) this.fulltext.clearRemoteSolr();
             if (this.urlCitationIndex != null) this.urlCitationIndex.clear();
+            if (this.sentences != null) this.sentences.clear();
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         }
@@ -483,6 +511,7 @@ public class Segment {
         if (this.fulltext != null) this.fulltext.close();
         if (this.urlCitationIndex != null) this.urlCitationIndex.close();
         if (this.firstSeenIndex != null) this.firstSeenIndex.close();
+        if (this.sentences != null) this.sentences.close();
         if (this.merger != null) {
             this.merger.terminate();
             this.merger = null;
@@ -660,6 +689,9 @@ public class Segment {
         
         }
         
+        // STORE THE SENTENCES FOR THE SNIPPET COMPUTATION
+        if (this.sentences != null) this.sentences.put(url.hash(), document.getTextString());
+
         // REMEMBER FIRST SEEN
         setFirstSeenTime(url.hash(), Math.min(document.getLastModified().getTime(), System.currentTimeMillis())); // should exist already in the index at this time, but just to make sure
 
@@ -0,0 +1,172 @@
+// SentenceStore.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.document.SentenceReader;
+import net.yacy.kelondro.blob.ArrayStack;
+import net.yacy.kelondro.blob.Compressor;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * A store of the sentences of the indexed documents, written when a document is stored to the index.
+ * The snippet computation can scan the stored sentences of a document instead of loading the document
+ * from the HTCache and parsing it again. The sentences are stored compressed, one sentence per line;
+ * the oldest entries are deleted when the store exceeds its maximum size.
+ */
+public class SentenceStore {
+
+    private static final String PREFIX = "sentences";
+
+    /** size in bytes of the backend buffer (buffered bytes before writing to the file system) */
+    private static final int BACKEND_BUFFER_SIZE = 1024 * 1024;
+
+    /** size in bytes of the compressor buffer (buffered bytes before compressing and sending to the backend) */
+    private static final int COMPRESSOR_BUFFER_SIZE = 2 * 1024 * 1024;
+
+    /** maximum time in milliseconds to acquire the lock of the compressor */
+    private static final long LOCK_TIMEOUT = 2000;
+
+    private static final int COMPRESSION_LEVEL = 6;
+
+    private final ArrayStack backend;
+    private final Compressor store;
+    private final AtomicLong hits, misses, stores;
+
+    /**
+     * @param location the directory of the store
+     * @param maxSize the maximum size of the store in bytes
+     * @throws IOException
+     */
+    public SentenceStore(final File location, final long maxSize) throws IOException {
+        this.backend = new ArrayStack(location, PREFIX, Base64Order.enhancedCoder, Word.commonHashLength, BACKEND_BUFFER_SIZE, false, true);
+        this.backend.setMaxSize(maxSize);
+        this.store = new Compressor(this.backend, COMPRESSOR_BUFFER_SIZE, LOCK_TIMEOUT, COMPRESSION_LEVEL);
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.stores = new AtomicLong(0);
+    }
+
+    /**
+     * store the sentences of a document text, an existing entry of the document is replaced
+     * @param urlhash the hash of the document url
+     * @param text the text of the document, split into sentences like for the snippet computation
+     */
+    public void put(final byte[] urlhash, final String text) {
+        if (text == null || text.isEmpty()) return;
+        put(urlhash, new SentenceReader(text, false));
+    }
+
+    /**
+     * store sentences of a document, an existing entry of the document is replaced
+     * @param urlhash the hash of the document url
+     * @param sentences the sentences; they must not contain line breaks
+     */
+    public void put(final byte[] urlhash, final Iterable<StringBuilder> sentences) {
+        final StringBuilder s = new StringBuilder(1024);
+        for (final StringBuilder sentence: sentences) {
+            if (sentence.length() == 0) continue;
+            if (s.length() > 0) s.append('\n');
+            s.append(sentence);
+        }
+        if (s.length() == 0) return;
+        try {
+            this.store.insert(urlhash, s.toString().getBytes(StandardCharsets.UTF_8));
+            this.stores.incrementAndGet();
+        } catch (final IOException e) {
+            ConcurrentLog.warn("SentenceStore", "cannot store sentences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param urlhash the hash of the document url
+     * @return the stored sentences of the document or null if there is no entry
+     */
+    public List<StringBuilder> get(final byte[] urlhash) {
+        byte[] b = null;
+        try {
+            b = this.store.get(urlhash);
+        } catch (final IOException | SpaceExceededException e) {
+            ConcurrentLog.warn("SentenceStore", "cannot read sentences: " + e.getMessage());
+        }
+        if (b == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        final String s = new String(b, StandardCharsets.UTF_8);
+        final List<StringBuilder> sentences = new ArrayList<>();
+        int p = 0, q;
+        while ((q = s.indexOf('\n', p)) >= 0) {
+            sentences.add(new StringBuilder(s.substring(p, q)));
+            p = q + 1;
+        }
+        sentences.add(new StringBuilder(s.substring(p)));
+        return sentences;
+    }
+
+    public boolean has(final byte[] urlhash) {
+        return this.store.containsKey(urlhash);
+    }
+
+    public void delete(final byte[] urlhash) {
+        try {
+            this.store.delete(urlhash);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("SentenceStore", "cannot delete sentences: " + e.getMessage());
+        }
+    }
+
+    public int size() {
+        return this.store.size();
+    }
+
+    public long length() {
+        return this.backend.length();
+    }
+
+    public long hits() {return this.hits.get();}
+    public long misses() {return this.misses.get();}
+    public long stores() {return this.stores.get();}
+
+    public void clear() {
+        try {
+            this.store.clear();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    public void close() {
+        this.store.close(true);
+    }
+}
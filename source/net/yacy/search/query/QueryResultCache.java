@@ -0,0 +1,349 @@
+// QueryResultCache.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.blob.Heap;
+
+/**
+ * A persistent cache for the results of search events. When the SearchEventCache evicts an event, the ranked
+ * url hashes with their scores, the result counters and the navigator counts are stored in a heap file on disk,
+ * keyed by the normalized query id. A new search event for the same query is then filled from the local index
+ * with these hashes instead of doing the local and remote searches again.
+ *
+ * The entries are invalidated by the generation counters of the index: the generation is incremented whenever
+ * documents are deleted in bulk or the index is cleared, which invalidates all entries; the change counter is
+ * incremented for each stored or removed document, an entry is kept until a maximum number of changes happened.
+ * The counters are persisted when the cache is closed; if the cache was not closed, all entries are dropped
+ * when it is opened again.
+ */
+public class QueryResultCache {
+
+    private final static ConcurrentLog log = new ConcurrentLog("QueryResultCache");
+
+    private final static int VERSION = 1;
+    private final static int keylength = 12;
+    private final static byte[] STATEKEY = ASCII.getBytes("#generations"); // not a base64 hash
+
+    public final static int COUNTERS = 10; // the number of result counters of a search event
+
+    private final Heap heap;
+    private final LinkedHashMap<String, Long> lru; // the keys in access order with their creation time
+    private final int maxEntries;
+    private final long maxAge;
+    private final long maxChanges;
+    private long generationBase, changesBase; // the counters of the index are reset on restart, these are added
+    private long hits, misses, stores, invalidations;
+
+    /**
+     * the stored result of one search event
+     */
+    public static class Entry {
+        public final String queryID;
+        public final long time, generation, changes;
+        public final int[] counters;
+        public final List<byte[]> urlhashes;
+        public final List<Long> scores;
+        public final Map<String, Map<String, Integer>> navigators;
+
+        /**
+         * @param queryID the id of the query, see SearchEventCache.resultCacheID()
+         * @param counters the result counters of the event, COUNTERS values
+         */
+        public Entry(final String queryID, final int[] counters) {
+            this(queryID, System.currentTimeMillis(), 0, 0, counters);
+        }
+
+        private Entry(final String queryID, final long time, final long generation, final long changes, final int[] counters) {
+            assert counters.length == COUNTERS;
+            this.queryID = queryID;
+            this.time = time;
+            this.generation = generation;
+            this.changes = changes;
+            this.counters = counters;
+            this.urlhashes = new ArrayList<byte[]>();
+            this.scores = new ArrayList<Long>();
+            this.navigators = new LinkedHashMap<String, Map<String, Integer>>();
+        }
+
+        /**
+         * add a result; results are added in the order of their ranking
+         */
+        public void addResult(final byte[] urlhash, final long score) {
+            assert urlhash.length == keylength;
+            this.urlhashes.add(urlhash);
+            this.scores.add(score);
+        }
+
+        /**
+         * add the count of one navigator key
+         * @param navigator the name of the navigator
+         */
+        public void addNavigatorCount(final String navigator, final String key, final int count) {
+            Map<String, Integer> nav = this.navigators.get(navigator);
+            if (nav == null) {
+                nav = new LinkedHashMap<String, Integer>();
+                this.navigators.put(navigator, nav);
+            }
+            nav.put(key, count);
+        }
+
+        public int size() {
+            return this.urlhashes.size();
+        }
+
+        private byte[] encode(final long generation, final long changes) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + this.urlhashes.size() * 20);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(VERSION);
+            out.writeUTF(this.queryID);
+            out.writeLong(this.time);
+            out.writeLong(generation);
+            out.writeLong(changes);
+            for (final int c: this.counters) out.writeInt(c);
+            out.writeInt(this.urlhashes.size());
+            for (int i = 0; i < this.urlhashes.size(); i++) {
+                out.write(this.urlhashes.get(i));
+                out.writeLong(this.scores.get(i));
+            }
+            out.writeInt(this.navigators.size());
+            for (final Map.Entry<String, Map<String, Integer>> nav: this.navigators.entrySet()) {
+                out.writeUTF(nav.getKey());
+                out.writeInt(nav.getValue().size());
+                for (final Map.Entry<String, Integer> count: nav.getValue().entrySet()) {
+                    out.writeUTF(count.getKey());
+                    out.writeInt(count.getValue());
+                }
+            }
+            out.close();
+            return bytes.toByteArray();
+        }
+
+        private static Entry decode(final byte[] b) throws IOException {
+            if (b == null) return null;
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+            if (in.readInt() != VERSION) return null;
+            final String queryID = in.readUTF();
+            final long time = in.readLong(), generation = in.readLong(), changes = in.readLong();
+            final int[] counters = new int[COUNTERS];
+            for (int i = 0; i < COUNTERS; i++) counters[i] = in.readInt();
+            final Entry entry = new Entry(queryID, time, generation, changes, counters);
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final byte[] urlhash = new byte[keylength];
+                in.readFully(urlhash);
+                entry.addResult(urlhash, in.readLong());
+            }
+            final int navs = in.readInt();
+            for (int i = 0; i < navs; i++) {
+                final String navigator = in.readUTF();
+                final int keys = in.readInt();
+                for (int j = 0; j < keys; j++) entry.addNavigatorCount(navigator, in.readUTF(), in.readInt());
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * open the cache
+     * @param location the heap file
+     * @param generation the current generation counter of the index
+     * @param changes the current change counter of the index
+     * @param maxEntries the maximum number of stored queries
+     * @param maxAge the maximum age of an entry in milliseconds
+     * @param maxChanges the maximum number of changes of the index after which an entry is invalid
+     * @throws IOException
+     */
+    public QueryResultCache(final File location, final long generation, final long changes, final int maxEntries, final long maxAge, final long maxChanges) throws IOException {
+        this.heap = new Heap(location, keylength, NaturalOrder.naturalOrder, 64 * 1024);
+        this.lru = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        this.maxChanges = maxChanges;
+        this.hits = 0;
+        this.misses = 0;
+        this.stores = 0;
+        this.invalidations = 0;
+        this.generationBase = 0;
+        this.changesBase = 0;
+
+        // the counters are only valid if the cache was closed, the state record is removed until the next close
+        byte[] state = null;
+        try {state = this.heap.get(STATEKEY);} catch (final SpaceExceededException e) {}
+        if (state == null) {
+            if (this.heap.size() > 0) log.info("cache was not closed, dropping " + this.heap.size() + " entries");
+            this.heap.clear();
+            return;
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+        this.generationBase = in.readLong() - generation;
+        this.changesBase = in.readLong() - changes;
+        this.heap.delete(STATEKEY);
+        final long now = System.currentTimeMillis();
+        final List<byte[]> expired = new ArrayList<byte[]>();
+        final Iterator<byte[]> i = this.heap.keys(true, false);
+        while (i.hasNext()) {
+            final byte[] key = i.next();
+            Entry entry = null;
+            try {entry = Entry.decode(this.heap.get(key));} catch (final IOException | SpaceExceededException e) {}
+            if (entry == null || entry.time + maxAge < now) expired.add(key); else this.lru.put(ASCII.String(key), entry.time);
+        }
+        for (final byte[] key: expired) this.heap.delete(key);
+        shrink();
+        log.info("opened with " + this.lru.size() + " entries");
+    }
+
+    private static byte[] key(final String queryID) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(queryID)).substring(0, keylength));
+    }
+
+    /**
+     * store the result of a search event, replacing an entry of the same query
+     * @param entry the results
+     * @param generation the current generation counter of the index
+     * @param changes the current change counter of the index
+     */
+    public synchronized void put(final Entry entry, final long generation, final long changes) {
+        final byte[] key = key(entry.queryID);
+        try {
+            this.heap.insert(key, entry.encode(generation + this.generationBase, changes + this.changesBase));
+            this.lru.put(ASCII.String(key), entry.time);
+            this.stores++;
+            shrink();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * get the stored result of a query if it is still valid
+     * @param queryID the id of the query, see SearchEventCache.resultCacheID()
+     * @param generation the current generation counter of the index
+     * @param changes the current change counter of the index
+     * @return the entry or null if there is no valid entry
+     */
+    public synchronized Entry get(final String queryID, final long generation, final long changes) {
+        final byte[] key = key(queryID);
+        if (this.lru.get(ASCII.String(key)) == null) {
+            this.misses++;
+            return null;
+        }
+        Entry entry = null;
+        try {
+            entry = Entry.decode(this.heap.get(key));
+        } catch (final IOException | SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+        }
+        if (entry == null || !entry.queryID.equals(queryID)) {
+            // a collision of the hash: the query of the entry is kept
+            this.misses++;
+            return null;
+        }
+        if (entry.generation != generation + this.generationBase ||
+            changes + this.changesBase - entry.changes > this.maxChanges ||
+            entry.time + this.maxAge < System.currentTimeMillis()) {
+            remove(key);
+            this.invalidations++;
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry;
+    }
+
+    private void remove(final byte[] key) {
+        this.lru.remove(ASCII.String(key));
+        try {
+            this.heap.delete(key);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    private void shrink() {
+        final Iterator<String> i = this.lru.keySet().iterator();
+        while (this.lru.size() > this.maxEntries && i.hasNext()) {
+            final String key = i.next();
+            i.remove();
+            try {
+                this.heap.delete(ASCII.getBytes(key));
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        this.lru.clear();
+        try {
+            this.heap.clear();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    public synchronized int size() {
+        return this.lru.size();
+    }
+
+    public synchronized long hits() {return this.hits;}
+    public synchronized long misses() {return this.misses;}
+    public synchronized long stores() {return this.stores;}
+    public synchronized long invalidations() {return this.invalidations;}
+
+    /**
+     * close the cache and store the counters, so the entries are valid when the cache is opened again
+     * @param generation the current generation counter of the index
+     * @param changes the current change counter of the index
+     */
+    public synchronized void close(final long generation, final long changes) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(generation + this.generationBase);
+            out.writeLong(changes + this.changesBase);
+            out.close();
+            this.heap.insert(STATEKEY, bytes.toByteArray());
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+        this.heap.close(true);
+    }
+}
@@ -65,6 +65,7 @@ import net.yacy.cora.lod.vocabulary.Tagging;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.sorting.ConcurrentScoreMap;
+import net.yacy.cora.sorting.ConcurrentWeakPriorityBlockingQueue;
 import net.yacy.cora.sorting.ReversibleScoreMap;
 import net.yacy.cora.sorting.ScoreMap;
 import net.yacy.cora.sorting.ScoreMapUpdatesListener;
@@ -91,6 +92,7 @@ import net.yacy.kelondro.rwi.TermSearch;
 import net.yacy.kelondro.util.Bitfield;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.SetTools;
+import net.yacy.kelondro.workflow.SearchExecutor;
 import net.yacy.peers.RemoteSearch;
 import net.yacy.peers.SeedDB;
 import net.yacy.peers.graphics.ProfilingGraph;
@@ -141,15 +143,22 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     final WorkTables workTables;
     public final SecondarySearchSuperviser secondarySearchSuperviser;
     public final List<RemoteSearch> primarySearchThreadsL;
-    public final List<Thread> nodeSearchThreads;
-    public Thread[] secondarySearchThreads;
+    public final List<SearchExecutor.Task> nodeSearchThreads;
+    public SearchExecutor.Task[] secondarySearchThreads;
     public final SortedSet<byte[]> preselectedPeerHashes;
     private final SortedMap<byte[], Integer> IACount;
     private final SortedMap<byte[], String> IAResults;
     private final SortedMap<byte[], HeuristicResult> heuristics;
     private byte[] IAmaxcounthash, IAneardhthash;
-    public Thread rwiProcess;
-    public Thread localsolrsearch;
+    public SearchExecutor.Task rwiProcess;
+    public SearchExecutor.Task localsolrsearch;
+    public final SearchExecutor.Group tasks; // all concurrent tasks of this event, cancelled in cleanup()
+    
+    /** the stored result of an evicted event of this query which is restored instead of searching again, or null */
+    private final QueryResultCache.Entry replay;
+    
+    /** if not null, the result of this event is stored with this id in the QueryResultCache when the event is evicted */
+    String resultCacheID;
     
     /** Offset of the next local Solr index request
      * Example : last local request with offset=10 and itemsPerPage=20, sets this attribute to 30. */
@@ -203,7 +212,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     private final long maxtime;
     
     /** key = domhash (6 bytes); value = like stack */
-    private final ConcurrentHashMap<String, WeakPriorityBlockingQueue<WordReferenceVars>> doubleDomCache;
+    private final ConcurrentHashMap<String, ConcurrentWeakPriorityBlockingQueue<WordReferenceVars>> doubleDomCache;
     
     /** flag counter */
     private final int[] flagcount;
@@ -219,13 +228,13 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     private final Map<String, String> taggingPredicates;
     
     /** thats the bag where the RWI search process writes to. Contains both references from both local and remote RWIs. */
-    private final WeakPriorityBlockingQueue<WordReferenceVars> rwiStack;
+    private final ConcurrentWeakPriorityBlockingQueue<WordReferenceVars> rwiStack;
     
     /** thats the bag where the solr results are written to */
-    private final WeakPriorityBlockingQueue<URIMetadataNode> nodeStack;
+    private final ConcurrentWeakPriorityBlockingQueue<URIMetadataNode> nodeStack;
     
     /** thats the result list where the actual search result is waiting to be displayed */
-    private final WeakPriorityBlockingQueue<URIMetadataNode>  resultList;
+    private final ConcurrentWeakPriorityBlockingQueue<URIMetadataNode>  resultList;
     
     /** if this is true, then every entry in result List is polled immediately to prevent a re-ranking in the resultList. This is usefull if there is only one index source. */
     private final boolean pollImmediately;
@@ -320,7 +329,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         final int remote_maxcount,
         final long remote_maxtime,
         final boolean deleteIfSnippetFail,
-        final boolean addResultsToLocalIdx) {
+        final boolean addResultsToLocalIdx,
+        final QueryResultCache.Entry replay) {
 
         long ab = MemoryControl.available();
         if (ab < 1024 * 1024 * 200) {
@@ -343,12 +353,15 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.peers = peers;
         this.workTables = workTables;
         this.query = query;
+        this.tasks = new SearchExecutor.Group(query == null ? "SearchEvent" : query.id(true));
+        this.replay = replay;
+        this.resultCacheID = null;
         if(query != null) {
         	/* Image counter will eventually grow up faster than offset, but must start first with the same value as query offset */
         	this.imagePageCounter = query.offset;
         }
         this.loader = loader;
-        this.nodeStack = new WeakPriorityBlockingQueue<URIMetadataNode>(max_results_node, false);
+        this.nodeStack = new ConcurrentWeakPriorityBlockingQueue<URIMetadataNode>(max_results_node, false);
         this.maxExpectedRemoteReferences = new AtomicInteger(0);
         this.expectedRemoteReferences = new AtomicInteger(0);
         this.excludeintext_image = Switchboard.getSwitchboard().getConfigBool("search.excludeintext.image", true);
@@ -387,7 +400,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         }
 
         this.snippets = new ConcurrentHashMap<String, LinkedHashSet<String>>(); 
-        this.secondarySearchSuperviser = (this.query.getQueryGoal().getIncludeHashes().size() > 1) ? new SecondarySearchSuperviser(this) : null; // generate abstracts only for combined searches
+        this.secondarySearchSuperviser = (this.replay == null && this.query.getQueryGoal().getIncludeHashes().size() > 1) ? new SecondarySearchSuperviser(this) : null; // generate abstracts only for combined searches
         if (this.secondarySearchSuperviser != null) this.secondarySearchSuperviser.start();
         this.secondarySearchThreads = null;
         this.preselectedPeerHashes = preselectedPeerHashes;
@@ -422,8 +435,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.localSearchInclusion = null;
         this.ref = new ConcurrentScoreMap<String>(this);
         this.maxtime = query.maxtime;
-        this.rwiStack = new WeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
-        this.doubleDomCache = new ConcurrentHashMap<String, WeakPriorityBlockingQueue<WordReferenceVars>>();
+        this.rwiStack = new ConcurrentWeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
+        this.doubleDomCache = new ConcurrentHashMap<String, ConcurrentWeakPriorityBlockingQueue<WordReferenceVars>>();
         this.flagcount = new int[32];
         for ( int i = 0; i < 32; i++ ) {
             this.flagcount[i] = 0;
@@ -440,8 +453,11 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             this.taggingPredicates.put(t.getName(), t.getPredicate());
         }
 
+        // restore the result of an evicted event instead of searching again
+        if (this.replay != null) restoreCounters(this.replay);
+
         // start a local solr search
-        if (!Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
+        if (this.replay == null && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
         	final boolean useSolrFacets = true;
 			this.localsolrsearch = RemoteSearch.solrRemoteSearch(this,
 					this.query.solrQuery(this.query.contentdom, this.query.isStrictContentDom(), useSolrFacets, this.excludeintext_image), this.query.offset,
@@ -451,7 +467,11 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         
         // start a local RWI search concurrently
         this.rwiProcess = null;
-        if (query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
+        if (this.replay != null) {
+            // the stored results take the place of the local and remote searches
+            rwiProcess = new ReplayProcess(this.replay);
+            rwiProcess.start();
+        } else if (query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
             // we start the local search only if this peer is doing a remote search or when it is doing a local search and the peer is old
             rwiProcess = new RWIProcess(this.localsolrsearch);
             rwiProcess.start();
@@ -461,16 +481,16 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             // start global searches
             this.pollImmediately = false;
             final long timer = System.currentTimeMillis();
-            if (this.query.getQueryGoal().getIncludeHashes().isEmpty()) {
+            if (this.query.getQueryGoal().getIncludeHashes().isEmpty() || this.replay != null) {
                 this.primarySearchThreadsL = null;
                 this.nodeSearchThreads = null;
             } else {
                 this.primarySearchThreadsL = new ArrayList<RemoteSearch>();
-                this.nodeSearchThreads = new ArrayList<Thread>();
+                this.nodeSearchThreads = new ArrayList<SearchExecutor.Task>();
                 // start this concurrently because the remote search needs an enumeration
                 // of the remote peers which may block in some cases when i.e. DHT is active
                 // at the same time.
-                new Thread("SearchEvent.primaryRemoteSearches") {
+                new SearchExecutor.Task(this.tasks, "SearchEvent.primaryRemoteSearches") {
                     @Override
                     public void run() {
                         RemoteSearch.primaryRemoteSearches(
@@ -547,7 +567,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         this.deleteIfSnippetFail = deleteIfSnippetFail;
         this.urlRetrievalAllTime = 0;
         this.snippetComputationAllTime = 0;
-        this.resultList = new WeakPriorityBlockingQueue<URIMetadataNode>(Math.max(max_results_node, 10 * query.itemsPerPage()), true); // this is the result, enriched with snippets, ranked and ordered by ranking
+        this.resultList = new ConcurrentWeakPriorityBlockingQueue<URIMetadataNode>(Math.max(max_results_node, 10 * query.itemsPerPage()), true); // this is the result, enriched with snippets, ranked and ordered by ranking
 
         // snippets do not need to match with the complete query hashes,
         // only with the query minus the stopwords which had not been used for the search 
@@ -585,12 +605,12 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     /**
      * A concurrent task to perform the current search query on the local RWI.
      */
-    private class RWIProcess extends Thread {
+    private class RWIProcess extends SearchExecutor.Task {
     
-        final Thread waitForThread;
+        final SearchExecutor.Task waitForThread;
         
-        public RWIProcess(final Thread waitForThread) {
-            super("SearchEvent.RWIProcess(" + (waitForThread != null ? waitForThread.getName() : "") + ")");
+        public RWIProcess(final SearchExecutor.Task waitForThread) {
+            super(SearchEvent.this.tasks, "SearchEvent.RWIProcess(" + (waitForThread != null ? waitForThread.getName() : "") + ")");
             this.waitForThread = waitForThread;
         }
         
@@ -670,6 +690,125 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         }
     }
 
+    /**
+     * A concurrent task to fill the search event with the stored result of an evicted event of the same query.
+     */
+    private class ReplayProcess extends SearchExecutor.Task {
+
+        private final QueryResultCache.Entry entry;
+
+        public ReplayProcess(final QueryResultCache.Entry entry) {
+            super(SearchEvent.this.tasks, "SearchEvent.ReplayProcess");
+            this.entry = entry;
+        }
+
+        /**
+         * Load the metadata of the stored url hashes from the local index with one query and put them on the node
+         * stack with their stored ranking. Documents which were removed since, or remote results which were not
+         * stored in the local index, are skipped.
+         */
+        @Override
+        public void run() {
+            oneFeederStarted();
+            final long timer = System.currentTimeMillis();
+            int c = 0;
+            try {
+                final Map<String, URIMetadataNode> nodes = SearchEvent.this.query.getSegment().fulltext().getMetadata(this.entry.urlhashes);
+                for (int i = 0; i < this.entry.size(); i++) {
+                    if (SearchEvent.this.tasks.isCancelled()) break;
+                    final byte[] urlhash = this.entry.urlhashes.get(i);
+                    if (SearchEvent.this.urlhashes.has(urlhash)) continue;
+                    final URIMetadataNode node = nodes.get(ASCII.String(urlhash));
+                    if (node == null) continue;
+                    SearchEvent.this.urlhashes.putUnique(urlhash);
+                    SearchEvent.this.nodeStack.put(new ReverseElement<URIMetadataNode>(node, this.entry.scores.get(i)));
+                    c++;
+                }
+            } catch (final SpaceExceededException e) {
+            } finally {
+                EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(SearchEvent.this.query.id(true), SearchEventType.COLLECTION, "result cache", c, System.currentTimeMillis() - timer), false);
+                oneFeederTerminated();
+            }
+        }
+    }
+
+    /**
+     * @return true if this event was filled from the QueryResultCache
+     */
+    public boolean isReplay() {
+        return this.replay != null;
+    }
+
+    private void restoreCounters(final QueryResultCache.Entry entry) {
+        final AtomicInteger[] counters = counters();
+        for (int i = 0; i < counters.length; i++) counters[i].set(entry.counters[i]);
+        for (final Map.Entry<String, Map<String, Integer>> nav: entry.navigators.entrySet()) {
+            final String name = nav.getKey();
+            ScoreMap<String> map = null;
+            if (name.equals("location")) map = this.locationNavigator;
+            else if (name.equals("protocol")) map = this.protocolNavigator;
+            else if (name.equals("date")) map = this.dateNavigator;
+            else if (name.startsWith("plugin:")) map = this.navigatorPlugins.get(name.substring(7));
+            else if (name.startsWith("vocabulary:")) {
+                map = new ConcurrentScoreMap<String>();
+                this.vocabularyNavigator.put(name.substring(11), map);
+            }
+            if (map == null) continue; // the navigator was switched off since
+            for (final Map.Entry<String, Integer> count: nav.getValue().entrySet()) map.inc(count.getKey(), count.getValue());
+        }
+    }
+
+    private AtomicInteger[] counters() {
+        return new AtomicInteger[]{
+            this.local_rwi_available, this.local_rwi_stored, this.remote_rwi_available, this.remote_rwi_stored, this.remote_rwi_peerCount,
+            this.local_solr_evicted, this.local_solr_stored, this.remote_solr_available, this.remote_solr_stored, this.remote_solr_peerCount};
+    }
+
+    /**
+     * Get the ranked results, the counters and the navigator counts of this event for the QueryResultCache.
+     * The ranking of the entries in the result list is stored without the post-ranking, which is computed again when
+     * the restored entries are moved to the result list. This drains the stacks, it must only be called before cleanup().
+     * @param id the id of the query, see SearchEventCache.resultCacheID()
+     * @param maxResults the maximum number of stored results
+     * @param maxNavigatorKeys the maximum number of stored keys of each navigator
+     * @return the entry or null if the event has no results
+     */
+    protected QueryResultCache.Entry resultCacheEntry(final String id, final int maxResults, final int maxNavigatorKeys) {
+        final AtomicInteger[] counters = counters();
+        final int[] c = new int[counters.length];
+        for (int i = 0; i < c.length; i++) c[i] = counters[i].get();
+        final QueryResultCache.Entry entry = new QueryResultCache.Entry(id, c);
+        final Iterator<Element<URIMetadataNode>> i = this.resultList.iterator();
+        while (i.hasNext() && entry.size() < maxResults) {
+            final Element<URIMetadataNode> e = i.next();
+            entry.addResult(e.getElement().hash(), e.getWeight() / 128);
+        }
+        Element<URIMetadataNode> e;
+        while (entry.size() < maxResults && (e = this.nodeStack.poll()) != null) {
+            entry.addResult(e.getElement().hash(), e.getWeight());
+        }
+        if (entry.size() == 0) return null;
+        addNavigatorCounts(entry, "location", this.locationNavigator, maxNavigatorKeys);
+        addNavigatorCounts(entry, "protocol", this.protocolNavigator, maxNavigatorKeys);
+        addNavigatorCounts(entry, "date", this.dateNavigator, maxNavigatorKeys);
+        if (this.navigatorPlugins != null) {
+            for (final Map.Entry<String, Navigator> nav: this.navigatorPlugins.entrySet()) addNavigatorCounts(entry, "plugin:" + nav.getKey(), nav.getValue(), maxNavigatorKeys);
+        }
+        for (final Map.Entry<String, ScoreMap<String>> nav: this.vocabularyNavigator.entrySet()) addNavigatorCounts(entry, "vocabulary:" + nav.getKey(), nav.getValue(), maxNavigatorKeys);
+        return entry;
+    }
+
+    private static void addNavigatorCounts(final QueryResultCache.Entry entry, final String name, final ScoreMap<String> navigator, final int maxKeys) {
+        if (navigator == null) return;
+        final Iterator<String> i = navigator.keys(false);
+        int c = 0;
+        while (i.hasNext() && c++ < maxKeys) {
+            final String key = i.next();
+            final int count = navigator.get(key);
+            if (count > 0) entry.addNavigatorCount(name, key, count);
+        }
+    }
+
     public int addRWIs(
         final ReferenceContainer<WordReference> index,
         final boolean local,
@@ -694,7 +833,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         long timer = System.currentTimeMillis();
 
         // normalize entries
-        final BlockingQueue<WordReferenceVars> decodedEntries = this.order.normalizeWith(index, maxtime, local);
+        final BlockingQueue<WordReferenceVars> decodedEntries = this.order.normalizeWith(index, maxtime, local, this.tasks);
         int is = index.size();
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(
             this.query.id(true),
@@ -802,11 +941,13 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                     }
                 }
 
-                // finally extend the double-check and insert result to stack
-                this.urlhashes.putUnique(iEntry.urlhash());
+                // compute the ranking only as far as it is needed to decide if the entry is better than the worst entry of a full stack
+                final WeakPriorityBlockingQueue.Element<WordReferenceVars> last = this.rwiStack.getLastInFullQueue();
+                final long threshold = last == null ? Long.MIN_VALUE : last.getWeight();
+                long ranking;
                 rankingtryloop: while (true) {
                     try {
-                        this.rwiStack.put(new ReverseElement<WordReferenceVars>(iEntry, this.order.cardinal(iEntry))); // inserts the element and removes the worst (which is smallest)
+                        ranking = this.order.cardinal(iEntry, threshold);
                         break rankingtryloop;
                     } catch (final ArithmeticException e ) {
                         // this may happen if the concurrent normalizer changes values during cardinal computation
@@ -814,6 +955,18 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                         continue rankingtryloop;
                     }
                 }
+                if (ranking == Long.MIN_VALUE && threshold != Long.MIN_VALUE) {
+                    // the entry would be removed from the stack right away; it is still counted as an available result
+                    if (log.isFine()) log.fine("dropped RWI: ranking below the stack");
+                    if (local) this.local_rwi_available.incrementAndGet(); else this.remote_rwi_available.incrementAndGet();
+                    successcounter++;
+                    continue pollloop;
+                }
+
+                // finally extend the double-check and insert result to stack
+                this.urlhashes.putUnique(iEntry.urlhash());
+                this.rwiStack.put(new ReverseElement<WordReferenceVars>(iEntry, ranking)); // inserts the element and removes the worst (which is smallest)
+
                 // increase counter for statistics
                 if (local) this.local_rwi_available.incrementAndGet(); else this.remote_rwi_available.incrementAndGet();
                 
@@ -845,31 +998,8 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 
     protected void cleanup() {
 
-        // stop all threads
-        if (this.localsolrsearch != null) {
-            if (localsolrsearch.isAlive()) synchronized (this.localsolrsearch) {this.localsolrsearch.interrupt();}
-        }
-        if (this.nodeSearchThreads != null) {
-            for (final Thread search : this.nodeSearchThreads) {
-                if (search != null) {
-                    synchronized (search) {if (search.isAlive()) {search.interrupt();}}
-                }
-            }
-        }
-        if (this.primarySearchThreadsL != null) {
-            for (final RemoteSearch search : this.primarySearchThreadsL) {
-                if (search != null) {
-                    synchronized (search) {if (search.isAlive()) {search.interrupt();}}
-                }
-            }
-        }
-        if (this.secondarySearchThreads != null) {
-            for (final Thread search : this.secondarySearchThreads ) {
-                if (search != null) {
-                    synchronized (search) {if (search.isAlive()) {search.interrupt();}}
-                }
-            }
-        }
+        // stop all tasks: the local and remote searches, the normalization and the snippet fetch
+        this.tasks.cancel();
 
         // clear all data structures
         if (this.preselectedPeerHashes != null) this.preselectedPeerHashes.clear();
@@ -909,7 +1039,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         return this.primarySearchThreadsL;
     }
 
-    public Thread[] getSecondarySearchThreads() {
+    public SearchExecutor.Task[] getSecondarySearchThreads() {
         return this.secondarySearchThreads;
     }
 
@@ -1297,7 +1427,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
     private URIMetadataNode pullOneRWI(final boolean skipDoubleDom) {
 
         // returns from the current RWI list the best entry and removes this entry from the list
-        WeakPriorityBlockingQueue<WordReferenceVars> m;
+        ConcurrentWeakPriorityBlockingQueue<WordReferenceVars> m;
         WeakPriorityBlockingQueue.Element<WordReferenceVars> rwi = null;
 
         mainloop: while (true) {
@@ -1322,7 +1452,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                         m = this.doubleDomCache.get(hosthash);
                         if (m == null) {
                             // first appearance of dom. we create an entry to signal that one of that domain was already returned
-                            m = new WeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
+                            m = new ConcurrentWeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
                             this.doubleDomCache.put(hosthash, m);
                             URIMetadataNode node = this.query.getSegment().fulltext().getMetadata(rwi);
                             if (node == null) {
@@ -1348,7 +1478,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
             // find best entry from all caches
             WeakPriorityBlockingQueue.Element<WordReferenceVars> bestEntry = null;
             WeakPriorityBlockingQueue.Element<WordReferenceVars> o;
-            final Iterator<WeakPriorityBlockingQueue<WordReferenceVars>> i = this.doubleDomCache.values().iterator();
+            final Iterator<ConcurrentWeakPriorityBlockingQueue<WordReferenceVars>> i = this.doubleDomCache.values().iterator();
             doubleloop: while (i.hasNext()) {
                 try {
                     m = i.next();
@@ -1857,7 +1987,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                 success = true;
             }
         } else {
-            Thread t = new Thread("SearchEvent.drainStacksToResult.oneFilteredFromRWI") {
+            SearchExecutor.Task t = new SearchExecutor.Task(this.tasks, "SearchEvent.drainStacksToResult.oneFilteredFromRWI") {
                 @Override
                 public void run() {
                     SearchEvent.this.oneFeederStarted();
@@ -1919,7 +2049,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
                     success = true;
                 } else {
 
-                    new Thread("SearchEvent.drainStacksToResult.getSnippet") {
+                    new SearchExecutor.Task(this.tasks, "SearchEvent.drainStacksToResult.getSnippet") {
                         @Override
                         public void run() {
                             SearchEvent.this.oneFeederStarted();
@@ -2399,8 +2529,9 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 	 */
     public boolean isFeedingFinished() {
         return
-            this.feedersTerminated.intValue() > (this.remote ? 1 : 0) &&
-            this.feedersAlive.get() == 0;
+            this.feedersTerminated.intValue() > (this.remote && this.replay == null ? 1 : 0) &&
+            this.feedersAlive.get() == 0 &&
+            this.tasks.waiting() == 0; // feeders which wait for a thread have not signalled their start
     }
 
     /**
@@ -2440,7 +2571,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
         if ( !this.rwiStack.isEmpty() ) {
             return false;
         }
-        for ( final WeakPriorityBlockingQueue<WordReferenceVars> s : this.doubleDomCache.values() ) {
+        for ( final ConcurrentWeakPriorityBlockingQueue<WordReferenceVars> s : this.doubleDomCache.values() ) {
             if ( !s.isEmpty() ) {
                 return false;
             }
@@ -2450,7 +2581,7 @@ public final class SearchEvent implements ScoreMapUpdatesListener {
 
     protected int rwiQueueSize() {
         int c = this.rwiStack.sizeQueue();
-        for ( final WeakPriorityBlockingQueue<WordReferenceVars> s : this.doubleDomCache.values() ) {
+        for ( final ConcurrentWeakPriorityBlockingQueue<WordReferenceVars> s : this.doubleDomCache.values() ) {
             c += s.sizeQueue();
         }
         return c;
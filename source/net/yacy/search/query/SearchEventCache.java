@@ -26,8 +26,12 @@
 
 package net.yacy.search.query;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
@@ -38,6 +42,7 @@ import net.yacy.peers.SeedDB;
 import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
+import net.yacy.search.index.Fulltext;
 
 public class SearchEventCache {
 
@@ -49,6 +54,69 @@ public class SearchEventCache {
     private static final long memlimitMedium = 200 * 1024 * 1024; // 100 MB
     public volatile static String lastEventID = "";
     public static long cacheInsert = 0, cacheHit = 0, cacheMiss = 0, cacheDelete = 0;
+    public static final long eventMemoryEstimate = 4 * 1024 * 1024; // a rough size of a search event with its result lists, used by the MemoryGovernor
+    public static int resultCacheMaxResults = 300; // the maximum number of results of one query which are stored in the result cache
+    public static int resultCacheMaxNavigatorKeys = 100; // the maximum number of keys of each navigator which are stored in the result cache
+    private static QueryResultCache resultCache = null; // the results of evicted events, stored on disk
+    private static Fulltext resultCacheIndex = null; // the index which provides the generation counters for the result cache
+
+    /**
+     * open the result cache for the results of evicted events
+     * @param location the heap file of the cache
+     * @param index the index which is searched; its generation counters invalidate the entries
+     * @param maxEntries the maximum number of stored queries
+     * @param maxAge the maximum age of an entry in milliseconds
+     * @param maxChanges the maximum number of changed documents of the index after which an entry is invalid
+     */
+    public static synchronized void openResultCache(final File location, final Fulltext index, final int maxEntries, final long maxAge, final long maxChanges) {
+        closeResultCache();
+        try {
+            resultCache = new QueryResultCache(location, index.generation(), index.changes(), maxEntries, maxAge, maxChanges);
+            resultCacheIndex = index;
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    public static synchronized void closeResultCache() {
+        if (resultCache == null) return;
+        resultCache.close(resultCacheIndex.generation(), resultCacheIndex.changes());
+        resultCache = null;
+        resultCacheIndex = null;
+    }
+
+    /**
+     * @return the result cache or null if it is not open
+     */
+    public static QueryResultCache resultCache() {
+        return resultCache;
+    }
+
+    /**
+     * store the result of an evicted event in the result cache; this must be done before the event is cleaned up
+     */
+    private static void storeResult(final SearchEvent event) {
+        final QueryResultCache cache = resultCache;
+        final Fulltext index = resultCacheIndex;
+        if (cache == null || index == null || event.resultCacheID == null || event.isReplay() || !event.isFeedingFinished()) return;
+        try {
+            final QueryResultCache.Entry entry = event.resultCacheEntry(event.resultCacheID, resultCacheMaxResults, resultCacheMaxNavigatorKeys);
+            if (entry != null) cache.put(entry, index.generation(), index.changes());
+        } catch (final Throwable e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * store the results of the evicted events and clean them up; this is done outside of the lock of the event cache,
+     * because writing the result cache and the cleanup of the events may take some time
+     */
+    private static void evicted(final List<SearchEvent> events) {
+        for (final SearchEvent event: events) {
+            storeResult(event);
+            event.cleanup();
+        }
+    }
 
     public static int size() {
         return lastEvents.size();
@@ -79,6 +147,7 @@ public class SearchEventCache {
         final long memx = MemoryControl.available();
         final long acceptTime = memx > memlimitHigh ? eventLifetimeBigMem : memx > memlimitMedium ? eventLifetimeMediumMem : eventLifetimeShortMem;
         Map.Entry<String, SearchEvent> eventEntry;
+        final List<SearchEvent> evicted = new ArrayList<SearchEvent>();
         synchronized (lastEvents) {
             final Iterator<Map.Entry<String, SearchEvent>> i = lastEvents.entrySet().iterator();
             SearchEvent event;
@@ -87,18 +156,20 @@ public class SearchEventCache {
                 event = eventEntry.getValue();
                 if (event == null) continue;
                 if (all || event.getEventTime() + acceptTime < System.currentTimeMillis()) {
-                    event.cleanup();
+                    evicted.add(event);
                     i.remove();
                     cacheDelete++;
                 }
             }
         }
+        evicted(evicted);
     }
     
     public static void cleanupEvents(int maxsize) {
         // remove old events in the event cache
         if (MemoryControl.shortStatus()) {cleanupEvents(true); return;}
         Map.Entry<String, SearchEvent> eventEntry;
+        final List<SearchEvent> evicted = new ArrayList<SearchEvent>();
         synchronized (lastEvents) {
             final Iterator<Map.Entry<String, SearchEvent>> i = lastEvents.entrySet().iterator(); // iterates in order of entry
             int dc = lastEvents.size() - maxsize;
@@ -108,13 +179,14 @@ public class SearchEventCache {
                 eventEntry = i.next();
                 event = eventEntry.getValue();
                 if (event == null) continue;
-                event.cleanup();
+                evicted.add(event);
                 i.remove();
                 cacheDelete++;
                 dc--;
                 if (dc <= 0) break;            
             }
         }
+        evicted(evicted);
     }
 
     public static SearchEvent getEvent(final String eventID) {
@@ -140,6 +212,25 @@ public class SearchEventCache {
             final LoaderDispatcher loader,
             final int remote_maxcount,
             final long remote_maxtime) {
+        return getEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, false);
+    }
+
+    /**
+     * get a cached search event or start a new one
+     * @param useResultCache if true, a new event is filled from the result cache if it holds a valid result of the query,
+     * and the result of the event is stored there when the event is evicted. This must only be used for searches of which
+     * the result list is used, because the references of the local RWI index are not restored.
+     */
+    public static SearchEvent getEvent(
+            final QueryParams query,
+            final SeedDB peers,
+            final WorkTables workTables,
+            final SortedSet<byte[]> preselectedPeerHashes,
+            final boolean generateAbstracts,
+            final LoaderDispatcher loader,
+            final int remote_maxcount,
+            final long remote_maxtime,
+            final boolean useResultCache) {
 
         if (MemoryControl.shortStatus()) cleanupEvents(true);
         final String id = query.id(false);
@@ -186,7 +277,15 @@ public class SearchEventCache {
             final boolean delete = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.SEARCH_VERIFY_DELETE, true)
                     || (sb.getConfigBool(SwitchboardConstants.NETWORK_SEARCHVERIFY, false) && sb.peers.mySeed().getFlagAcceptRemoteIndex());
             final boolean addToLocalIdx = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.REMOTESEARCH_RESULT_STORE, true);
-            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx);
+            // the result list of a query depends on the requested page if only the local index is searched, see SearchEvent.oneResult()
+            final String resultCacheID = id + "@" + query.offset + "/" + query.itemsPerPage;
+            final QueryResultCache cache = resultCache;
+            final Fulltext index = resultCacheIndex;
+            final QueryResultCache.Entry replay = useResultCache && !generateAbstracts && cache != null && index != null && index == query.getSegment().fulltext() ?
+                    cache.get(resultCacheID, index.generation(), index.changes()) : null;
+            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx, replay);
+            if (useResultCache) event.resultCacheID = resultCacheID;
+            if (replay != null) ConcurrentLog.info("SearchEventCache", "getEvent: restored " + replay.size() + " results from the result cache");
             /* Optional config option may be valued to limit size of remote documents added to local index */
             if(sb != null) {
             	event.setRemoteDocStoredMaxSize(sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_RESULT_STORE_MAXSIZE, -1));
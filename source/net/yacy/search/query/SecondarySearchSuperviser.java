@@ -14,6 +14,7 @@ import java.util.concurrent.TimeUnit;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.SetTools;
+import net.yacy.kelondro.workflow.SearchExecutor;
 import net.yacy.peers.RemoteSearch;
 import net.yacy.search.Switchboard;
 
@@ -168,7 +169,7 @@ public class SecondarySearchSuperviser extends Thread {
 
         // compute words for secondary search and start the secondary searches
         Set<String> words;
-        this.searchEvent.secondarySearchThreads = new Thread[(mypeerinvolved) ? secondarySearchURLs.size() - 1 : secondarySearchURLs.size()];
+        this.searchEvent.secondarySearchThreads = new SearchExecutor.Task[(mypeerinvolved) ? secondarySearchURLs.size() - 1 : secondarySearchURLs.size()];
         int c = 0;
         for ( final Map.Entry<String, Set<String>> entry : secondarySearchURLs.entrySet() ) {
             String peer = entry.getKey();
@@ -27,6 +27,7 @@
 package net.yacy.search.ranking;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -46,17 +47,24 @@ import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.data.word.WordReferenceVars;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.workflow.SearchExecutor;
 
 
 public class ReferenceOrder {
 
     private static int cores = Runtime.getRuntime().availableProcessors();
 
+    /** the ranking criteria which are normalized with the minimum and maximum of all references */
+    private static final int URLCOMPS = 0, URLLENGTH = 1, POSINTEXT = 2, POSOFPHRASE = 3, POSINPHRASE = 4, WORDDISTANCE = 5, DATE = 6,
+            WORDSINTITLE = 7, WORDSINTEXT = 8, PHRASESINTEXT = 9, LLOCAL = 10, LOTHER = 11, HITCOUNT = 12, TERMFREQUENCY = 13, CRITERIA = 14;
+
     private       int maxdomcount;
     private       WordReferenceVars min, max;
     private final ConcurrentScoreMap<String> doms; // collected for "authority" heuristic
     private final RankingProfile ranking;
     private final String language;
+    private final int[] criteriaOrder; // the normalized criteria, ordered by their coefficient, the highest first
+    private final long[] criteriaBound; // the maximum sum of the criteria criteriaOrder[i..]
 
     public ReferenceOrder(final RankingProfile profile, final String language) {
         this.min = null;
@@ -65,29 +73,65 @@ public class ReferenceOrder {
         this.doms = new ConcurrentScoreMap<String>();
         this.maxdomcount = 0;
         this.language = language;
+
+        // a normalized criterion has a value between 0 and 256 which is shifted by its coefficient
+        final int[] coeff = new int[CRITERIA];
+        coeff[URLCOMPS] = profile.coeff_urlcomps;
+        coeff[URLLENGTH] = profile.coeff_urllength;
+        coeff[POSINTEXT] = profile.coeff_posintext;
+        coeff[POSOFPHRASE] = profile.coeff_posofphrase;
+        coeff[POSINPHRASE] = profile.coeff_posinphrase;
+        coeff[WORDDISTANCE] = profile.coeff_worddistance;
+        coeff[DATE] = profile.coeff_date;
+        coeff[WORDSINTITLE] = profile.coeff_wordsintitle;
+        coeff[WORDSINTEXT] = profile.coeff_wordsintext;
+        coeff[PHRASESINTEXT] = profile.coeff_phrasesintext;
+        coeff[LLOCAL] = profile.coeff_llocal;
+        coeff[LOTHER] = profile.coeff_lother;
+        coeff[HITCOUNT] = profile.coeff_hitcount;
+        coeff[TERMFREQUENCY] = profile.coeff_termfrequency;
+        final Integer[] order = new Integer[CRITERIA];
+        for (int i = 0; i < CRITERIA; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return coeff[o2.intValue()] - coeff[o1.intValue()];
+            }
+        });
+        this.criteriaOrder = new int[CRITERIA];
+        this.criteriaBound = new long[CRITERIA + 1];
+        for (int i = 0; i < CRITERIA; i++) this.criteriaOrder[i] = order[i].intValue();
+        for (int i = CRITERIA - 1; i >= 0; i--) this.criteriaBound[i] = this.criteriaBound[i + 1] + (256L << coeff[this.criteriaOrder[i]]);
     }
 
-    public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, long maxtime, final boolean local) {
+    /**
+     * normalize the references of a container concurrently
+     * @param group the group of the search tasks, may be null
+     * @return a queue which is filled with the normalized references and terminated with WordReferenceVars.poison
+     */
+    public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, long maxtime, final boolean local, final SearchExecutor.Group group) {
         final LinkedBlockingQueue<WordReferenceVars> out = new LinkedBlockingQueue<WordReferenceVars>();
         int threads = cores;
         if (container.size() < 100) threads = 2;
-        final Thread distributor = new NormalizeDistributor(container, out, threads, maxtime, local);
+        final SearchExecutor.Task distributor = new NormalizeDistributor(container, out, threads, maxtime, local, group);
         distributor.start();
 
         // return the resulting queue while the processing queues are still working
         return out;
     }
 
-    private final class NormalizeDistributor extends Thread {
+    private final class NormalizeDistributor extends SearchExecutor.Task {
 
         ReferenceContainer<WordReference> container;
         LinkedBlockingQueue<WordReferenceVars> out;
         private final int threads;
         private final long maxtime;
         private final boolean local;
+        private final SearchExecutor.Group group;
         
-        public NormalizeDistributor(final ReferenceContainer<WordReference> container, final LinkedBlockingQueue<WordReferenceVars> out, final int threads, final long maxtime, final boolean local) {
-        	super("ReferenceOrder.NormalizeDistributor");
+        public NormalizeDistributor(final ReferenceContainer<WordReference> container, final LinkedBlockingQueue<WordReferenceVars> out, final int threads, final long maxtime, final boolean local, final SearchExecutor.Group group) {
+        	super(group, "ReferenceOrder.NormalizeDistributor");
+            this.group = group;
             this.container = container;
             this.out = out;
             this.threads = threads;
@@ -98,13 +142,13 @@ public class ReferenceOrder {
         @Override
         public void run() {
             // transform the reference container into a stream of parsed entries
-            final BlockingQueue<WordReferenceVars> vars = WordReferenceVars.transform(this.container, this.maxtime, this.local);
+            final BlockingQueue<WordReferenceVars> vars = WordReferenceVars.transform(this.container, this.maxtime, this.local, this.group);
 
             // start the transformation threads
             final Semaphore termination = new Semaphore(this.threads);
             final NormalizeWorker[] worker = new NormalizeWorker[this.threads];
             for (int i = 0; i < this.threads; i++) {
-                worker[i] = new NormalizeWorker(this.out, termination, this.maxtime);
+                worker[i] = new NormalizeWorker(this.out, termination, this.maxtime, this.group);
                 worker[i].start();
             }
 
@@ -137,15 +181,15 @@ public class ReferenceOrder {
     /**
      * normalize ranking: find minimum and maximum of separate ranking criteria
      */
-    private class NormalizeWorker extends Thread {
+    private class NormalizeWorker extends SearchExecutor.Task {
 
         private final BlockingQueue<WordReferenceVars> out;
         private final Semaphore termination;
         private final BlockingQueue<WordReferenceVars> decodedEntries;
         private final long maxtime;
 
-        public NormalizeWorker(final BlockingQueue<WordReferenceVars> out, final Semaphore termination, long maxtime) {
-        	super("ReferenceOrder.NormalizeWorker");
+        public NormalizeWorker(final BlockingQueue<WordReferenceVars> out, final Semaphore termination, long maxtime, final SearchExecutor.Group group) {
+        	super(group, "ReferenceOrder.NormalizeWorker");
             this.out = out;
             this.termination = termination;
             this.decodedEntries = new LinkedBlockingQueue<WordReferenceVars>();
@@ -221,30 +265,27 @@ public class ReferenceOrder {
      * @return a ranking: the higher the number, the better is the ranking
      */
     public long cardinal(final WordReference t) {
+        return cardinal(t, Long.MIN_VALUE);
+    }
+
+    /**
+     * return the ranking of a given word entry if it can reach a threshold, like the lowest ranking in a full
+     * list of the best entries. The criteria which are normalized with the minimum and maximum of all references
+     * are computed in the order of their coefficients, the highest first; the computation ends when the ranking
+     * cannot reach the threshold even if all remaining criteria have their maximum value.
+     * @param t
+     * @param threshold the ranking which the entry must reach; Long.MIN_VALUE to compute the ranking in any case
+     * @return the ranking as computed by cardinal(t), or Long.MIN_VALUE if it is lower than the threshold
+     */
+    public long cardinal(final WordReference t, final long threshold) {
         // the normalizedEntry must be a normalized indexEntry
         assert this.min != null;
         assert this.max != null;
         assert t != null;
         assert this.ranking != null;
         final Bitfield flags = t.flags();
-        final long tf = ((this.max.termFrequency() == this.min.termFrequency()) ? 0 : (((int)(((t.termFrequency()-this.min.termFrequency())*256.0)/(this.max.termFrequency() - this.min.termFrequency())))) << this.ranking.coeff_termfrequency);
-        //System.out.println("tf(" + t.urlHash + ") = " + Math.floor(1000 * t.termFrequency()) + ", min = " + Math.floor(1000 * min.termFrequency()) + ", max = " + Math.floor(1000 * max.termFrequency()) + ", tf-normed = " + tf);
-        final long r =
+        long r =
              ((256 - DigestURL.domLengthNormalized(t.urlhash())) << this.ranking.coeff_domlength)
-           + ((this.max.urlcomps()      == this.min.urlcomps()   )   ? 0 : (256 - (((t.urlcomps()     - this.min.urlcomps()    ) << 8) / (this.max.urlcomps()    - this.min.urlcomps())    )) << this.ranking.coeff_urlcomps)
-           + ((this.max.urllength()     == this.min.urllength()  )   ? 0 : (256 - (((t.urllength()    - this.min.urllength()   ) << 8) / (this.max.urllength()   - this.min.urllength())   )) << this.ranking.coeff_urllength)
-           + ((this.max.posintext()     == this.min.posintext())     ? 0 : (256 - (((t.posintext()    - this.min.posintext()   ) << 8) / (this.max.posintext()   - this.min.posintext())   )) << this.ranking.coeff_posintext)
-           + ((this.max.posofphrase()   == this.min.posofphrase())   ? 0 : (256 - (((t.posofphrase()  - this.min.posofphrase() ) << 8) / (this.max.posofphrase() - this.min.posofphrase()) )) << this.ranking.coeff_posofphrase)
-           + ((this.max.posinphrase()   == this.min.posinphrase())   ? 0 : (256 - (((t.posinphrase()  - this.min.posinphrase() ) << 8) / (this.max.posinphrase() - this.min.posinphrase()) )) << this.ranking.coeff_posinphrase)
-           + ((this.max.distance()      == this.min.distance()   )   ? 0 : (256 - (((t.distance()     - this.min.distance()    ) << 8) / (this.max.distance()    - this.min.distance())    )) << this.ranking.coeff_worddistance)
-           + ((this.max.virtualAge()    == this.min.virtualAge())    ? 0 :        (((t.virtualAge()   - this.min.virtualAge()  ) << 8) / (this.max.virtualAge()  - this.min.virtualAge())   ) << this.ranking.coeff_date)
-           + ((this.max.wordsintitle()  == this.min.wordsintitle())  ? 0 : (((t.wordsintitle() - this.min.wordsintitle()  ) << 8) / (this.max.wordsintitle() - this.min.wordsintitle())  ) << this.ranking.coeff_wordsintitle)
-           + ((this.max.wordsintext()   == this.min.wordsintext())   ? 0 : (((t.wordsintext()  - this.min.wordsintext()   ) << 8) / (this.max.wordsintext()  - this.min.wordsintext())   ) << this.ranking.coeff_wordsintext)
-           + ((this.max.phrasesintext() == this.min.phrasesintext()) ? 0 : (((t.phrasesintext()- this.min.phrasesintext() ) << 8) / (this.max.phrasesintext()- this.min.phrasesintext()) ) << this.ranking.coeff_phrasesintext)
-           + ((this.max.llocal()        == this.min.llocal())        ? 0 : (((t.llocal()       - this.min.llocal()        ) << 8) / (this.max.llocal()       - this.min.llocal())        ) << this.ranking.coeff_llocal)
-           + ((this.max.lother()        == this.min.lother())        ? 0 : (((t.lother()       - this.min.lother()        ) << 8) / (this.max.lother()       - this.min.lother())        ) << this.ranking.coeff_lother)
-           + ((this.max.hitcount()      == this.min.hitcount())      ? 0 : (((t.hitcount()     - this.min.hitcount()      ) << 8) / (this.max.hitcount()     - this.min.hitcount())      ) << this.ranking.coeff_hitcount)
-           + tf
            + ((this.ranking.coeff_authority > 12) ? (authority(t.hosthash()) << this.ranking.coeff_authority) : 0)
            + ((flags.get(WordReferenceRow.flag_app_dc_identifier))  ? 255 << this.ranking.coeff_appurl             : 0)
            + ((flags.get(WordReferenceRow.flag_app_dc_title))       ? 255 << this.ranking.coeff_app_dc_title       : 0)
@@ -261,8 +302,36 @@ public class ReferenceOrder {
 
         //if (searchWords != null) r += (yacyURL.probablyWordURL(t.urlHash(), searchWords) != null) ? 256 << ranking.coeff_appurl : 0;
 
+        for (int i = 0; i < CRITERIA; i++) {
+            if (r + this.criteriaBound[i] < threshold) return Long.MIN_VALUE;
+            r += criterion(this.criteriaOrder[i], t);
+        }
+        if (r < threshold) return Long.MIN_VALUE;
         return r; // the higher the number the better the ranking.
     }
+
+    /**
+     * @return the value of a normalized ranking criterion, between 0 and 256 shifted by its coefficient
+     */
+    private long criterion(final int criterion, final WordReference t) {
+        switch (criterion) {
+            case URLCOMPS:      return ((this.max.urlcomps()      == this.min.urlcomps()   )   ? 0 : (256 - (((t.urlcomps()     - this.min.urlcomps()    ) << 8) / (this.max.urlcomps()    - this.min.urlcomps())    )) << this.ranking.coeff_urlcomps);
+            case URLLENGTH:     return ((this.max.urllength()     == this.min.urllength()  )   ? 0 : (256 - (((t.urllength()    - this.min.urllength()   ) << 8) / (this.max.urllength()   - this.min.urllength())   )) << this.ranking.coeff_urllength);
+            case POSINTEXT:     return ((this.max.posintext()     == this.min.posintext())     ? 0 : (256 - (((t.posintext()    - this.min.posintext()   ) << 8) / (this.max.posintext()   - this.min.posintext())   )) << this.ranking.coeff_posintext);
+            case POSOFPHRASE:   return ((this.max.posofphrase()   == this.min.posofphrase())   ? 0 : (256 - (((t.posofphrase()  - this.min.posofphrase() ) << 8) / (this.max.posofphrase() - this.min.posofphrase()) )) << this.ranking.coeff_posofphrase);
+            case POSINPHRASE:   return ((this.max.posinphrase()   == this.min.posinphrase())   ? 0 : (256 - (((t.posinphrase()  - this.min.posinphrase() ) << 8) / (this.max.posinphrase() - this.min.posinphrase()) )) << this.ranking.coeff_posinphrase);
+            case WORDDISTANCE:  return ((this.max.distance()      == this.min.distance()   )   ? 0 : (256 - (((t.distance()     - this.min.distance()    ) << 8) / (this.max.distance()    - this.min.distance())    )) << this.ranking.coeff_worddistance);
+            case DATE:          return ((this.max.virtualAge()    == this.min.virtualAge())    ? 0 :        (((t.virtualAge()   - this.min.virtualAge()  ) << 8) / (this.max.virtualAge()  - this.min.virtualAge())   ) << this.ranking.coeff_date);
+            case WORDSINTITLE:  return ((this.max.wordsintitle()  == this.min.wordsintitle())  ? 0 : (((t.wordsintitle() - this.min.wordsintitle()  ) << 8) / (this.max.wordsintitle() - this.min.wordsintitle())  ) << this.ranking.coeff_wordsintitle);
+            case WORDSINTEXT:   return ((this.max.wordsintext()   == this.min.wordsintext())   ? 0 : (((t.wordsintext()  - this.min.wordsintext()   ) << 8) / (this.max.wordsintext()  - this.min.wordsintext())   ) << this.ranking.coeff_wordsintext);
+            case PHRASESINTEXT: return ((this.max.phrasesintext() == this.min.phrasesintext()) ? 0 : (((t.phrasesintext()- this.min.phrasesintext() ) << 8) / (this.max.phrasesintext()- this.min.phrasesintext()) ) << this.ranking.coeff_phrasesintext);
+            case LLOCAL:        return ((this.max.llocal()        == this.min.llocal())        ? 0 : (((t.llocal()       - this.min.llocal()        ) << 8) / (this.max.llocal()       - this.min.llocal())        ) << this.ranking.coeff_llocal);
+            case LOTHER:        return ((this.max.lother()        == this.min.lother())        ? 0 : (((t.lother()       - this.min.lother()        ) << 8) / (this.max.lother()       - this.min.lother())        ) << this.ranking.coeff_lother);
+            case HITCOUNT:      return ((this.max.hitcount()      == this.min.hitcount())      ? 0 : (((t.hitcount()     - this.min.hitcount()      ) << 8) / (this.max.hitcount()     - this.min.hitcount())      ) << this.ranking.coeff_hitcount);
+            case TERMFREQUENCY: return ((this.max.termFrequency() == this.min.termFrequency()) ? 0 : (((int)(((t.termFrequency()-this.min.termFrequency())*256.0)/(this.max.termFrequency() - this.min.termFrequency())))) << this.ranking.coeff_termfrequency);
+            default:            return 0;
+        }
+    }
     
     public long cardinal(final URIMetadataNode t) {
         // the normalizedEntry must be a normalized indexEntry
@@ -24,25 +24,31 @@
 
 package net.yacy.search.snippet;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.protocol.ClientIdentification;
-import net.yacy.cora.storage.ARC;
-import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.storage.TinyLFUCache;
 import net.yacy.cora.util.ByteArray;
 import net.yacy.cora.util.ByteBuffer;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.document.Document;
@@ -51,18 +57,23 @@ import net.yacy.document.SentenceReader;
 import net.yacy.document.SnippetExtractor;
 import net.yacy.document.WordTokenizer;
 import net.yacy.document.parser.html.CharacterCoding;
+import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.peers.RemoteSearch;
 import net.yacy.repository.Blacklist.BlacklistType;
 import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.Switchboard;
+import net.yacy.search.index.SentenceStore;
 import net.yacy.search.query.QueryGoal;
 
 public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnippet> {
 
-	/** The maximum number of sinppet entries in the cache */
-    private static final int MAX_CACHE = 1000;
+	/** The maximum memory of the snippet entries in the cache, in bytes */
+    private static final long MAX_CACHE = 2L * 1024L * 1024L;
+
+    /** The size in bytes of the write buffer of the disk level of the snippet cache */
+    private static final int DISK_BUFFER_SIZE = 256 * 1024;
 
 
     /**
@@ -88,11 +99,50 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
     private static final Pattern p4 =
             Pattern.compile("[^\\p{L}\\p{N}]");
 
+    /**
+     * The snippet cache. Snippets which are computed from a document are also written to a disk level, if it is open,
+     * which keeps them when they are removed from the RAM and after a restart. The disk entries store the load date of
+     * the document; an entry for another version of the document is not used.
+     */
     public static class Cache {
-        private final ARC<String, String> cache;
+        private final TinyLFUCache<String, String> cache;
+        private volatile ArrayStack disk;
+        private final AtomicLong diskHits, diskMisses, diskStores;
         public Cache() {
-            this.cache = new ConcurrentARC<String, String>(MAX_CACHE, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()));
+            this.cache = new TinyLFUCache<String, String>(MAX_CACHE, TinyLFUCache.MEMORY_WEIGHER, 0);
+            this.disk = null;
+            this.diskHits = new AtomicLong(0);
+            this.diskMisses = new AtomicLong(0);
+            this.diskStores = new AtomicLong(0);
+        }
+
+        /**
+         * open the disk level of the cache; a disk level which is already open is closed
+         * @param location the directory of the disk level
+         * @param maxSize the maximum size of the disk level in bytes, the oldest entries are deleted first
+         * @throws IOException
+         */
+        public synchronized void open(final File location, final long maxSize) throws IOException {
+            close();
+            final ArrayStack d = new ArrayStack(location, "snippets", Base64Order.enhancedCoder, 2 * Word.commonHashLength, DISK_BUFFER_SIZE, false, true);
+            d.setMaxSize(maxSize);
+            this.disk = d;
+        }
+
+        public synchronized void close() {
+            if (this.disk == null) return;
+            this.disk.close(true);
+            this.disk = null;
+        }
+
+        public boolean isOpen() {
+            return this.disk != null;
+        }
+
+        private static byte[] diskKey(final String wordhashes, final String urlhash) {
+            return ASCII.getBytes(urlhash + Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(wordhashes)).substring(0, Word.commonHashLength));
         }
+
         public void put(final String wordhashes, final String urlhash, final String snippet) {
             // generate key
             final String key = urlhash + wordhashes;
@@ -101,15 +151,74 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
             this.cache.insertIfAbsent(key, snippet);
         }
 
+        /**
+         * store a snippet which was computed from a document, also at the disk level
+         * @param loaddate the load date of the document in milliseconds
+         */
+        public void put(final String wordhashes, final String urlhash, final long loaddate, final String snippet) {
+            put(wordhashes, urlhash, snippet);
+            final ArrayStack d = this.disk;
+            if (d == null) return;
+            final byte[] line = snippet.getBytes(StandardCharsets.UTF_8);
+            final byte[] b = new byte[8 + line.length];
+            NaturalOrder.encodeLong(loaddate, b, 0, 8);
+            System.arraycopy(line, 0, b, 8, line.length);
+            try {
+                // an older entry in a previous file of the stack is not deleted; it is rejected by the load date
+                d.insert(diskKey(wordhashes, urlhash), b);
+                this.diskStores.incrementAndGet();
+            } catch (final IOException e) {
+                ConcurrentLog.warn("TextSnippet", "cannot store snippet: " + e.getMessage());
+            }
+        }
+
         public String get(final String wordhashes, final String urlhash) {
             // generate key
             final String key = urlhash + wordhashes;
             return this.cache.get(key);
         }
 
+        /**
+         * get a snippet from the RAM or, if it is not there, from the disk level
+         * @param loaddate the load date of the document in milliseconds
+         * @return the snippet or null if there is no snippet for this version of the document
+         */
+        public String get(final String wordhashes, final String urlhash, final long loaddate) {
+            final String snippet = get(wordhashes, urlhash);
+            if (snippet != null) return snippet;
+            final ArrayStack d = this.disk;
+            if (d == null) return null;
+            byte[] b = null;
+            try {
+                b = d.get(diskKey(wordhashes, urlhash));
+                // the snippet of another version of the document is replaced when a new snippet is stored
+                if (b != null && (b.length < 8 || NaturalOrder.decodeLong(b, 0, 8) != loaddate)) b = null;
+            } catch (final IOException | SpaceExceededException e) {
+                b = null;
+            }
+            if (b == null) {
+                this.diskMisses.incrementAndGet();
+                return null;
+            }
+            this.diskHits.incrementAndGet();
+            final String s = new String(b, 8, b.length - 8, StandardCharsets.UTF_8);
+            this.cache.insertIfAbsent(urlhash + wordhashes, s);
+            return s;
+        }
+
         public boolean contains(final String wordhashes, final String urlhash) {
             return this.cache.containsKey(urlhash + wordhashes);
         }
+
+        public int diskSize() {
+            final ArrayStack d = this.disk;
+            return d == null ? 0 : d.size();
+        }
+
+        public long diskHits() {return this.diskHits.get();}
+        public long diskMisses() {return this.diskMisses.get();}
+        public long diskStores() {return this.diskStores.get();}
+        public TinyLFUCache<String, String> ram() {return this.cache;}
     }
 
     public static final Cache snippetsCache = new Cache();
@@ -186,10 +295,11 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         // try to get snippet from snippetCache
         ResultClass source = ResultClass.SOURCE_CACHE;
     	final String urlHash = ASCII.String(url.hash());
+    	final long loaddate = row.loaddate().getTime();
         final String wordhashes;
         if(queryhashes != null) {
         	wordhashes = RemoteSearch.set2string(queryhashes);
-        	final String snippetLine = snippetsCache.get(wordhashes, urlHash);
+        	final String snippetLine = snippetsCache.get(wordhashes, urlHash, loaddate);
         	if (snippetLine != null) {
         		// found the snippet
         		init(url, snippetLine, false, source, null, beginTime);
@@ -205,6 +315,11 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         Set<String> remainingTerms = new HashSet<>(queryTerms);
         SentenceReader sentences = null;
         List<StringBuilder> firstSentencesList = null;
+        List<StringBuilder> stored = null;
+        /* true when the sentences are read from the sentence store or a document of the cache, and not from the metadata */
+        boolean sentencesFromDocument = false;
+        /* true when the sentences are read from the sentence store: they contain the complete text of the document */
+        boolean sentencesFromStore = false;
         
         // try to get the snippet from metadata
         removeMatchingTerms(row.url().toTokens(), remainingTerms);
@@ -227,6 +342,13 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
             if (solrText != null && solrText.length() > 0) { // TODO: instead of join with desc, we could check if snippet already complete and skip further computation
                 // compute sentences from solr query
                	sentences = new SentenceReader(firstSentencesList, solrText, pre);
+            } else if (!pre && (stored = storedSentences(url.hash())) != null) {
+                // get the sentences from the sentence store, without loading and parsing the document
+                final List<StringBuilder> sentencesList = firstSentencesList == null ? new ArrayList<>() : firstSentencesList;
+                sentencesList.addAll(stored);
+                sentences = new SentenceReader(sentencesList, "", pre);
+                sentencesFromDocument = true;
+                sentencesFromStore = true;
             } else if (net.yacy.crawler.data.Cache.has(url.hash())) {
                 // get the sentences from the cache
                 final Request request = loader == null ? null : loader.request(url, true, reindexing);
@@ -241,6 +363,7 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
                     try {
                         document = Document.mergeDocuments(response.url(), response.getMimeType(), response.parse());
                         sentences = new SentenceReader(firstSentencesList, document.getTextString(), pre);
+                        sentencesFromDocument = true;
                         response = null;
                         document = null;
                     } catch (final Parser.Failure e) {
@@ -267,6 +390,10 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
 
        if (remainingTerms.isEmpty()) {
             // we found the snippet or the query is fully included in the headline or url
+            if (textline != null && textline.length() > 0 && sentencesFromDocument && wordhashes != null) {
+                // store the snippet, it is expensive to compute it again without text in the metadata
+                snippetsCache.put(wordhashes, urlHash, loaddate, textline);
+            }
             if (textline == null || textline.length() == 0) {
                 // this is the case where we don't have a snippet because all search words are included in the headline or the url
             	if(sentences == null) {
@@ -316,6 +443,12 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         }
         sentences = null; // we don't need this here any more
 
+        if (sentencesFromStore && (cacheStrategy == null || cacheStrategy.mustBeOffline())) {
+            // the stored sentences are the complete text of the document, which would be loaded from the cache
+            init(url, null, false, ResultClass.ERROR_NO_MATCH, "no matching snippet found", beginTime);
+            return;
+        }
+
         // try to load the resource from the cache
         Response response = null;
         try {
@@ -382,11 +515,21 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
 
         // finally store this snippet in our own cache
         if(wordhashes != null) {
-        	snippetsCache.put(wordhashes, urlHash, textline);
+        	snippetsCache.put(wordhashes, urlHash, loaddate, textline);
         }
         init(url, textline, false, source, null, beginTime);
     }
 
+    /**
+     * @param urlhash the hash of the document url
+     * @return the sentences of the document from the sentence store of the index or null if they are not stored
+     */
+    private static List<StringBuilder> storedSentences(final byte[] urlhash) {
+        final Switchboard sb = Switchboard.getSwitchboard();
+        final SentenceStore store = sb == null || sb.index == null ? null : sb.index.sentences();
+        return store == null ? null : store.get(urlhash);
+    }
+
     /**
      * Init a snippet line for urlhash
      *
@@ -0,0 +1,86 @@
+package net.yacy.cora.order;
+
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.kelondro.util.SyntheticData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compare of base64 hashes, which is the inner loop of all sort and search operations on YaCy indexes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Base64OrderBenchmark {
+
+    private static final int MASK = 1023;
+
+    private byte[][] a, b, c;
+    private int p;
+
+    @Setup
+    public void setup() {
+        this.a = SyntheticData.hashes(MASK + 1, 1);
+        this.b = SyntheticData.hashes(MASK + 1, 2);
+        // keys which differ only in the last byte, like keys in a dense sorted area
+        this.c = new byte[MASK + 1][];
+        for (int i = 0; i <= MASK; i++) {
+            this.c[i] = this.a[i].clone();
+            this.c[i][11] = this.a[(i + 1) & MASK][11];
+        }
+        this.p = 0;
+    }
+
+    @Benchmark
+    public int compareRandom() {
+        final int i = this.p++ & MASK;
+        return Base64Order.enhancedCoder.compare(this.a[i], this.b[i]);
+    }
+
+    @Benchmark
+    public int compareCommonPrefix() {
+        final int i = this.p++ & MASK;
+        return Base64Order.enhancedCoder.compare(this.a[i], this.c[i]);
+    }
+
+    /**
+     * compare with the long transform of the key prefix; this is the cost of a comparison if the
+     * transformed keys are not precomputed, as they are when a RowSet is sorted
+     */
+    @Benchmark
+    public int compareKeyRandom() {
+        final int i = this.p++ & MASK;
+        return compareKey(this.a[i], this.b[i]);
+    }
+
+    @Benchmark
+    public int compareKeyCommonPrefix() {
+        final int i = this.p++ & MASK;
+        return compareKey(this.a[i], this.c[i]);
+    }
+
+    private static int compareKey(final byte[] a, final byte[] b) {
+        final long ka = Base64Order.enhancedCoder.key(a, 0, 10), kb = Base64Order.enhancedCoder.key(b, 0, 10);
+        if (ka != kb) return ka < kb ? -1 : 1;
+        return Base64Order.enhancedCoder.compare(a, 10, b, 10, 2);
+    }
+
+    @Benchmark
+    public int compareNatural() {
+        final int i = this.p++ & MASK;
+        return NaturalOrder.naturalOrder.compare(this.a[i], this.b[i]);
+    }
+}
@@ -0,0 +1,92 @@
+package net.yacy.kelondro.blob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.SyntheticData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * round trips through a Compressor on a Heap: compression when an entry is flushed and decompression when it is read
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CompressorBenchmark {
+
+    @Param({"10000"})
+    public int entries;
+
+    @Param({"4096"})
+    public int payload;
+
+    @Param({"1", "9"})
+    public int compressionLevel;
+
+    private File dir;
+    private byte[][] keys;
+    private byte[][] values;
+    private Compressor compressor;
+    private int p;
+
+    @Setup
+    public void setup() throws IOException {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "CompressorBenchmark");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.keys = SyntheticData.hashes(this.entries, 1);
+        final Random r = SyntheticData.random(2);
+        this.values = new byte[256][];
+        for (int i = 0; i < this.values.length; i++) this.values[i] = SyntheticData.text(r, this.payload);
+        final Heap heap = new Heap(new File(this.dir, "compressor.heap"), 12, Base64Order.enhancedCoder, 1024 * 1024);
+        this.compressor = new Compressor(heap, 1024 * 1024, 1000, this.compressionLevel);
+        for (int i = 0; i < this.entries; i++) this.compressor.insert(this.keys[i], this.values[i & 255]);
+        this.compressor.flushAll();
+        this.p = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.compressor.close(false);
+        FileUtils.deletedelete(this.dir);
+    }
+
+    /**
+     * insert an entry and compress it into the heap
+     */
+    @Benchmark
+    public int insertFlush() throws IOException {
+        final int i = this.p++ % this.entries;
+        this.compressor.insert(this.keys[i], this.values[i & 255]);
+        this.compressor.flushAll();
+        return i;
+    }
+
+    /**
+     * read and decompress an entry from the heap
+     */
+    @Benchmark
+    public byte[] get() throws IOException, SpaceExceededException {
+        return this.compressor.get(this.keys[(this.p++ * 7919) % this.entries]);
+    }
+}
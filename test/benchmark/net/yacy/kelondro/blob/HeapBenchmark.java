@@ -0,0 +1,123 @@
+package net.yacy.kelondro.blob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.SyntheticData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * read access to BLOB files: a single writable Heap, a single read-only HeapModifier and an ArrayStack
+ * of read-only files as it is used for the RWI index. The files are written to the temporary directory during the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HeapBenchmark {
+
+    private static final int FILES = 8;
+
+    @Param({"100000"})
+    public int entries;
+
+    @Param({"1024"})
+    public int payload;
+
+    /**
+     * if true, read-only files are read with a memory mapping
+     */
+    @Param({"false", "true"})
+    public boolean mapped;
+
+    private File dir;
+    private byte[][] keys, missing;
+    private Heap heap;
+    private HeapModifier reader;
+    private ArrayStack stack;
+    private int p;
+
+    @Setup
+    public void setup() throws IOException {
+        ArrayStack.mapReadOnlyBLOBs = this.mapped;
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "HeapBenchmark");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.keys = SyntheticData.hashes(this.entries, 1);
+        this.missing = SyntheticData.hashes(1024, 2);
+        final Random r = SyntheticData.random(3);
+
+        // one heap with all entries
+        final File heapFile = new File(this.dir, "single.heap");
+        Heap h = new Heap(heapFile, 12, Base64Order.enhancedCoder, 1024 * 1024);
+        for (final byte[] key: this.keys) h.insert(key, SyntheticData.text(r, this.payload));
+        h.close(true);
+        this.heap = new Heap(heapFile, 12, Base64Order.enhancedCoder, 1024 * 1024);
+        this.reader = new HeapModifier(heapFile, 12, Base64Order.enhancedCoder);
+        this.reader.initKeyFilter();
+        if (this.mapped) this.reader.map();
+
+        // an array of files where every file holds a part of the entries
+        final File stackDir = new File(this.dir, "stack");
+        stackDir.mkdirs();
+        this.stack = new ArrayStack(stackDir, "bench", Base64Order.enhancedCoder, 12, 0, true, false);
+        final long t = System.currentTimeMillis();
+        for (int f = 0; f < FILES; f++) {
+            final File blob = this.stack.newBLOB(new Date(t + f));
+            h = new Heap(blob, 12, Base64Order.enhancedCoder, 1024 * 1024);
+            for (int i = f; i < this.entries; i += FILES) h.insert(this.keys[i], SyntheticData.text(r, this.payload));
+            h.close(true);
+            this.stack.mountBLOB(blob, false);
+        }
+        this.p = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.heap.close(false);
+        this.reader.close(false);
+        this.stack.close(false);
+        FileUtils.deletedelete(this.dir);
+        ArrayStack.mapReadOnlyBLOBs = false;
+    }
+
+    @Benchmark
+    public byte[] heapGet() throws IOException, SpaceExceededException {
+        return this.heap.get(this.keys[(this.p++ * 7919) % this.entries]);
+    }
+
+    @Benchmark
+    public byte[] readerGet() throws IOException, SpaceExceededException {
+        return this.reader.get(this.keys[(this.p++ * 7919) % this.entries]);
+    }
+
+    @Benchmark
+    public byte[] stackGet() throws IOException, SpaceExceededException {
+        return this.stack.get(this.keys[(this.p++ * 7919) % this.entries]);
+    }
+
+    @Benchmark
+    public boolean stackMiss() {
+        return this.stack.containsKey(this.missing[this.p++ & 1023]);
+    }
+}
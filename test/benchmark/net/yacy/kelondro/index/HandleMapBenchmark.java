@@ -0,0 +1,94 @@
+package net.yacy.kelondro.index;
+
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.SyntheticData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * put and get in RowHandleMap and RowHandleSet, which hold the indexes of all BLOB files and tables
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HandleMapBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private byte[][] keys;
+    private RowHandleMap map;
+    private RowHandleSet set;
+    private int p;
+
+    @Setup
+    public void setup() throws SpaceExceededException {
+        this.keys = SyntheticData.hashes(this.size, 1);
+        this.map = new RowHandleMap(12, Base64Order.enhancedCoder, 8, this.size, "benchmark");
+        this.set = new RowHandleSet(12, Base64Order.enhancedCoder, this.size);
+        for (int i = 0; i < this.size; i++) {
+            this.map.put(this.keys[i], i);
+            this.set.put(this.keys[i]);
+        }
+        this.p = 0;
+    }
+
+    @Benchmark
+    public long mapGet() {
+        return this.map.get(this.keys[this.p++ % this.size]);
+    }
+
+    @Benchmark
+    public long mapPut() throws SpaceExceededException {
+        // replaces an existing value; the size of the map does not change
+        final int i = this.p++ % this.size;
+        return this.map.put(this.keys[i], i);
+    }
+
+    @Benchmark
+    public boolean setHas() {
+        return this.set.has(this.keys[this.p++ % this.size]);
+    }
+
+    /**
+     * fill an empty map with all keys
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public int mapFill() throws SpaceExceededException {
+        final RowHandleMap m = new RowHandleMap(12, Base64Order.enhancedCoder, 8, this.size, "benchmark");
+        for (int i = 0; i < this.size; i++) m.putUnique(this.keys[i], i);
+        return m.size();
+    }
+
+    /**
+     * fill an empty set with all keys
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public int setFill() throws SpaceExceededException {
+        final RowHandleSet s = new RowHandleSet(12, Base64Order.enhancedCoder, this.size);
+        for (int i = 0; i < this.size; i++) s.put(this.keys[i]);
+        return s.size();
+    }
+}
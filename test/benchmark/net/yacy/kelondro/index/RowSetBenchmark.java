@@ -0,0 +1,100 @@
+package net.yacy.kelondro.index;
+
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.SyntheticData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * sort, binary search and insert in a RowSet
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RowSetBenchmark {
+
+    private static final Row row = new Row("byte[] key-12, long value-8 {b256}", Base64Order.enhancedCoder);
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    /**
+     * sort with the long transform of the key prefix or with the merge sort of the rows
+     */
+    @Param({"true", "false"})
+    public boolean keySort;
+
+    private byte[] unsorted;
+    private RowSet sorted;
+    private byte[][] probes;
+    private int p;
+
+    @Setup
+    public void setup() throws SpaceExceededException {
+        RowSorter.keySort = this.keySort;
+        final byte[][] keys = SyntheticData.hashes(this.size, 1);
+        final RowSet set = new RowSet(row, this.size);
+        for (int i = 0; i < this.size; i++) set.addUnique(row.newEntry(new byte[][]{keys[i], new byte[8]}));
+        this.unsorted = set.exportCollection();
+        set.sort();
+        this.sorted = set;
+        // half of the probes exist in the set
+        final byte[][] missing = SyntheticData.hashes(1024, 2);
+        this.probes = new byte[1024][];
+        for (int i = 0; i < 1024; i++) this.probes[i] = (i & 1) == 0 ? keys[i * 7 % this.size] : missing[i];
+        this.p = 0;
+    }
+
+    /**
+     * sort a copy of the unsorted set; the copy of the array is part of the measurement
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public int sort() throws SpaceExceededException {
+        final RowSet set = RowSet.importRowSet(this.unsorted, row);
+        set.sort();
+        return set.size();
+    }
+
+    @Benchmark
+    public boolean binarySearch() {
+        return this.sorted.has(this.probes[this.p++ & 1023]);
+    }
+
+    @Benchmark
+    public Row.Entry get() {
+        return this.sorted.get(this.probes[this.p++ & 1023], false);
+    }
+
+    /**
+     * put all keys into an empty set; this includes the sort operations during the put
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public int put() throws SpaceExceededException {
+        final RowSet set = new RowSet(row, 0);
+        final int n = this.sorted.size();
+        for (int i = n - 1; i >= 0; i--) set.put(this.sorted.get(i, false));
+        return set.size();
+    }
+}
@@ -0,0 +1,111 @@
+package net.yacy.kelondro.rwi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.index.RowSet;
+import net.yacy.kelondro.util.SyntheticData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * join and merge of word reference containers and the export formats of containers which are written to the RWI BLOB files
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReferenceContainerBenchmark {
+
+    /**
+     * number of references of the rare term; the common terms have 100 times more references
+     */
+    @Param({"100", "10000"})
+    public int rare;
+
+    @Param({"true", "false"})
+    public boolean gallopingJoin;
+
+    private List<ReferenceContainer<WordReference>> containers;
+    private ReferenceContainer<WordReference> large;
+    private byte[] plain, compressed;
+
+    @Setup
+    public void setup() throws SpaceExceededException {
+        ReferenceContainer.gallopingJoin = this.gallopingJoin;
+        final int common = this.rare * 100;
+        final byte[][] urls = SyntheticData.hashes(common * 2, 1);
+        final byte[][] terms = SyntheticData.hashes(3, 2);
+        this.containers = new ArrayList<ReferenceContainer<WordReference>>();
+        // the url sets overlap: all urls of the rare term are in the first common term and every second url in the second one
+        final byte[][] everySecond = new byte[common][];
+        for (int i = 0; i < common; i++) everySecond[i] = urls[2 * i];
+        this.containers.add(SyntheticData.container(terms[0], Arrays.copyOfRange(urls, 0, this.rare), 3));
+        this.containers.add(SyntheticData.container(terms[1], Arrays.copyOfRange(urls, 0, common), 4));
+        this.containers.add(SyntheticData.container(terms[2], everySecond, 5));
+        this.large = this.containers.get(1);
+        this.plain = this.large.exportCollection();
+        this.compressed = this.large.exportCompressedCollection();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ReferenceContainer.gallopingJoin = true;
+    }
+
+    @Benchmark
+    public ReferenceContainer<WordReference> join() throws SpaceExceededException {
+        return ReferenceContainer.joinContainers(SyntheticData.wordReferenceFactory, this.containers, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public ReferenceContainer<WordReference> joinExclude() throws SpaceExceededException {
+        // the exclusion changes only the join result, not the containers of the dataset
+        return ReferenceContainer.joinExcludeContainers(SyntheticData.wordReferenceFactory, this.containers.subList(0, 2), this.containers.subList(2, 3), Integer.MAX_VALUE);
+    }
+
+    /**
+     * merge of two containers of the same term, as it is done when BLOB files are merged
+     */
+    @Benchmark
+    public ReferenceContainer<WordReference> merge() throws SpaceExceededException {
+        return this.containers.get(1).merge(this.containers.get(2));
+    }
+
+    @Benchmark
+    public byte[] exportPlain() {
+        return this.large.exportCollection();
+    }
+
+    @Benchmark
+    public byte[] exportCompressed() {
+        return this.large.exportCompressedCollection();
+    }
+
+    @Benchmark
+    public RowSet importPlain() throws SpaceExceededException {
+        return RowSet.importRowSet(this.plain, this.large.row());
+    }
+
+    @Benchmark
+    public RowSet importCompressed() throws SpaceExceededException {
+        return RowSet.importRowSet(this.compressed, this.large.row());
+    }
+}
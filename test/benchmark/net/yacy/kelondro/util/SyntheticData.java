@@ -0,0 +1,114 @@
+package net.yacy.kelondro.util;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+
+/**
+ * Reproducible synthetic datasets for the benchmarks. All data is produced from a seeded random
+ * generator, so that every run of a benchmark works on the same keys and values.
+ */
+public final class SyntheticData {
+
+    public static final long SEED = 4711L;
+
+    public static final WordReferenceFactory wordReferenceFactory = new WordReferenceFactory();
+
+    private static final String[] words = {"yacy", "peer", "search", "index", "the", "web", "engine", "free", "of", "and", "crawl", "result", "document", "word", "url", "page"};
+
+    private SyntheticData() {}
+
+    public static Random random(final long salt) {
+        return new Random(SEED + salt);
+    }
+
+    /**
+     * produce base64 hashes of 12 bytes like the url and word hashes of YaCy
+     * @param count number of hashes
+     * @param salt a value which selects the dataset
+     * @return the hashes in random order; all hashes are different
+     */
+    public static byte[][] hashes(final int count, final long salt) {
+        final Random r = random(salt);
+        final byte[][] hashes = new byte[count][];
+        final byte[] b = new byte[9];
+        for (int i = 0; i < count; i++) {
+            r.nextBytes(b);
+            // the first three bytes are unique, the remaining bytes are random
+            b[0] = (byte) (i >>> 16); b[1] = (byte) (i >>> 8); b[2] = (byte) i;
+            hashes[i] = ASCII.getBytes(Base64Order.enhancedCoder.encode(b));
+        }
+        // shuffle to avoid that the unique prefix makes the hashes sorted
+        for (int i = count - 1; i > 0; i--) {
+            final int j = r.nextInt(i + 1);
+            final byte[] t = hashes[i]; hashes[i] = hashes[j]; hashes[j] = t;
+        }
+        return hashes;
+    }
+
+    /**
+     * produce a text-like payload which can be compressed like the documents stored in BLOBs
+     * @param r the random generator
+     * @param size the length of the payload
+     * @return the payload
+     */
+    public static byte[] text(final Random r, final int size) {
+        final StringBuilder sb = new StringBuilder(size + 16);
+        while (sb.length() < size) sb.append(words[r.nextInt(words.length)]).append(r.nextInt(8) == 0 ? ". " : " ");
+        return ASCII.getBytes(sb.substring(0, size));
+    }
+
+    /**
+     * produce a word reference
+     * @param r the random generator
+     * @param urlhash the url hash of the reference
+     * @return a word reference with random but realistic attributes
+     */
+    public static WordReferenceVars wordReference(final Random r, final byte[] urlhash) {
+        final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+        positions.add(1 + r.nextInt(500));
+        return new WordReferenceVars(
+                urlhash,
+                30 + r.nextInt(60), // urlLength
+                2 + r.nextInt(6),   // urlComps
+                r.nextInt(80),      // titleLength
+                1 + r.nextInt(10),  // hitcount
+                100 + r.nextInt(2000), // wordcount
+                10 + r.nextInt(100), // phrasecount
+                1 + r.nextInt(500), // posintext
+                positions,
+                1 + r.nextInt(20),  // posinphrase
+                1 + r.nextInt(50),  // posofphrase
+                1400000000000L + r.nextInt(1000) * 86400000L, // lastmodified
+                r.nextInt(4) == 0 ? "de" : "en",
+                't',
+                r.nextInt(50),      // outlinksSame
+                r.nextInt(50),      // outlinksOther
+                new Bitfield(4),
+                0.0d);
+    }
+
+    /**
+     * produce a reference container of a term
+     * @param term the term hash
+     * @param urlhashes the url hashes of the references
+     * @param salt a value which selects the attributes of the references
+     * @return the container
+     * @throws SpaceExceededException
+     */
+    public static ReferenceContainer<WordReference> container(final byte[] term, final byte[][] urlhashes, final long salt) throws SpaceExceededException {
+        final Random r = random(salt);
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(wordReferenceFactory, term, urlhashes.length);
+        for (final byte[] urlhash: urlhashes) c.add(wordReference(r, urlhash));
+        c.sort();
+        return c;
+    }
+}
@@ -0,0 +1,52 @@
+package net.yacy.cora.order;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.yacy.cora.document.encoding.ASCII;
+import org.junit.Test;
+
+
+public class Base64OrderTest {
+
+    /**
+     * Test that the long transform of key prefixes has the same order as the compare of the keys
+     */
+    @Test
+    public void testKeyOrder() {
+        final Random r = new Random(7);
+        final byte[] alpha = Base64Order.alpha_enhanced;
+        final Base64Order order = Base64Order.enhancedCoder;
+        assertTrue(order.hasKeyOrder());
+        for (int t = 0; t < 100000; t++) {
+            final byte[] a = new byte[12], b = new byte[12];
+            final int common = r.nextInt(13);
+            for (int i = 0; i < 12; i++) {
+                a[i] = alpha[r.nextInt(64)];
+                b[i] = i < common ? a[i] : alpha[r.nextInt(64)];
+            }
+            for (int chars = 1; chars <= 10; chars++) {
+                final long ka = order.key(a, 0, chars), kb = order.key(b, 0, chars);
+                final int c = Long.signum(ka - kb);
+                assertEquals(Integer.signum(order.compare(a, b, chars)), c);
+                if (c != 0) assertEquals(c, Integer.signum(order.compare(a, b)));
+            }
+        }
+    }
+
+    /**
+     * Test that keys with characters outside of the alphabet are not transformed
+     */
+    @Test
+    public void testKeyNotWellformed() {
+        final Base64Order order = Base64Order.enhancedCoder;
+        assertEquals(-1, order.key(ASCII.getBytes("AAAA+AAAAAAA"), 0, 10));
+        assertEquals(-1, order.key(new byte[]{'A', (byte) 0xC3, 'A'}, 0, 3));
+        assertEquals(0, order.key(ASCII.getBytes("AAAA+AAAAAAA"), 0, 4));
+        final Base64Order descending = new Base64Order(false, false);
+        assertFalse(descending.hasKeyOrder());
+    }
+}
@@ -0,0 +1,202 @@
+package net.yacy.cora.sorting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.Element;
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.ReverseElement;
+import org.junit.Test;
+
+
+public class ConcurrentWeakPriorityBlockingQueueTest {
+
+    /**
+     * Test that the elements are taken with the highest weight first and only the best elements are kept in a full queue
+     */
+    @Test
+    public void testPutPoll() {
+        final ConcurrentWeakPriorityBlockingQueue<String> q = new ConcurrentWeakPriorityBlockingQueue<String>(3, false);
+        assertNull(q.getLastInFullQueue());
+        for (int i = 0; i < 10; i++) q.put(new ReverseElement<String>("e" + i, (i * 7) % 10));
+        assertEquals(3, q.sizeQueue());
+        assertEquals(3, q.sizeAvailable());
+        assertEquals(7, q.getLastInFullQueue().getWeight());
+        assertEquals(9, q.peek().getWeight());
+        q.put(new ReverseElement<String>("e7", 9)); // an element which is already in the queue
+        assertEquals(3, q.sizeQueue());
+        assertEquals(9, q.poll().getWeight());
+        assertEquals(8, q.poll().getWeight());
+        assertNull(q.getLastInFullQueue());
+        assertEquals(7, q.poll().getWeight());
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+    }
+
+    /**
+     * Test that taken elements are recorded in the drained list, are not put again, and can be requeued
+     */
+    @Test
+    public void testDrained() {
+        final ConcurrentWeakPriorityBlockingQueue<String> q = new ConcurrentWeakPriorityBlockingQueue<String>(10, true);
+        final List<Element<String>> elements = new ArrayList<Element<String>>();
+        for (int i = 0; i < 5; i++) {
+            elements.add(new ReverseElement<String>("e" + i, i));
+            q.put(elements.get(i));
+        }
+        assertSame(elements.get(3), q.element(1));
+        assertEquals(2, q.sizeDrained());
+        assertEquals(3, q.sizeQueue());
+        assertNull(q.element(5));
+        q.put(elements.get(4)); // a drained element
+        assertEquals(3, q.sizeQueue());
+        assertEquals(4, q.list(4).size());
+        assertEquals(5, q.sizeAvailable());
+
+        q.requeueDrainedElements();
+        assertEquals(0, q.sizeDrained());
+        assertEquals(5, q.sizeQueue());
+        q.put(new ReverseElement<String>("e5", 5));
+        for (int i = 0; i < 6; i++) assertEquals(5 - i, q.element(i).getWeight());
+        int c = 0;
+        for (final java.util.Iterator<Element<String>> i = q.iterator(); i.hasNext(); i.next()) c++;
+        assertEquals(6, c);
+
+        q.clear();
+        assertTrue(q.isEmpty());
+        assertEquals(0, q.sizeAvailable());
+    }
+
+    /**
+     * Test that a poll with a timeout waits for an element which is put by another thread
+     */
+    @Test
+    public void testPollTimeout() throws InterruptedException {
+        final ConcurrentWeakPriorityBlockingQueue<String> q = new ConcurrentWeakPriorityBlockingQueue<String>(10, true);
+        assertNull(q.poll(10));
+        new Thread() {
+            @Override
+            public void run() {
+                try {Thread.sleep(50);} catch (final InterruptedException e) {}
+                q.put(new ReverseElement<String>("late", 1));
+            }
+        }.start();
+        final Element<String> e = q.element(0, 5000);
+        assertNotNull(e);
+        assertEquals("late", e.getElement());
+    }
+
+    /**
+     * Test that a bounded queue which is filled by many threads at the same time keeps exactly the best elements
+     */
+    @Test
+    public void testConcurrentPut() throws InterruptedException {
+        final int threads = 8, count = 20000, maxsize = 100;
+        final ConcurrentWeakPriorityBlockingQueue<Integer> q = new ConcurrentWeakPriorityBlockingQueue<Integer>(maxsize, false);
+        final long[] weights = new long[threads * count];
+        final Random r = new Random(0);
+        for (int i = 0; i < weights.length; i++) weights[i] = r.nextInt(1000000);
+        final Thread[] feeders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * count;
+            feeders[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < offset + count; i++) q.put(new ReverseElement<Integer>(i, weights[i]));
+                }
+            };
+            feeders[t].start();
+        }
+        for (final Thread t: feeders) t.join();
+
+        assertEquals(maxsize, q.sizeQueue());
+        final long[] sorted = weights.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < maxsize; i++) {
+            final Element<Integer> e = q.poll();
+            assertNotNull(e);
+            assertEquals(sorted[sorted.length - 1 - i], e.getWeight());
+        }
+        assertNull(q.poll());
+    }
+
+    /**
+     * Test that no element is lost when many threads put elements on a queue below its maxsize while another thread
+     * takes them, and that a poll with a timeout does not return before all elements are taken
+     */
+    @Test
+    public void testConcurrentPutPoll() throws InterruptedException {
+        final int threads = 8, count = 20000;
+        final ConcurrentWeakPriorityBlockingQueue<Integer> q = new ConcurrentWeakPriorityBlockingQueue<Integer>(threads * count, false);
+        final Thread[] feeders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * count;
+            feeders[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random r = new Random(offset);
+                    for (int i = offset; i < offset + count; i++) q.put(new ReverseElement<Integer>(i, r.nextInt()));
+                }
+            };
+            feeders[t].start();
+        }
+        final boolean[] taken = new boolean[threads * count];
+        for (int i = 0; i < taken.length; i++) {
+            final Element<Integer> e = q.poll(5000);
+            assertNotNull(e);
+            assertTrue(!taken[e.getElement()]);
+            taken[e.getElement()] = true;
+        }
+        for (final Thread t: feeders) t.join();
+        assertNull(q.poll());
+        assertEquals(0, q.sizeQueue());
+    }
+
+    /**
+     * Test that the size, the semaphore and the elements of a bounded queue stay consistent when the queue is cleared
+     * while elements are put, so that poll() does not return null while elements are left and every element which is
+     * put afterwards can be taken
+     */
+    @Test
+    public void testClearWhilePut() throws InterruptedException {
+        final int threads = 4, count = 100000, maxsize = 10;
+        final ConcurrentWeakPriorityBlockingQueue<Integer> q = new ConcurrentWeakPriorityBlockingQueue<Integer>(maxsize, false);
+        final AtomicInteger running = new AtomicInteger(threads);
+        final Thread[] feeders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * count;
+            feeders[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random r = new Random(offset);
+                    for (int i = offset; i < offset + count; i++) q.put(new ReverseElement<Integer>(i, r.nextInt(1000000)));
+                    running.decrementAndGet();
+                }
+            };
+            feeders[t].start();
+        }
+        while (running.get() > 0) q.clear();
+        for (final Thread t: feeders) t.join();
+        while (q.poll() != null) {}
+        assertNull(q.peek());
+        assertEquals(0, q.sizeQueue());
+
+        for (int i = 0; i < maxsize; i++) q.put(new ReverseElement<Integer>(-1 - i, i));
+        assertEquals(maxsize, q.sizeQueue());
+        for (int i = 0; i < maxsize; i++) {
+            final Element<Integer> e = q.poll(1000);
+            assertNotNull(e);
+            assertEquals(maxsize - 1 - i, e.getWeight());
+        }
+        assertNull(q.poll());
+        assertEquals(0, q.sizeQueue());
+    }
+}
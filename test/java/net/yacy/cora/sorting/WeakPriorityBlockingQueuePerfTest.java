@@ -0,0 +1,125 @@
+// WeakPriorityBlockingQueuePerfTest.java
+// (C) 2026 by the YaCy contributors
+// first published 18.10.2026 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.cora.sorting;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.Element;
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.ReverseElement;
+
+/**
+ * Testing the performance of the {@link WeakPriorityBlockingQueue} and the
+ * {@link ConcurrentWeakPriorityBlockingQueue} when many feeders put elements
+ * on a bounded queue while a drainer takes the best elements, like the RWI
+ * and Solr feeders and the result drainers of a search event.
+ */
+public class WeakPriorityBlockingQueuePerfTest {
+
+    /** the queue methods used by the feeders and the drainer */
+    private interface Queue {
+        void put(Element<Integer> element);
+        Element<Integer> poll(long timeout) throws InterruptedException;
+    }
+
+    private static Queue synchronizedQueue(final int maxsize) {
+        final WeakPriorityBlockingQueue<Integer> q = new WeakPriorityBlockingQueue<Integer>(maxsize, true);
+        return new Queue() {
+            @Override
+            public void put(final Element<Integer> element) {q.put(element);}
+            @Override
+            public Element<Integer> poll(final long timeout) throws InterruptedException {return q.poll(timeout);}
+        };
+    }
+
+    private static Queue concurrentQueue(final int maxsize) {
+        final ConcurrentWeakPriorityBlockingQueue<Integer> q = new ConcurrentWeakPriorityBlockingQueue<Integer>(maxsize, true);
+        return new Queue() {
+            @Override
+            public void put(final Element<Integer> element) {q.put(element);}
+            @Override
+            public Element<Integer> poll(final long timeout) throws InterruptedException {return q.poll(timeout);}
+        };
+    }
+
+    /**
+     * run the feeders and one drainer on the given queue
+     * @return the time in nanoseconds until all feeders are terminated
+     */
+    private static long run(final Queue queue, final int feeders, final int count) throws InterruptedException {
+        final AtomicBoolean feeding = new AtomicBoolean(true);
+        final AtomicLong drained = new AtomicLong(0);
+        final Thread drainer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (feeding.get()) {
+                        if (queue.poll(10) != null) drained.incrementAndGet();
+                    }
+                } catch (final InterruptedException e) {}
+            }
+        };
+        final Thread[] threads = new Thread[feeders];
+        for (int t = 0; t < feeders; t++) {
+            final int offset = t * count;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random r = new Random(offset);
+                    for (int i = offset; i < offset + count; i++) queue.put(new ReverseElement<Integer>(i, r.nextInt()));
+                }
+            };
+        }
+        drainer.start();
+        final long start = System.nanoTime();
+        for (final Thread t: threads) t.start();
+        for (final Thread t: threads) t.join();
+        final long time = System.nanoTime() - start;
+        feeding.set(false);
+        drainer.join();
+        return time;
+    }
+
+    /**
+     * Run and measure the put() of many feeders on both queues
+     *
+     * @param args
+     *            parameters: [feeders] [elements per feeder] [maxsize] [rounds]
+     * @throws InterruptedException
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final int feeders = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        final int count = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        final int maxsize = args.length > 2 ? Integer.parseInt(args[2]) : 3000;
+        final int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        System.out.println("Usage : java WeakPriorityBlockingQueuePerfTest [feeders] [elements per feeder] [maxsize] [rounds]");
+        System.out.println(feeders + " feeders, " + count + " elements per feeder, maxsize " + maxsize);
+
+        for (int round = 0; round < rounds; round++) {
+            final long synchronizedTime = run(synchronizedQueue(maxsize), feeders, count);
+            final long concurrentTime = run(concurrentQueue(maxsize), feeders, count);
+            System.out.println("round " + round
+                    + ": WeakPriorityBlockingQueue " + TimeUnit.NANOSECONDS.toMillis(synchronizedTime) + " ms"
+                    + ", ConcurrentWeakPriorityBlockingQueue " + TimeUnit.NANOSECONDS.toMillis(concurrentTime) + " ms"
+                    + ", " + (feeders * (long) count * 1000000000L / Math.max(1, concurrentTime)) + " puts/s");
+        }
+    }
+}
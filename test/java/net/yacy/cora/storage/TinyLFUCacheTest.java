@@ -0,0 +1,135 @@
+package net.yacy.cora.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import org.junit.Test;
+
+
+public class TinyLFUCacheTest {
+
+    /**
+     * Test the ARC methods
+     */
+    @Test
+    public void testARC() {
+        final ARC<String, String> cache = new TinyLFUCache<String, String>(100);
+        cache.insert("a", "1");
+        assertNull(cache.putIfAbsent("b", "2"));
+        assertEquals("2", cache.putIfAbsent("b", "3"));
+        cache.insertIfAbsent("b", "4");
+        assertEquals("2", cache.get("b"));
+        assertEquals("1", cache.put("a", "2"));
+        assertEquals(2, cache.getKeys("2").size());
+        assertTrue(cache.containsKey("a"));
+        assertEquals(2, cache.entrySet().size());
+        assertEquals("2", cache.remove("a"));
+        assertFalse(cache.containsKey("a"));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("b"));
+    }
+
+    /**
+     * Test that byte[] keys are compared by their content
+     */
+    @Test
+    public void testByteArrayKeys() {
+        final TinyLFUCache<byte[], Integer> cache = new TinyLFUCache<byte[], Integer>(10);
+        cache.insert(ASCII.getBytes("key"), 1);
+        assertEquals(Integer.valueOf(1), cache.get(ASCII.getBytes("key")));
+        for (final Map.Entry<byte[], Integer> entry: cache) assertArrayEquals(ASCII.getBytes("key"), entry.getKey());
+    }
+
+    /**
+     * Test that the weight limit is kept for count and memory weighted caches
+     */
+    @Test
+    public void testWeightLimit() {
+        final TinyLFUCache<Integer, Integer> count = new TinyLFUCache<Integer, Integer>(1000);
+        for (int i = 0; i < 10000; i++) count.insert(i, i);
+        assertTrue(count.size() <= 1000);
+        assertEquals(count.size(), count.weightedSize());
+        assertEquals(10000 - count.size(), count.evictions());
+
+        final TinyLFUCache<String, byte[]> memory = new TinyLFUCache<String, byte[]>(100000, TinyLFUCache.MEMORY_WEIGHER, 0);
+        for (int i = 0; i < 1000; i++) memory.insert("k" + i, new byte[i * 10]);
+        assertTrue(memory.weightedSize() <= 100000);
+        memory.insert("huge", new byte[200000]);
+        assertNull(memory.get("huge"));
+        assertTrue(memory.weightedSize() <= 100000);
+    }
+
+    /**
+     * Test that frequently requested entries survive a scan of entries which are requested only once
+     */
+    @Test
+    public void testScanResistance() {
+        final TinyLFUCache<Integer, Integer> cache = new TinyLFUCache<Integer, Integer>(1000);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 500; i++) {
+                if (cache.get(i) == null) cache.insert(i, i);
+            }
+        }
+        for (int i = 1000; i < 100000; i++) {
+            if (cache.get(i) == null) cache.insert(i, i);
+        }
+        int hot = 0;
+        for (int i = 0; i < 500; i++) if (cache.containsKey(i)) hot++;
+        assertTrue("hot entries left: " + hot, hot > 450);
+        assertTrue(cache.hits() > 0);
+        assertTrue(cache.misses() >= 99000);
+    }
+
+    /**
+     * Test that entries expire after the given time
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        final TinyLFUCache<String, String> cache = new TinyLFUCache<String, String>(100, TinyLFUCache.ENTRY_WEIGHER, 50);
+        cache.insert("a", "1");
+        assertEquals("1", cache.get("a"));
+        Thread.sleep(100);
+        assertFalse(cache.containsKey("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertNull(cache.putIfAbsent("a", "2"));
+        assertEquals("2", cache.get("a"));
+    }
+
+    /**
+     * Test concurrent readers and writers
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final TinyLFUCache<Integer, Integer> cache = new TinyLFUCache<Integer, Integer>(500);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50000; i++) {
+                        final int k = (i * (seed + 7)) % 2000;
+                        final Integer v = cache.get(k);
+                        if (v == null) cache.insert(k, k); else assertEquals(k, v.intValue());
+                        if (i % 100 == 0) cache.remove(k + 1);
+                    }
+                }
+            });
+        }
+        for (final Thread t: threads) t.start();
+        for (final Thread t: threads) t.join();
+        assertTrue(cache.size() <= 500);
+        assertEquals(cache.size(), cache.weightedSize());
+    }
+}
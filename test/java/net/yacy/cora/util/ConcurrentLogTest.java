@@ -0,0 +1,179 @@
+package net.yacy.cora.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import net.yacy.kelondro.logging.JsonLinesHandler;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.Test;
+
+
+public class ConcurrentLogTest {
+
+    private static class CollectingHandler extends Handler {
+        private final List<LogRecord> records = new CopyOnWriteArrayList<LogRecord>();
+        @Override
+        public void publish(final LogRecord record) {
+            this.records.add(record);
+        }
+        @Override
+        public void flush() {}
+        @Override
+        public void close() {}
+    }
+
+    private static CollectingHandler attach(final String loggername) {
+        final Logger logger = Logger.getLogger(loggername);
+        logger.setUseParentHandlers(false);
+        final CollectingHandler handler = new CollectingHandler();
+        logger.addHandler(handler);
+        return handler;
+    }
+
+    private static void await(final CollectingHandler handler, final int expected) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (handler.records.size() < expected && System.currentTimeMillis() < timeout) Thread.sleep(10);
+    }
+
+    /**
+     * Test that all messages of concurrent producers are taken from the ring buffer exactly once and in order for each producer
+     */
+    @Test
+    public void testRingBuffer() throws Exception {
+        final ConcurrentLog.RingBuffer buffer = new ConcurrentLog.RingBuffer(64);
+        for (int i = 0; i < 64; i++) assertTrue(buffer.offer(new ConcurrentLog.Message("test", Level.INFO, Integer.toString(i))));
+        assertFalse(buffer.offer(new ConcurrentLog.Message("test", Level.INFO, "full")));
+        assertEquals(64, buffer.size());
+        for (int i = 0; i < 64; i++) assertNotNull(buffer.poll());
+        assertNull(buffer.poll());
+
+        final int producers = 4, messages = 20000;
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < producers; t++) {
+            final String name = Integer.toString(t);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        final ConcurrentLog.Message m = new ConcurrentLog.Message("test", Level.INFO, name + " " + i);
+                        while (!buffer.offer(m)) Thread.yield();
+                    }
+                }
+            });
+        }
+        for (final Thread t: threads) t.start();
+        final int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * messages) {
+            final ConcurrentLog.Message m = buffer.poll();
+            if (m == null) continue;
+            final String[] text = m.text().split(" ");
+            final int producer = Integer.parseInt(text[0]);
+            assertEquals(next[producer]++, Integer.parseInt(text[1]));
+            received++;
+        }
+        for (final Thread t: threads) t.join();
+        assertNull(buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    /**
+     * Test that a supplier is only called when the level of the logger is enabled
+     */
+    @Test
+    public void testLazyMessage() throws Exception {
+        final CollectingHandler handler = attach("ConcurrentLogTest.lazy");
+        final ConcurrentLog log = new ConcurrentLog("ConcurrentLogTest.lazy");
+        log.setLevel(Level.FINE);
+        final AtomicBoolean called = new AtomicBoolean(false);
+        log.finer(() -> {called.set(true); return "finer";});
+        log.fine(() -> "fine");
+        await(handler, 1);
+        assertFalse(called.get());
+        assertEquals(1, handler.records.size());
+        assertEquals("fine", handler.records.get(0).getMessage());
+    }
+
+    /**
+     * Test that messages above the rate limit of a logger are suppressed and counted, and that severe messages are not limited
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        final CollectingHandler handler = attach("ConcurrentLogTest.rate");
+        final ConcurrentLog log = new ConcurrentLog("ConcurrentLogTest.rate");
+        log.setLevel(Level.ALL);
+        ConcurrentLog.setRateLimit("ConcurrentLogTest.rate", 10);
+        try {
+            // wait for the beginning of a second so that all messages are counted in the same window
+            final long start = System.currentTimeMillis() / 1000;
+            while (System.currentTimeMillis() / 1000 == start) Thread.sleep(1);
+            for (int i = 0; i < 100; i++) log.info("info " + i);
+            for (int i = 0; i < 5; i++) log.severe("severe " + i);
+            await(handler, 15);
+            // the next message in a new second reports the suppressed messages
+            Thread.sleep(1100);
+            log.info("next");
+            await(handler, 17);
+        } finally {
+            ConcurrentLog.setRateLimit("ConcurrentLogTest.rate", 0);
+        }
+        final AtomicInteger info = new AtomicInteger(0), severe = new AtomicInteger(0);
+        boolean reported = false;
+        for (final LogRecord r: handler.records) {
+            if (r.getLevel() == Level.SEVERE) severe.incrementAndGet();
+            else if (r.getMessage().startsWith("info")) info.incrementAndGet();
+            else if (r.getMessage().startsWith("suppressed 90 messages")) reported = true;
+        }
+        assertEquals(10, info.get());
+        assertEquals(5, severe.get());
+        assertTrue(reported);
+        assertEquals("next", handler.records.get(handler.records.size() - 1).getMessage());
+    }
+
+    /**
+     * Test that the json lines handler writes one object for each record and rotates the files
+     */
+    @Test
+    public void testJsonLinesHandler() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "ConcurrentLogTest");
+        FileUtils.deletedelete(dir);
+        try {
+            final JsonLinesHandler handler = new JsonLinesHandler(new File(dir, "test%g.jsonl").getAbsolutePath(), 2000, 3, 500);
+            final LogRecord record = new LogRecord(Level.WARNING, "a \"quoted\"\nmessage");
+            record.setLoggerName("TEST");
+            handler.publish(record);
+            handler.flush();
+            final List<String> lines = Files.readAllLines(new File(dir, "test0.jsonl").toPath(), StandardCharsets.UTF_8);
+            assertEquals(1, lines.size());
+            final String line = lines.get(0);
+            assertTrue(line, line.startsWith("{\"time\":\""));
+            assertTrue(line, line.contains("\"level\":\"WARNING\",\"logger\":\"TEST\""));
+            assertTrue(line, line.endsWith("\"message\":\"a \\\"quoted\\\"\\nmessage\"}"));
+
+            for (int i = 0; i < 100; i++) handler.publish(record);
+            handler.close();
+            assertTrue(new File(dir, "test1.jsonl").exists());
+            assertTrue(new File(dir, "test2.jsonl").exists());
+            assertFalse(new File(dir, "test3.jsonl").exists());
+            assertTrue(new File(dir, "test0.jsonl").length() < 2000 + 500 + 200);
+        } finally {
+            FileUtils.deletedelete(dir);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ArrayStackTest {
+
+    private static final int GENERATIONS = 4, KEYS = 50;
+
+    private File dir;
+    private ArrayStack stack;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "ArrayStackTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.stack = new ArrayStack(this.dir, "test", Base64Order.enhancedCoder, 12, 0, true, false);
+        final long now = System.currentTimeMillis();
+        for (int g = 0; g < GENERATIONS; g++) {
+            final File f = this.stack.newBLOB(new Date(now + g * 1000L));
+            final Heap heap = new Heap(f, 12, Base64Order.enhancedCoder, 1024);
+            for (int i = 0; i < KEYS; i++) heap.insert(key(g, i), value(g, i));
+            heap.close(true);
+            this.stack.mountBLOB(f, false);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (this.stack != null) this.stack.close(false);
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] key(final int g, final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(g * 1000L + i, 12).toString());
+    }
+
+    private static byte[] value(final int g, final int i) {
+        return ASCII.getBytes("value-" + g + "-" + i);
+    }
+
+    /**
+     * Test that lookups which run while BLOB files are unmounted and mounted again either find the BLOB or nothing,
+     * but never read a BLOB file which is closed by the unmount
+     */
+    @Test
+    public void testGetWhileUnmount() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            for (int g = 0; g < GENERATIONS; g++) for (int i = 0; i < KEYS; i++) {
+                                final byte[] b = ArrayStackTest.this.stack.get(key(g, i));
+                                if (b != null) assertArrayEquals(value(g, i), b);
+                                ArrayStackTest.this.stack.containsKey(key(g, i));
+                                ArrayStackTest.this.stack.getAllConcurrently(key(g, i));
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (int round = 0; round < 200; round++) {
+            final File f = this.stack.unmountOldestBLOB(false);
+            this.stack.mountBLOB(f, false);
+        }
+        running.set(false);
+        for (final Thread t: readers) t.join();
+        if (error.get() != null) throw new AssertionError(error.get());
+
+        for (int g = 0; g < GENERATIONS; g++) for (int i = 0; i < KEYS; i++) assertArrayEquals(value(g, i), this.stack.get(key(g, i)));
+        assertNull(this.stack.get(key(GENERATIONS, 0)));
+    }
+}
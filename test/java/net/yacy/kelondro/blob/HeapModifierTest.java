@@ -0,0 +1,78 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class HeapModifierTest {
+
+    private File dir;
+    private File heapFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "HeapModifierTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.heapFile = new File(this.dir, "test.heap");
+        final Heap heap = new Heap(this.heapFile, 12, Base64Order.enhancedCoder, 1024);
+        for (int i = 0; i < 10; i++) heap.insert(key(i), ASCII.getBytes("value-" + i));
+        heap.close(true);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(i * 104729L, 12).toString());
+    }
+
+    private static BLOB.Reducer rewriteTo(final String value) {
+        return new BLOB.Reducer() {
+            @Override
+            public byte[] rewrite(final byte[] b) {
+                return ASCII.getBytes(value);
+            }
+        };
+    }
+
+    private void assertValues(final HeapModifier heap, final String[] values) throws Exception {
+        assertEquals(values.length, heap.size());
+        for (int i = 0; i < values.length; i++) assertArrayEquals(ASCII.getBytes(values[i]), heap.get(key(i)));
+    }
+
+    /**
+     * Test that a reducer which returns a BLOB which is too large to leave a gap, or which is even larger
+     * than the old BLOB, moves the record to the end of the heap and keeps all other records
+     */
+    @Test
+    public void testReduceToLargerBLOB() throws Exception {
+        final String[] values = new String[10];
+        for (int i = 0; i < values.length; i++) values[i] = "value-" + i;
+        values[3] = "value";                  // 2 bytes shorter: no room for a gap
+        values[5] = "value-5-and-much-more";  // larger than the old BLOB
+        values[7] = "val";                    // 4 bytes shorter: reduced in place
+        HeapModifier heap = new HeapModifier(this.heapFile, 12, Base64Order.enhancedCoder);
+        heap.reduce(key(3), rewriteTo(values[3]));
+        heap.reduce(key(5), rewriteTo(values[5]));
+        heap.reduce(key(7), rewriteTo(values[7]));
+        assertValues(heap, values);
+        heap.close(true);
+
+        // the relocated records must be found again after the heap is opened again
+        heap = new HeapModifier(this.heapFile, 12, Base64Order.enhancedCoder);
+        assertValues(heap, values);
+        heap.close(false);
+    }
+}
@@ -0,0 +1,86 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.index.OffHeapHandleMap;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class HeapReaderTest {
+
+    private File dir;
+    private File heapFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "HeapReaderTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.heapFile = new File(this.dir, "test.heap");
+        final Heap heap = new Heap(this.heapFile, 12, Base64Order.enhancedCoder, 1024);
+        for (int i = 0; i < 100; i++) heap.insert(key(i), ASCII.getBytes("value" + i));
+        heap.close(true);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(i * 104729L, 12).toString());
+    }
+
+    private File dumpFile(final String suffix) {
+        for (final File f: this.dir.listFiles()) if (f.getName().endsWith(suffix)) return f;
+        return null;
+    }
+
+    private void assertOffHeap() throws Exception {
+        final HeapModifier heap = new HeapModifier(this.heapFile, 12, Base64Order.enhancedCoder, true);
+        assertTrue(heap.index instanceof OffHeapHandleMap);
+        assertEquals(100, heap.size());
+        for (int i = 0; i < 100; i++) assertArrayEquals(ASCII.getBytes("value" + i), heap.get(key(i)));
+        heap.close(false);
+    }
+
+    /**
+     * Test that the index dump of a heap is mapped when the heap is opened with an off-heap index
+     */
+    @Test
+    public void testOffHeapIndexFromDump() throws Exception {
+        assertTrue(dumpFile(".idx") != null);
+        assertOffHeap();
+    }
+
+    /**
+     * Test that a compressed index dump is decompressed and mapped when the heap is opened with an off-heap index
+     */
+    @Test
+    public void testOffHeapIndexFromCompressedDump() throws Exception {
+        final File idx = dumpFile(".idx");
+        final File gz = new File(idx.getAbsolutePath() + ".gz");
+        try (final InputStream is = new FileInputStream(idx); final OutputStream os = new GZIPOutputStream(new FileOutputStream(gz))) {
+            FileUtils.copy(is, os);
+        }
+        FileUtils.deletedelete(idx);
+        assertOffHeap();
+        assertFalse(gz.exists());
+        assertTrue(idx.exists());
+    }
+}
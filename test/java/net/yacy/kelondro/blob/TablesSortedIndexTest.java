@@ -0,0 +1,188 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.kelondro.blob.Tables.SortDirection;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class TablesSortedIndexTest {
+
+    private File dir;
+    private Tables tables;
+
+    @Before
+    public void setUp() {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "TablesSortedIndexTest");
+        FileUtils.deletedelete(this.dir);
+        this.tables = new Tables(this.dir, 12);
+    }
+
+    @After
+    public void tearDown() {
+        this.tables.close();
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private void fill(final int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            final Tables.Data data = new Tables.Data();
+            data.put("name", "name" + (i % 10) + "_" + i);
+            data.put("count", count - i);
+            data.put("date", new Date(1000000L * i));
+            this.tables.insert("t", data);
+        }
+    }
+
+    private static List<String> column(final Iterator<Tables.Row> rows, final String column) {
+        final List<String> values = new ArrayList<String>();
+        while (rows.hasNext()) values.add(rows.next().get(column, ""));
+        return values;
+    }
+
+    /**
+     * Test that queries return the same rows with and without a sorted index
+     */
+    @Test
+    public void testQueries() throws Exception {
+        fill(200);
+        final List<String> byScan = column(this.tables.orderBy("t", "count", TablesSortedIndex.TYPE.NUMBER, SortDirection.ASC, Integer.MAX_VALUE), "count");
+        final List<String> prefixScan = column(this.tables.prefix("t", "name", UTF8.getBytes("name3"), SortDirection.DESC, 5), "name");
+        this.tables.createSortedIndex("t", "count", TablesSortedIndex.TYPE.NUMBER);
+        this.tables.createSortedIndex("t", "name", TablesSortedIndex.TYPE.STRING);
+        final List<String> byIndex = column(this.tables.orderBy("t", "count", TablesSortedIndex.TYPE.NUMBER, SortDirection.ASC, Integer.MAX_VALUE), "count");
+        assertEquals(byScan, byIndex);
+        assertEquals(200, byIndex.size());
+        assertEquals("1", byIndex.get(0));
+        assertEquals("200", byIndex.get(199)); // numeric, not lexicographic order
+        assertEquals(prefixScan, column(this.tables.prefix("t", "name", UTF8.getBytes("name3"), SortDirection.DESC, 5), "name"));
+        assertEquals(5, prefixScan.size());
+        assertEquals("name3_93", prefixScan.get(0));
+
+        // range query and limit
+        final List<String> range = column(this.tables.range("t", "count", TablesSortedIndex.TYPE.NUMBER, UTF8.getBytes("10"), UTF8.getBytes("19"), SortDirection.DESC, 3), "count");
+        assertEquals(3, range.size());
+        assertEquals("19", range.get(0));
+
+        // the equality iterator uses the index
+        final Iterator<Tables.Row> i = this.tables.iterator("t", "name", UTF8.getBytes("name5_15"));
+        assertTrue(i.hasNext());
+        assertEquals(185, i.next().get("count", 0));
+        assertFalse(i.hasNext());
+    }
+
+    /**
+     * Test that the index follows changes of the table and is persistent
+     */
+    @Test
+    public void testMaintenanceAndPersistence() throws Exception {
+        fill(50);
+        final TablesSortedIndex index = this.tables.createSortedIndex("t", "date", TablesSortedIndex.TYPE.DATE);
+        assertEquals(50, index.size());
+
+        // rows in the date range [10, 20] * 1000000ms
+        final Iterator<byte[]> r = index.range(new Date(10000000L), new Date(20000000L), true);
+        int c = 0;
+        while (r.hasNext()) {
+            r.next();
+            c++;
+        }
+        assertEquals(11, c);
+
+        // change the date of the first row, delete the second row and add a row without a date
+        final Iterator<Tables.Row> all = this.tables.orderBy("t", "date", TablesSortedIndex.TYPE.DATE, SortDirection.ASC, 2);
+        final Tables.Row first = all.next(), second = all.next();
+        first.put("date", new Date(1000000000L));
+        this.tables.update("t", first);
+        this.tables.delete("t", second.getPK());
+        final Tables.Data nodate = new Tables.Data();
+        nodate.put("name", "nodate");
+        final byte[] nodatePK = this.tables.insert("t", nodate);
+        assertEquals(50, index.size());
+        Iterator<Tables.Row> ordered = this.tables.orderBy("t", "date", TablesSortedIndex.TYPE.DATE, SortDirection.ASC, Integer.MAX_VALUE);
+        assertEquals("nodate", ordered.next().get("name", ""));
+        ordered = this.tables.orderBy("t", "date", TablesSortedIndex.TYPE.DATE, SortDirection.DESC, 1);
+        assertEquals(UTF8.String(first.getPK()), UTF8.String(ordered.next().getPK()));
+
+        // close and reopen: the index is loaded from the dump
+        this.tables.close();
+        this.tables = new Tables(this.dir, 12);
+        final TablesSortedIndex loaded = this.tables.getSortedIndex("t", "date");
+        assertNotNull(loaded);
+        assertEquals(50, loaded.size());
+        assertEquals(UTF8.String(nodatePK), UTF8.String(loaded.all(true).next()));
+
+        // a table which is changed without index maintenance is rebuilt when it is opened
+        this.tables.close();
+        final BEncodedHeap heap = new BEncodedHeap(new File(this.dir, "t.bheap"), 12);
+        heap.delete(nodatePK);
+        heap.close();
+        this.tables = new Tables(this.dir, 12);
+        assertEquals(49, this.tables.getSortedIndex("t", "date").size());
+    }
+
+    /**
+     * Test that a row which is not indexed yet is indexed with its complete content when only other columns are updated
+     */
+    @Test
+    public void testUpdateOfRowWithoutIndexEntry() throws Exception {
+        final TablesSortedIndex index = this.tables.createSortedIndex("t", "name", TablesSortedIndex.TYPE.STRING);
+        final byte[] pk = UTF8.getBytes("000000000001");
+        final Tables.Data data = new Tables.Data();
+        data.put("name", "direct");
+        this.tables.getHeap("t").insert(pk, data); // written to the heap without the index
+        assertEquals(0, index.size());
+
+        final Tables.Data change = new Tables.Data();
+        change.put("count", 1);
+        this.tables.update("t", pk, change);
+        assertEquals(1, index.size());
+        final Iterator<byte[]> i = index.equal(UTF8.getBytes("direct"));
+        assertTrue(i.hasNext());
+        assertEquals(UTF8.String(pk), UTF8.String(i.next()));
+    }
+
+    /**
+     * Test that an index which is created while other threads change the table contains exactly the rows of the table
+     */
+    @Test
+    public void testCreateWhileChanging() throws Exception {
+        fill(100);
+        final Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int thread = t;
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            final Tables.Data data = new Tables.Data();
+                            data.put("name", "w" + thread + "_" + i);
+                            final byte[] pk = TablesSortedIndexTest.this.tables.insert("t", data);
+                            if (i % 3 == 0) TablesSortedIndexTest.this.tables.delete("t", pk);
+                        }
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        final TablesSortedIndex index = this.tables.createSortedIndex("t", "name", TablesSortedIndex.TYPE.STRING);
+        for (final Thread w: writers) w.join();
+        assertEquals(this.tables.size("t"), index.size());
+    }
+}
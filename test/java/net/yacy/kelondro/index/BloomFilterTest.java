@@ -0,0 +1,49 @@
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.ASCII;
+import org.junit.Test;
+
+
+public class BloomFilterTest {
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("%012d", i));
+    }
+
+    /**
+     * Test that added keys are always found and that the false-positive rate is small
+     */
+    @Test
+    public void testMightContain() {
+        final BloomFilter filter = new BloomFilter(10000, BloomFilter.DEFAULT_BITS_PER_KEY);
+        for (int i = 0; i < 10000; i++) filter.add(key(i));
+        assertEquals(10000, filter.size());
+        for (int i = 0; i < 10000; i++) assertTrue(filter.mightContain(key(i)));
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) if (filter.mightContain(key(i))) falsePositives++;
+        assertTrue("false positives: " + falsePositives, falsePositives < 200);
+    }
+
+    /**
+     * Test of dump and load
+     */
+    @Test
+    public void testDumpLoad() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "BloomFilterTest.blm");
+        final BloomFilter filter = new BloomFilter(100, BloomFilter.DEFAULT_BITS_PER_KEY);
+        for (int i = 0; i < 100; i++) filter.add(key(i));
+        try {
+            filter.dump(file);
+            final BloomFilter loaded = BloomFilter.load(file);
+            assertEquals(filter.size(), loaded.size());
+            for (int i = 0; i < 1000; i++) assertEquals(filter.mightContain(key(i)), loaded.mightContain(key(i)));
+        } finally {
+            file.delete();
+        }
+    }
+}
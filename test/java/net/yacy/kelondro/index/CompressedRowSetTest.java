@@ -0,0 +1,81 @@
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import org.junit.Test;
+
+
+public class CompressedRowSetTest {
+
+    private static final Row row = new Row("byte[] key-12, long date-4 {b256}, short count-2 {b256}, byte[] lang-2, short unused-2 {b256}", Base64Order.enhancedCoder);
+
+    private static RowSet testSet(final int size) throws Exception {
+        final Random r = new Random(42);
+        final RowSet set = new RowSet(row, size);
+        for (int i = 0; i < size; i++) {
+            final Row.Entry e = row.newEntry();
+            e.setCol(0, ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(Integer.toString(i))).substring(0, 12)));
+            e.setCol(1, 15000 + r.nextInt(30));
+            e.setCol(2, r.nextInt(100));
+            e.setCol(3, ASCII.getBytes("en"));
+            set.put(e);
+        }
+        return set;
+    }
+
+    /**
+     * Test that a compressed export is smaller and is imported to the same rows
+     */
+    @Test
+    public void testExportImport() throws Exception {
+        final RowSet set = testSet(1000);
+        final byte[] plain = set.exportCollection();
+        final byte[] compressed = set.exportCompressedCollection();
+        assertFalse(CompressedRowSet.isCompressed(plain));
+        assertTrue(CompressedRowSet.isCompressed(compressed));
+        assertTrue("compressed = " + compressed.length + ", plain = " + plain.length, compressed.length < plain.length * 3 / 4);
+        assertEquals(set.size(), RowSet.importRowCount(compressed));
+        assertEquals(set.size(), RowSet.importRowCount(plain));
+
+        final RowSet imported = RowSet.importRowSet(compressed, row);
+        assertEquals(set.size(), imported.size());
+        for (int i = 0; i < set.size(); i++) {
+            assertArrayEquals(set.get(i, false).bytes(), imported.get(i, false).bytes());
+        }
+    }
+
+    /**
+     * Test of the lazy iterator and the lookup of single keys for both export formats
+     */
+    @Test
+    public void testIteratorAndGet() throws Exception {
+        final RowSet set = testSet(300);
+        for (final byte[] b: new byte[][]{set.exportCollection(), set.exportCompressedCollection()}) {
+            final Iterator<Row.Entry> i = RowSet.importRows(b, row);
+            int c = 0;
+            while (i.hasNext()) {
+                assertArrayEquals(set.get(c++, false).bytes(), i.next().bytes());
+            }
+            assertEquals(set.size(), c);
+        }
+        final byte[] compressed = set.exportCompressedCollection();
+        for (int k = 0; k < set.size(); k += 7) {
+            final Row.Entry e = set.get(k, false);
+            final Row.Entry f = CompressedRowSet.get(compressed, row, e.getPrimaryKeyBytes());
+            assertNotNull(f);
+            assertArrayEquals(e.bytes(), f.bytes());
+        }
+        assertNull(CompressedRowSet.get(compressed, row, ASCII.getBytes("____________")));
+    }
+}
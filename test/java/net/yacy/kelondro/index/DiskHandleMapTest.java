@@ -0,0 +1,147 @@
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class DiskHandleMapTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "DiskHandleMapTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(i * 104729L, 12).toString());
+    }
+
+    private DiskHandleMap open() throws Exception {
+        return new DiskHandleMap(this.dir, "test", 12, Base64Order.enhancedCoder, 2, 100);
+    }
+
+    private static void assertSameContent(final TreeMap<byte[], Long> expected, final DiskHandleMap map) {
+        assertEquals(expected.size(), map.size());
+        final Iterator<Map.Entry<byte[], Long>> i = map.iterator();
+        for (final Map.Entry<byte[], Long> e: expected.entrySet()) {
+            assertTrue(i.hasNext());
+            final Map.Entry<byte[], Long> m = i.next();
+            assertArrayEquals(e.getKey(), m.getKey());
+            assertEquals(e.getValue(), m.getValue());
+        }
+        assertFalse(i.hasNext());
+        final Iterator<byte[]> k = map.keys(false, null);
+        for (final byte[] key: expected.descendingKeySet()) assertArrayEquals(key, k.next());
+        assertFalse(k.hasNext());
+    }
+
+    /**
+     * Test that the map contains the same entries as a sorted map after writes, removals, flushes and merges
+     */
+    @Test
+    public void testRandomOperations() throws Exception {
+        final DiskHandleMap map = open();
+        final TreeMap<byte[], Long> expected = new TreeMap<byte[], Long>(Base64Order.enhancedCoder);
+        final Random r = new Random(1);
+        for (int n = 0; n < 20000; n++) {
+            final int i = r.nextInt(3000);
+            final long v = r.nextInt(1000);
+            if (r.nextInt(3) == 0) {
+                final Long old = expected.remove(key(i));
+                assertEquals(old == null ? -1 : old.longValue(), map.remove(key(i)));
+            } else {
+                final Long old = expected.put(key(i), v);
+                assertEquals(old == null ? -1 : old.longValue(), map.put(key(i), v));
+            }
+            if (n % 1000 == 0) {
+                final int j = r.nextInt(3000);
+                assertEquals(expected.containsKey(key(j)), map.has(key(j)));
+            }
+        }
+        assertSameContent(expected, map);
+        assertArrayEquals(expected.firstKey(), map.smallestKey());
+        assertArrayEquals(expected.lastKey(), map.largestKey());
+        assertEquals(5, map.top(5).size());
+        assertArrayEquals(expected.lastKey(), map.top(5).get(4));
+        map.close();
+    }
+
+    /**
+     * Test that the entries and the size are restored when the map is opened again
+     */
+    @Test
+    public void testReopen() throws Exception {
+        DiskHandleMap map = open();
+        for (int i = 0; i < 1000; i++) map.put(key(i), i % 100);
+        for (int i = 0; i < 1000; i += 3) map.remove(key(i));
+        final int size = map.size();
+        map.close();
+
+        map = open();
+        assertEquals(size, map.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i % 3 == 0 ? -1 : i % 100, map.get(key(i)));
+        map.close();
+
+        // without a count file the entries are counted
+        assertTrue(new File(this.dir, "test.count").delete());
+        map = open();
+        assertEquals(size, map.size());
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(key(1)));
+        map.close();
+        map = open();
+        assertTrue(map.isEmpty());
+        map.close();
+    }
+
+    /**
+     * Test that generations which were merged before a crash are not read again
+     */
+    @Test
+    public void testMergedGenerations() throws Exception {
+        final DiskHandleMap map = open();
+        for (int i = 0; i < 100; i++) map.put(key(i), 1);
+        map.flush();
+        for (int i = 0; i < 100; i++) map.remove(key(i));
+        map.close();
+
+        // a merged generation without removed entries, written before the old generations were deleted
+        final File merged = new File(this.dir, "test.000000000000-000000000001.idx");
+        assertTrue(new File(this.dir, "test.000000000000-000000000000.idx").exists() || merged.exists());
+        if (!merged.exists()) {
+            assertTrue(new File(this.dir, "test.000000000001-000000000001.idx").exists());
+            new RowHandleMap(12, Base64Order.enhancedCoder, 2, 10, "empty").dump(merged);
+        }
+        final DiskHandleMap reopened = open();
+        assertEquals(0, reopened.size());
+        assertEquals(-1, reopened.get(key(1)));
+        assertFalse(new File(this.dir, "test.000000000000-000000000000.idx").exists());
+        assertNull(reopened.smallestKey());
+        reopened.close();
+    }
+}
@@ -0,0 +1,124 @@
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import org.junit.Test;
+
+
+public class OffHeapHandleMapTest {
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("%012d", i));
+    }
+
+    /**
+     * Test that a mapped dump has the same content as the dumped map
+     * and that removals and updates do not change the dump file
+     */
+    @Test
+    public void testDumpAndMap() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "OffHeapHandleMapTest.idx");
+        final RowHandleMap map = new RowHandleMap(12, Base64Order.enhancedCoder, 8, 1000, "OffHeapHandleMapTest");
+        for (int i = 0; i < 1000; i += 2) map.put(key(i), i * 100L);
+        try {
+            map.dump(file);
+            final long length = file.length();
+            final OffHeapHandleMap offheap = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 8, file);
+            assertEquals(map.size(), offheap.size());
+            for (int i = 0; i < 1000; i++) assertEquals(map.get(key(i)), offheap.get(key(i)));
+
+            // iteration in both directions and from a start key
+            Iterator<byte[]> k = offheap.keys(true, key(501));
+            assertEquals(ASCII.String(key(502)), ASCII.String(k.next()));
+            k = offheap.keys(false, key(501));
+            assertEquals(ASCII.String(key(500)), ASCII.String(k.next()));
+
+            assertEquals(200L, offheap.remove(key(2)));
+            assertEquals(-1L, offheap.remove(key(2)));
+            assertFalse(offheap.has(key(2)));
+            assertEquals(499, offheap.size());
+            assertEquals(400L, offheap.put(key(4), 17L));
+            assertEquals(17L, offheap.get(key(4)));
+            assertEquals(ASCII.String(key(0)), ASCII.String(offheap.smallestKey()));
+            assertEquals(ASCII.String(key(998)), ASCII.String(offheap.largestKey()));
+            assertEquals(length, file.length());
+
+            // a dump of the mapped index contains only the remaining entries
+            final File file2 = new File(System.getProperty("java.io.tmpdir"), "OffHeapHandleMapTest2.idx");
+            try {
+                assertEquals(499, offheap.dump(file2));
+                final RowHandleMap map2 = new RowHandleMap(12, Base64Order.enhancedCoder, 8, file2);
+                assertEquals(499, map2.size());
+                assertEquals(17L, map2.get(key(4)));
+                assertTrue(map2.get(key(2)) < 0);
+                map2.close();
+            } finally {
+                file2.delete();
+            }
+            offheap.close();
+        } finally {
+            map.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that a cleared map is empty for all lookups and that a closed map is unmapped, so the dump can be deleted
+     */
+    @Test
+    public void testClearAndClose() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "OffHeapHandleMapTest4.idx");
+        final RowHandleMap map = new RowHandleMap(12, Base64Order.enhancedCoder, 8, 100, "OffHeapHandleMapTest");
+        for (int i = 0; i < 100; i++) map.put(key(i), i);
+        try {
+            map.dump(file);
+            final OffHeapHandleMap offheap = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 8, file);
+            offheap.clear();
+            assertEquals(0, offheap.size());
+            assertEquals(-1L, offheap.get(key(5)));
+            assertTrue(offheap.find(key(5)) < 0);
+            assertNull(offheap.smallestKey());
+            assertNull(offheap.largestKey());
+            assertFalse(offheap.keys(true, key(5)).hasNext());
+            assertFalse(offheap.keys(false, null).hasNext());
+            assertTrue(offheap.top(10).isEmpty());
+
+            final OffHeapHandleMap reopened = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 8, file);
+            assertEquals(5L, reopened.get(key(5)));
+            reopened.close();
+            offheap.close();
+            assertEquals(-1L, reopened.get(key(5)));
+            assertFalse(reopened.keys(true, null).hasNext());
+            assertTrue(file.delete());
+        } finally {
+            map.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that new keys cannot be added
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPutNewKey() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "OffHeapHandleMapTest3.idx");
+        final RowHandleMap map = new RowHandleMap(12, Base64Order.enhancedCoder, 8, 10, "OffHeapHandleMapTest");
+        map.put(key(1), 1L);
+        try {
+            map.dump(file);
+            final OffHeapHandleMap offheap = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 8, file);
+            offheap.put(key(2), 2L);
+        } finally {
+            map.close();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.CloneableIterator;
+import org.junit.Test;
+
+
+public class RAMIndexClusterTest {
+
+    private static final Row ROW = new Row("byte[] key-12, long value-8 {b256}", Base64Order.enhancedCoder);
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(i * 7919L, 12).toString());
+    }
+
+    private static Row.Entry entry(final int i, final long value) {
+        final Row.Entry e = ROW.newEntry();
+        e.setCol(0, key(i));
+        e.setCol(1, value);
+        return e;
+    }
+
+    private static void assertSameContent(final TreeMap<byte[], Long> expected, final RAMIndexCluster index) {
+        assertEquals(expected.size(), index.size());
+        for (final boolean up: new boolean[]{true, false}) {
+            final Iterator<Map.Entry<byte[], Long>> e = (up ? expected : expected.descendingMap()).entrySet().iterator();
+            final CloneableIterator<Row.Entry> i = index.rows(up, null);
+            while (e.hasNext()) {
+                final Map.Entry<byte[], Long> x = e.next();
+                assertTrue(i.hasNext());
+                final Row.Entry r = i.next();
+                assertArrayEquals(x.getKey(), r.getPrimaryKeyBytes());
+                assertEquals(x.getValue().longValue(), r.getColLong(1));
+            }
+            assertFalse(i.hasNext());
+        }
+        final Iterator<byte[]> e = expected.keySet().iterator();
+        final CloneableIterator<byte[]> k = index.keys(true, null);
+        while (e.hasNext()) assertArrayEquals(e.next(), k.next());
+        assertFalse(k.hasNext());
+    }
+
+    /**
+     * Test that the index contains the same rows as a sorted map after random writes, removals and merges
+     */
+    @Test
+    public void testRandomOperations() throws Exception {
+        final RAMIndexCluster index = new RAMIndexCluster("testRandomOperations", ROW, 4);
+        final TreeMap<byte[], Long> expected = new TreeMap<byte[], Long>(ROW.objectOrder);
+        final Random r = new Random(1);
+        for (int n = 0; n < 50000; n++) {
+            final int i = r.nextInt(5000);
+            switch (r.nextInt(4)) {
+                case 0:
+                case 1:
+                    final Long old = expected.put(key(i), (long) n);
+                    final Row.Entry replaced = index.replace(entry(i, n));
+                    if (old == null) assertNull(replaced); else assertEquals(old.longValue(), replaced.getColLong(1));
+                    break;
+                case 2:
+                    final Long removed = expected.remove(key(i));
+                    final Row.Entry e = index.remove(key(i));
+                    if (removed == null) assertNull(e); else assertEquals(removed.longValue(), e.getColLong(1));
+                    break;
+                default:
+                    final Long value = expected.get(key(i));
+                    final Row.Entry g = index.get(key(i), false);
+                    if (value == null) assertNull(g); else assertEquals(value.longValue(), g.getColLong(1));
+            }
+        }
+        assertSameContent(expected, index);
+        assertArrayEquals(expected.firstKey(), index.smallestKey());
+        assertArrayEquals(expected.lastKey(), index.largestKey());
+
+        // iteration from a given key
+        final byte[] from = key(2500);
+        final CloneableIterator<byte[]> down = index.keys(false, from);
+        for (final byte[] k: expected.headMap(from, true).descendingKeySet()) assertArrayEquals(k, down.next());
+        assertFalse(down.hasNext());
+
+        index.optimize();
+        assertSameContent(expected, index);
+        assertSameContent(expected, index.clone());
+        assertEquals(10, index.random(10).size());
+        index.close();
+    }
+
+    /**
+     * Test that rows added in the initialization phase are sorted and that doubles are removed
+     */
+    @Test
+    public void testInitializationAndDoubles() throws Exception {
+        final RAMIndexCluster index = new RAMIndexCluster("testInitializationAndDoubles", ROW, 3);
+        for (int i = 1000; i > 0; i--) index.addUnique(entry(i, i));
+        for (int i = 0; i < 100; i++) index.addUnique(entry(i * 10, -i));
+        final List<RowCollection> doubles = index.removeDoubles();
+        int d = 0;
+        for (final RowCollection c: doubles) d += c.size();
+        assertEquals(99 * 2, d);
+        assertEquals(1001 - 99, index.size());
+        assertNull(index.get(key(10), false));
+        assertNotNull(index.get(key(11), false));
+
+        assertEquals(Long.MIN_VALUE, index.inc(key(10), 1, 1, null));
+        assertEquals(5, index.inc(key(10), 1, 5, entry(10, 5)));
+        assertEquals(8, index.inc(key(10), 1, 3, null));
+        assertEquals(8, index.get(key(10), false).getColLong(1));
+
+        final int size = index.size();
+        final List<byte[]> even = new ArrayList<byte[]>();
+        for (final Row.Entry e: index) if (e.getColLong(1) % 2 == 0) even.add(e.getPrimaryKeyBytes());
+        for (final byte[] k: even) assertTrue(index.delete(k));
+        assertEquals(size - even.size(), index.size());
+        for (final Row.Entry e: index) assertTrue(e.getColLong(1) % 2 != 0);
+        index.close();
+    }
+
+    /**
+     * Test that readers always find the rows which are not changed while writers change other rows
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final RAMIndexCluster index = new RAMIndexCluster("testConcurrentAccess", ROW, 4);
+        for (int i = 0; i < 20000; i++) index.addUnique(entry(i, i));
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 6; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        final Random r = new Random(thread);
+                        for (int n = 0; n < 30000; n++) {
+                            final int i = r.nextInt(20000);
+                            if (thread < 2) {
+                                // writers change only the odd rows
+                                final int odd = i | 1;
+                                if (r.nextBoolean()) index.remove(key(odd)); else index.put(entry(odd, n));
+                            } else {
+                                // readers check the even rows which are never changed
+                                final int even = i & ~1;
+                                final Row.Entry e = index.get(key(even), false);
+                                assertNotNull(e);
+                                assertEquals(even, e.getColLong(1));
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+        }
+        for (final Thread t: threads) t.start();
+        for (final Thread t: threads) t.join();
+        assertNull(failure.get());
+        int even = 0;
+        for (final Row.Entry e: index) if (e.getColLong(1) % 2 == 0 && e.getColLong(1) < 20000) even++;
+        assertTrue(even >= 10000);
+        index.close();
+    }
+
+    /**
+     * Test that a view found in the index keeps its row after the index is changed
+     */
+    @Test
+    public void testViews() throws Exception {
+        final RAMIndexCluster index = new RAMIndexCluster("testViews", ROW, 4);
+        for (int i = 0; i < 10000; i++) index.put(entry(i, i));
+        final Row.Entry view = ROW.newView();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(index.get(key(i), view));
+            assertArrayEquals(key(i), view.getPrimaryKeyBytes());
+            assertEquals(i, view.getColLong(1));
+        }
+        assertFalse(index.get(key(10000), view));
+        assertTrue(index.get(key(5), view));
+        for (int i = 0; i < 10000; i++) index.put(entry(i, -i));
+        index.delete(key(5));
+        assertEquals(5, view.getColLong(1));
+        assertNull(index.get(key(5), false));
+        assertEquals(-6, index.get(key(6), false).getColLong(1));
+        index.close();
+    }
+}
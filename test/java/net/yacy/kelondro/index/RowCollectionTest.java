@@ -0,0 +1,162 @@
+package net.yacy.kelondro.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import org.junit.After;
+import org.junit.Test;
+
+
+public class RowCollectionTest {
+
+    private static final Row row = new Row("byte[] key-12, int value-4 {b256}", Base64Order.enhancedCoder);
+    private static final int defaultParallelLimit = RowSorter.parallelLimit;
+
+    @After
+    public void resetSorter() {
+        RowSorter.parallelLimit = defaultParallelLimit;
+        RowSorter.keySort = true;
+    }
+
+    private static Row.Entry entry(final int i) {
+        final Row.Entry e = row.newEntry();
+        e.setCol(0, ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(Integer.toString(i))).substring(0, 12)));
+        e.setCol(1, i);
+        return e;
+    }
+
+    /**
+     * add size entries; the first sorted entries are added in order so they form a sorted prefix
+     */
+    private static RowCollection collection(final int size, final int sorted) throws Exception {
+        final List<Row.Entry> entries = new ArrayList<Row.Entry>();
+        for (int i = 0; i < size; i++) entries.add(entry(i));
+        Collections.shuffle(entries, new Random(42));
+        Collections.sort(entries.subList(0, sorted), new Row.EntryComparator(row.objectOrder));
+        final RowCollection c = new RowCollection(row, size);
+        for (final Row.Entry e: entries) c.addUnique(e);
+        c.sortBound = sorted;
+        return c;
+    }
+
+    private static void assertSorted(final RowCollection c, final int size) {
+        assertEquals(size, c.size());
+        assertEquals(size, c.sortBound);
+        final List<Row.Entry> expected = new ArrayList<Row.Entry>();
+        for (int i = 0; i < size; i++) expected.add(entry(i));
+        Collections.sort(expected, new Row.EntryComparator(row.objectOrder));
+        for (int i = 0; i < size; i++) {
+            assertArrayEquals("position " + i, expected.get(i).bytes(), c.get(i, false).bytes());
+        }
+    }
+
+    /**
+     * Test the sort of unsorted collections in the calling thread and in the fork-join pool
+     */
+    @Test
+    public void testSort() throws Exception {
+        for (final boolean keySort: new boolean[]{false, true}) {
+            RowSorter.keySort = keySort;
+            for (final int limit: new int[]{Integer.MAX_VALUE, 64}) {
+                RowSorter.parallelLimit = limit;
+                for (final int size: new int[]{0, 1, 2, 15, 16, 17, 100, 5000}) {
+                    final RowCollection c = collection(size, 0);
+                    c.sort();
+                    assertSorted(c, size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a sorted prefix is merged with the sorted tail, both for small and large tails
+     */
+    @Test
+    public void testSortWithSortedPrefix() throws Exception {
+        for (final boolean keySort: new boolean[]{false, true}) {
+            RowSorter.keySort = keySort;
+            for (final int limit: new int[]{Integer.MAX_VALUE, 64}) {
+                RowSorter.parallelLimit = limit;
+                for (final int sorted: new int[]{1, 100, 2500, 4990, 4999}) {
+                    final RowCollection c = collection(5000, sorted);
+                    c.sort();
+                    assertSorted(c, 5000);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test the sort of keys with long common prefixes, which are not distinguished by the long transform of the prefix
+     */
+    @Test
+    public void testSortCommonPrefix() throws Exception {
+        for (final int groups: new int[]{1, 300}) {
+            final RowCollection c = new RowCollection(row, 4096);
+            final List<Row.Entry> expected = new ArrayList<Row.Entry>();
+            final byte[] alpha = Base64Order.alpha_enhanced;
+            final Random r = new Random(groups);
+            for (int i = 0; i < 4096; i++) {
+                final Row.Entry e = row.newEntry();
+                final int g = r.nextInt(groups);
+                e.setCol(0, new byte[]{alpha[g & 63], alpha[g >> 6], 'x', 'y', 'z', 'x', 'y', 'z', 'x', 'y', alpha[r.nextInt(64)], alpha[r.nextInt(64)]});
+                e.setCol(1, i);
+                c.addUnique(e);
+                expected.add(e);
+            }
+            c.sort();
+            Collections.sort(expected, new Row.EntryComparator(row.objectOrder));
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(0, row.objectOrder.compare(expected.get(i).getPrimaryKeyBytes(), c.get(i, false).getPrimaryKeyBytes()));
+            }
+        }
+    }
+
+    /**
+     * Test that views point to the same rows as the copied entries and that columns are decoded in place
+     */
+    @Test
+    public void testViews() throws Exception {
+        final RowSet c = new RowSet(row, 1000);
+        for (int i = 0; i < 1000; i++) c.addUnique(entry(i));
+        c.sort();
+        final Iterator<Row.Entry> copies = c.iterator();
+        final Iterator<Row.Entry> views = c.views();
+        Row.Entry last = null;
+        while (copies.hasNext()) {
+            assertTrue(views.hasNext());
+            final Row.Entry view = views.next();
+            assertTrue(last == null || last == view);
+            last = view;
+            assertArrayEquals(copies.next().bytes(), view.bytes());
+        }
+        assertFalse(views.hasNext());
+
+        final Row.Entry view = row.newView();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(c.get(entry(i).getPrimaryKeyBytes(), view));
+            assertEquals(i, view.getColLong(1));
+            assertTrue(c.get(i, view));
+            assertArrayEquals(c.get(i, false).bytes(), view.bytes());
+        }
+        assertFalse(c.get(ASCII.getBytes("AAAAAAAAAAAA"), view));
+        assertFalse(c.get(1000, view));
+
+        final byte[] b = entry(4711).bytes();
+        final byte[] shifted = new byte[b.length + 3];
+        System.arraycopy(b, 0, shifted, 3, b.length);
+        assertEquals(4711, row.getColLong(shifted, 3, 1));
+        assertEquals(4711, view.point(shifted, 3).getColLong(1));
+    }
+}
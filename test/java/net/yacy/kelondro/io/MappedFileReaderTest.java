@@ -0,0 +1,88 @@
+package net.yacy.kelondro.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+
+public class MappedFileReaderTest {
+
+    /**
+     * Test reading values which are written after the mapping has been created
+     */
+    @Test
+    public void testReadPositional() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "MappedFileReaderTest.bin");
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(64);
+            raf.seek(8);
+            raf.writeInt(4711);
+            raf.write(new byte[]{1, 2, 3, 4});
+
+            final MappedFileReader reader = new MappedFileReader(file);
+            assertEquals(64, reader.length());
+            assertEquals(4711, reader.readInt(8));
+            final byte[] b = new byte[4];
+            reader.readFully(12, b, 0, b.length);
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, b);
+
+            // in-place writes are visible in the mapping
+            raf.seek(8);
+            raf.writeInt(-1);
+            assertEquals(-1, reader.readInt(8));
+            assertEquals(0, reader.readByte(63));
+            reader.close();
+        } finally {
+            raf.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that a closed reader is unmapped: reads are rejected and the file can be deleted
+     */
+    @Test
+    public void testClose() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "MappedFileReaderTest3.bin");
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(16);
+        raf.writeInt(17);
+        raf.close();
+        final MappedFileReader reader = new MappedFileReader(file);
+        assertEquals(17, reader.readInt(0));
+        reader.close();
+        reader.close();
+        try {
+            reader.readInt(0);
+            fail("read from a closed reader");
+        } catch (final IOException e) {
+            // expected
+        }
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Test that reads outside of the mapped file are rejected
+     */
+    @Test(expected = IOException.class)
+    public void testReadBeyondLength() throws Exception {
+        final File file = new File(System.getProperty("java.io.tmpdir"), "MappedFileReaderTest2.bin");
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(16);
+            final MappedFileReader reader = new MappedFileReader(file);
+            reader.readInt(14);
+        } finally {
+            raf.close();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package net.yacy.kelondro.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.table.Table;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class WriteAheadLogTest {
+
+    private static final int RECORDSIZE = 8;
+    private File dir, tablefile, walfile;
+
+    @Before
+    public void setUp() {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "WriteAheadLogTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.tablefile = new File(this.dir, "test.table");
+        this.walfile = new File(this.dir, "test.table.wal");
+    }
+
+    @After
+    public void tearDown() {
+        Table.writeAheadLog = false;
+        Table.walSyncInterval = 1000;
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] record(final int i) {
+        return ASCII.getBytes(Integer.toString(10000000 + i));
+    }
+
+    private static List<byte[]> read(final File f) throws Exception {
+        final List<byte[]> records = new ArrayList<byte[]>();
+        final RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            assertEquals(0, raf.length() % RECORDSIZE);
+            final byte[] b = new byte[RECORDSIZE];
+            while (raf.getFilePointer() < raf.length()) {
+                raf.readFully(b);
+                records.add(b.clone());
+            }
+        } finally {
+            raf.close();
+        }
+        return records;
+    }
+
+    /**
+     * Test that buffered changes which were not written to the file are recovered from the log
+     */
+    @Test
+    public void testReplay() throws Exception {
+        final BufferedRecords file = new BufferedRecords(new Records(this.tablefile, RECORDSIZE), 1000, new WriteAheadLog(this.walfile, RECORDSIZE, 0));
+        final List<byte[]> expected = new ArrayList<byte[]>();
+        for (int i = 0; i < 500; i++) {
+            file.add(record(i), 0);
+            expected.add(record(i));
+        }
+        for (int i = 0; i < 500; i += 7) {
+            file.put(i, record(1000 + i), 0);
+            expected.set(i, record(1000 + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            final byte[] b = new byte[RECORDSIZE];
+            file.cleanLast(b, 0);
+            assertArrayEquals(expected.remove(expected.size() - 1), b);
+        }
+        file.commit();
+
+        // the process crashes here: the buffers of the file are lost
+        assertTrue(read(this.tablefile).size() < expected.size());
+        assertTrue(WriteAheadLog.replay(this.walfile, this.tablefile, RECORDSIZE) > 0);
+        assertFalse(this.walfile.exists());
+        final List<byte[]> recovered = read(this.tablefile);
+        assertEquals(expected.size(), recovered.size());
+        for (int i = 0; i < expected.size(); i++) assertArrayEquals("record " + i, expected.get(i), recovered.get(i));
+    }
+
+    /**
+     * Test that a checkpoint truncates the log and that a torn entry at the end of the log is ignored
+     */
+    @Test
+    public void testCheckpointAndTornEntry() throws Exception {
+        final long maxLogSize = WriteAheadLog.maxLogSize;
+        WriteAheadLog.maxLogSize = 1000;
+        try {
+            final BufferedRecords file = new BufferedRecords(new Records(this.tablefile, RECORDSIZE), 1000, new WriteAheadLog(this.walfile, RECORDSIZE, 0));
+            for (int i = 0; i < 300; i++) file.add(record(i), 0);
+            file.commit();
+            assertTrue(this.walfile.length() <= 1000);
+            assertTrue(read(this.tablefile).size() > 200); // the checkpoints have written the file
+
+            // a partly written entry at the end of the log
+            final FileOutputStream os = new FileOutputStream(this.walfile, true);
+            os.write(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 5, 'x'});
+            os.close();
+            WriteAheadLog.replay(this.walfile, this.tablefile, RECORDSIZE);
+            final List<byte[]> recovered = read(this.tablefile);
+            assertEquals(300, recovered.size());
+            for (int i = 0; i < 300; i++) assertArrayEquals(record(i), recovered.get(i));
+        } finally {
+            WriteAheadLog.maxLogSize = maxLogSize;
+        }
+    }
+
+    /**
+     * Test that concurrent writers commit their changes
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        final BufferedRecords file = new BufferedRecords(new Records(this.tablefile, RECORDSIZE), 10000, new WriteAheadLog(this.walfile, RECORDSIZE, 0));
+        for (int i = 0; i < 400; i++) file.add(record(i), 0);
+        final List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = thread; i < 400; i += 4) {
+                            file.put(i, record(5000 + i), 0);
+                            file.commit();
+                        }
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        for (final Thread w: writers) w.start();
+        for (final Thread w: writers) w.join();
+        WriteAheadLog.replay(this.walfile, this.tablefile, RECORDSIZE);
+        final List<byte[]> recovered = read(this.tablefile);
+        assertEquals(400, recovered.size());
+        for (int i = 0; i < 400; i++) assertArrayEquals(record(5000 + i), recovered.get(i));
+    }
+
+    /**
+     * Test that a table recovers all rows after a crash and removes the log when it is closed
+     */
+    @Test
+    public void testTableRecovery() throws Exception {
+        Table.writeAheadLog = true;
+        Table.walSyncInterval = 0;
+        final Row row = new Row("byte[] key-12, int value-4 {b256}", Base64Order.enhancedCoder);
+        final Table table = new Table(this.tablefile, row, 1000, 0, false, false, false);
+        for (int i = 0; i < 200; i++) {
+            final Row.Entry e = row.newEntry();
+            e.setCol(0, ASCII.getBytes("key" + (100000000 + i)));
+            e.setCol(1, i);
+            table.put(e);
+        }
+        for (int i = 0; i < 200; i += 3) table.remove(ASCII.getBytes("key" + (100000000 + i)));
+        final int size = table.size();
+
+        // the process crashes here; a new table is opened on the same file
+        final Table recovered = new Table(this.tablefile, row, 1000, 0, false, false, false);
+        try {
+            assertEquals(size, recovered.size());
+            for (int i = 0; i < 200; i++) {
+                final Row.Entry e = recovered.get(ASCII.getBytes("key" + (100000000 + i)), false);
+                if (i % 3 == 0) {
+                    assertNull(e);
+                } else {
+                    assertNotNull(e);
+                    assertEquals(i, (int) e.getColLong(1));
+                }
+            }
+        } finally {
+            recovered.close();
+        }
+        assertFalse(this.walfile.exists());
+    }
+}
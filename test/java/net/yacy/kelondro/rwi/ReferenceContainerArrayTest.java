@@ -0,0 +1,152 @@
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.citation.CitationReference;
+import net.yacy.kelondro.data.citation.CitationReferenceFactory;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.Test;
+
+
+public class ReferenceContainerArrayTest {
+
+    private static byte[] hash(final String s) {
+        return ASCII.getBytes((s + "____________").substring(0, 12));
+    }
+
+    /**
+     * Test that a merge of many files in one pass keeps the union of all references
+     */
+    @Test
+    public void testShrinkManySmallFiles() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "ReferenceContainerArrayTest");
+        FileUtils.deletedelete(dir);
+        dir.mkdirs();
+        final CitationReferenceFactory factory = new CitationReferenceFactory();
+        final ReferenceContainerArray<CitationReference> array = new ReferenceContainerArray<CitationReference>(dir, "test", factory, Base64Order.enhancedCoder, 12);
+        try {
+            // five files; the term 'common' is in every file, the term 'fileN' only in one
+            for (int f = 0; f < 5; f++) {
+                final ReferenceContainerCache<CitationReference> cache = new ReferenceContainerCache<CitationReference>(factory, Base64Order.enhancedCoder, 12);
+                cache.add(hash("common"), new CitationReference(hash("url" + f), 0));
+                cache.add(hash("file" + f), new CitationReference(hash("url" + f), 0));
+                final File blob = array.newContainerBLOBFile();
+                cache.dump(blob, 1024 * 1024, true);
+                array.mountBLOBFile(blob);
+                Thread.sleep(2); // the blob file names have a millisecond resolution
+            }
+            assertEquals(5, array.entries());
+
+            // a dispatcher which is not started merges immediately
+            final IODispatcher merger = new IODispatcher(1, 1, 1024 * 1024);
+            assertTrue(array.shrinkManySmallFiles(merger, 1024 * 1024, 8));
+            assertEquals(1, array.entries());
+
+            final ReferenceContainer<CitationReference> common = array.get(hash("common"));
+            assertNotNull(common);
+            assertEquals(5, common.size());
+            for (int f = 0; f < 5; f++) {
+                final ReferenceContainer<CitationReference> c = array.get(hash("file" + f));
+                assertNotNull(c);
+                assertEquals(1, c.size());
+            }
+        } finally {
+            array.close();
+            FileUtils.deletedelete(dir);
+        }
+    }
+
+    private static byte[] urlhash(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(Integer.toString(i))).substring(0, 12));
+    }
+
+    private static void removeReference(final ReferenceContainerArray<WordReference> array, final byte[] term, final byte[] urlhash) throws Exception {
+        array.reduce(term, new ReferenceContainerArray.ContainerReducer<WordReference>() {
+            @Override
+            public ReferenceContainer<WordReference> reduce(final ReferenceContainer<WordReference> container) {
+                container.removeReference(urlhash);
+                return container;
+            }
+        });
+        final ReferenceContainer<WordReference> c = array.get(term);
+        assertNotNull(c);
+        assertNull(c.getReference(urlhash));
+        assertEquals(c.size(), array.count(term));
+    }
+
+    /**
+     * Test that single references can be removed from a compressed container in a BLOB file,
+     * also if the compressed container shrinks by less than 4 bytes or grows, and that the count stays right
+     */
+    @Test
+    public void testRemoveFromCompressedContainer() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "ReferenceContainerArrayTest2");
+        FileUtils.deletedelete(dir);
+        dir.mkdirs();
+        final boolean compress = ReferenceContainer.compressWordReferences;
+        ReferenceContainer.compressWordReferences = true;
+        final WordReferenceFactory factory = new WordReferenceFactory();
+        final ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(dir, "test", factory, Base64Order.enhancedCoder, 12);
+        try {
+            final byte[] term = Word.word2hash("test");
+            final byte[] similar = Word.word2hash("similar");
+            final int count = 300;
+            final Random r = new Random(0);
+            final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, 12);
+            for (int i = 0; i < count; i++) {
+                final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+                positions.add(10);
+                // similar rows with a few differences, like in real containers
+                cache.add(term, new WordReferenceVars(urlhash(i), 20 + r.nextInt(3), 3, 0, 1 + r.nextInt(2), 100, 10, 5, positions, 1, 1,
+                        r.nextInt(4) == 0 ? 0 : 1000000L * r.nextInt(1000), "en", Response.DT_TEXT, 0, r.nextInt(2), new Bitfield(4), 0.0d));
+            }
+            // equal rows which differ only in the last character of the url hash: the compressed container
+            // shrinks by less than 4 bytes if a single reference is removed
+            for (int i = 0; i < 60; i++) {
+                final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+                positions.add(10);
+                cache.add(similar, new WordReferenceVars(ASCII.getBytes("AAAAAAAAAAA" + Base64Order.enhancedCoder.encodeByte((byte) i)), 20, 3, 0, 1, 100, 10, 5, positions, 1, 1,
+                        0, "en", Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d));
+            }
+            final File blob = array.newContainerBLOBFile();
+            cache.dump(blob, 1024 * 1024, true);
+            array.mountBLOBFile(blob);
+            assertEquals(count, array.count(term));
+            assertEquals(60, array.count(similar));
+
+            // remove the references one by one in a random order
+            for (int n = 1; n <= count / 2; n++) removeReference(array, term, urlhash(r.nextInt(count)));
+            for (int i = 0; i < 60; i += 7) removeReference(array, similar, ASCII.getBytes("AAAAAAAAAAA" + Base64Order.enhancedCoder.encodeByte((byte) i)));
+            assertEquals(51, array.count(similar));
+            final int size = array.get(term).size();
+            assertTrue(size < count);
+
+            // the count of compressed containers is also right if the compression is switched off
+            ReferenceContainer.compressWordReferences = false;
+            assertEquals(size, array.count(term));
+            assertFalse(array.get(term).isEmpty());
+        } finally {
+            ReferenceContainer.compressWordReferences = compress;
+            array.close();
+            FileUtils.deletedelete(dir);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.data.citation.CitationReference;
+import net.yacy.kelondro.data.citation.CitationReferenceFactory;
+import org.junit.Test;
+
+
+public class ReferenceContainerCacheTest {
+
+    private static final CitationReferenceFactory factory = new CitationReferenceFactory();
+
+    private static byte[] hash(final String s) {
+        return ASCII.getBytes((s + "____________").substring(0, 12));
+    }
+
+    private static ReferenceContainerCache<CitationReference> newCache() {
+        return new ReferenceContainerCache<CitationReference>(factory, Base64Order.enhancedCoder, 12);
+    }
+
+    /**
+     * Test that a sealed cache does not accept new references
+     */
+    @Test
+    public void testSeal() throws Exception {
+        final ReferenceContainerCache<CitationReference> cache = newCache();
+        assertTrue(cache.tryAdd(hash("term"), new CitationReference(hash("url1"), 0)));
+        cache.seal();
+        assertTrue(cache.isSealed());
+        assertFalse(cache.tryAdd(hash("term"), new CitationReference(hash("url2"), 0)));
+        assertEquals(1, cache.count(hash("term")));
+    }
+
+    /**
+     * Test that add() on a sealed cache writes the references to the successor cache and fails if there is none
+     */
+    @Test
+    public void testAddToSealedCache() throws Exception {
+        final ReferenceContainerCache<CitationReference> cache = newCache();
+        final ReferenceContainerCache<CitationReference> successor = newCache();
+        cache.seal(successor);
+        cache.add(hash("term"), new CitationReference(hash("url1"), 0));
+        final ReferenceContainer<CitationReference> container = new ReferenceContainer<CitationReference>(factory, hash("other"));
+        container.add(new CitationReference(hash("url2"), 0));
+        cache.add(container);
+        assertEquals(0, cache.size());
+        assertEquals(1, successor.count(hash("term")));
+        assertEquals(1, successor.count(hash("other")));
+
+        final ReferenceContainerCache<CitationReference> dump = newCache();
+        dump.seal();
+        try {
+            dump.add(hash("term"), new CitationReference(hash("url3"), 0));
+            fail("a sealed cache without successor must not accept references");
+        } catch (final IllegalStateException e) {}
+        assertEquals(0, dump.size());
+    }
+
+    /**
+     * Test that no reference is lost if concurrent writers add references while the cache is swapped and sealed
+     */
+    @Test
+    public void testConcurrentAddAndSwap() throws Exception {
+        final int threads = 8, perThread = 3000, terms = 50;
+        final AtomicReference<ReferenceContainerCache<CitationReference>> ram = new AtomicReference<ReferenceContainerCache<CitationReference>>(newCache());
+        final List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            final byte[] term = hash("term" + (i % terms));
+                            final CitationReference ref = new CitationReference(hash("u" + thread + "_" + i), 0);
+                            while (!ram.get().tryAdd(term, ref)) {}
+                        }
+                    } catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        for (final Thread w: writers) w.start();
+
+        // swap and seal the cache while the writers are running
+        final List<ReferenceContainerCache<CitationReference>> dumps = new ArrayList<ReferenceContainerCache<CitationReference>>();
+        for (int i = 0; i < 20; i++) {
+            final ReferenceContainerCache<CitationReference> dump = ram.getAndSet(newCache());
+            dump.seal();
+            dumps.add(dump);
+            Thread.sleep(1);
+        }
+        for (final Thread w: writers) w.join();
+        dumps.add(ram.get());
+
+        int total = 0;
+        for (final ReferenceContainerCache<CitationReference> dump: dumps) {
+            for (final ReferenceContainer<CitationReference> c: dump) total += c.size();
+        }
+        assertEquals(threads * perThread, total);
+    }
+}
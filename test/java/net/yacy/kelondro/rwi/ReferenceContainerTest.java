@@ -23,13 +23,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.junit.Test;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
@@ -99,4 +106,54 @@ public class ReferenceContainerTest {
         assertEquals("distance()", wentry.distance(), wc.distance());
     }
 
+    private static ReferenceContainer<WordReference> container(final ReferenceFactory<WordReference> factory, final String term, final int count, final int step) throws Exception {
+        final ReferenceContainer<WordReference> rc = new ReferenceContainer<WordReference>(factory, Word.word2hash(term));
+        for (int i = 0; i < count * step; i += step) {
+            final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+            positions.add(10);
+            rc.add(new WordReferenceVars(
+                    ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(Integer.toString(i))).substring(0, 12)),
+                    20, 3, 0, 1, 100, 10, 5, positions, 1, 1, 0, "en", Response.DT_TEXT, 0, 0, new Bitfield(4), 0.0d));
+        }
+        return rc;
+    }
+
+    private static List<String> urlhashes(final ReferenceContainer<WordReference> rc) {
+        final List<String> hashes = new ArrayList<String>();
+        if (rc == null) return hashes;
+        final Iterator<WordReference> i = rc.entries();
+        while (i.hasNext()) hashes.add(ASCII.String(i.next().urlhash()));
+        return hashes;
+    }
+
+    private static ReferenceContainer<WordReference> joinExclude(final ReferenceFactory<WordReference> factory, final boolean galloping) throws Exception {
+        final Collection<ReferenceContainer<WordReference>> include = new ArrayList<ReferenceContainer<WordReference>>();
+        include.add(container(factory, "all", 3000, 1));
+        include.add(container(factory, "three", 1000, 3));
+        include.add(container(factory, "five", 100, 5));
+        final Collection<ReferenceContainer<WordReference>> exclude = new ArrayList<ReferenceContainer<WordReference>>();
+        exclude.add(container(factory, "two", 2000, 2));
+        final boolean gallopingJoin = ReferenceContainer.gallopingJoin;
+        ReferenceContainer.gallopingJoin = galloping;
+        try {
+            return ReferenceContainer.joinExcludeContainers(factory, include, exclude, Integer.MAX_VALUE);
+        } finally {
+            ReferenceContainer.gallopingJoin = gallopingJoin;
+        }
+    }
+
+    /**
+     * Test that the galloping join and exclusion of containers has the same result as the pairwise join and exclusion
+     */
+    @Test
+    public void testJoinExcludeGalloping() throws Exception {
+        final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+        final ReferenceContainer<WordReference> galloping = joinExclude(factory, true);
+        final ReferenceContainer<WordReference> pairwise = joinExclude(factory, false);
+        // the odd multiples of 15 below 500
+        assertEquals(17, galloping.size());
+        assertEquals(urlhashes(pairwise), urlhashes(galloping));
+        assertTrue(galloping.isSorted());
+    }
+
 }
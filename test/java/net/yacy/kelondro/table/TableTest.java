@@ -0,0 +1,187 @@
+package net.yacy.kelondro.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.MemoryControl;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class TableTest {
+
+    private static final Row ROW = new Row("byte[] key-12, int value-4 {b256}, byte[] payload-48", Base64Order.enhancedCoder);
+    private File dir, tablefile;
+
+    @Before
+    public void setUp() {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "TableTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.tablefile = new File(this.dir, "test.table");
+        Table.indexSnapshots = true;
+    }
+
+    @After
+    public void tearDown() {
+        Table.indexSnapshots = false;
+        Table.prefetchBytesPerSecond = 16L * 1024L * 1024L;
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes("key" + (100000000 + i));
+    }
+
+    private static Row.Entry entry(final int i, final int value) {
+        final Row.Entry e = ROW.newEntry();
+        e.setCol(0, key(i));
+        e.setCol(1, value);
+        e.setCol(2, ASCII.getBytes("payload of " + i));
+        return e;
+    }
+
+    private int snapshots() {
+        int c = 0;
+        for (final String s: this.dir.list()) if (s.endsWith(".idx")) c++;
+        return c;
+    }
+
+    private static void check(final Table table, final int count, final int removed) throws Exception {
+        assertEquals(count - (count + removed - 1) / removed, table.size());
+        for (int i = 0; i < count; i++) {
+            final Row.Entry e = table.get(key(i), false);
+            if (i % removed == 0) {
+                assertNull(e);
+            } else {
+                assertNotNull("entry " + i, e);
+                assertEquals(i, (int) e.getColLong(1));
+            }
+        }
+    }
+
+    /**
+     * Test that the index is read from a snapshot and that the snapshot is replaced when the table is changed
+     */
+    @Test
+    public void testIndexSnapshot() throws Exception {
+        Table table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        for (int i = 0; i < 5000; i++) table.put(entry(i, i));
+        for (int i = 0; i < 5000; i += 5) table.remove(key(i));
+        table.close();
+        assertEquals(1, snapshots());
+
+        table = new Table(this.tablefile, ROW, 100, 0, false, false, true);
+        check(table, 5000, 5);
+        table.close();
+        assertEquals(1, snapshots());
+
+        table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        table.put(entry(0, 0));
+        assertEquals(0, snapshots());
+        table.remove(key(0));
+        table.close();
+        assertEquals(1, snapshots());
+        table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        check(table, 5000, 5);
+        table.clear();
+        table.close();
+        assertEquals(0, snapshots());
+    }
+
+    /**
+     * Test that a snapshot is not used when the table file was changed without a snapshot
+     */
+    @Test
+    public void testStaleSnapshot() throws Exception {
+        Table table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        for (int i = 0; i < 3000; i++) table.put(entry(i, i));
+        table.close();
+        assertEquals(1, snapshots());
+
+        Table.indexSnapshots = false;
+        table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        for (int i = 0; i < 3000; i += 3) table.remove(key(i));
+        table.close();
+        assertEquals(1, snapshots());
+
+        Table.indexSnapshots = true;
+        table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        assertEquals(0, snapshots());
+        check(table, 3000, 3);
+        table.close();
+    }
+
+    /**
+     * Test that the table copy which is loaded in the background contains the changes which were made during loading
+     */
+    @Test
+    public void testPrefetch() throws Exception {
+        Assume.assumeTrue(MemoryControl.available() > 1000L * 1024L * 1024L);
+        Table table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        for (int i = 0; i < 20000; i++) table.put(entry(i, -1));
+        table.close();
+
+        Table.prefetchBytesPerSecond = 1024L * 1024L;
+        table = new Table(this.tablefile, ROW, 100, 0, true, true, true);
+        assertFalse(table.usesFullCopy());
+        for (int i = 0; i < 20000; i++) table.put(entry(i, i));
+        for (int i = 0; i < 20000; i += 7) table.remove(key(i));
+        final long timeout = System.currentTimeMillis() + 30000;
+        while (!table.usesFullCopy() && System.currentTimeMillis() < timeout) Thread.sleep(50);
+        assertTrue(table.usesFullCopy());
+        check(table, 20000, 7);
+        table.close();
+    }
+
+    /**
+     * Test that a table can be closed while its table copy is loaded in the background
+     */
+    @Test
+    public void testCloseDuringPrefetch() throws Exception {
+        Assume.assumeTrue(MemoryControl.available() > 1000L * 1024L * 1024L);
+        Table table = new Table(this.tablefile, ROW, 100, 0, false, false, false);
+        for (int i = 0; i < 20000; i++) table.put(entry(i, i));
+        table.close();
+
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(final Thread t, final Throwable e) {
+                error.compareAndSet(null, e);
+            }
+        });
+        try {
+            Table.prefetchBytesPerSecond = 1024L * 1024L;
+            for (int round = 0; round < 10; round++) {
+                table = new Table(this.tablefile, ROW, 100, 0, true, true, true);
+                Thread.sleep(round * 5);
+                table.close();
+            }
+            // the prefetch thread runs one prefetch after the other; a new table waits for the canceled ones
+            table = new Table(this.tablefile, ROW, 100, 0, true, true, true);
+            final long timeout = System.currentTimeMillis() + 30000;
+            while (!table.usesFullCopy() && System.currentTimeMillis() < timeout) Thread.sleep(50);
+            assertTrue(table.usesFullCopy());
+            assertEquals(20000, table.size());
+            assertEquals(17, (int) table.get(key(17), false).getColLong(1));
+            table.close();
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,143 @@
+package net.yacy.kelondro.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.kelondro.blob.BEncodedHeap;
+import net.yacy.kelondro.blob.MapHeap;
+import org.junit.After;
+import org.junit.Test;
+
+
+public class BinaryRecordTest {
+
+    private static final byte[] KEY = ASCII.getBytes("key_________");
+
+    @After
+    public void reset() {
+        BinaryRecord.writeBinaryRecords = false;
+    }
+
+    private static Map<String, String> seed() {
+        final Map<String, String> map = new HashMap<String, String>();
+        map.put("Hash", "abcdefghijkl");
+        map.put("Name", "peer-äöü");
+        map.put("LastSeen", "20261018120000");
+        map.put("custom", "a=b\r\nc");
+        map.put("empty", "");
+        return map;
+    }
+
+    /**
+     * Test that maps with schema and inline column names are decoded to the same map
+     */
+    @Test
+    public void testEncodeDecode() throws Exception {
+        for (final BinaryRecord.Schema schema: new BinaryRecord.Schema[]{BinaryRecord.NONE, BinaryRecord.SEED}) {
+            final byte[] b = BinaryRecord.encodeStrings(seed(), schema);
+            assertTrue(BinaryRecord.isBinary(b));
+            assertEquals(seed(), BinaryRecord.decodeStrings(b, new HashMap<String, String>()));
+            final Map<String, byte[]> m = BinaryRecord.decode(b);
+            assertEquals(seed().size(), m.size());
+            assertArrayEquals(UTF8.getBytes("peer-äöü"), m.get("Name"));
+        }
+        assertTrue(BinaryRecord.encodeStrings(seed(), BinaryRecord.SEED).length < BinaryRecord.encodeStrings(seed(), BinaryRecord.NONE).length);
+    }
+
+    /**
+     * Test the access to single columns without decoding the record
+     */
+    @Test
+    public void testGet() throws Exception {
+        final byte[] b = BinaryRecord.encodeStrings(seed(), BinaryRecord.SEED);
+        assertArrayEquals(UTF8.getBytes("abcdefghijkl"), BinaryRecord.get(b, "Hash"));
+        assertArrayEquals(UTF8.getBytes("a=b\r\nc"), BinaryRecord.get(b, "custom"));
+        assertArrayEquals(new byte[0], BinaryRecord.get(b, "empty"));
+        assertNull(BinaryRecord.get(b, "Port"));
+        assertNull(BinaryRecord.get(b, "other"));
+    }
+
+    /**
+     * Test that truncated records are reported as corrupted
+     */
+    @Test
+    public void testTruncated() throws Exception {
+        final byte[] b = BinaryRecord.encodeStrings(seed(), BinaryRecord.SEED);
+        for (int length = 3; length < b.length; length++) {
+            try {
+                BinaryRecord.decode(Arrays.copyOf(b, length));
+                fail("truncated record at " + length);
+            } catch (final IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test that records written in the old formats can be read after the binary format is switched on
+     */
+    @Test
+    public void testHeapMigration() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "BinaryRecordTest");
+        FileUtils.deletedelete(dir);
+        dir.mkdirs();
+        try {
+            final File mapFile = new File(dir, "map.heap");
+            MapHeap map = new MapHeap(mapFile, 12, NaturalOrder.naturalOrder, 1024, 10, '_', BinaryRecord.SEED);
+            map.insert(KEY, seed());
+            map.close();
+            BinaryRecord.writeBinaryRecords = true;
+            map = new MapHeap(mapFile, 12, NaturalOrder.naturalOrder, 1024, 10, '_', BinaryRecord.SEED);
+            final Map<String, String> legacy = map.get(KEY);
+            assertEquals("", legacy.get("empty"));
+            assertEquals("abcdefghijkl", legacy.get("Hash"));
+            map.insert(ASCII.getBytes("other_______"), seed());
+            map.close();
+            map = new MapHeap(mapFile, 12, NaturalOrder.naturalOrder, 1024, 10, '_', BinaryRecord.SEED);
+            assertEquals(seed(), map.get(ASCII.getBytes("other_______")));
+            map.close();
+
+            BinaryRecord.writeBinaryRecords = false;
+            final File bFile = new File(dir, "b.heap");
+            BEncodedHeap heap = new BEncodedHeap(bFile, 12);
+            final Map<String, byte[]> row = new HashMap<String, byte[]>();
+            row.put("url", UTF8.getBytes("http://yacy.net"));
+            row.put("count", UTF8.getBytes("7"));
+            heap.insert(KEY, row);
+            heap.close();
+            BinaryRecord.writeBinaryRecords = true;
+            heap = new BEncodedHeap(bFile, 12);
+            assertArrayEquals(UTF8.getBytes("7"), heap.getProp(KEY, "count"));
+            heap.update(KEY, "count", UTF8.getBytes("8"));
+            assertArrayEquals(UTF8.getBytes("8"), heap.getProp(KEY, "count"));
+            assertArrayEquals(UTF8.getBytes("http://yacy.net"), heap.get(KEY).get("url"));
+            assertNull(heap.getProp(KEY, "none"));
+            heap.close();
+        } finally {
+            FileUtils.deletedelete(dir);
+        }
+    }
+
+    /**
+     * Test that the first bytes of the old formats are not taken for a binary record
+     */
+    @Test
+    public void testFormatDetection() {
+        assertFalse(BinaryRecord.isBinary(UTF8.getBytes("# W20261018 \r\nkey=value\r\n# EOF\r\n")));
+        assertFalse(BinaryRecord.isBinary(UTF8.getBytes("d3:key5:valuee")));
+        assertFalse(BinaryRecord.isBinary(null));
+    }
+}
@@ -0,0 +1,138 @@
+package net.yacy.kelondro.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class MemoryGovernorTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    private static class TestConsumer implements MemoryGovernor.Consumer {
+        private long used;
+        private final float hitRate;
+        private int evictions = 0;
+        private TestConsumer(final long used, final float hitRate) {
+            this.used = used;
+            this.hitRate = hitRate;
+        }
+        @Override
+        public long used() {
+            return this.used;
+        }
+        @Override
+        public float hitRate() {
+            return this.hitRate;
+        }
+        @Override
+        public void evict(final long target) {
+            this.evictions++;
+            if (this.used > target) this.used = target;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        MemoryGovernor.unregister("a");
+        MemoryGovernor.unregister("b");
+        MemoryGovernor.unregister("c");
+        MemoryGovernor.reset();
+    }
+
+    /**
+     * Test that the pool is kept between the watermarks, cut above the high watermarks and grows below the low watermarks
+     */
+    @Test
+    public void testPressure() throws Exception {
+        final TestConsumer a = new TestConsumer(50 * MB, 0.5f);
+        final TestConsumer b = new TestConsumer(50 * MB, 0.5f);
+        MemoryGovernor.register("a", 10 * MB, 100 * MB, a);
+        MemoryGovernor.register("b", 10 * MB, 100 * MB, b);
+
+        MemoryGovernor.balance(1000 * MB, 0.7d, 0.05d, false);
+        assertEquals(MemoryGovernor.Pressure.NORMAL, MemoryGovernor.pressure());
+        final long normal = MemoryGovernor.pool();
+        assertEquals(0, a.evictions + b.evictions);
+
+        // a high heap usage cuts the pool below the used memory and the consumers evict entries
+        MemoryGovernor.balance(1000 * MB, 0.9d, 0.05d, false);
+        assertEquals(MemoryGovernor.Pressure.HIGH, MemoryGovernor.pressure());
+        final long high = MemoryGovernor.pool();
+        assertTrue(high < 100 * MB);
+        assertEquals(1, a.evictions);
+        assertEquals(1, b.evictions);
+        assertTrue(a.used + b.used <= high);
+
+        // a high gc time also cuts the pool
+        MemoryGovernor.balance(1000 * MB, 0.7d, 0.2d, false);
+        assertTrue(MemoryGovernor.pool() < high);
+
+        // between the watermarks the pool is kept
+        final long kept = MemoryGovernor.pool();
+        MemoryGovernor.balance(1000 * MB, 0.7d, 0.05d, false);
+        assertEquals(kept, MemoryGovernor.pool());
+
+        // below the watermarks the pool grows slowly up to the maximum
+        MemoryGovernor.balance(1000 * MB, 0.3d, 0.0d, false);
+        assertEquals(MemoryGovernor.Pressure.LOW, MemoryGovernor.pressure());
+        assertEquals(kept + 50 * MB, MemoryGovernor.pool());
+        for (int i = 0; i < 10; i++) MemoryGovernor.balance(1000 * MB, 0.3d, 0.0d, false);
+        assertEquals(200 * MB, MemoryGovernor.pool());
+        assertTrue(normal <= 200 * MB);
+
+        // a short memory status cuts the pool to the minimum
+        MemoryGovernor.balance(1000 * MB, 0.7d, 0.05d, true);
+        assertEquals(MemoryGovernor.Pressure.CRITICAL, MemoryGovernor.pressure());
+        assertEquals(20 * MB, MemoryGovernor.pool());
+        assertEquals(10 * MB, MemoryGovernor.budget("a"));
+        assertEquals(10 * MB, a.used);
+    }
+
+    /**
+     * Test that the pool is shared according to the hit rates and that consumers with unknown memory are only evicted when memory is short
+     */
+    @Test
+    public void testSharing() throws Exception {
+        final TestConsumer a = new TestConsumer(0, 0.9f);
+        final TestConsumer b = new TestConsumer(0, 0.1f);
+        final TestConsumer c = new TestConsumer(-1, -1);
+        MemoryGovernor.register("a", 0, 100 * MB, a);
+        MemoryGovernor.register("b", 0, 100 * MB, b);
+        MemoryGovernor.register("c", 0, 0, c);
+
+        // the pool starts with the sum of the maximum budgets, the budgets are the maximum
+        MemoryGovernor.balance(1000 * MB, 0.7d, 0.05d, false);
+        assertEquals(100 * MB, MemoryGovernor.budget("a"));
+        assertEquals(100 * MB, MemoryGovernor.budget("b"));
+
+        a.used = 100 * MB;
+        b.used = 100 * MB;
+        MemoryGovernor.balance(1000 * MB, 0.9d, 0.05d, false);
+        final long pool = MemoryGovernor.pool();
+        assertEquals(100 * MB, pool);
+        assertTrue(MemoryGovernor.budget("a") > 2 * MemoryGovernor.budget("b"));
+        assertTrue(MemoryGovernor.budget("a") + MemoryGovernor.budget("b") <= pool);
+        assertEquals(0, c.evictions);
+
+        MemoryGovernor.balance(1000 * MB, 0.7d, 0.05d, true);
+        assertEquals(1, c.evictions);
+        assertEquals(-1, MemoryGovernor.budget("d"));
+    }
+
+    /**
+     * Test that the live heap does not count the garbage which is allocated after the last collection
+     */
+    @Test
+    public void testLiveHeap() throws Exception {
+        System.gc();
+        final long live = MemoryGovernor.liveHeap();
+        assertTrue(live > 0 && live <= MemoryControl.maxMemory());
+        long sum = 0;
+        for (int i = 0; i < 64; i++) sum += new byte[(int) MB].length;
+        assertEquals(64 * MB, sum);
+        assertTrue(MemoryGovernor.liveHeap() < live + 32 * MB);
+    }
+}
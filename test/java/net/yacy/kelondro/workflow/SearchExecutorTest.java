@@ -0,0 +1,181 @@
+package net.yacy.kelondro.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class SearchExecutorTest {
+
+    @BeforeClass
+    public static void setUp() {
+        SearchExecutor.shutdown();
+        SearchExecutor.maxThreads = 4;
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        SearchExecutor.shutdown();
+        SearchExecutor.maxThreads = 0;
+    }
+
+    private static class SleepTask extends SearchExecutor.Task {
+        private final long sleep;
+        private final AtomicBoolean interrupted = new AtomicBoolean(false);
+        private final AtomicBoolean ran = new AtomicBoolean(false);
+        private SleepTask(final SearchExecutor.Group group, final long sleep) {
+            super(group, "SearchExecutorTest.sleep");
+            this.sleep = sleep;
+        }
+        @Override
+        public void run() {
+            this.ran.set(true);
+            try {
+                Thread.sleep(this.sleep);
+            } catch (final InterruptedException e) {
+                this.interrupted.set(true);
+            }
+        }
+    }
+
+    /**
+     * Test that the tasks of many searches run on the bounded pool, with the name of the task, and can be joined
+     */
+    @Test
+    public void testBoundedPool() throws Exception {
+        final AtomicInteger running = new AtomicInteger(0), maxRunning = new AtomicInteger(0), named = new AtomicInteger(0);
+        final List<SearchExecutor.Task> tasks = new ArrayList<SearchExecutor.Task>();
+        for (int i = 0; i < 40; i++) {
+            tasks.add(new SearchExecutor.Task(new SearchExecutor.Group("query" + i), "SearchExecutorTest.task" + i) {
+                @Override
+                public void run() {
+                    final int r = running.incrementAndGet();
+                    synchronized (maxRunning) {if (r > maxRunning.get()) maxRunning.set(r);}
+                    if (Thread.currentThread().getName().equals(getName())) named.incrementAndGet();
+                    try {Thread.sleep(10);} catch (final InterruptedException e) {}
+                    running.decrementAndGet();
+                }
+            }.start());
+        }
+        for (final SearchExecutor.Task t: tasks) t.join();
+        for (final SearchExecutor.Task t: tasks) assertFalse(t.isAlive());
+        assertTrue(maxRunning.get() <= 4);
+        assertEquals(40, named.get());
+    }
+
+    /**
+     * Test that cancelling a group interrupts the running tasks, drops the waiting tasks and refuses new tasks
+     */
+    @Test
+    public void testCancelGroup() throws Exception {
+        final SearchExecutor.Group blocker = new SearchExecutor.Group("blocker");
+        final List<SleepTask> blocking = new ArrayList<SleepTask>();
+        for (int i = 0; i < 4; i++) blocking.add((SleepTask) new SleepTask(blocker, 10000).start());
+        for (final SleepTask t: blocking) while (!t.ran.get()) Thread.sleep(1);
+        final SearchExecutor.Group group = new SearchExecutor.Group("query");
+        final SleepTask waiting = (SleepTask) new SleepTask(group, 10000).start();
+        assertTrue(waiting.isAlive());
+        assertEquals(1, group.waiting());
+
+        group.cancel();
+        waiting.join(1000);
+        assertFalse(waiting.isAlive());
+        assertFalse(waiting.ran.get());
+        assertEquals(0, group.alive());
+        final SleepTask refused = (SleepTask) new SleepTask(group, 10000).start();
+        assertFalse(refused.isAlive());
+
+        blocker.cancel();
+        for (final SleepTask t: blocking) {
+            t.join(1000);
+            assertFalse(t.isAlive());
+            assertTrue(t.interrupted.get());
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Test that a waiting task is run by a thread which joins it without a timeout, but not by a thread which joins
+     * it with a timeout, and that the interrupt status of the joining thread is kept
+     */
+    @Test
+    public void testJoinWaitingTask() throws Exception {
+        final SearchExecutor.Group blocker = new SearchExecutor.Group("blocker");
+        final List<SleepTask> blocking = new ArrayList<SleepTask>();
+        for (int i = 0; i < 4; i++) blocking.add((SleepTask) new SleepTask(blocker, 10000).start());
+        for (final SleepTask t: blocking) while (!t.ran.get()) Thread.sleep(1);
+        final SleepTask waiting = (SleepTask) new SleepTask(null, 10).start();
+
+        waiting.join(50);
+        assertTrue(waiting.isAlive());
+        assertFalse(waiting.ran.get());
+
+        // the task is run without the interrupt of the joining thread, which is thrown afterwards
+        Thread.currentThread().interrupt();
+        boolean thrown = false;
+        try {
+            waiting.join();
+        } catch (final InterruptedException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+        assertFalse(waiting.isAlive());
+        assertTrue(waiting.ran.get());
+        assertFalse(waiting.interrupted.get());
+
+        blocker.cancel();
+        for (final SleepTask t: blocking) t.join(1000);
+    }
+
+    /**
+     * Test that a task is interrupted when its deadline is reached
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        final long expired = SearchExecutor.expired();
+        final SleepTask task = (SleepTask) new SleepTask(null, 10000).start(100);
+        task.join(5000);
+        assertFalse(task.isAlive());
+        assertTrue(task.interrupted.get());
+        assertEquals(expired + 1, SearchExecutor.expired());
+    }
+
+    /**
+     * Test that tasks which wait for tasks they started do not block when the pool is busy
+     */
+    @Test
+    public void testNestedTasks() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            new SearchExecutor.Task(null, "SearchExecutorTest.parent") {
+                @Override
+                public void run() {
+                    final CountDownLatch child = new CountDownLatch(1);
+                    final SearchExecutor.Task c = new SearchExecutor.Task(null, "SearchExecutorTest.child") {
+                        @Override
+                        public void run() {
+                            child.countDown();
+                        }
+                    }.start();
+                    try {
+                        // wait for the child without join, like a consumer of a queue
+                        if (child.await(5, TimeUnit.SECONDS)) finished.countDown();
+                        c.join();
+                    } catch (final InterruptedException e) {}
+                }
+            }.start();
+        }
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+}
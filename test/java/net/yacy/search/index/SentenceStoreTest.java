@@ -0,0 +1,84 @@
+package net.yacy.search.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.document.SentenceReader;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class SentenceStoreTest {
+
+    private static final String TEXT = "Über die Brücke geht ein Mann.   Er trägt einen Hut! Was ist in dem Hut?\nNiemand weiß es";
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "SentenceStoreTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static List<String> sentences(final Iterable<StringBuilder> sentences) {
+        final List<String> list = new ArrayList<String>();
+        for (final StringBuilder s: sentences) list.add(s.toString());
+        return list;
+    }
+
+    /**
+     * Test that the stored sentences are the sentences of the text which the snippet computation reads, and that an entry is replaced
+     */
+    @Test
+    public void testPutGet() throws Exception {
+        final SentenceStore store = new SentenceStore(new File(this.dir, "sentences.array"), 1024L * 1024L);
+        final byte[] urlhash = ASCII.getBytes("AAAAAAAAAAAA");
+        assertNull(store.get(urlhash));
+        store.put(urlhash, TEXT);
+        assertTrue(store.has(urlhash));
+        assertEquals(sentences(new SentenceReader(TEXT, false)), sentences(store.get(urlhash)));
+        assertEquals(4, store.get(urlhash).size());
+
+        store.put(urlhash, "Ein anderer Text.");
+        assertEquals(1, store.size());
+        assertEquals("Ein anderer Text.", store.get(urlhash).get(0).toString());
+        assertEquals(3, store.hits());
+        assertEquals(1, store.misses());
+
+        store.delete(urlhash);
+        assertFalse(store.has(urlhash));
+        store.close();
+    }
+
+    /**
+     * Test that the sentences are kept when the store is closed and opened again
+     */
+    @Test
+    public void testPersistence() throws Exception {
+        SentenceStore store = new SentenceStore(new File(this.dir, "sentences.array"), 1024L * 1024L);
+        for (int i = 0; i < 100; i++) store.put(ASCII.getBytes("AAAAAAAAA" + (100 + i)), "Dokument " + i + ". " + TEXT);
+        store.close();
+
+        store = new SentenceStore(new File(this.dir, "sentences.array"), 1024L * 1024L);
+        assertEquals(100, store.size());
+        final List<StringBuilder> sentences = store.get(ASCII.getBytes("AAAAAAAAA142"));
+        assertEquals("Dokument 42.", sentences.get(0).toString());
+        assertEquals(sentences(new SentenceReader(TEXT, false)), sentences(sentences.subList(1, sentences.size())));
+        store.close();
+    }
+}
@@ -0,0 +1,143 @@
+package net.yacy.search.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class QueryResultCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        this.dir = new File(System.getProperty("java.io.tmpdir"), "QueryResultCacheTest");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.dir);
+    }
+
+    private static byte[] urlhash(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(i * 104729L, 12).toString());
+    }
+
+    private static QueryResultCache.Entry entry(final String id, final int results) {
+        final int[] counters = new int[QueryResultCache.COUNTERS];
+        for (int i = 0; i < counters.length; i++) counters[i] = i * 7;
+        final QueryResultCache.Entry entry = new QueryResultCache.Entry(id, counters);
+        for (int i = 0; i < results; i++) entry.addResult(urlhash(i), 1000000L - i);
+        entry.addNavigatorCount("protocol", "https", 12);
+        entry.addNavigatorCount("protocol", "http", 3);
+        entry.addNavigatorCount("plugin:filetype", "pdf", 5);
+        return entry;
+    }
+
+    private QueryResultCache open(final long generation, final long changes, final int maxEntries) throws Exception {
+        return new QueryResultCache(new File(this.dir, "queryresults.heap"), generation, changes, maxEntries, 60000, 100);
+    }
+
+    private static void assertSameEntry(final QueryResultCache.Entry expected, final QueryResultCache.Entry entry) {
+        assertNotNull(entry);
+        assertEquals(expected.queryID, entry.queryID);
+        assertEquals(expected.time, entry.time);
+        assertArrayEquals(expected.counters, entry.counters);
+        assertEquals(expected.size(), entry.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.urlhashes.get(i), entry.urlhashes.get(i));
+            assertEquals(expected.scores.get(i), entry.scores.get(i));
+        }
+        assertEquals(expected.navigators, entry.navigators);
+    }
+
+    /**
+     * Test that a stored entry is returned with all results, counters and navigator counts, and only for the same query
+     */
+    @Test
+    public void testPutGet() throws Exception {
+        final QueryResultCache cache = open(0, 0, 100);
+        final QueryResultCache.Entry entry = entry("query-a@0/10", 300);
+        cache.put(entry, 0, 0);
+        assertSameEntry(entry, cache.get("query-a@0/10", 0, 0));
+        assertNull(cache.get("query-a@10/10", 0, 0));
+        assertNull(cache.get("query-b@0/10", 0, 0));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        cache.close(0, 0);
+    }
+
+    /**
+     * Test that entries are invalid after a new generation of the index or too many changes, but not after a few changes
+     */
+    @Test
+    public void testInvalidation() throws Exception {
+        final QueryResultCache cache = open(5, 1000, 100);
+        cache.put(entry("query-a", 10), 5, 1000);
+        cache.put(entry("query-b", 10), 5, 1000);
+        assertNotNull(cache.get("query-a", 5, 1100));
+        assertNull(cache.get("query-a", 5, 1101));
+        assertNull(cache.get("query-a", 5, 1000));
+        assertNull(cache.get("query-b", 6, 1000));
+        assertEquals(2, cache.invalidations());
+        assertEquals(0, cache.size());
+        cache.close(6, 1101);
+    }
+
+    /**
+     * Test that the entries and the counters are kept when the cache is closed and opened again, and that the entries are dropped if the cache was not closed
+     */
+    @Test
+    public void testPersistence() throws Exception {
+        QueryResultCache cache = open(5, 1000, 100);
+        final QueryResultCache.Entry entry = entry("query-a", 50);
+        cache.put(entry, 5, 1000);
+        cache.put(entry("query-b", 50), 5, 1000);
+        cache.close(5, 1050);
+
+        // the counters of the index start again with 0 after a restart
+        cache = open(0, 0, 100);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("query-b", 1, 0)); // a new generation since the restart
+        assertSameEntry(entry, cache.get("query-a", 0, 40));
+        assertNull(cache.get("query-a", 0, 60));
+
+        // a cache which was not closed is empty when it is opened again
+        cache.put(entry, 0, 60);
+        cache = open(0, 60, 100);
+        assertEquals(0, cache.size());
+        assertNull(cache.get("query-a", 0, 60));
+        cache.close(0, 60);
+    }
+
+    /**
+     * Test that the number of entries is bounded and the least recently used entries are removed
+     */
+    @Test
+    public void testMaxEntries() throws Exception {
+        final QueryResultCache cache = open(0, 0, 3);
+        cache.put(entry("query-0", 5), 0, 0);
+        cache.put(entry("query-1", 5), 0, 0);
+        cache.put(entry("query-2", 5), 0, 0);
+        assertNotNull(cache.get("query-0", 0, 0));
+        cache.put(entry("query-3", 5), 0, 0);
+        assertEquals(3, cache.size());
+        assertNull(cache.get("query-1", 0, 0));
+        assertNotNull(cache.get("query-0", 0, 0));
+        assertNotNull(cache.get("query-2", 0, 0));
+        assertNotNull(cache.get("query-3", 0, 0));
+        cache.close(0, 0);
+    }
+}
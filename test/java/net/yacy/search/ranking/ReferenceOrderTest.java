@@ -1,17 +1,35 @@
 package net.yacy.search.ranking;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.solr.common.SolrInputDocument;
 import org.junit.Test;
 
 import net.yacy.cora.document.analysis.Classification;
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import net.yacy.crawler.retrieval.Response;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.util.Bitfield;
 import net.yacy.search.schema.CollectionConfiguration;
 
 public class ReferenceOrderTest {
@@ -51,4 +69,42 @@ public class ReferenceOrderTest {
 
     }
 
+    /**
+     * Test that the ranking of a reference with a threshold is the full ranking, or is omitted exactly if the full ranking is below the threshold
+     */
+    @Test
+    public void testCardinal_threshold() throws Exception {
+        final ReferenceContainer<WordReference> container = new ReferenceContainer<WordReference>(new WordReferenceFactory(), Word.word2hash("test"));
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final Queue<Integer> positions = new LinkedBlockingQueue<Integer>();
+            positions.add(random.nextInt(100));
+            final Bitfield flags = new Bitfield(4);
+            for (int j = 0; j < 32; j++) if (random.nextInt(4) == 0) flags.set(j, true);
+            container.add(new WordReferenceVars(
+                    ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw(Integer.toString(i))).substring(0, 12)),
+                    10 + random.nextInt(100), 1 + random.nextInt(8), random.nextInt(20), 1 + random.nextInt(10), 100 + random.nextInt(1000),
+                    10 + random.nextInt(100), random.nextInt(500), positions, random.nextInt(10), random.nextInt(50),
+                    System.currentTimeMillis() - random.nextInt(1000) * 86400000L, random.nextBoolean() ? "en" : "de", Response.DT_TEXT,
+                    random.nextInt(20), random.nextInt(20), flags, random.nextDouble()));
+        }
+        final ReferenceOrder order = new ReferenceOrder(new RankingProfile(Classification.ContentDomain.TEXT), "en");
+        final BlockingQueue<WordReferenceVars> normalized = order.normalizeWith(container, Long.MAX_VALUE, true, null);
+        final List<WordReferenceVars> references = new ArrayList<WordReferenceVars>();
+        WordReferenceVars reference;
+        while ((reference = normalized.take()) != WordReferenceVars.poison) references.add(reference);
+        assertEquals(500, references.size());
+
+        final long[] rankings = new long[references.size()];
+        for (int i = 0; i < rankings.length; i++) rankings[i] = order.cardinal(references.get(i));
+        final long[] sorted = rankings.clone();
+        Arrays.sort(sorted);
+        for (final long threshold: new long[]{Long.MIN_VALUE, sorted[0], sorted[250], sorted[490], sorted[499] + 1}) {
+            for (int i = 0; i < rankings.length; i++) {
+                final long ranking = order.cardinal(references.get(i), threshold);
+                assertEquals(rankings[i] < threshold ? Long.MIN_VALUE : rankings[i], ranking);
+            }
+        }
+    }
+
 }
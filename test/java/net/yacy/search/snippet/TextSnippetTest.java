@@ -3,8 +3,10 @@ package net.yacy.search.snippet;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
@@ -23,6 +25,7 @@ import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.util.CommonPattern;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.search.query.QueryGoal;
 import net.yacy.search.query.SearchEvent;
 import net.yacy.search.schema.CollectionSchema;
@@ -199,6 +202,46 @@ public class TextSnippetTest {
         assertTrue ("number (.) broken up",sniptxt.contains("1.83"));
         assertTrue ("number (,) broken up",sniptxt.contains("3,14"));
     }
+
+    /**
+     * Test that snippets of the disk level of the snippet cache are kept after a restart, but only for the same version of the document
+     */
+    @Test
+    public void testDiskCache() throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "TextSnippetTest");
+        FileUtils.deletedelete(dir);
+        try {
+            TextSnippet.Cache cache = new TextSnippet.Cache();
+            cache.open(dir, 1024L * 1024L);
+            cache.put("wordhashes01", "AAAAAAAAAAAA", 1000L, "ein Satz mit Umlauten äöü");
+            cache.put("wordhashes02", "AAAAAAAAAAAA", 1000L, "ein anderer Satz");
+            cache.put("wordhashes01", "BBBBBBBBBBBB", "ein Satz aus einer entfernten Suche");
+            assertEquals(2, cache.diskSize());
+            cache.close();
+
+            // a new cache is empty in RAM, like after a restart
+            cache = new TextSnippet.Cache();
+            cache.open(dir, 1024L * 1024L);
+            assertEquals("ein Satz mit Umlauten äöü", cache.get("wordhashes01", "AAAAAAAAAAAA", 1000L));
+            assertEquals("ein Satz mit Umlauten äöü", cache.get("wordhashes01", "AAAAAAAAAAAA"));
+            assertNull(cache.get("wordhashes01", "BBBBBBBBBBBB", 1000L));
+            // the document was loaded again
+            assertNull(cache.get("wordhashes02", "AAAAAAAAAAAA", 2000L));
+            assertEquals(1, cache.diskHits());
+            assertEquals(2, cache.diskMisses());
+
+            // the snippet of the new version replaces the old snippet
+            cache.put("wordhashes02", "AAAAAAAAAAAA", 2000L, "ein neuer Satz");
+            cache.close();
+            cache = new TextSnippet.Cache();
+            cache.open(dir, 1024L * 1024L);
+            assertNull(cache.get("wordhashes02", "AAAAAAAAAAAA", 1000L));
+            assertEquals("ein neuer Satz", cache.get("wordhashes02", "AAAAAAAAAAAA", 2000L));
+            cache.close();
+        } finally {
+            FileUtils.deletedelete(dir);
+        }
+    }
     
 	/**
 	 * Run text snippet extraction from a given plain text file.